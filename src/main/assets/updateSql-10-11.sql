@@ -0,0 +1 @@
+CREATE TABLE `DOWNLOADED_TILE` (`ID` INTEGER PRIMARY KEY AUTOINCREMENT , `ZOOM` INTEGER NOT NULL , `X` INTEGER NOT NULL , `Y` INTEGER NOT NULL , `SIGNATURE` INTEGER NOT NULL , `LAST_DOWNLOAD` BIGINT NOT NULL , UNIQUE (`ZOOM`,`X`,`Y`) );
@@ -0,0 +1 @@
+CREATE TABLE `UPLOAD_ITEM` (`ID` INTEGER PRIMARY KEY AUTOINCREMENT , `POI_ID` BIGINT NOT NULL , `OPERATION` VARCHAR NOT NULL , `STATE` VARCHAR NOT NULL , `CHANGESET_ID` VARCHAR , `LAST_SENT` BIGINT , UNIQUE (`POI_ID`) );
@@ -0,0 +1,3 @@
+CREATE TABLE `TAG_VALUE_COUNT` (`ID` INTEGER PRIMARY KEY AUTOINCREMENT , `POI_TYPE_ID` BIGINT NOT NULL , `KEY` VARCHAR NOT NULL , `VALUE` VARCHAR NOT NULL , `USE_COUNT` INTEGER NOT NULL , UNIQUE (`POI_TYPE_ID`,`KEY`,`VALUE`) );
+CREATE INDEX POI_TAG_POI_ID_idx ON POI_TAG (POI_ID);
+INSERT INTO TAG_VALUE_COUNT (POI_TYPE_ID, KEY, VALUE, USE_COUNT) SELECT P.POI_TYPE_ID, T.KEY, T.VALUE, COUNT(*) FROM POI_TAG T JOIN POI P ON P.ID = T.POI_ID WHERE P.OLD = 0 AND P.POI_TYPE_ID IS NOT NULL AND T.VALUE IS NOT NULL GROUP BY P.POI_TYPE_ID, T.KEY, T.VALUE;
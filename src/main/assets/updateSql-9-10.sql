@@ -0,0 +1,9 @@
+ALTER TABLE POI ADD COLUMN CELL BIGINT;
+UPDATE POI SET CELL = CAST((LATITUDE + 90) * 100 AS INTEGER) * 36001 + CAST((LONGITUDE + 180) * 100 AS INTEGER);
+CREATE INDEX POI_CELL_idx ON POI (CELL);
+ALTER TABLE POI_NODE_REF ADD COLUMN CELL BIGINT;
+UPDATE POI_NODE_REF SET CELL = CAST((LATITUDE + 90) * 100 AS INTEGER) * 36001 + CAST((LONGITUDE + 180) * 100 AS INTEGER);
+CREATE INDEX POI_NODE_REF_CELL_idx ON POI_NODE_REF (CELL);
+ALTER TABLE NOTE ADD COLUMN CELL BIGINT;
+UPDATE NOTE SET CELL = CAST((LATITUDE + 90) * 100 AS INTEGER) * 36001 + CAST((LONGITUDE + 180) * 100 AS INTEGER);
+CREATE INDEX NOTE_CELL_idx ON NOTE (CELL);
@@ -69,10 +69,23 @@ public class OsmTemplateApplication extends Application {
         bus.register(getOsmTemplateComponent().getPoiManager());
         bus.register(getOsmTemplateComponent().getNoteManager());
         bus.register(getOsmTemplateComponent().getSyncManager());
+        bus.register(getOsmTemplateComponent().getPoiTypeMatcher());
+        bus.register(getOsmTemplateComponent().getPoiTypeIdentityMap());
         bus.register(getOsmTemplateComponent().getTypeManager());
         bus.register(getOsmTemplateComponent().getGeocoder());
+        bus.register(getOsmTemplateComponent().getOfflineMapManager());
         bus.register(getOsmTemplateComponent().getEditVectorialWayManager());
         bus.register(getOsmTemplateComponent().getArpiInitializer());
+        bus.register(getOsmTemplateComponent().getBitmapHandler());
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // The UI is hidden, good time to look at the network usage of the session
+        if (BuildConfig.DEBUG && level == TRIM_MEMORY_UI_HIDDEN) {
+            getOsmTemplateComponent().getHttpMetrics().log();
+        }
     }
 
     public OsmTemplateComponent getOsmTemplateComponent() {
@@ -32,6 +32,8 @@ import io.mapsquare.osmcontributor.core.PoiManager;
 import io.mapsquare.osmcontributor.core.database.DatabaseHelper;
 import io.mapsquare.osmcontributor.core.database.DatabaseModule;
 import io.mapsquare.osmcontributor.core.database.OsmSqliteOpenHelper;
+import io.mapsquare.osmcontributor.core.database.PoiTypeIdentityMap;
+import io.mapsquare.osmcontributor.core.database.TagValueSuggestions;
 import io.mapsquare.osmcontributor.edition.AddValueDialogFragment;
 import io.mapsquare.osmcontributor.edition.EditPoiActivity;
 import io.mapsquare.osmcontributor.edition.EditPoiFragment;
@@ -40,10 +42,12 @@ import io.mapsquare.osmcontributor.edition.PickValueActivity;
 import io.mapsquare.osmcontributor.login.LoginManager;
 import io.mapsquare.osmcontributor.login.LoginModule;
 import io.mapsquare.osmcontributor.login.SplashScreenActivity;
+import io.mapsquare.osmcontributor.map.BitmapHandler;
 import io.mapsquare.osmcontributor.map.MapActivity;
 import io.mapsquare.osmcontributor.map.MapFragment;
 import io.mapsquare.osmcontributor.map.MapFragmentPresenter;
 import io.mapsquare.osmcontributor.map.NoteDetailFragment;
+import io.mapsquare.osmcontributor.map.OfflineMapManager;
 import io.mapsquare.osmcontributor.map.PoiDetailFragment;
 import io.mapsquare.osmcontributor.map.vectorial.EditVectorialWayManager;
 import io.mapsquare.osmcontributor.map.vectorial.Geocoder;
@@ -55,7 +59,11 @@ import io.mapsquare.osmcontributor.preferences.MyPreferencesActivity;
 import io.mapsquare.osmcontributor.sync.CommonSyncModule;
 import io.mapsquare.osmcontributor.sync.SyncManager;
 import io.mapsquare.osmcontributor.sync.SyncModule;
+import io.mapsquare.osmcontributor.sync.TileDownloadPlanner;
+import io.mapsquare.osmcontributor.sync.UploadOutbox;
 import io.mapsquare.osmcontributor.sync.assets.PoiAssetLoader;
+import io.mapsquare.osmcontributor.sync.converter.PoiTypeMatcher;
+import io.mapsquare.osmcontributor.sync.rest.HttpMetrics;
 import io.mapsquare.osmcontributor.type.EditPoiTagDialogFragment;
 import io.mapsquare.osmcontributor.type.EditPoiTypeDialogFragment;
 import io.mapsquare.osmcontributor.type.EditPoiTypeNameDialogFragment;
@@ -132,6 +140,8 @@ public interface OsmTemplateComponent {
 
     Geocoder getGeocoder();
 
+    OfflineMapManager getOfflineMapManager();
+
     ArpiInitializer getArpiInitializer();
 
     // Database
@@ -158,6 +168,20 @@ public interface OsmTemplateComponent {
 
     SyncManager getSyncManager();
 
+    PoiTypeMatcher getPoiTypeMatcher();
+
+    PoiTypeIdentityMap getPoiTypeIdentityMap();
+
+    TagValueSuggestions getTagValueSuggestions();
+
+    BitmapHandler getBitmapHandler();
+
+    HttpMetrics getHttpMetrics();
+
+    TileDownloadPlanner getTileDownloadPlanner();
+
+    UploadOutbox getUploadOutbox();
+
     // Poi type
 
     TypeManager getTypeManager();
@@ -33,6 +33,13 @@ public interface ConfigManager {
      */
     int getZoomVectorial();
 
+    /**
+     * Get the level of zoom under which the nearby Pois are grouped in clusters.
+     *
+     * @return The level of zoom under which the Pois are clustered.
+     */
+    int getZoomCluster();
+
     /**
      * Get the default level of zoom of the map.
      *
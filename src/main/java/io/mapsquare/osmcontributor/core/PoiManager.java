@@ -28,6 +28,7 @@ import org.joda.time.DateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -38,11 +39,17 @@ import java.util.concurrent.Callable;
 import javax.inject.Inject;
 
 import io.mapsquare.osmcontributor.core.database.DatabaseHelper;
+import io.mapsquare.osmcontributor.core.database.PoiBulkWriter;
+import io.mapsquare.osmcontributor.core.database.PoiLoader;
+import io.mapsquare.osmcontributor.core.database.PoiSnapshot;
+import io.mapsquare.osmcontributor.core.database.TagValueSuggestions;
+import io.mapsquare.osmcontributor.core.database.dao.DownloadedTileDao;
 import io.mapsquare.osmcontributor.core.database.dao.PoiDao;
 import io.mapsquare.osmcontributor.core.database.dao.PoiNodeRefDao;
 import io.mapsquare.osmcontributor.core.database.dao.PoiTagDao;
 import io.mapsquare.osmcontributor.core.database.dao.PoiTypeDao;
 import io.mapsquare.osmcontributor.core.database.dao.PoiTypeTagDao;
+import io.mapsquare.osmcontributor.core.database.dao.UploadItemDao;
 import io.mapsquare.osmcontributor.core.events.DatabaseResetFinishedEvent;
 import io.mapsquare.osmcontributor.core.events.NodeRefAroundLoadedEvent;
 import io.mapsquare.osmcontributor.core.events.PleaseLoadNodeRefAround;
@@ -67,6 +74,7 @@ import io.mapsquare.osmcontributor.core.model.PoiNodeRef;
 import io.mapsquare.osmcontributor.core.model.PoiTag;
 import io.mapsquare.osmcontributor.core.model.PoiType;
 import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
+import io.mapsquare.osmcontributor.core.model.TagValueCount;
 import io.mapsquare.osmcontributor.map.BitmapHandler;
 import io.mapsquare.osmcontributor.map.events.ChangesInDB;
 import io.mapsquare.osmcontributor.map.events.LastUsePoiTypeLoaded;
@@ -90,6 +98,11 @@ import static io.mapsquare.osmcontributor.core.database.DatabaseHelper.loadLazyF
  */
 public class PoiManager {
 
+    /**
+     * Key of the stream of the loads of the POIs of the viewport in the {@link RequestExecutor}.
+     */
+    private static final String LOAD_POIS_REQUEST = "loadPois";
+
     Application application;
     BitmapHandler bitmapHandler;
     PoiDao poiDao;
@@ -97,13 +110,19 @@ public class PoiManager {
     PoiNodeRefDao poiNodeRefDao;
     PoiTypeDao poiTypeDao;
     PoiTypeTagDao poiTypeTagDao;
+    DownloadedTileDao downloadedTileDao;
+    UploadItemDao uploadItemDao;
     DatabaseHelper databaseHelper;
+    PoiBulkWriter poiBulkWriter;
+    PoiLoader poiLoader;
+    TagValueSuggestions tagValueSuggestions;
     ConfigManager configManager;
     EventBus bus;
     PoiAssetLoader poiAssetLoader;
+    RequestExecutor requestExecutor;
 
     @Inject
-    public PoiManager(Application application, BitmapHandler bitmapHandler, PoiDao poiDao, PoiTagDao poiTagDao, PoiNodeRefDao poiNodeRefDao, PoiTypeDao poiTypeDao, PoiTypeTagDao poiTypeTagDao, DatabaseHelper databaseHelper, ConfigManager configManager, EventBus bus, PoiAssetLoader poiAssetLoader) {
+    public PoiManager(Application application, BitmapHandler bitmapHandler, PoiDao poiDao, PoiTagDao poiTagDao, PoiNodeRefDao poiNodeRefDao, PoiTypeDao poiTypeDao, PoiTypeTagDao poiTypeTagDao, DownloadedTileDao downloadedTileDao, UploadItemDao uploadItemDao, DatabaseHelper databaseHelper, PoiBulkWriter poiBulkWriter, PoiLoader poiLoader, TagValueSuggestions tagValueSuggestions, ConfigManager configManager, EventBus bus, PoiAssetLoader poiAssetLoader, RequestExecutor requestExecutor) {
         this.application = application;
         this.bitmapHandler = bitmapHandler;
         this.poiDao = poiDao;
@@ -111,10 +130,16 @@ public class PoiManager {
         this.poiNodeRefDao = poiNodeRefDao;
         this.poiTypeDao = poiTypeDao;
         this.poiTypeTagDao = poiTypeTagDao;
+        this.downloadedTileDao = downloadedTileDao;
+        this.uploadItemDao = uploadItemDao;
         this.databaseHelper = databaseHelper;
+        this.poiBulkWriter = poiBulkWriter;
+        this.poiLoader = poiLoader;
+        this.tagValueSuggestions = tagValueSuggestions;
         this.configManager = configManager;
         this.bus = bus;
         this.poiAssetLoader = poiAssetLoader;
+        this.requestExecutor = requestExecutor;
     }
 
     // ********************************
@@ -145,7 +170,7 @@ public class PoiManager {
         loadPoiForCreation(event);
     }
 
-    @Subscribe(threadMode = ThreadMode.ASYNC)
+    @Subscribe(threadMode = ThreadMode.POSTING)
     public void onPleaseLoadPoisEvent(PleaseLoadPoisEvent event) {
         loadPois(event);
     }
@@ -213,8 +238,7 @@ public class PoiManager {
 
     @Subscribe(threadMode = ThreadMode.ASYNC)
     public void onPleaseLoadPoiForArpiEvent(PleaseLoadPoiForArpiEvent event) {
-        List<Poi> pois = poiDao.queryForAllInRect(event.getBox());
-        bus.post(new PoisArpiLoadedEvent(pois));
+        bus.post(new PoisArpiLoadedEvent(loadSnapshotInRect(event.getBox())));
     }
 
 
@@ -236,16 +260,28 @@ public class PoiManager {
 
     /**
      * Load poi types from assets and save them in the database.
+     * <br/>
+     * The database must not contain any PoiType: the types are inserted without looking for existing ones,
+     * all in one transaction.
      */
     public void savePoiTypesFromAssets() {
-        List<PoiType> poiTypes = poiAssetLoader.loadPoiTypesFromAssets();
+        final List<PoiType> poiTypes = poiAssetLoader.loadPoiTypesFromAssets();
         if (poiTypes != null) {
             Timber.d("Loaded %s poiTypes, trying to insert them", poiTypes.size());
-            for (PoiType poiType : poiTypes) {
-                Timber.d("saving poiType %s", poiType);
-                savePoiType(poiType);
-                Timber.d("poiType saved");
-            }
+            databaseHelper.callInTransaction(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (PoiType poiType : poiTypes) {
+                        poiTypeDao.create(poiType);
+                        for (PoiTypeTag poiTypeTag : poiType.getTags()) {
+                            poiTypeTag.setPoiType(poiType);
+                            poiTypeTagDao.create(poiTypeTag);
+                        }
+                    }
+                    return null;
+                }
+            });
+            Timber.d("poiTypes saved");
         }
     }
 
@@ -330,6 +366,9 @@ public class PoiManager {
      * @see #savePoi(Poi)
      */
     private Poi savePoiNoTransaction(Poi poi) {
+        List<TagValueCount> tagValueCounts = poi.getId() != null
+                ? tagValueSuggestions.countTags(Collections.singletonList(poi.getId())) : Collections.<TagValueCount>emptyList();
+
         List<PoiTag> poiTagsToRemove = poiTagDao.queryByPoiId(poi.getId());
         poiTagsToRemove.removeAll(poi.getTags());
         for (PoiTag poiTag : poiTagsToRemove) {
@@ -359,6 +398,7 @@ public class PoiManager {
             }
         }
 
+        tagValueSuggestions.updateTags(tagValueCounts, Collections.singletonList(poi.getId()));
         return poi;
     }
 
@@ -443,12 +483,16 @@ public class PoiManager {
                 List<PoiNodeRef> poiNodeRefsToDelete = poiNodeRefDao.queryByPoiId(poiToDelete.getId());
                 List<PoiTag> poiTagsToDelete = poiTagDao.queryByPoiId(poiToDelete.getId());
 
+                List<Long> poiIds = Collections.singletonList(poiToDelete.getId());
+                List<TagValueCount> tagValueCounts = tagValueSuggestions.countTags(poiIds);
+
                 Timber.d("NodeRefs to delete : %d", poiNodeRefsToDelete.size());
                 Timber.d("NodeTags to delete : %d", poiTagsToDelete.size());
 
                 poiTagDao.delete(poiTagsToDelete);
                 poiNodeRefDao.delete(poiNodeRefsToDelete);
                 poiDao.delete(poiToDelete);
+                tagValueSuggestions.updateTags(tagValueCounts, poiIds);
 
                 Timber.i("Deleted Poi %d", poiToDelete.getId());
                 return null;
@@ -456,6 +500,43 @@ public class PoiManager {
         });
     }
 
+    /**
+     * Delete the downloaded nodes of the box which are not in the backend anymore, after a download of the changes
+     * of the box. The nodes modified locally are kept, their conflict is handled by the upload.
+     * <br/>
+     * Ways are never deleted here: their position is their center while the backend selects them by their nodes.
+     * The nodes uploaded after the snapshot of the backend are kept too, the backend may not know them yet.
+     *
+     * @param box            The bounds of the downloaded area.
+     * @param nodeBackendIds The backend ids of all the nodes still in the area in the backend.
+     * @param snapshotDate   The date of the backend data the ids were read from.
+     * @return The number of deleted nodes.
+     */
+    public int deleteRemovedNodes(final Box box, final Set<String> nodeBackendIds, final DateTime snapshotDate) {
+        return databaseHelper.callInTransaction(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                List<Long> poiIdsToDelete = new ArrayList<>();
+                for (Poi poi : poiDao.queryForUnmodifiedNodesInRect(box, snapshotDate)) {
+                    if (!nodeBackendIds.contains(poi.getBackendId())) {
+                        poiIdsToDelete.add(poi.getId());
+                    }
+                }
+                if (poiIdsToDelete.isEmpty()) {
+                    return 0;
+                }
+
+                List<TagValueCount> tagValueCounts = tagValueSuggestions.countTags(poiIdsToDelete);
+                poiTagDao.deleteByPoiIds(poiIdsToDelete);
+                poiNodeRefDao.deleteByPoiIds(poiIdsToDelete);
+                poiDao.deleteIds(poiIdsToDelete);
+                tagValueSuggestions.updateTags(tagValueCounts, poiIdsToDelete);
+                Timber.d("Deleted %d nodes removed from the backend", poiIdsToDelete.size());
+                return poiIdsToDelete.size();
+            }
+        });
+    }
+
     /**
      * Delete a PoiType and all the PoiTypeTags and POIs associated.
      * <p/>
@@ -473,6 +554,7 @@ public class PoiManager {
                 Timber.d("PoiTags deleted : %d", poiTagDao.deleteByPoiIds(poiIdsToDelete));
                 Timber.d("PoiNodeRefs deleted : %d", poiNodeRefDao.deleteByPoiIds(poiIdsToDelete));
                 Timber.d("POIs deleted : %d", poiDao.deleteIds(poiIdsToDelete));
+                tagValueSuggestions.deleteType(id);
 
                 Timber.d("PoiTypeTags deleted : %d", poiTypeTagDao.deleteByPoiTypeId(id));
                 poiTypeDao.deleteById(id);
@@ -549,49 +631,76 @@ public class PoiManager {
 
     /**
      * Merge POIs in parameters to those already in the database.
+     * <br/>
+     * Only the POIs whose version is newer than the local one are written, in a single transaction
+     * using the {@link PoiBulkWriter}.
      *
      * @param remotePois The POIs to merge.
      */
-    public void mergeFromOsmPois(List<Poi> remotePois) {
-        List<Poi> toMergePois = new ArrayList<>();
+    public void mergeFromOsmPois(final List<Poi> remotePois) {
+        // The versions are read in the same transaction as the writes so that concurrent merges are serialized
+        databaseHelper.callInTransaction(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                List<Poi> toMergePois = new ArrayList<>();
 
-        Map<String, Poi> remotePoisMap = new HashMap<>();
-        // Map remote Poi backend Ids
-        for (Poi poi : remotePois) {
-            remotePoisMap.put(poi.getBackendId(), poi);
-        }
+                Map<String, Poi> remotePoisMap = new HashMap<>();
+                // Map remote Poi backend Ids
+                for (Poi poi : remotePois) {
+                    remotePoisMap.put(poi.getBackendId(), poi);
+                }
 
-        // List matching Pois
-        List<Poi> localPois = poiDao.queryForBackendIds(remotePoisMap.keySet());
+                // List the id and version of matching Pois
+                List<Poi> localPois = poiDao.queryVersionsForBackendIds(remotePoisMap.keySet());
 
 
-        Map<String, Poi> localPoisMap = new HashMap<>();
-        // Map matching local Pois
-        for (Poi localPoi : localPois) {
-            localPoisMap.put(localPoi.getBackendId(), localPoi);
-        }
+                Map<String, Poi> localPoisMap = new HashMap<>();
+                // Map matching local Pois
+                for (Poi localPoi : localPois) {
+                    localPoisMap.put(localPoi.getBackendId(), localPoi);
+                }
 
-        // Browse remote pois
-        for (Poi remotePoi : remotePois) {
-            Poi localPoi = localPoisMap.get(remotePoi.getBackendId());
-            Long localVersion = -1L;
-            // If localPoi is versioned
-            if (localPoi != null && localPoi.getVersion() != null) {
-                localVersion = Long.valueOf(localPoi.getVersion());
-            }
-            // Compute version delta
-            if (Long.valueOf(remotePoi.getVersion()) > localVersion) {
-                // Remote version is newer, override existing one
-                if (localPoi != null) {
-                    remotePoi.setId(localPoi.getId());
+                // Browse remote pois
+                for (Poi remotePoi : remotePois) {
+                    Poi localPoi = localPoisMap.get(remotePoi.getBackendId());
+                    Long localVersion = -1L;
+                    // If localPoi is versioned
+                    if (localPoi != null && localPoi.getVersion() != null) {
+                        localVersion = Long.valueOf(localPoi.getVersion());
+                    }
+                    // Compute version delta
+                    if (Long.valueOf(remotePoi.getVersion()) > localVersion) {
+                        // Remote version is newer, override existing one
+                        if (localPoi != null) {
+                            remotePoi.setId(localPoi.getId());
+                        }
+                        // This Poi should be updated
+                        toMergePois.add(remotePoi);
+                    }
                 }
-                // This Poi should be updated
-                toMergePois.add(remotePoi);
-            }
-        }
 
-        // savePois of either new or existing Pois
-        savePois(toMergePois);
+                Timber.d("%d POIs changed out of %d merged", toMergePois.size(), remotePois.size());
+
+                List<Long> mergedIds = new ArrayList<>(toMergePois.size());
+                for (Poi poi : toMergePois) {
+                    if (poi.getId() != null) {
+                        mergedIds.add(poi.getId());
+                    }
+                }
+                List<TagValueCount> tagValueCounts = tagValueSuggestions.countTags(mergedIds);
+
+                // Bulk save of either new or existing Pois
+                poiBulkWriter.savePois(toMergePois);
+
+                // The new Pois got their id from the write
+                mergedIds.clear();
+                for (Poi poi : toMergePois) {
+                    mergedIds.add(poi.getId());
+                }
+                tagValueSuggestions.updateTags(tagValueCounts, mergedIds);
+                return null;
+            }
+        });
     }
 
     /**
@@ -605,12 +714,24 @@ public class PoiManager {
 
     /**
      * Query for all the POIs contained in the bounds defined by the box.
+     * <br/>
+     * The POIs are loaded with their type, tags and node refs in a fixed number of queries, see {@link PoiLoader}.
      *
      * @param box Bounds of the search in latitude and longitude coordinates.
      * @return The POIs contained in the box.
      */
     public List<Poi> queryForAllInRect(Box box) {
-        return poiDao.queryForAllInRect(box);
+        return poiLoader.loadInRect(box);
+    }
+
+    /**
+     * Load a compact snapshot of the POIs contained in the bounds defined by the box, to display them on the map.
+     *
+     * @param box Bounds of the search in latitude and longitude coordinates.
+     * @return The snapshot of the POIs contained in the box, see {@link PoiSnapshot}.
+     */
+    public PoiSnapshot loadSnapshotInRect(Box box) {
+        return poiLoader.loadSnapshotInRect(box);
     }
 
     /**
@@ -623,13 +744,14 @@ public class PoiManager {
     }
 
     /**
-     * Query for all the existing values of a given PoiTag.
+     * Query for all the existing values of a given PoiTag, from the {@link TagValueSuggestions} index.
      *
-     * @param key The key of the PoiTag.
-     * @return The list of values.
+     * @param key       The key of the PoiTag.
+     * @param poiTypeId The id of the PoiType of the POIs.
+     * @return The list of values, the most used first.
      */
     public List<String> suggestionsForTagValue(String key, Long poiTypeId) {
-        return poiTagDao.existingValuesForTag(key, poiTypeId);
+        return tagValueSuggestions.getValues(poiTypeId, key);
     }
 
     /**
@@ -743,7 +865,7 @@ public class PoiManager {
     }
 
     /**
-     * Reset the database : delete all the Pois, PoiTags and PoiNodeRefs of the database.
+     * Reset the database : delete all the Pois, PoiTags, TagValueCounts, PoiNodeRefs, DownloadedTiles and UploadItems of the database.
      *
      * @return Whether the reset was successful.
      */
@@ -754,13 +876,16 @@ public class PoiManager {
                 poiDao.deleteAll();
                 poiNodeRefDao.deleteAll();
                 poiTagDao.deleteAll();
+                tagValueSuggestions.deleteAll();
+                downloadedTileDao.deleteAll();
+                uploadItemDao.deleteAll();
                 return true;
             }
         });
     }
 
     /**
-     * Reset the PoiTypes of the database : delete all the Pois, PoiTags, PoiNodeRefs, PoiTypes and PoiTypeTags of the database
+     * Reset the PoiTypes of the database : delete all the Pois, PoiTags, TagValueCounts, PoiNodeRefs, PoiTypes, PoiTypeTags, DownloadedTiles and UploadItems of the database
      * then reload and save the PoiTypes from the assets.
      *
      * @return Whether the reset was successful.
@@ -773,8 +898,11 @@ public class PoiManager {
                 poiDao.deleteAll();
                 poiNodeRefDao.deleteAll();
                 poiTagDao.deleteAll();
+                tagValueSuggestions.deleteAll();
                 poiTypeDao.deleteAll();
                 poiTypeTagDao.deleteAll();
+                downloadedTileDao.deleteAll();
+                uploadItemDao.deleteAll();
                 Timber.d("All Pois en PoiTypes deleted from database");
                 savePoiTypesFromAssets();
                 Timber.d("Finished reloading and saving PoiTypes from assets");
@@ -824,13 +952,23 @@ public class PoiManager {
     }
 
     /**
-     * Send a {@link io.mapsquare.osmcontributor.core.events.PoisLoadedEvent} containing all the POIs
+     * Send a {@link io.mapsquare.osmcontributor.core.events.PoisLoadedEvent} containing a snapshot of all the POIs
      * in the Box of the {@link io.mapsquare.osmcontributor.core.events.PleaseLoadPoisEvent}.
+     * <br/>
+     * The load is dropped when a newer load is requested before it ends.
      *
      * @param event Event containing the box to load.
      */
-    private void loadPois(PleaseLoadPoisEvent event) {
-        bus.post(new PoisLoadedEvent(event.getBox(), queryForAllInRect(event.getBox())));
+    private void loadPois(final PleaseLoadPoisEvent event) {
+        requestExecutor.submit(new RequestExecutor.Request(LOAD_POIS_REQUEST, RequestExecutor.Priority.VIEWPORT) {
+            @Override
+            protected void execute() {
+                PoiSnapshot pois = loadSnapshotInRect(event.getBox());
+                if (!isSuperseded()) {
+                    bus.post(new PoisLoadedEvent(event.getBox(), pois));
+                }
+            }
+        });
     }
 
     /**
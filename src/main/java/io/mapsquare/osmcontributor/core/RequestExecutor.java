@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import timber.log.Timber;
+
+/**
+ * Run the loads requested by the view on a few threads, the most urgent first and only the newest of each stream.
+ * <br/>
+ * The ASYNC subscribers of the EventBus each run on a new thread of an unbounded pool, so panning the map started
+ * a load of the POIs for each move and their results arrived in any order. Here each {@link Request} belongs to a
+ * stream identified by its key: submitting a request supersedes the previous request of the same stream, which is
+ * dropped if it didn't start and can check {@link Request#isSuperseded()} to drop its result if it did.
+ * <br/>
+ * The {@link Priority#BACKGROUND} requests run on their own single thread: they may wait for the network and must
+ * never hold the threads loading the viewport.
+ */
+@Singleton
+public class RequestExecutor {
+
+    /**
+     * Priorities of the requests, the first ones run first.
+     */
+    public enum Priority {
+        /**
+         * The content of the viewport of the map.
+         */
+        VIEWPORT,
+        /**
+         * The secondary information, displayed after the content of the map. It may come from the network.
+         */
+        BACKGROUND
+    }
+
+    private static final int THREADS = 2;
+
+    private final ThreadPoolExecutor viewportExecutor;
+    private final ThreadPoolExecutor backgroundExecutor;
+    private final Map<String, Request> latest = new HashMap<>();
+    private long sequence;
+
+    @Inject
+    public RequestExecutor() {
+        this(THREADS);
+    }
+
+    /**
+     * @param threads The maximum number of {@link Priority#VIEWPORT} requests running at the same time.
+     */
+    public RequestExecutor(int threads) {
+        viewportExecutor = newExecutor(threads, "RequestExecutor-");
+        backgroundExecutor = newExecutor(1, "RequestExecutor-background-");
+    }
+
+    private static ThreadPoolExecutor newExecutor(int threads, final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, name + count.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    private ThreadPoolExecutor executorOf(Request request) {
+        return request.priority == Priority.BACKGROUND ? backgroundExecutor : viewportExecutor;
+    }
+
+    /**
+     * Queue a request, superseding the previous request of its stream.
+     *
+     * @param request The request.
+     */
+    public void submit(Request request) {
+        synchronized (latest) {
+            request.executor = this;
+            request.sequence = sequence++;
+            Request previous = latest.put(request.key, request);
+            if (previous != null) {
+                previous.superseded = true;
+                if (executorOf(previous).remove(previous)) {
+                    Timber.v("Request %s dropped before running", previous.key);
+                }
+            }
+        }
+        executorOf(request).execute(request);
+    }
+
+    private void finished(Request request) {
+        synchronized (latest) {
+            if (latest.get(request.key) == request) {
+                latest.remove(request.key);
+            }
+        }
+    }
+
+    /**
+     * A task of a stream of requests, ordered by priority then by order of submission.
+     */
+    public abstract static class Request implements Runnable, Comparable<Request> {
+        private final String key;
+        private final Priority priority;
+
+        private RequestExecutor executor;
+        private long sequence;
+        private volatile boolean superseded;
+
+        /**
+         * @param key      The key of the stream of the request.
+         * @param priority The priority of the request.
+         */
+        protected Request(String key, Priority priority) {
+            this.key = key;
+            this.priority = priority;
+        }
+
+        /**
+         * Do the work of the request, check {@link #isSuperseded()} before publishing the result.
+         */
+        protected abstract void execute();
+
+        /**
+         * @return Whether a newer request of the same stream was submitted.
+         */
+        public boolean isSuperseded() {
+            return superseded;
+        }
+
+        @Override
+        public final void run() {
+            try {
+                if (!superseded) {
+                    execute();
+                }
+            } catch (RuntimeException e) {
+                Timber.e(e, "Request %s failed", key);
+            } finally {
+                executor.finished(this);
+            }
+        }
+
+        @Override
+        public int compareTo(Request another) {
+            if (priority != another.priority) {
+                return priority.compareTo(another.priority);
+            }
+            return sequence < another.sequence ? -1 : (sequence == another.sequence ? 0 : 1);
+        }
+    }
+}
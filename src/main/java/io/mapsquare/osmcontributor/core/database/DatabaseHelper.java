@@ -35,6 +35,11 @@ import javax.inject.Inject;
  */
 public class DatabaseHelper {
 
+    /**
+     * Maximum number of values put in a single IN clause, bigger collections are split in several queries.
+     */
+    public static final int MAX_IN_CLAUSE_VALUES = 500;
+
     OsmSqliteOpenHelper helper;
 
     @Inject
@@ -31,12 +31,15 @@ import javax.inject.Singleton;
 import dagger.Module;
 import dagger.Provides;
 import io.mapsquare.osmcontributor.core.model.Comment;
+import io.mapsquare.osmcontributor.core.model.DownloadedTile;
 import io.mapsquare.osmcontributor.core.model.Note;
 import io.mapsquare.osmcontributor.core.model.Poi;
 import io.mapsquare.osmcontributor.core.model.PoiNodeRef;
 import io.mapsquare.osmcontributor.core.model.PoiTag;
 import io.mapsquare.osmcontributor.core.model.PoiType;
 import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
+import io.mapsquare.osmcontributor.core.model.TagValueCount;
+import io.mapsquare.osmcontributor.core.model.UploadItem;
 import timber.log.Timber;
 
 /**
@@ -86,6 +89,21 @@ public class DatabaseModule {
         return createDao(helper, PoiTypeTag.class);
     }
 
+    @Provides
+    Dao<DownloadedTile, Long> getDownloadedTileDao(OsmSqliteOpenHelper helper) {
+        return createDao(helper, DownloadedTile.class);
+    }
+
+    @Provides
+    Dao<UploadItem, Long> getUploadItemDao(OsmSqliteOpenHelper helper) {
+        return createDao(helper, UploadItem.class);
+    }
+
+    @Provides
+    Dao<TagValueCount, Long> getTagValueCountDao(OsmSqliteOpenHelper helper) {
+        return createDao(helper, TagValueCount.class);
+    }
+
 
     /**
      * Create a Dao of a given model class.
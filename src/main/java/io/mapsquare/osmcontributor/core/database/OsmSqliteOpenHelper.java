@@ -33,18 +33,21 @@ import java.sql.SQLException;
 import java.util.concurrent.Callable;
 
 import io.mapsquare.osmcontributor.core.model.Comment;
+import io.mapsquare.osmcontributor.core.model.DownloadedTile;
 import io.mapsquare.osmcontributor.core.model.Note;
 import io.mapsquare.osmcontributor.core.model.Poi;
 import io.mapsquare.osmcontributor.core.model.PoiNodeRef;
 import io.mapsquare.osmcontributor.core.model.PoiTag;
 import io.mapsquare.osmcontributor.core.model.PoiType;
 import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
+import io.mapsquare.osmcontributor.core.model.TagValueCount;
+import io.mapsquare.osmcontributor.core.model.UploadItem;
 import timber.log.Timber;
 
 public class OsmSqliteOpenHelper extends OrmLiteSqliteOpenHelper {
 
     public static final String DATABASE_NAME = "osm-db.sqlite";
-    public static final int CURRENT_VERSION = 9;
+    public static final int CURRENT_VERSION = 13;
 
     private Context context;
 
@@ -63,6 +66,9 @@ public class OsmSqliteOpenHelper extends OrmLiteSqliteOpenHelper {
             TableUtils.createTable(connectionSource, PoiNodeRef.class);
             TableUtils.createTable(connectionSource, Note.class);
             TableUtils.createTable(connectionSource, Comment.class);
+            TableUtils.createTable(connectionSource, DownloadedTile.class);
+            TableUtils.createTable(connectionSource, UploadItem.class);
+            TableUtils.createTable(connectionSource, TagValueCount.class);
         } catch (SQLException e) {
             Timber.e(e, "Error while creating tables");
         }
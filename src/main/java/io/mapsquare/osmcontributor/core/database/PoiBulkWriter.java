@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import io.mapsquare.osmcontributor.core.database.dao.PoiNodeRefDao;
+import io.mapsquare.osmcontributor.core.database.dao.PoiTagDao;
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.PoiNodeRef;
+import io.mapsquare.osmcontributor.core.model.PoiTag;
+
+/**
+ * Write large amounts of POIs with their tags and node refs using compiled statements.
+ * <br/>
+ * This bypasses ORMLite's per-row reflection and queries, use it for the POIs coming from the backend.
+ * The writes must be done in a transaction, see {@link DatabaseHelper#callInTransaction(java.util.concurrent.Callable)}.
+ */
+public class PoiBulkWriter {
+
+    private static final String POI_COLUMNS = Poi.LONGITUDE + ", " + Poi.LATITUDE + ", " + Poi.CELL + ", " + Poi.NAME + ", "
+            + Poi.BACKEND_ID + ", " + Poi.VERSION + ", " + Poi.UPDATE_DATE + ", " + Poi.VISIBLE + ", " + Poi.OLD + ", "
+            + Poi.UPDATED + ", " + Poi.WAY + ", " + Poi.TO_DELETE + ", " + Poi.LEVEL + ", " + Poi.OLD_POI_ID + ", " + Poi.POI_TYPE_ID;
+
+    private static final String INSERT_POI = "INSERT INTO " + Poi.TABLE_NAME + " (" + POI_COLUMNS + ") "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_POI = "UPDATE " + Poi.TABLE_NAME + " SET " + POI_COLUMNS.replace(",", " = ?,") + " = ? "
+            + "WHERE " + Poi.ID + " = ?";
+
+    private static final String INSERT_POI_TAG = "INSERT INTO " + PoiTag.TABLE_NAME + " ("
+            + PoiTag.KEY + ", " + PoiTag.VALUE + ", " + PoiTag.POI_ID + ") VALUES (?, ?, ?)";
+
+    private static final String INSERT_POI_NODE_REF = "INSERT INTO " + PoiNodeRef.TABLE_NAME + " ("
+            + PoiNodeRef.LONGITUDE + ", " + PoiNodeRef.LATITUDE + ", " + PoiNodeRef.CELL + ", " + PoiNodeRef.NODE_BACKEND_ID + ", "
+            + PoiNodeRef.ORDINAL + ", " + PoiNodeRef.POI_ID + ", " + PoiNodeRef.UPDATED + ", " + PoiNodeRef.OLD + ", "
+            + PoiNodeRef.OLD_POI_ID + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    OsmSqliteOpenHelper helper;
+    PoiTagDao poiTagDao;
+    PoiNodeRefDao poiNodeRefDao;
+
+    @Inject
+    public PoiBulkWriter(OsmSqliteOpenHelper helper, PoiTagDao poiTagDao, PoiNodeRefDao poiNodeRefDao) {
+        this.helper = helper;
+        this.poiTagDao = poiTagDao;
+        this.poiNodeRefDao = poiNodeRefDao;
+    }
+
+    /**
+     * Insert the POIs without id and update the others. The tags and node refs of the updated POIs
+     * are replaced by the ones of the given POIs.
+     * <br/>
+     * The ids of the inserted POIs, tags and node refs are set on the objects.
+     *
+     * @param pois The POIs to save.
+     */
+    public void savePois(List<Poi> pois) {
+        List<Long> existingIds = new ArrayList<>();
+        for (Poi poi : pois) {
+            if (poi.getId() != null) {
+                existingIds.add(poi.getId());
+            }
+        }
+        poiTagDao.deleteByPoiIds(existingIds);
+        poiNodeRefDao.deleteByPoiIds(existingIds);
+
+        SQLiteDatabase database = helper.getWritableDatabase();
+        SQLiteStatement insertPoi = database.compileStatement(INSERT_POI);
+        SQLiteStatement updatePoi = database.compileStatement(UPDATE_POI);
+        SQLiteStatement insertPoiTag = database.compileStatement(INSERT_POI_TAG);
+        SQLiteStatement insertPoiNodeRef = database.compileStatement(INSERT_POI_NODE_REF);
+        try {
+            for (Poi poi : pois) {
+                if (poi.getId() == null) {
+                    bindPoi(insertPoi, poi);
+                    poi.setId(insertPoi.executeInsert());
+                } else {
+                    int index = bindPoi(updatePoi, poi);
+                    updatePoi.bindLong(index, poi.getId());
+                    updatePoi.execute();
+                }
+
+                if (poi.getTags() != null) {
+                    for (PoiTag poiTag : poi.getTags()) {
+                        poiTag.setPoi(poi);
+                        insertPoiTag.clearBindings();
+                        bindString(insertPoiTag, 1, poiTag.getKey());
+                        bindString(insertPoiTag, 2, poiTag.getValue());
+                        insertPoiTag.bindLong(3, poi.getId());
+                        poiTag.setId(insertPoiTag.executeInsert());
+                    }
+                }
+
+                if (poi.getNodeRefs() != null) {
+                    for (PoiNodeRef poiNodeRef : poi.getNodeRefs()) {
+                        poiNodeRef.setPoi(poi);
+                        insertPoiNodeRef.clearBindings();
+                        bindDouble(insertPoiNodeRef, 1, poiNodeRef.getLongitude());
+                        bindDouble(insertPoiNodeRef, 2, poiNodeRef.getLatitude());
+                        bindLong(insertPoiNodeRef, 3, SpatialGrid.cellOf(poiNodeRef.getLatitude(), poiNodeRef.getLongitude()));
+                        bindString(insertPoiNodeRef, 4, poiNodeRef.getNodeBackendId());
+                        bindLong(insertPoiNodeRef, 5, poiNodeRef.getOrdinal() != null ? poiNodeRef.getOrdinal().longValue() : null);
+                        insertPoiNodeRef.bindLong(6, poi.getId());
+                        bindBoolean(insertPoiNodeRef, 7, poiNodeRef.getUpdated());
+                        bindBoolean(insertPoiNodeRef, 8, poiNodeRef.getOld());
+                        bindLong(insertPoiNodeRef, 9, poiNodeRef.getOldPoiId());
+                        poiNodeRef.setId(insertPoiNodeRef.executeInsert());
+                    }
+                }
+            }
+        } finally {
+            insertPoi.close();
+            updatePoi.close();
+            insertPoiTag.close();
+            insertPoiNodeRef.close();
+        }
+    }
+
+    /**
+     * Bind the columns of the POI in the order of {@link #POI_COLUMNS}.
+     *
+     * @return The index of the next parameter of the statement.
+     */
+    private int bindPoi(SQLiteStatement statement, Poi poi) {
+        statement.clearBindings();
+        bindDouble(statement, 1, poi.getLongitude());
+        bindDouble(statement, 2, poi.getLatitude());
+        bindLong(statement, 3, SpatialGrid.cellOf(poi.getLatitude(), poi.getLongitude()));
+        bindString(statement, 4, poi.getName());
+        bindString(statement, 5, poi.getBackendId());
+        bindString(statement, 6, poi.getVersion());
+        bindLong(statement, 7, poi.getUpdateDate() != null ? poi.getUpdateDate().getMillis() : null);
+        bindBoolean(statement, 8, poi.getVisible());
+        bindBoolean(statement, 9, poi.getOld());
+        bindBoolean(statement, 10, poi.getUpdated());
+        bindBoolean(statement, 11, poi.getWay());
+        bindBoolean(statement, 12, poi.getToDelete());
+        bindString(statement, 13, poi.getLevel());
+        bindLong(statement, 14, poi.getOldPoiId());
+        bindLong(statement, 15, poi.getType() != null ? poi.getType().getId() : null);
+        return 16;
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static void bindLong(SQLiteStatement statement, int index, Long value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindLong(index, value);
+        }
+    }
+
+    private static void bindDouble(SQLiteStatement statement, int index, Double value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindDouble(index, value);
+        }
+    }
+
+    private static void bindBoolean(SQLiteStatement statement, int index, Boolean value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindLong(index, value ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.joda.time.DateTime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.PoiNodeRef;
+import io.mapsquare.osmcontributor.core.model.PoiTag;
+import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.utils.Box;
+
+/**
+ * Read the POIs of an area with their type, tags and node refs in a fixed number of queries.
+ * <br/>
+ * ORMLite issues one query per POI for its type and one per collection when the tags or node refs are iterated.
+ * Here the POIs, their tags and their node refs are each read by one query restricted to the box, and the types
+ * come from the {@link PoiTypeIdentityMap}. The tags and node refs of the returned POIs are plain lists.
+ */
+public class PoiLoader {
+
+    private static final String POI_COLUMNS = "P." + Poi.ID + ", P." + Poi.LONGITUDE + ", P." + Poi.LATITUDE + ", P." + Poi.NAME + ", P."
+            + Poi.BACKEND_ID + ", P." + Poi.VERSION + ", P." + Poi.UPDATE_DATE + ", P." + Poi.VISIBLE + ", P." + Poi.UPDATED + ", P."
+            + Poi.WAY + ", P." + Poi.TO_DELETE + ", P." + Poi.LEVEL + ", P." + Poi.OLD_POI_ID + ", P." + Poi.POI_TYPE_ID;
+
+    private static final String POI_TAG_COLUMNS = "T." + PoiTag.POI_ID + ", T." + PoiTag.ID + ", T." + PoiTag.KEY + ", T." + PoiTag.VALUE;
+
+    private static final String POI_NODE_REF_COLUMNS = "N." + PoiNodeRef.POI_ID + ", N." + PoiNodeRef.ID + ", N." + PoiNodeRef.LONGITUDE
+            + ", N." + PoiNodeRef.LATITUDE + ", N." + PoiNodeRef.NODE_BACKEND_ID + ", N." + PoiNodeRef.ORDINAL + ", N."
+            + PoiNodeRef.UPDATED + ", N." + PoiNodeRef.OLD + ", N." + PoiNodeRef.OLD_POI_ID;
+
+    private static final String SNAPSHOT_COLUMNS = "P." + Poi.ID + ", P." + Poi.LATITUDE + ", P." + Poi.LONGITUDE + ", P." + Poi.POI_TYPE_ID
+            + ", P." + Poi.NAME + ", P." + Poi.VERSION + ", P." + Poi.LEVEL + ", P." + Poi.UPDATED + ", P." + Poi.TO_DELETE + ", P." + Poi.WAY;
+
+    OsmSqliteOpenHelper helper;
+    PoiTypeIdentityMap poiTypeIdentityMap;
+
+    @Inject
+    public PoiLoader(OsmSqliteOpenHelper helper, PoiTypeIdentityMap poiTypeIdentityMap) {
+        this.helper = helper;
+        this.poiTypeIdentityMap = poiTypeIdentityMap;
+    }
+
+    /**
+     * Load the POIs contained in the bounds defined by the box, ignoring the old copies of modified POIs.
+     *
+     * @param box Bounds of the search in latitude and longitude coordinates.
+     * @return The POIs contained in the box.
+     */
+    public List<Poi> loadInRect(Box box) {
+        String inBox = SpatialGrid.inBoxSql("P." + Poi.CELL, "P." + Poi.LATITUDE, "P." + Poi.LONGITUDE, box)
+                + " AND P." + Poi.OLD + " = 0";
+        String[] arguments = SpatialGrid.inBoxArguments(box);
+        SQLiteDatabase database = helper.getReadableDatabase();
+
+        List<Poi> pois = new ArrayList<>();
+        Map<Long, Poi> poisById = new HashMap<>();
+        List<Long> poiTypeIds = new ArrayList<>();
+        Cursor cursor = database.rawQuery("SELECT " + POI_COLUMNS + " FROM " + Poi.TABLE_NAME + " P WHERE " + inBox, arguments);
+        try {
+            while (cursor.moveToNext()) {
+                Poi poi = readPoi(cursor);
+                pois.add(poi);
+                poisById.put(poi.getId(), poi);
+                poiTypeIds.add(cursor.isNull(13) ? null : cursor.getLong(13));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (pois.isEmpty()) {
+            return pois;
+        }
+
+        setTypes(pois, poiTypeIds);
+        loadTags(database, inBox, arguments, poisById);
+        loadNodeRefs(database, inBox, arguments, poisById);
+        return pois;
+    }
+
+    /**
+     * Load a {@link PoiSnapshot} of the POIs contained in the bounds defined by the box, ignoring the old copies
+     * of modified POIs, in a single query without their tags and node refs.
+     *
+     * @param box Bounds of the search in latitude and longitude coordinates.
+     * @return The snapshot of the POIs contained in the box.
+     */
+    public PoiSnapshot loadSnapshotInRect(Box box) {
+        String inBox = SpatialGrid.inBoxSql("P." + Poi.CELL, "P." + Poi.LATITUDE, "P." + Poi.LONGITUDE, box)
+                + " AND P." + Poi.OLD + " = 0";
+        SQLiteDatabase database = helper.getReadableDatabase();
+
+        PoiSnapshot.Builder builder = new PoiSnapshot.Builder();
+        Set<Long> poiTypeIds = new HashSet<>();
+        Cursor cursor = database.rawQuery("SELECT " + SNAPSHOT_COLUMNS + " FROM " + Poi.TABLE_NAME + " P WHERE " + inBox,
+                SpatialGrid.inBoxArguments(box));
+        try {
+            while (cursor.moveToNext()) {
+                long poiTypeId = cursor.isNull(3) ? PoiSnapshot.NO_TYPE : cursor.getLong(3);
+                if (poiTypeId != PoiSnapshot.NO_TYPE) {
+                    poiTypeIds.add(poiTypeId);
+                }
+                builder.add(cursor.getLong(0), cursor.getDouble(1), cursor.getDouble(2), poiTypeId,
+                        cursor.isNull(4) ? null : cursor.getString(4),
+                        cursor.isNull(5) ? null : cursor.getString(5),
+                        cursor.isNull(6) ? null : cursor.getString(6),
+                        cursor.getInt(7) != 0, cursor.getInt(8) != 0, cursor.getInt(9) != 0);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (poiTypeIds.isEmpty()) {
+            return builder.build(Collections.<Long, PoiType>emptyMap());
+        }
+        return builder.build(poiTypeIdentityMap.getTypes(poiTypeIds));
+    }
+
+    private void setTypes(List<Poi> pois, List<Long> poiTypeIds) {
+        Set<Long> distinctIds = new HashSet<>(poiTypeIds);
+        distinctIds.remove(null);
+        Map<Long, PoiType> poiTypes = poiTypeIdentityMap.getTypes(distinctIds);
+        for (int i = 0; i < pois.size(); i++) {
+            Long poiTypeId = poiTypeIds.get(i);
+            pois.get(i).setType(poiTypeId != null ? poiTypes.get(poiTypeId) : null);
+        }
+    }
+
+    private void loadTags(SQLiteDatabase database, String inBox, String[] arguments, Map<Long, Poi> poisById) {
+        Cursor cursor = database.rawQuery("SELECT " + POI_TAG_COLUMNS + " FROM " + PoiTag.TABLE_NAME + " T JOIN " + Poi.TABLE_NAME
+                + " P ON P." + Poi.ID + " = T." + PoiTag.POI_ID + " WHERE " + inBox, arguments);
+        try {
+            while (cursor.moveToNext()) {
+                Poi poi = poisById.get(cursor.getLong(0));
+                PoiTag poiTag = new PoiTag();
+                poiTag.setId(cursor.getLong(1));
+                poiTag.setKey(cursor.getString(2));
+                poiTag.setValue(cursor.isNull(3) ? null : cursor.getString(3));
+                poiTag.setPoi(poi);
+                poi.getTags().add(poiTag);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void loadNodeRefs(SQLiteDatabase database, String inBox, String[] arguments, Map<Long, Poi> poisById) {
+        Cursor cursor = database.rawQuery("SELECT " + POI_NODE_REF_COLUMNS + " FROM " + PoiNodeRef.TABLE_NAME + " N JOIN " + Poi.TABLE_NAME
+                + " P ON P." + Poi.ID + " = N." + PoiNodeRef.POI_ID + " WHERE " + inBox + " ORDER BY N." + PoiNodeRef.ORDINAL, arguments);
+        try {
+            while (cursor.moveToNext()) {
+                Poi poi = poisById.get(cursor.getLong(0));
+                PoiNodeRef poiNodeRef = new PoiNodeRef();
+                poiNodeRef.setId(cursor.getLong(1));
+                poiNodeRef.setLongitude(cursor.getDouble(2));
+                poiNodeRef.setLatitude(cursor.getDouble(3));
+                poiNodeRef.setNodeBackendId(cursor.getString(4));
+                poiNodeRef.setOrdinal(cursor.getInt(5));
+                poiNodeRef.setUpdated(cursor.getInt(6) != 0);
+                poiNodeRef.setOld(cursor.isNull(7) ? null : cursor.getInt(7) != 0);
+                poiNodeRef.setOldPoiId(cursor.isNull(8) ? null : cursor.getLong(8));
+                poiNodeRef.setPoi(poi);
+                poi.getNodeRefs().add(poiNodeRef);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Read a POI from the columns of {@link #POI_COLUMNS}, its tags and node refs are empty lists.
+     */
+    private static Poi readPoi(Cursor cursor) {
+        Poi poi = new Poi();
+        poi.setId(cursor.getLong(0));
+        poi.setLongitude(cursor.getDouble(1));
+        poi.setLatitude(cursor.getDouble(2));
+        poi.setName(cursor.isNull(3) ? null : cursor.getString(3));
+        poi.setBackendId(cursor.isNull(4) ? null : cursor.getString(4));
+        poi.setVersion(cursor.isNull(5) ? null : cursor.getString(5));
+        poi.setUpdateDate(cursor.isNull(6) ? null : new DateTime(cursor.getLong(6)));
+        poi.setVisible(cursor.isNull(7) ? null : cursor.getInt(7) != 0);
+        poi.setUpdated(cursor.getInt(8) != 0);
+        poi.setWay(cursor.getInt(9) != 0);
+        poi.setToDelete(cursor.getInt(10) != 0);
+        poi.setLevel(cursor.isNull(11) ? null : cursor.getString(11));
+        poi.setOldPoiId(cursor.isNull(12) ? null : cursor.getLong(12));
+        poi.setOld(false);
+        poi.setTags(new ArrayList<PoiTag>());
+        poi.setNodeRefs(new ArrayList<PoiNodeRef>());
+        return poi;
+    }
+}
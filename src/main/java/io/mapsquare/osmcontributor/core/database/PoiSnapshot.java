@@ -0,0 +1,236 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.PoiNodeRef;
+import io.mapsquare.osmcontributor.core.model.PoiTag;
+import io.mapsquare.osmcontributor.core.model.PoiType;
+
+/**
+ * Read-only view of the POIs of an area, with only the fields needed to draw them on the map.
+ * <br/>
+ * The POIs are stored in parallel arrays of primitives indexed from 0 to {@link #size()} - 1 instead of one
+ * {@link Poi} object per POI with its boxed coordinates and flags, its tags and its node refs. The levels are
+ * shared in a table of the distinct values and the types come from the {@link PoiTypeIdentityMap}.
+ * <br/>
+ * Only the POIs displayed as single markers are materialized with {@link #toPoi(int)}, the full POI with its tags
+ * is read from the database when it's edited.
+ */
+public final class PoiSnapshot {
+
+    /**
+     * Type id of the POIs without type.
+     */
+    public static final long NO_TYPE = -1;
+
+    public static final PoiSnapshot EMPTY = new Builder().build(Collections.<Long, PoiType>emptyMap());
+
+    private static final byte UPDATED = 1;
+    private static final byte TO_DELETE = 2;
+    private static final byte WAY = 4;
+
+    private final int size;
+    private final long[] ids;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final long[] typeIds;
+    private final byte[] states;
+    private final int[] levels;
+    private final String[] names;
+    private final String[] versions;
+    private final String[] levelValues;
+    private final Map<Long, PoiType> types;
+
+    private PoiSnapshot(Builder builder, Map<Long, PoiType> types) {
+        this.size = builder.size;
+        this.ids = Arrays.copyOf(builder.ids, size);
+        this.latitudes = Arrays.copyOf(builder.latitudes, size);
+        this.longitudes = Arrays.copyOf(builder.longitudes, size);
+        this.typeIds = Arrays.copyOf(builder.typeIds, size);
+        this.states = Arrays.copyOf(builder.states, size);
+        this.levels = Arrays.copyOf(builder.levels, size);
+        this.names = Arrays.copyOf(builder.names, size);
+        this.versions = Arrays.copyOf(builder.versions, size);
+        this.levelValues = builder.levelValues.toArray(new String[builder.levelValues.size()]);
+        this.types = types;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getId(int index) {
+        return ids[index];
+    }
+
+    public double getLatitude(int index) {
+        return latitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        return longitudes[index];
+    }
+
+    /**
+     * @return The id of the type of the POI or {@link #NO_TYPE}.
+     */
+    public long getTypeId(int index) {
+        return typeIds[index];
+    }
+
+    /**
+     * @return The type of the POI or null if it has no type or its type was deleted.
+     */
+    public PoiType getType(int index) {
+        return typeIds[index] == NO_TYPE ? null : types.get(typeIds[index]);
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public String getVersion(int index) {
+        return versions[index];
+    }
+
+    public String getLevel(int index) {
+        return levels[index] < 0 ? null : levelValues[levels[index]];
+    }
+
+    public boolean isUpdated(int index) {
+        return (states[index] & UPDATED) != 0;
+    }
+
+    public boolean isToDelete(int index) {
+        return (states[index] & TO_DELETE) != 0;
+    }
+
+    public boolean isWay(int index) {
+        return (states[index] & WAY) != 0;
+    }
+
+    /**
+     * Create a light POI to display as a marker.
+     * <br/>
+     * Its tags and node refs are empty lists, read the POI from the database by its id to edit it.
+     *
+     * @param index The index of the POI.
+     * @return The POI.
+     */
+    public Poi toPoi(int index) {
+        Poi poi = new Poi();
+        poi.setId(ids[index]);
+        poi.setLatitude(latitudes[index]);
+        poi.setLongitude(longitudes[index]);
+        poi.setName(names[index]);
+        poi.setVersion(versions[index]);
+        poi.setType(getType(index));
+        poi.setLevel(getLevel(index));
+        poi.setUpdated(isUpdated(index));
+        poi.setToDelete(isToDelete(index));
+        poi.setWay(isWay(index));
+        poi.setOld(false);
+        poi.setTags(new ArrayList<PoiTag>());
+        poi.setNodeRefs(new ArrayList<PoiNodeRef>());
+        return poi;
+    }
+
+    /**
+     * Fill the arrays of a snapshot one POI at a time.
+     */
+    public static class Builder {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private int size;
+        private long[] ids = new long[INITIAL_CAPACITY];
+        private double[] latitudes = new double[INITIAL_CAPACITY];
+        private double[] longitudes = new double[INITIAL_CAPACITY];
+        private long[] typeIds = new long[INITIAL_CAPACITY];
+        private byte[] states = new byte[INITIAL_CAPACITY];
+        private int[] levels = new int[INITIAL_CAPACITY];
+        private String[] names = new String[INITIAL_CAPACITY];
+        private String[] versions = new String[INITIAL_CAPACITY];
+        private final List<String> levelValues = new ArrayList<>();
+        private final Map<String, Integer> levelIndexes = new HashMap<>();
+
+        /**
+         * Add a POI to the snapshot.
+         *
+         * @param typeId The id of the type of the POI or {@link PoiSnapshot#NO_TYPE}.
+         * @return The builder.
+         */
+        public Builder add(long id, double latitude, double longitude, long typeId, String name, String version,
+                           String level, boolean updated, boolean toDelete, boolean way) {
+            if (size == ids.length) {
+                grow();
+            }
+            ids[size] = id;
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            typeIds[size] = typeId;
+            states[size] = (byte) ((updated ? UPDATED : 0) | (toDelete ? TO_DELETE : 0) | (way ? WAY : 0));
+            levels[size] = levelIndex(level);
+            names[size] = name;
+            versions[size] = version;
+            size++;
+            return this;
+        }
+
+        /**
+         * @param types The types of the POIs by id, shared with the snapshot.
+         * @return The snapshot of the added POIs.
+         */
+        public PoiSnapshot build(Map<Long, PoiType> types) {
+            return new PoiSnapshot(this, types);
+        }
+
+        private int levelIndex(String level) {
+            if (level == null) {
+                return -1;
+            }
+            Integer index = levelIndexes.get(level);
+            if (index == null) {
+                index = levelValues.size();
+                levelValues.add(level);
+                levelIndexes.put(level, index);
+            }
+            return index;
+        }
+
+        private void grow() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            typeIds = Arrays.copyOf(typeIds, capacity);
+            states = Arrays.copyOf(states, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            names = Arrays.copyOf(names, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core.database;
+
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import io.mapsquare.osmcontributor.core.database.dao.PoiTypeDao;
+import io.mapsquare.osmcontributor.core.events.PoiTypesLoaded;
+import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.type.event.BasePoiTypeEvent;
+
+/**
+ * Shared instances of the PoiTypes by id, so that the POIs of the same type all point to the same PoiType object.
+ * <br/>
+ * The types are read from the database in one query on first use and read again after the types change, which is
+ * signaled by the {@link io.mapsquare.osmcontributor.core.events.PoiTypesLoaded} and
+ * {@link io.mapsquare.osmcontributor.type.event.BasePoiTypeEvent} events.
+ * <br/>
+ * The returned types are shared between threads, do not modify them.
+ */
+@Singleton
+public class PoiTypeIdentityMap {
+
+    private final PoiTypeDao poiTypeDao;
+
+    private volatile Map<Long, PoiType> types;
+
+    @Inject
+    public PoiTypeIdentityMap(PoiTypeDao poiTypeDao) {
+        this.poiTypeDao = poiTypeDao;
+    }
+
+    // ********************************
+    // ************ Events ************
+    // ********************************
+
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onPoiTypesLoaded(PoiTypesLoaded event) {
+        types = null;
+    }
+
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onBasePoiTypeEvent(BasePoiTypeEvent event) {
+        types = null;
+    }
+
+    // *********************************
+    // ************ Public *************
+    // *********************************
+
+    /**
+     * Get the types with the given ids.
+     * <br/>
+     * The types are read again from the database at most once per call, when one of the ids is unknown.
+     *
+     * @param ids The ids of the types.
+     * @return The types by id, the unknown ids are absent.
+     */
+    public Map<Long, PoiType> getTypes(Collection<Long> ids) {
+        Map<Long, PoiType> current = types;
+        if (current == null || !current.keySet().containsAll(ids)) {
+            current = load();
+        }
+        return current;
+    }
+
+    /**
+     * Get the type with the given id.
+     *
+     * @param id The id of the type.
+     * @return The type or null if it doesn't exist.
+     */
+    public PoiType getType(Long id) {
+        if (id == null) {
+            return null;
+        }
+        return getTypes(Collections.singleton(id)).get(id);
+    }
+
+    private Map<Long, PoiType> load() {
+        Map<Long, PoiType> loaded = new HashMap<>();
+        for (PoiType poiType : poiTypeDao.queryForAll()) {
+            loaded.put(poiType.getId(), poiType);
+        }
+        Map<Long, PoiType> result = Collections.unmodifiableMap(loaded);
+        types = result;
+        return result;
+    }
+}
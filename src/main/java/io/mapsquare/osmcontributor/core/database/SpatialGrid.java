@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core.database;
+
+import com.j256.ormlite.stmt.SelectArg;
+import com.j256.ormlite.stmt.Where;
+
+import java.sql.SQLException;
+
+import io.mapsquare.osmcontributor.utils.Box;
+
+/**
+ * Fixed grid used to spatially index the tables containing coordinates.
+ * <p/>
+ * The world is split in cells of 1/{@link #CELLS_PER_DEGREE} degree. Each row of a table carries the key of the cell containing
+ * it in an indexed column, keys being numbered row by row so that the cells of a row of the grid are contiguous.
+ * A box query then becomes one indexed range scan per row of the grid crossed by the box, followed by the
+ * exact comparison of the coordinates on the few candidate rows.
+ * <p/>
+ * The same formula is used in the sql migration script, keep them in sync.
+ */
+public final class SpatialGrid {
+
+    /**
+     * Number of cells per degree, a cell is about 1km high.
+     */
+    public static final int CELLS_PER_DEGREE = 100;
+
+    /**
+     * Number of columns of the grid, one more than needed to include the 180° meridian.
+     */
+    public static final long COLUMNS = 36001;
+
+    /**
+     * Above this number of rows of the grid crossed by the box, the box is so large that scanning the table is cheaper.
+     */
+    public static final int MAX_ROWS = 64;
+
+    private SpatialGrid() {
+    }
+
+    /**
+     * Compute the key of the cell containing the given coordinates.
+     *
+     * @param latitude  The latitude.
+     * @param longitude The longitude.
+     * @return The key of the cell or null if one of the coordinates is missing.
+     */
+    public static Long cellOf(Double latitude, Double longitude) {
+        if (latitude == null || longitude == null) {
+            return null;
+        }
+        return row(latitude) * COLUMNS + column(longitude);
+    }
+
+    /**
+     * Add to the where clause the conditions selecting the rows contained in the box, combined in a single clause.
+     *
+     * @param where           The where clause to complete.
+     * @param cellColumn      The name of the column containing the key of the cell.
+     * @param latitudeColumn  The name of the latitude column.
+     * @param longitudeColumn The name of the longitude column.
+     * @param box             The bounds of the search.
+     * @param <T>             The type of the queried objects.
+     * @return The where clause.
+     * @throws SQLException
+     */
+    public static <T> Where<T, Long> inBox(Where<T, Long> where, String cellColumn, String latitudeColumn, String longitudeColumn, Box box) throws SQLException {
+        long firstRow = row(box.getSouth());
+        long lastRow = row(box.getNorth());
+        long firstColumn = column(box.getWest());
+        long lastColumn = column(box.getEast());
+
+        int clauses = 4;
+        long rows = lastRow - firstRow + 1;
+        if (rows > 0 && rows <= MAX_ROWS && firstColumn <= lastColumn) {
+            for (long row = firstRow; row <= lastRow; row++) {
+                where.between(cellColumn, row * COLUMNS + firstColumn, row * COLUMNS + lastColumn);
+            }
+            if (rows > 1) {
+                where.or((int) rows);
+            }
+            clauses++;
+        }
+
+        where.gt(latitudeColumn, new SelectArg(box.getSouth()));
+        where.lt(latitudeColumn, new SelectArg(box.getNorth()));
+        where.gt(longitudeColumn, new SelectArg(box.getWest()));
+        where.lt(longitudeColumn, new SelectArg(box.getEast()));
+        return where.and(clauses);
+    }
+
+    /**
+     * Raw sql version of {@link #inBox(Where, String, String, String, Box)} for the queries written by hand.
+     * <br/>
+     * The coordinates of the box are left as parameters, bind them with {@link #inBoxArguments(Box)}.
+     *
+     * @param cellColumn      The name of the column containing the key of the cell.
+     * @param latitudeColumn  The name of the latitude column.
+     * @param longitudeColumn The name of the longitude column.
+     * @param box             The bounds of the search.
+     * @return The condition selecting the rows contained in the box.
+     */
+    public static String inBoxSql(String cellColumn, String latitudeColumn, String longitudeColumn, Box box) {
+        long firstRow = row(box.getSouth());
+        long lastRow = row(box.getNorth());
+        long firstColumn = column(box.getWest());
+        long lastColumn = column(box.getEast());
+
+        StringBuilder sql = new StringBuilder("(");
+        long rows = lastRow - firstRow + 1;
+        if (rows > 0 && rows <= MAX_ROWS && firstColumn <= lastColumn) {
+            sql.append("(");
+            for (long row = firstRow; row <= lastRow; row++) {
+                if (row > firstRow) {
+                    sql.append(" OR ");
+                }
+                sql.append(cellColumn).append(" BETWEEN ").append(row * COLUMNS + firstColumn)
+                        .append(" AND ").append(row * COLUMNS + lastColumn);
+            }
+            sql.append(") AND ");
+        }
+
+        return sql.append(latitudeColumn).append(" > ? AND ").append(latitudeColumn).append(" < ? AND ")
+                .append(longitudeColumn).append(" > ? AND ").append(longitudeColumn).append(" < ?)")
+                .toString();
+    }
+
+    /**
+     * The parameters of the condition returned by {@link #inBoxSql(String, String, String, Box)}.
+     *
+     * @param box The bounds of the search.
+     * @return The south, north, west and east bounds of the box.
+     */
+    public static String[] inBoxArguments(Box box) {
+        return new String[]{String.valueOf(box.getSouth()), String.valueOf(box.getNorth()),
+                String.valueOf(box.getWest()), String.valueOf(box.getEast())};
+    }
+
+    private static long row(double latitude) {
+        return (long) Math.floor((Math.max(-90, Math.min(90, latitude)) + 90) * CELLS_PER_DEGREE);
+    }
+
+    private static long column(double longitude) {
+        return (long) Math.floor((Math.max(-180, Math.min(180, longitude)) + 180) * CELLS_PER_DEGREE);
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import io.mapsquare.osmcontributor.core.database.dao.TagValueCountDao;
+import io.mapsquare.osmcontributor.core.model.TagValueCount;
+
+/**
+ * Index of the values used by the POIs for each tag of each PoiType, ordered by number of uses.
+ * <br/>
+ * The counts are kept in the database and updated incrementally each time POIs are written: count the tags of the
+ * POIs with {@link #countTags(Collection)} before the write and give the result to
+ * {@link #updateTags(List, Collection)} after it, in the same transaction. Only the difference is written.
+ * <br/>
+ * The values of a PoiType are read in one query the first time they are needed and kept until they change.
+ * The search among them is done by the {@link io.mapsquare.osmcontributor.utils.SearchIndex} of the edition screen.
+ */
+@Singleton
+public class TagValueSuggestions {
+
+    private final TagValueCountDao tagValueCountDao;
+
+    private final ConcurrentMap<Long, Map<String, List<String>>> valuesByType = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented after each change of the counts, a cache entry read before a change is discarded.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    @Inject
+    public TagValueSuggestions(TagValueCountDao tagValueCountDao) {
+        this.tagValueCountDao = tagValueCountDao;
+    }
+
+    // *********************************
+    // ************ Public *************
+    // *********************************
+
+    /**
+     * Get the values of a tag for a PoiType.
+     *
+     * @param poiTypeId The id of the PoiType.
+     * @param key       The key of the tag.
+     * @return The values, the most used first.
+     */
+    public List<String> getValues(Long poiTypeId, String key) {
+        if (poiTypeId == null) {
+            return Collections.emptyList();
+        }
+        List<String> values = getValuesByKey(poiTypeId).get(key);
+        return values != null ? values : Collections.<String>emptyList();
+    }
+
+    /**
+     * Count the tag values of the POIs before writing them.
+     *
+     * @param poiIds The ids of the POIs about to be written or deleted.
+     * @return The counts to give to {@link #updateTags(List, Collection)} after the write.
+     */
+    public List<TagValueCount> countTags(Collection<Long> poiIds) {
+        if (poiIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return tagValueCountDao.countByPoiIds(poiIds);
+    }
+
+    /**
+     * Update the index with the difference between the tag values of the POIs before and after their write.
+     *
+     * @param before The counts returned by {@link #countTags(Collection)} before the write.
+     * @param poiIds The ids of the written POIs, including the deleted ones.
+     */
+    public void updateTags(List<TagValueCount> before, Collection<Long> poiIds) {
+        Map<TagValueCount, Integer> deltas = new HashMap<>();
+        for (TagValueCount count : before) {
+            addDelta(deltas, count, -count.getUseCount());
+        }
+        for (TagValueCount count : countTags(poiIds)) {
+            addDelta(deltas, count, count.getUseCount());
+        }
+
+        Set<Long> changedTypes = new HashSet<>();
+        for (Map.Entry<TagValueCount, Integer> entry : deltas.entrySet()) {
+            if (entry.getValue() != 0) {
+                changedTypes.add(entry.getKey().getPoiTypeId());
+            }
+        }
+        if (changedTypes.isEmpty()) {
+            return;
+        }
+
+        tagValueCountDao.addUseCounts(deltas);
+        generation.incrementAndGet();
+        for (Long poiTypeId : changedTypes) {
+            valuesByType.remove(poiTypeId);
+        }
+    }
+
+    /**
+     * Delete the values of a PoiType, call it when the PoiType is deleted.
+     *
+     * @param poiTypeId The id of the PoiType.
+     */
+    public void deleteType(Long poiTypeId) {
+        tagValueCountDao.deleteByPoiTypeId(poiTypeId);
+        generation.incrementAndGet();
+        valuesByType.remove(poiTypeId);
+    }
+
+    /**
+     * Delete all the values, call it when all the POIs are deleted.
+     */
+    public void deleteAll() {
+        tagValueCountDao.deleteAll();
+        generation.incrementAndGet();
+        valuesByType.clear();
+    }
+
+    private Map<String, List<String>> getValuesByKey(Long poiTypeId) {
+        Map<String, List<String>> values = valuesByType.get(poiTypeId);
+        if (values == null) {
+            long readGeneration = generation.get();
+            values = new HashMap<>();
+            for (TagValueCount count : tagValueCountDao.queryForPoiTypeId(poiTypeId)) {
+                List<String> keyValues = values.get(count.getKey());
+                if (keyValues == null) {
+                    keyValues = new ArrayList<>();
+                    values.put(count.getKey(), keyValues);
+                }
+                keyValues.add(count.getValue());
+            }
+            for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+                entry.setValue(Collections.unmodifiableList(entry.getValue()));
+            }
+            // A change made during the read may have removed the entry already: the values read are returned
+            // but not kept. Checking after the put covers a change made between the check and the put.
+            valuesByType.put(poiTypeId, values);
+            if (generation.get() != readGeneration) {
+                valuesByType.remove(poiTypeId, values);
+            }
+        }
+        return values;
+    }
+
+    private static void addDelta(Map<TagValueCount, Integer> deltas, TagValueCount count, int delta) {
+        Integer current = deltas.get(count);
+        deltas.put(count, current != null ? current + delta : delta);
+    }
+}
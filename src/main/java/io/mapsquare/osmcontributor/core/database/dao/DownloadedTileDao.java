@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core.database.dao;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.RuntimeExceptionDao;
+
+import org.joda.time.DateTime;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.inject.Inject;
+
+import io.mapsquare.osmcontributor.core.database.DatabaseHelper;
+import io.mapsquare.osmcontributor.core.model.DownloadedTile;
+
+/**
+ * Dao for {@link io.mapsquare.osmcontributor.core.model.DownloadedTile} objects.
+ */
+public class DownloadedTileDao extends RuntimeExceptionDao<DownloadedTile, Long> {
+
+    @Inject
+    public DownloadedTileDao(Dao<DownloadedTile, Long> dao) {
+        super(dao);
+    }
+
+    /**
+     * Query for the downloaded tiles of a zoom level in a range of tile coordinates.
+     *
+     * @param zoom The zoom level of the tiles.
+     * @param minX The minimum x coordinate, inclusive.
+     * @param maxX The maximum x coordinate, inclusive.
+     * @param minY The minimum y coordinate, inclusive.
+     * @param maxY The maximum y coordinate, inclusive.
+     * @return The downloaded tiles in the range.
+     */
+    public List<DownloadedTile> queryForRange(final int zoom, final int minX, final int maxX, final int minY, final int maxY) {
+        return DatabaseHelper.wrapException(new Callable<List<DownloadedTile>>() {
+            @Override
+            public List<DownloadedTile> call() throws Exception {
+                return queryBuilder()
+                        .where().eq(DownloadedTile.ZOOM, zoom)
+                        .and().between(DownloadedTile.X, minX, maxX)
+                        .and().between(DownloadedTile.Y, minY, maxY)
+                        .query();
+            }
+        });
+    }
+
+    /**
+     * Record the download of a tile, replacing the previous download of the same tile.
+     *
+     * @param zoom         The zoom level of the tile.
+     * @param x            The x coordinate of the tile.
+     * @param y            The y coordinate of the tile.
+     * @param signature    The signature of the PoiTypes requested during the download.
+     * @param lastDownload The date of the download.
+     */
+    public void saveDownload(final int zoom, final int x, final int y, final int signature, final DateTime lastDownload) {
+        DatabaseHelper.wrapException(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                DownloadedTile tile = queryBuilder()
+                        .where().eq(DownloadedTile.ZOOM, zoom)
+                        .and().eq(DownloadedTile.X, x)
+                        .and().eq(DownloadedTile.Y, y)
+                        .queryForFirst();
+                if (tile == null) {
+                    tile = new DownloadedTile();
+                    tile.setZoom(zoom);
+                    tile.setX(x);
+                    tile.setY(y);
+                }
+                tile.setSignature(signature);
+                tile.setLastDownload(lastDownload);
+                createOrUpdate(tile);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Delete all the downloaded tiles in the database.
+     */
+    public void deleteAll() {
+        DatabaseHelper.wrapException(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                deleteBuilder().delete();
+                return null;
+            }
+        });
+    }
+}
@@ -20,7 +20,6 @@ package io.mapsquare.osmcontributor.core.database.dao;
 
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.RuntimeExceptionDao;
-import com.j256.ormlite.stmt.SelectArg;
 
 import java.util.Collection;
 import java.util.List;
@@ -29,6 +28,7 @@ import java.util.concurrent.Callable;
 import javax.inject.Inject;
 
 import io.mapsquare.osmcontributor.core.database.DatabaseHelper;
+import io.mapsquare.osmcontributor.core.database.SpatialGrid;
 import io.mapsquare.osmcontributor.core.model.Note;
 import io.mapsquare.osmcontributor.utils.Box;
 
@@ -52,11 +52,7 @@ public class NoteDao extends RuntimeExceptionDao<Note, Long> {
         return DatabaseHelper.wrapException(new Callable<List<Note>>() {
             @Override
             public List<Note> call() throws Exception {
-                return queryBuilder()
-                        .where().gt(Note.LATITUDE, new SelectArg(box.getSouth()))
-                        .and().lt(Note.LATITUDE, new SelectArg(box.getNorth()))
-                        .and().gt(Note.LONGITUDE, new SelectArg(box.getWest()))
-                        .and().lt(Note.LONGITUDE, new SelectArg(box.getEast()))
+                return SpatialGrid.inBox(queryBuilder().where(), Note.CELL, Note.LATITUDE, Note.LONGITUDE, box)
                         .query();
             }
         });
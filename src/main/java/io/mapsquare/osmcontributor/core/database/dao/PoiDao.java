@@ -21,11 +21,11 @@ package io.mapsquare.osmcontributor.core.database.dao;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.RawRowMapper;
 import com.j256.ormlite.dao.RuntimeExceptionDao;
-import com.j256.ormlite.stmt.SelectArg;
 
 import org.joda.time.DateTime;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -33,8 +33,10 @@ import java.util.concurrent.Callable;
 import javax.inject.Inject;
 
 import io.mapsquare.osmcontributor.core.database.DatabaseHelper;
+import io.mapsquare.osmcontributor.core.database.SpatialGrid;
 import io.mapsquare.osmcontributor.core.model.Poi;
 import io.mapsquare.osmcontributor.utils.Box;
+import io.mapsquare.osmcontributor.utils.CollectionUtils;
 
 /**
  * Dao for {@link io.mapsquare.osmcontributor.core.model.Poi} objects.
@@ -59,17 +61,38 @@ public class PoiDao extends RuntimeExceptionDao<Poi, Long> {
         return DatabaseHelper.wrapException(new Callable<List<Poi>>() {
             @Override
             public List<Poi> call() throws Exception {
-                return queryBuilder()
-                        .where().gt(Poi.LATITUDE, new SelectArg(box.getSouth()))
-                        .and().lt(Poi.LATITUDE, new SelectArg(box.getNorth()))
-                        .and().gt(Poi.LONGITUDE, new SelectArg(box.getWest()))
-                        .and().lt(Poi.LONGITUDE, new SelectArg(box.getEast()))
+                return SpatialGrid.inBox(queryBuilder().where(), Poi.CELL, Poi.LATITUDE, Poi.LONGITUDE, box)
                         .and().eq(Poi.OLD, false)
                         .query();
             }
         });
     }
 
+    /**
+     * Query for the id and backend id of the nodes of an available type contained in the box which were downloaded
+     * and not modified locally since the given date, the other fields of the returned POIs are not loaded.
+     *
+     * @param box          Bounds of the search in latitude and longitude coordinates.
+     * @param snapshotDate The nodes updated after this date are excluded.
+     * @return The List of POIs with only their id and backend id.
+     */
+    public List<Poi> queryForUnmodifiedNodesInRect(final Box box, final DateTime snapshotDate) {
+        return DatabaseHelper.wrapException(new Callable<List<Poi>>() {
+            @Override
+            public List<Poi> call() throws Exception {
+                return SpatialGrid.inBox(queryBuilder().selectColumns(Poi.ID, Poi.BACKEND_ID).where(), Poi.CELL, Poi.LATITUDE, Poi.LONGITUDE, box)
+                        .and().isNotNull(Poi.BACKEND_ID)
+                        .and().isNotNull(Poi.POI_TYPE_ID)
+                        .and().eq(Poi.WAY, false)
+                        .and().eq(Poi.UPDATED, false)
+                        .and().eq(Poi.TO_DELETE, false)
+                        .and().eq(Poi.OLD, false)
+                        .and().le(Poi.UPDATE_DATE, snapshotDate)
+                        .query();
+            }
+        });
+    }
+
     /**
      * Query for all the new POIs, meaning all the POIs without a backend id.
      *
@@ -213,6 +236,32 @@ public class PoiDao extends RuntimeExceptionDao<Poi, Long> {
         });
     }
 
+    /**
+     * Query for the id and version of the POIs with the given backend ids, the other fields of the returned POIs are not loaded.
+     * <br/>
+     * The old copies of modified POIs are ignored. The backend ids are queried by batches of
+     * {@link DatabaseHelper#MAX_IN_CLAUSE_VALUES}.
+     *
+     * @param backendIds The backend ids.
+     * @return The List of POIs with only their id, backend id and version.
+     */
+    public List<Poi> queryVersionsForBackendIds(final Collection<String> backendIds) {
+        return DatabaseHelper.wrapException(new Callable<List<Poi>>() {
+            @Override
+            public List<Poi> call() throws Exception {
+                List<Poi> result = new ArrayList<>(backendIds.size());
+                for (List<String> batch : CollectionUtils.partition(backendIds, DatabaseHelper.MAX_IN_CLAUSE_VALUES)) {
+                    result.addAll(queryBuilder()
+                            .selectColumns(Poi.ID, Poi.BACKEND_ID, Poi.VERSION)
+                            .where().in(Poi.BACKEND_ID, batch)
+                            .and().eq(Poi.OLD, false)
+                            .query());
+                }
+                return result;
+            }
+        });
+    }
+
     /**
      * Query for POIs by their Ids.
      *
@@ -25,15 +25,18 @@ import com.j256.ormlite.stmt.DeleteBuilder;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
 
 import javax.inject.Inject;
 
 import io.mapsquare.osmcontributor.core.database.DatabaseHelper;
-import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.database.SpatialGrid;
 import io.mapsquare.osmcontributor.core.model.PoiNodeRef;
 import io.mapsquare.osmcontributor.core.model.PoiTag;
+import io.mapsquare.osmcontributor.utils.Box;
+import io.mapsquare.osmcontributor.utils.CollectionUtils;
 
 /**
  * Dao for {@link io.mapsquare.osmcontributor.core.model.PoiNodeRef} objects.
@@ -141,11 +144,8 @@ public class PoiNodeRefDao extends RuntimeExceptionDao<PoiNodeRef, Long> {
         return DatabaseHelper.wrapException(new Callable<List<PoiNodeRef>>() {
             @Override
             public List<PoiNodeRef> call() throws Exception {
-                return queryBuilder()
-                        .where().gt(Poi.LATITUDE, lat - 0.00002)
-                        .and().lt(Poi.LATITUDE, lat + 0.00002)
-                        .and().gt(Poi.LONGITUDE, lng - 0.00002)
-                        .and().lt(Poi.LONGITUDE, lng + 0.00002)
+                Box box = new Box(lat + 0.00002, lng + 0.00002, lat - 0.00002, lng - 0.00002);
+                return SpatialGrid.inBox(queryBuilder().where(), PoiNodeRef.CELL, PoiNodeRef.LATITUDE, PoiNodeRef.LONGITUDE, box)
                         .query();
             }
         });
@@ -153,17 +153,23 @@ public class PoiNodeRefDao extends RuntimeExceptionDao<PoiNodeRef, Long> {
 
     /**
      * Delete all POI node refs with the given POI ids.
+     * <br/>
+     * The ids are deleted by batches of {@link DatabaseHelper#MAX_IN_CLAUSE_VALUES}.
      *
-     * @param poiIds A list of POI ids
+     * @param poiIds A collection of POI ids
      * @return The number of POI node refs deleted
      */
-    public Integer deleteByPoiIds(final List<Long> poiIds) {
+    public Integer deleteByPoiIds(final Collection<Long> poiIds) {
         return DatabaseHelper.wrapException(new Callable<Integer>() {
             @Override
             public Integer call() throws Exception {
-                DeleteBuilder<PoiNodeRef, Long> builder = deleteBuilder();
-                builder.where().in(PoiNodeRef.POI_ID, poiIds);
-                return builder.delete();
+                int deleted = 0;
+                for (List<Long> batch : CollectionUtils.partition(poiIds, DatabaseHelper.MAX_IN_CLAUSE_VALUES)) {
+                    DeleteBuilder<PoiNodeRef, Long> builder = deleteBuilder();
+                    builder.where().in(PoiNodeRef.POI_ID, batch);
+                    deleted += builder.delete();
+                }
+                return deleted;
             }
         });
     }
@@ -19,13 +19,9 @@
 package io.mapsquare.osmcontributor.core.database.dao;
 
 import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.dao.RawRowMapper;
 import com.j256.ormlite.dao.RuntimeExceptionDao;
 import com.j256.ormlite.stmt.DeleteBuilder;
-import com.j256.ormlite.stmt.QueryBuilder;
-import com.j256.ormlite.stmt.SelectArg;
 
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -34,48 +30,17 @@ import java.util.concurrent.Callable;
 import javax.inject.Inject;
 
 import io.mapsquare.osmcontributor.core.database.DatabaseHelper;
-import io.mapsquare.osmcontributor.core.model.Poi;
 import io.mapsquare.osmcontributor.core.model.PoiTag;
+import io.mapsquare.osmcontributor.utils.CollectionUtils;
 
 /**
  * Dao for {@link io.mapsquare.osmcontributor.core.model.PoiTag} objects.
  */
 public class PoiTagDao extends RuntimeExceptionDao<PoiTag, Long> {
 
-    private final PoiDao poiTypeDao;
-
     @Inject
-    public PoiTagDao(Dao<PoiTag, Long> dao, PoiDao poiDao) {
+    public PoiTagDao(Dao<PoiTag, Long> dao) {
         super(dao);
-        this.poiTypeDao = poiDao;
-    }
-
-    /**
-     * Query for all the existing values of a given PoiTag.
-     *
-     * @param key The key of the PoiTag.
-     * @return The list of values.
-     */
-    public List<String> existingValuesForTag(final String key, final Long poiTypeId) {
-        return DatabaseHelper.wrapException(new Callable<List<String>>() {
-            @Override
-            public List<String> call() throws Exception {
-                QueryBuilder<Poi, Long> checkPoiTypeQueryBuilder = poiTypeDao.queryBuilder();
-                checkPoiTypeQueryBuilder.where().eq(Poi.POI_TYPE_ID, poiTypeId);
-                String statement = queryBuilder()
-                        .selectColumns(PoiTag.VALUE).distinct()
-                        .orderBy(PoiTag.VALUE, true)
-                        .join(checkPoiTypeQueryBuilder)
-                        .where().eq(PoiTag.KEY, new SelectArg())
-                        .prepare().getStatement();
-                return queryRaw(statement, new RawRowMapper<String>() {
-                    @Override
-                    public String mapRow(String[] columnNames, String[] resultColumns) throws SQLException {
-                        return resultColumns[0];
-                    }
-                }, key).getResults();
-            }
-        });
     }
 
     /**
@@ -93,6 +58,8 @@ public class PoiTagDao extends RuntimeExceptionDao<PoiTag, Long> {
 
     /**
      * Delete all POI tags with the given POI ids.
+     * <br/>
+     * The ids are deleted by batches of {@link DatabaseHelper#MAX_IN_CLAUSE_VALUES}.
      *
      * @param poiIds The ids of the POIs.
      * @return The number of Poi tags deleted.
@@ -101,9 +68,13 @@ public class PoiTagDao extends RuntimeExceptionDao<PoiTag, Long> {
         return DatabaseHelper.wrapException(new Callable<Integer>() {
             @Override
             public Integer call() throws Exception {
-                DeleteBuilder<PoiTag, Long> builder = deleteBuilder();
-                builder.where().in(PoiTag.POI_ID, poiIds);
-                return builder.delete();
+                int deleted = 0;
+                for (List<Long> batch : CollectionUtils.partition(poiIds, DatabaseHelper.MAX_IN_CLAUSE_VALUES)) {
+                    DeleteBuilder<PoiTag, Long> builder = deleteBuilder();
+                    builder.where().in(PoiTag.POI_ID, batch);
+                    deleted += builder.delete();
+                }
+                return deleted;
             }
         });
     }
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core.database.dao;
+
+import android.text.TextUtils;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.RawRowMapper;
+import com.j256.ormlite.dao.RuntimeExceptionDao;
+import com.j256.ormlite.stmt.DeleteBuilder;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.inject.Inject;
+
+import io.mapsquare.osmcontributor.core.database.DatabaseHelper;
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.PoiTag;
+import io.mapsquare.osmcontributor.core.model.TagValueCount;
+import io.mapsquare.osmcontributor.utils.CollectionUtils;
+
+/**
+ * Dao for {@link io.mapsquare.osmcontributor.core.model.TagValueCount} objects.
+ */
+public class TagValueCountDao extends RuntimeExceptionDao<TagValueCount, Long> {
+
+    private static final String COUNT_BY_POI_IDS = "SELECT P." + Poi.POI_TYPE_ID + ", T." + PoiTag.KEY + ", T." + PoiTag.VALUE + ", COUNT(*)"
+            + " FROM " + PoiTag.TABLE_NAME + " T JOIN " + Poi.TABLE_NAME + " P ON P." + Poi.ID + " = T." + PoiTag.POI_ID
+            + " WHERE P." + Poi.OLD + " = 0 AND P." + Poi.POI_TYPE_ID + " IS NOT NULL AND T." + PoiTag.VALUE + " IS NOT NULL"
+            + " AND T." + PoiTag.POI_ID + " IN (%s)"
+            + " GROUP BY P." + Poi.POI_TYPE_ID + ", T." + PoiTag.KEY + ", T." + PoiTag.VALUE;
+
+    private static final String ADD_USE_COUNT = "UPDATE " + TagValueCount.TABLE_NAME + " SET " + TagValueCount.USE_COUNT + " = "
+            + TagValueCount.USE_COUNT + " + ? WHERE " + TagValueCount.POI_TYPE_ID + " = ? AND " + TagValueCount.KEY + " = ? AND "
+            + TagValueCount.VALUE + " = ?";
+
+    private static final RawRowMapper<TagValueCount> COUNT_MAPPER = new RawRowMapper<TagValueCount>() {
+        @Override
+        public TagValueCount mapRow(String[] columnNames, String[] resultColumns) throws SQLException {
+            return new TagValueCount(Long.valueOf(resultColumns[0]), resultColumns[1], resultColumns[2], Integer.valueOf(resultColumns[3]));
+        }
+    };
+
+    @Inject
+    public TagValueCountDao(Dao<TagValueCount, Long> dao) {
+        super(dao);
+    }
+
+    /**
+     * Count the tag values of the given POIs, from their tags currently in the database.
+     * <br/>
+     * The ids are read by batches of {@link DatabaseHelper#MAX_IN_CLAUSE_VALUES}.
+     *
+     * @param poiIds The ids of the POIs.
+     * @return The counts, a value may appear once per batch.
+     */
+    public List<TagValueCount> countByPoiIds(final Collection<Long> poiIds) {
+        return DatabaseHelper.wrapException(new Callable<List<TagValueCount>>() {
+            @Override
+            public List<TagValueCount> call() throws Exception {
+                List<TagValueCount> counts = new ArrayList<>();
+                for (List<Long> batch : CollectionUtils.partition(poiIds, DatabaseHelper.MAX_IN_CLAUSE_VALUES)) {
+                    counts.addAll(queryRaw(String.format(COUNT_BY_POI_IDS, TextUtils.join(",", batch)), COUNT_MAPPER).getResults());
+                }
+                return counts;
+            }
+        });
+    }
+
+    /**
+     * Add the given numbers of uses to the counts, creating the missing ones and deleting the ones which drop to zero.
+     *
+     * @param deltas The numbers of uses to add, negative to remove uses.
+     */
+    public void addUseCounts(final Map<TagValueCount, Integer> deltas) {
+        DatabaseHelper.wrapException(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                boolean removed = false;
+                for (Map.Entry<TagValueCount, Integer> entry : deltas.entrySet()) {
+                    int delta = entry.getValue();
+                    if (delta == 0) {
+                        continue;
+                    }
+                    TagValueCount count = entry.getKey();
+                    int updated = updateRaw(ADD_USE_COUNT, String.valueOf(delta), String.valueOf(count.getPoiTypeId()), count.getKey(), count.getValue());
+                    if (updated == 0 && delta > 0) {
+                        create(new TagValueCount(count.getPoiTypeId(), count.getKey(), count.getValue(), delta));
+                    }
+                    removed |= delta < 0;
+                }
+
+                if (removed) {
+                    DeleteBuilder<TagValueCount, Long> builder = deleteBuilder();
+                    builder.where().le(TagValueCount.USE_COUNT, 0);
+                    builder.delete();
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Query for the counts of all the tag values of a PoiType, the most used values first.
+     *
+     * @param poiTypeId The id of the PoiType.
+     * @return The counts ordered by key then by decreasing number of uses.
+     */
+    public List<TagValueCount> queryForPoiTypeId(final Long poiTypeId) {
+        return DatabaseHelper.wrapException(new Callable<List<TagValueCount>>() {
+            @Override
+            public List<TagValueCount> call() throws Exception {
+                return queryBuilder()
+                        .orderBy(TagValueCount.KEY, true)
+                        .orderBy(TagValueCount.USE_COUNT, false)
+                        .orderBy(TagValueCount.VALUE, true)
+                        .where().eq(TagValueCount.POI_TYPE_ID, poiTypeId)
+                        .query();
+            }
+        });
+    }
+
+    /**
+     * Delete the counts of a PoiType.
+     *
+     * @param poiTypeId The id of the PoiType.
+     * @return The number of deleted counts.
+     */
+    public Integer deleteByPoiTypeId(final Long poiTypeId) {
+        return DatabaseHelper.wrapException(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                DeleteBuilder<TagValueCount, Long> builder = deleteBuilder();
+                builder.where().eq(TagValueCount.POI_TYPE_ID, poiTypeId);
+                return builder.delete();
+            }
+        });
+    }
+
+    /**
+     * Delete all the counts in the database.
+     */
+    public void deleteAll() {
+        DatabaseHelper.wrapException(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                deleteBuilder().delete();
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core.database.dao;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.RuntimeExceptionDao;
+import com.j256.ormlite.stmt.DeleteBuilder;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.inject.Inject;
+
+import io.mapsquare.osmcontributor.core.database.DatabaseHelper;
+import io.mapsquare.osmcontributor.core.model.UploadItem;
+
+/**
+ * Dao for {@link io.mapsquare.osmcontributor.core.model.UploadItem} objects.
+ */
+public class UploadItemDao extends RuntimeExceptionDao<UploadItem, Long> {
+
+    @Inject
+    public UploadItemDao(Dao<UploadItem, Long> dao) {
+        super(dao);
+    }
+
+    /**
+     * Query for the item of a POI.
+     *
+     * @param poiId The local id of the POI.
+     * @return The item or null if the POI isn't in the outbox.
+     */
+    public UploadItem queryForPoiId(final Long poiId) {
+        return DatabaseHelper.wrapException(new Callable<UploadItem>() {
+            @Override
+            public UploadItem call() throws Exception {
+                return queryBuilder()
+                        .where().eq(UploadItem.POI_ID, poiId)
+                        .queryForFirst();
+            }
+        });
+    }
+
+    /**
+     * Query for the items not acknowledged by the backend yet, in the order they were added.
+     *
+     * @return The pending and in flight items.
+     */
+    public List<UploadItem> queryForUnacknowledged() {
+        return DatabaseHelper.wrapException(new Callable<List<UploadItem>>() {
+            @Override
+            public List<UploadItem> call() throws Exception {
+                return queryBuilder()
+                        .orderBy(UploadItem.ID, true)
+                        .where().ne(UploadItem.STATE, UploadItem.State.ACKED)
+                        .query();
+            }
+        });
+    }
+
+    /**
+     * Query for the item sent most recently, whose changeSet is the last one used.
+     *
+     * @return The item or null if no item was sent.
+     */
+    public UploadItem queryForLastSent() {
+        return DatabaseHelper.wrapException(new Callable<UploadItem>() {
+            @Override
+            public UploadItem call() throws Exception {
+                return queryBuilder()
+                        .orderBy(UploadItem.LAST_SENT, false)
+                        .where().isNotNull(UploadItem.LAST_SENT)
+                        .queryForFirst();
+            }
+        });
+    }
+
+    /**
+     * Delete the items acknowledged by the backend.
+     *
+     * @return The number of deleted items.
+     */
+    public Integer deleteAcknowledged() {
+        return DatabaseHelper.wrapException(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                DeleteBuilder<UploadItem, Long> builder = deleteBuilder();
+                builder.where().eq(UploadItem.STATE, UploadItem.State.ACKED);
+                return builder.delete();
+            }
+        });
+    }
+
+    /**
+     * Delete all the items of the outbox.
+     */
+    public void deleteAll() {
+        DatabaseHelper.wrapException(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                deleteBuilder().delete();
+                return null;
+            }
+        });
+    }
+}
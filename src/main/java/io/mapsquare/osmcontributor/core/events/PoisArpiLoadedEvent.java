@@ -18,18 +18,16 @@
  */
 package io.mapsquare.osmcontributor.core.events;
 
-import java.util.List;
-
-import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.database.PoiSnapshot;
 
 public class PoisArpiLoadedEvent {
-    private final List<Poi> pois;
+    private final PoiSnapshot pois;
 
-    public PoisArpiLoadedEvent(List<Poi> pois) {
+    public PoisArpiLoadedEvent(PoiSnapshot pois) {
         this.pois = pois;
     }
 
-    public List<Poi> getPois() {
+    public PoiSnapshot getPois() {
         return pois;
     }
 }
@@ -19,22 +19,20 @@
 package io.mapsquare.osmcontributor.core.events;
 
 
-import java.util.List;
-
-import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.database.PoiSnapshot;
 import io.mapsquare.osmcontributor.utils.Box;
 
 public class PoisLoadedEvent {
 
     private final Box box;
-    private final List<Poi> pois;
+    private final PoiSnapshot pois;
 
-    public PoisLoadedEvent(Box box, List<Poi> pois) {
+    public PoisLoadedEvent(Box box, PoiSnapshot pois) {
         this.pois = pois;
         this.box = box;
     }
 
-    public List<Poi> getPois() {
+    public PoiSnapshot getPois() {
         return pois;
     }
 
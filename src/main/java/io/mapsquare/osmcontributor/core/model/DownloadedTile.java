@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core.model;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+import org.joda.time.DateTime;
+
+/**
+ * Tile of the map whose POIs were downloaded from the backend.
+ */
+@DatabaseTable(tableName = DownloadedTile.TABLE_NAME)
+public class DownloadedTile {
+    public static final String TABLE_NAME = "DOWNLOADED_TILE";
+
+    public static final String ID = "ID";
+    public static final String ZOOM = "ZOOM";
+    public static final String X = "X";
+    public static final String Y = "Y";
+    public static final String SIGNATURE = "SIGNATURE";
+    public static final String LAST_DOWNLOAD = "LAST_DOWNLOAD";
+
+    @DatabaseField(columnName = ID, generatedId = true, canBeNull = false)
+    private Long id;
+
+    @DatabaseField(columnName = ZOOM, canBeNull = false, uniqueCombo = true)
+    private Integer zoom;
+
+    @DatabaseField(columnName = X, canBeNull = false, uniqueCombo = true)
+    private Integer x;
+
+    @DatabaseField(columnName = Y, canBeNull = false, uniqueCombo = true)
+    private Integer y;
+
+    /**
+     * Signature of the PoiTypes requested during the download.
+     */
+    @DatabaseField(columnName = SIGNATURE, canBeNull = false)
+    private Integer signature;
+
+    @DatabaseField(columnName = LAST_DOWNLOAD, canBeNull = false)
+    private DateTime lastDownload;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Integer getZoom() {
+        return zoom;
+    }
+
+    public void setZoom(Integer zoom) {
+        this.zoom = zoom;
+    }
+
+    public Integer getX() {
+        return x;
+    }
+
+    public void setX(Integer x) {
+        this.x = x;
+    }
+
+    public Integer getY() {
+        return y;
+    }
+
+    public void setY(Integer y) {
+        this.y = y;
+    }
+
+    public Integer getSignature() {
+        return signature;
+    }
+
+    public void setSignature(Integer signature) {
+        this.signature = signature;
+    }
+
+    public DateTime getLastDownload() {
+        return lastDownload;
+    }
+
+    public void setLastDownload(DateTime lastDownload) {
+        this.lastDownload = lastDownload;
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadedTile{" +
+                "id=" + id +
+                ", zoom=" + zoom +
+                ", x=" + x +
+                ", y=" + y +
+                ", signature=" + signature +
+                ", lastDownload=" + lastDownload +
+                '}';
+    }
+}
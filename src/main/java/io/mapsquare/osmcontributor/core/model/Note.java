@@ -28,6 +28,8 @@ import org.joda.time.DateTime;
 import java.util.ArrayList;
 import java.util.Collection;
 
+import io.mapsquare.osmcontributor.core.database.SpatialGrid;
+
 @DatabaseTable(tableName = Note.TABLE_NAME)
 public class Note {
     public static final String TABLE_NAME = "NOTE";
@@ -35,6 +37,7 @@ public class Note {
     public static final String ID = "ID";
     public static final String LONGITUDE = "LONGITUDE";
     public static final String LATITUDE = "LATITUDE";
+    public static final String CELL = "CELL";
     public static final String STATUS = "STATUS";
     public static final String TEXT = "TEXT";
     public static final String BACKEND_ID = "BACKEND_ID";
@@ -86,6 +89,12 @@ public class Note {
     @DatabaseField(columnName = LATITUDE, canBeNull = false)
     private Double latitude;
 
+    /**
+     * Key of the cell of the {@link SpatialGrid} containing the coordinates, kept up to date by the setters.
+     */
+    @DatabaseField(columnName = CELL, index = true)
+    private Long cell;
+
     @DatabaseField(columnName = TEXT)
     private String text;
 
@@ -123,6 +132,7 @@ public class Note {
 
     public void setLongitude(Double longitude) {
         this.longitude = longitude;
+        this.cell = SpatialGrid.cellOf(latitude, longitude);
     }
 
     public Double getLatitude() {
@@ -131,6 +141,7 @@ public class Note {
 
     public void setLatitude(Double latitude) {
         this.latitude = latitude;
+        this.cell = SpatialGrid.cellOf(latitude, longitude);
     }
 
     public String getText() {
@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import io.mapsquare.osmcontributor.core.database.SpatialGrid;
 import timber.log.Timber;
 
 @DatabaseTable(tableName = Poi.TABLE_NAME)
@@ -42,6 +43,7 @@ public class Poi implements Cloneable {
     public static final String ID = "ID";
     public static final String LONGITUDE = "LONGITUDE";
     public static final String LATITUDE = "LATITUDE";
+    public static final String CELL = "CELL";
     public static final String NAME = "NAME";
     public static final String BACKEND_ID = "BACKEND_ID";
     public static final String VERSION = "VERSION";
@@ -85,6 +87,12 @@ public class Poi implements Cloneable {
     @DatabaseField(columnName = LATITUDE, canBeNull = false)
     private Double latitude;
 
+    /**
+     * Key of the cell of the {@link SpatialGrid} containing the coordinates, kept up to date by the setters.
+     */
+    @DatabaseField(columnName = CELL, index = true)
+    private Long cell;
+
     @DatabaseField(columnName = NAME)
     private String name;
 
@@ -146,6 +154,7 @@ public class Poi implements Cloneable {
 
     public void setLongitude(Double longitude) {
         this.longitude = longitude;
+        this.cell = SpatialGrid.cellOf(latitude, longitude);
     }
 
     public Double getLatitude() {
@@ -154,6 +163,7 @@ public class Poi implements Cloneable {
 
     public void setLatitude(Double latitude) {
         this.latitude = latitude;
+        this.cell = SpatialGrid.cellOf(latitude, longitude);
     }
 
     public String getName() {
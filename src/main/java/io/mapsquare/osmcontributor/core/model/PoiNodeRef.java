@@ -22,6 +22,7 @@ package io.mapsquare.osmcontributor.core.model;
 import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.table.DatabaseTable;
 
+import io.mapsquare.osmcontributor.core.database.SpatialGrid;
 import timber.log.Timber;
 
 @DatabaseTable(tableName = PoiNodeRef.TABLE_NAME)
@@ -33,6 +34,7 @@ public class PoiNodeRef implements Cloneable {
     public static final String POI_ID = "POI_ID";
     public static final String LONGITUDE = "LONGITUDE";
     public static final String LATITUDE = "LATITUDE";
+    public static final String CELL = "CELL";
     public static final String UPDATED = "UPDATED";
     public static final String OLD = "OLD";
     public static final String OLD_POI_ID = "OLD_POI_ID";
@@ -46,6 +48,12 @@ public class PoiNodeRef implements Cloneable {
     @DatabaseField(columnName = LATITUDE, canBeNull = false)
     private Double latitude;
 
+    /**
+     * Key of the cell of the {@link SpatialGrid} containing the coordinates, kept up to date by the setters.
+     */
+    @DatabaseField(columnName = CELL, index = true)
+    private Long cell;
+
     @DatabaseField(columnName = NODE_BACKEND_ID, canBeNull = false)
     private String nodeBackendId;
 
@@ -110,6 +118,7 @@ public class PoiNodeRef implements Cloneable {
 
     public void setLongitude(Double longitude) {
         this.longitude = longitude;
+        this.cell = SpatialGrid.cellOf(latitude, longitude);
     }
 
     public Double getLatitude() {
@@ -126,6 +135,7 @@ public class PoiNodeRef implements Cloneable {
 
     public void setLatitude(Double latitude) {
         this.latitude = latitude;
+        this.cell = SpatialGrid.cellOf(latitude, longitude);
     }
 
     public Boolean getOld() {
@@ -39,7 +39,7 @@ public class PoiTag {
     @DatabaseField(columnName = VALUE)
     private String value;
 
-    @DatabaseField(foreign = true, columnName = POI_ID, canBeNull = false)
+    @DatabaseField(foreign = true, columnName = POI_ID, canBeNull = false, index = true)
     private Poi poi;
 
     public Long getId() {
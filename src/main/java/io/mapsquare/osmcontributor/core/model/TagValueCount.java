@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core.model;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+/**
+ * Number of POIs of a PoiType having a value for a tag, used to suggest the most common values first.
+ * <br/>
+ * The old copies of the modified POIs are not counted. Two counts are equal when they are about the same value.
+ */
+@DatabaseTable(tableName = TagValueCount.TABLE_NAME)
+public class TagValueCount {
+    public static final String TABLE_NAME = "TAG_VALUE_COUNT";
+
+    public static final String ID = "ID";
+    public static final String POI_TYPE_ID = "POI_TYPE_ID";
+    public static final String KEY = "KEY";
+    public static final String VALUE = "VALUE";
+    public static final String USE_COUNT = "USE_COUNT";
+
+    @DatabaseField(columnName = ID, generatedId = true, canBeNull = false)
+    private Long id;
+
+    @DatabaseField(columnName = POI_TYPE_ID, canBeNull = false, uniqueCombo = true)
+    private Long poiTypeId;
+
+    @DatabaseField(columnName = KEY, canBeNull = false, uniqueCombo = true)
+    private String key;
+
+    @DatabaseField(columnName = VALUE, canBeNull = false, uniqueCombo = true)
+    private String value;
+
+    @DatabaseField(columnName = USE_COUNT, canBeNull = false)
+    private Integer useCount;
+
+    public TagValueCount() {
+    }
+
+    public TagValueCount(Long poiTypeId, String key, String value, Integer useCount) {
+        this.poiTypeId = poiTypeId;
+        this.key = key;
+        this.value = value;
+        this.useCount = useCount;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getPoiTypeId() {
+        return poiTypeId;
+    }
+
+    public void setPoiTypeId(Long poiTypeId) {
+        this.poiTypeId = poiTypeId;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    public Integer getUseCount() {
+        return useCount;
+    }
+
+    public void setUseCount(Integer useCount) {
+        this.useCount = useCount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        TagValueCount that = (TagValueCount) o;
+
+        return poiTypeId.equals(that.poiTypeId) && key.equals(that.key) && value.equals(that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = poiTypeId.hashCode();
+        result = 31 * result + key.hashCode();
+        result = 31 * result + value.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "TagValueCount{" +
+                "poiTypeId=" + poiTypeId +
+                ", key='" + key + '\'' +
+                ", value='" + value + '\'' +
+                ", useCount=" + useCount +
+                '}';
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core.model;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+import org.joda.time.DateTime;
+
+/**
+ * Change of a POI waiting in the upload outbox, persisted so that an interrupted upload resumes where it stopped.
+ */
+@DatabaseTable(tableName = UploadItem.TABLE_NAME)
+public class UploadItem {
+    public static final String TABLE_NAME = "UPLOAD_ITEM";
+
+    public static final String ID = "ID";
+    public static final String POI_ID = "POI_ID";
+    public static final String OPERATION = "OPERATION";
+    public static final String STATE = "STATE";
+    public static final String CHANGESET_ID = "CHANGESET_ID";
+    public static final String LAST_SENT = "LAST_SENT";
+
+    /**
+     * Change to send to the backend.
+     */
+    public enum Operation {
+        ADD, UPDATE, DELETE
+    }
+
+    /**
+     * Progress of the upload of the change.
+     */
+    public enum State {
+        /**
+         * Not sent yet.
+         */
+        PENDING,
+        /**
+         * Sent without answer from the backend yet. If the upload was interrupted, the backend may have applied it.
+         */
+        IN_FLIGHT,
+        /**
+         * Applied by the backend and saved in the database, never sent again.
+         */
+        ACKED
+    }
+
+    @DatabaseField(columnName = ID, generatedId = true, canBeNull = false)
+    private Long id;
+
+    /**
+     * Local id of the changed POI.
+     */
+    @DatabaseField(columnName = POI_ID, canBeNull = false, unique = true)
+    private Long poiId;
+
+    @DatabaseField(columnName = OPERATION, canBeNull = false)
+    private Operation operation;
+
+    @DatabaseField(columnName = STATE, canBeNull = false)
+    private State state;
+
+    /**
+     * Id of the changeSet in which the change was sent.
+     */
+    @DatabaseField(columnName = CHANGESET_ID)
+    private String changeSetId;
+
+    /**
+     * Date of the last time the change was sent.
+     */
+    @DatabaseField(columnName = LAST_SENT)
+    private DateTime lastSent;
+
+    public UploadItem() {
+    }
+
+    public UploadItem(Long poiId, Operation operation) {
+        this.poiId = poiId;
+        this.operation = operation;
+        this.state = State.PENDING;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getPoiId() {
+        return poiId;
+    }
+
+    public void setPoiId(Long poiId) {
+        this.poiId = poiId;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public void setOperation(Operation operation) {
+        this.operation = operation;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public String getChangeSetId() {
+        return changeSetId;
+    }
+
+    public void setChangeSetId(String changeSetId) {
+        this.changeSetId = changeSetId;
+    }
+
+    public DateTime getLastSent() {
+        return lastSent;
+    }
+
+    public void setLastSent(DateTime lastSent) {
+        this.lastSent = lastSent;
+    }
+
+    @Override
+    public String toString() {
+        return "UploadItem{" +
+                "id=" + id +
+                ", poiId=" + poiId +
+                ", operation=" + operation +
+                ", state=" + state +
+                ", changeSetId='" + changeSetId + '\'' +
+                ", lastSent=" + lastSent +
+                '}';
+    }
+}
@@ -30,28 +30,28 @@ import android.widget.Filter;
 import android.widget.Filterable;
 import android.widget.TextView;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 import butterknife.ButterKnife;
 import butterknife.BindView;
 import io.mapsquare.osmcontributor.R;
+import io.mapsquare.osmcontributor.utils.Function;
+import io.mapsquare.osmcontributor.utils.SearchIndex;
 
 public class SearchableAdapter extends BaseAdapter implements Filterable {
 
     private List<String> originalValues = null;
     private List<String> filteredValues = null;
+    private SearchIndex<String> searchIndex = null;
     private LayoutInflater inflater;
     private ItemFilter filter = new ItemFilter();
     private EditText editText;
     private Context context;
 
     public SearchableAdapter(Context context, List<String> values, EditText editText) {
+        // The values keep their order, the most used first
         this.filteredValues = values;
-        Collections.sort(filteredValues, new SortIgnoreCase()); // sorting values ignoring case
-        this.originalValues = filteredValues;
+        this.originalValues = values;
         this.editText = editText;
         this.context = context;
         inflater = LayoutInflater.from(context);
@@ -119,46 +119,38 @@ public class SearchableAdapter extends BaseAdapter implements Filterable {
         return filter;
     }
 
+    /**
+     * The index of the values, built on the first search.
+     */
+    private synchronized SearchIndex<String> getSearchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new SearchIndex<>(originalValues, new Function<String, String>() {
+                @Override
+                public String apply(String value) {
+                    return value;
+                }
+            });
+        }
+        return searchIndex;
+    }
+
     private class ItemFilter extends Filter {
         @Override
         protected FilterResults performFiltering(CharSequence constraint) {
-
-            String filterString = constraint.toString().toLowerCase();
             FilterResults results = new FilterResults();
-
-            final List<String> list = originalValues;
-
-            int count = list.size();
-            final ArrayList<String> newValuesList = new ArrayList<>(count);
-
-            for (int i = 0; i < count; i++) {
-                String filterableString = list.get(i);
-                if (filterableString.toLowerCase().contains(filterString)) {
-                    newValuesList.add(filterableString);
-                }
-            }
-
+            List<String> newValuesList = getSearchIndex().search(constraint);
             results.values = newValuesList;
             results.count = newValuesList.size();
-
             return results;
         }
 
         @SuppressWarnings("unchecked")
         @Override
         protected void publishResults(CharSequence constraint, FilterResults results) {
-            filteredValues = (ArrayList<String>) results.values;
+            filteredValues = (List<String>) results.values;
             notifyDataSetChanged();
         }
 
     }
-
-    public class SortIgnoreCase implements Comparator<Object> {
-        public int compare(Object o1, Object o2) {
-            String s1 = (String) o1;
-            String s2 = (String) o2;
-            return s1.toLowerCase().compareTo(s2.toLowerCase());
-        }
-    }
 }
 
@@ -27,12 +27,14 @@ import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 
+import io.mapsquare.osmcontributor.core.database.PoiSnapshot;
 import io.mapsquare.osmcontributor.core.events.NotesArpiLoadedEvent;
 import io.mapsquare.osmcontributor.core.events.PleaseLoadNoteForArpiEvent;
 import io.mapsquare.osmcontributor.core.events.PleaseLoadPoiForArpiEvent;
 import io.mapsquare.osmcontributor.core.events.PleaseRemoveArpiMarkerEvent;
 import io.mapsquare.osmcontributor.core.events.PoisArpiLoadedEvent;
 import io.mapsquare.osmcontributor.core.model.Note;
+import io.mapsquare.osmcontributor.core.model.PoiType;
 import io.mapsquare.osmcontributor.utils.Box;
 import mobi.designmyapp.arpigl.engine.Engine;
 import mobi.designmyapp.arpigl.event.PoiEvent;
@@ -137,18 +139,32 @@ public class ArpiPoiProvider extends PoiProvider<List<io.mapsquare.osmcontributo
             return result;
         }
 
-        public List<Poi> convert(List<io.mapsquare.osmcontributor.core.model.Poi> sources, List<Poi> toRemove) {
-            if (sources == null) {
+        public Poi convert(PoiSnapshot snapshot, int index) {
+            PoiType poiType = snapshot.getType(index);
+            return Poi.builder()
+                    .id("POI:" + snapshot.getId(index))
+                    .latitude(snapshot.getLatitude(index))
+                    .longitude(snapshot.getLongitude(index))
+                    .color(POI_COLOR)
+                    .icon(poiType != null ? poiType.getIcon() : null)
+                    .altitude(2)
+                    .shape("POI_balloon")
+                    .build();
+        }
+
+        /**
+         * Convert the POIs of a snapshot, the POIs to delete are put in the toRemove list.
+         */
+        public List<Poi> convert(PoiSnapshot snapshot, List<Poi> toRemove) {
+            if (snapshot == null) {
                 return null;
             }
-            List<Poi> result = new ArrayList<>(sources.size());
-            Poi poi;
-            for (io.mapsquare.osmcontributor.core.model.Poi source : sources) {
-                poi = convert(source);
-                if (!source.getToDelete() && !source.getOld()) {
-                    result.add(poi);
+            List<Poi> result = new ArrayList<>(snapshot.size());
+            for (int i = 0; i < snapshot.size(); i++) {
+                if (!snapshot.isToDelete(i)) {
+                    result.add(convert(snapshot, i));
                 } else {
-                    toRemove.add(poi);
+                    toRemove.add(convert(snapshot, i));
                 }
             }
             return result;
@@ -24,33 +24,69 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.support.v4.util.LongSparseArray;
 import android.support.v4.util.LruCache;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import io.mapsquare.osmcontributor.R;
+import io.mapsquare.osmcontributor.core.events.PoiTypesLoaded;
 import io.mapsquare.osmcontributor.core.model.Note;
 import io.mapsquare.osmcontributor.core.model.Poi;
 import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.type.event.BasePoiTypeEvent;
+import io.mapsquare.osmcontributor.type.event.PoiTypeDeletedEvent;
+import timber.log.Timber;
 
 /**
  * Handle the bitmaps and cache them into the memory for future uses.
+ * <br/>
+ * The markers of all the PoiTypes in all the states, the notes and the white icons are rendered in background
+ * into an atlas each time the PoiTypes are loaded. The markers are then found by PoiType id without composing
+ * or decoding anything on the main thread. The bitmaps missing from the atlas, e.g. for a PoiType created since,
+ * are composed on demand and kept in an LRU cache. The PoiTypes created or modified since are added to the atlas.
  */
 @Singleton
 public class BitmapHandler {
 
 
     public static final String BITMAP_NOTE_ID = "BITMAP_NOTE_ID";
+
+    /**
+     * Color filter inverting the colors of the icons while keeping their transparency.
+     */
+    private static final ColorMatrixColorFilter INVERT_FILTER = new ColorMatrixColorFilter(new ColorMatrix(new float[]{
+            -1, 0, 0, 0, 255,
+            0, -1, 0, 0, 255,
+            0, 0, -1, 0, 255,
+            0, 0, 0, 1, 0}));
+
     private LruCache<String, Bitmap> cache;
     private final Map<String, Integer> icons = new HashMap<>();
     private final Context context;
 
+    /**
+     * States of the markers rendered in advance when the markers of all the states don't fit in memory.
+     */
+    private static final Poi.State[] UNSELECTED_STATES = {Poi.State.NORMAL, Poi.State.NOT_SYNCED};
+
+    private volatile Atlas atlas;
+
     @Inject
     public BitmapHandler(Application osmTemplateApplication) {
         context = osmTemplateApplication.getApplicationContext();
@@ -187,6 +223,164 @@ public class BitmapHandler {
         icons.put("phone", R.drawable.sos);
     }
 
+    // ********************************
+    // ************ Events ************
+    // ********************************
+
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onPoiTypesLoaded(PoiTypesLoaded event) {
+        buildAtlas(event.getPoiTypes());
+    }
+
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onBasePoiTypeEvent(BasePoiTypeEvent event) {
+        // The deletion of a PoiType is followed by a PoiTypesLoaded event rebuilding the atlas
+        if (!(event instanceof PoiTypeDeletedEvent)) {
+            extendAtlas(event.getPoiType());
+        }
+    }
+
+    /**
+     * Render the markers of the PoiTypes in all the states, the notes and the white icons at the density of the
+     * screen, then replace the atlas used by the getters. Call it from a background thread.
+     *
+     * @param poiTypes The PoiTypes whose markers to render.
+     */
+    public void buildAtlas(List<PoiType> poiTypes) {
+        buildAtlas(poiTypes, Runtime.getRuntime().maxMemory() / 8);
+    }
+
+    /**
+     * @param poiTypes The PoiTypes whose markers to render.
+     * @param budget   The memory available for the markers, in bytes.
+     */
+    synchronized void buildAtlas(List<PoiType> poiTypes, long budget) {
+        Poi.State[] states = Poi.State.values();
+        Bitmap[] markerWrappers = decodeMarkerWrappers();
+
+        // The PoiTypes sharing an icon share its bitmaps
+        SparseIntArray iconIds = new SparseIntArray();
+        for (PoiType poiType : poiTypes) {
+            int iconId = getIconDrawableId(poiType);
+            iconIds.put(iconId, iconId);
+        }
+
+        // Past the memory budget, only the states of the many unselected markers are rendered in advance,
+        // and if they still don't fit all the markers are rendered on demand
+        Poi.State[] atlasStates = states;
+        long markerBytes = markerWrappers[0].getByteCount();
+        if ((long) iconIds.size() * states.length * markerBytes > budget) {
+            atlasStates = UNSELECTED_STATES;
+            if ((long) iconIds.size() * atlasStates.length * markerBytes > budget) {
+                Timber.w("%d icons don't fit in the marker atlas, rendering the markers on demand", iconIds.size());
+                atlasStates = new Poi.State[0];
+            } else {
+                Timber.w("%d icons don't fit in the marker atlas, only rendering the unselected markers", iconIds.size());
+            }
+        }
+
+        Atlas built = new Atlas(context.getResources().getDisplayMetrics().densityDpi, atlasStates);
+        if (atlasStates.length > 0) {
+            SparseArray<Bitmap[]> markersByIcon = new SparseArray<>();
+            SparseArray<Bitmap> whiteIconsByIcon = new SparseArray<>();
+            for (PoiType poiType : poiTypes) {
+                if (poiType.getId() == null) {
+                    continue;
+                }
+                int iconId = getIconDrawableId(poiType);
+                Bitmap[] markers = markersByIcon.get(iconId);
+                if (markers == null) {
+                    Bitmap icon = BitmapFactory.decodeResource(context.getResources(), iconId);
+                    markers = composeMarkers(markerWrappers, icon, atlasStates);
+                    markersByIcon.put(iconId, markers);
+                    whiteIconsByIcon.put(iconId, invert(icon));
+                }
+                built.put(poiType.getId(), iconId, markers, whiteIconsByIcon.get(iconId));
+            }
+        }
+
+        for (Note.State state : Note.State.values()) {
+            built.notes[state.ordinal()] = BitmapFactory.decodeResource(context.getResources(), getNoteDrawableId(state));
+        }
+        built.noteWhiteIcon = invert(BitmapFactory.decodeResource(context.getResources(), R.drawable.open_book));
+
+        atlas = built;
+    }
+
+    /**
+     * Render the markers of a PoiType created or modified since the atlas was built, then replace the atlas by a
+     * copy containing them. Call it from a background thread.
+     *
+     * @param poiType The PoiType whose markers to render.
+     */
+    synchronized void extendAtlas(PoiType poiType) {
+        Atlas current = getAtlas();
+        if (current == null || current.states.length == 0 || poiType == null || poiType.getId() == null) {
+            return;
+        }
+        int iconId = getIconDrawableId(poiType);
+        Integer previousIconId = current.iconIds.get(poiType.getId());
+        if (previousIconId != null && previousIconId == iconId) {
+            return;
+        }
+
+        // Reuse the bitmaps of the PoiTypes with the same icon
+        Bitmap[] markers = null;
+        Bitmap whiteIcon = null;
+        for (int i = 0; i < current.iconIds.size(); i++) {
+            if (current.iconIds.valueAt(i) == iconId) {
+                markers = current.markers.valueAt(i);
+                whiteIcon = current.whiteIcons.valueAt(i);
+                break;
+            }
+        }
+        if (markers == null) {
+            Bitmap icon = BitmapFactory.decodeResource(context.getResources(), iconId);
+            markers = composeMarkers(decodeMarkerWrappers(), icon, current.states);
+            whiteIcon = invert(icon);
+        }
+
+        Atlas extended = current.copy();
+        extended.put(poiType.getId(), iconId, markers, whiteIcon);
+        atlas = extended;
+    }
+
+    /**
+     * Whether the marker of a PoiType in a state was rendered in advance.
+     */
+    boolean isInAtlas(PoiType poiType, Poi.State state) {
+        Atlas current = getAtlas();
+        Bitmap[] markers = current != null && poiType.getId() != null ? current.markers.get(poiType.getId()) : null;
+        return markers != null && markers[state.ordinal()] != null;
+    }
+
+    /**
+     * Decode the pins of all the states of the Pois.
+     *
+     * @return The pins indexed by the ordinal of the {@link Poi.State}.
+     */
+    private Bitmap[] decodeMarkerWrappers() {
+        Poi.State[] states = Poi.State.values();
+        Bitmap[] markerWrappers = new Bitmap[states.length];
+        for (Poi.State state : states) {
+            markerWrappers[state.ordinal()] = BitmapFactory.decodeResource(context.getResources(), getMarkerDrawableId(state));
+        }
+        return markerWrappers;
+    }
+
+    /**
+     * Put an icon into the pins of some states.
+     *
+     * @return The markers indexed by the ordinal of the {@link Poi.State}, null for the other states.
+     */
+    private Bitmap[] composeMarkers(Bitmap[] markerWrappers, Bitmap icon, Poi.State[] states) {
+        Bitmap[] markers = new Bitmap[markerWrappers.length];
+        for (Poi.State state : states) {
+            markers[state.ordinal()] = composeMarker(markerWrappers[state.ordinal()], icon);
+        }
+        return markers;
+    }
+
     /**
      * Add a bitmap to the memory cache.
      *
@@ -218,58 +412,29 @@ public class BitmapHandler {
      * @return The marker corresponding to the poiType and the poi state.
      */
     Bitmap getMarkerBitmap(PoiType poiType, Poi.State state) {
+        Atlas current = getAtlas();
+        if (current != null && poiType != null && poiType.getId() != null) {
+            Bitmap[] markers = current.markers.get(poiType.getId());
+            if (markers != null && markers[state.ordinal()] != null) {
+                return markers[state.ordinal()];
+            }
+        }
 
         try {
-
-            Integer markerId = null;
+            int markerId = getMarkerDrawableId(state);
             Integer iconId = getIconDrawableId(poiType);
 
-
-            Bitmap markerWrapper;
-            Bitmap icon;
-
-            // 3 states, n-pois -> 3 x n bitmaps.
-            // Two choices: either we store all overlay combinations, or we store the markers and always process overlays.
-            // As there might be more POIs than the number of combinations, I chose to store all combinations.
-
-            switch (state) {
-                case NORMAL:
-                    markerId = R.drawable.marker_white;
-                    break;
-                case NOT_SYNCED:
-                    markerId = R.drawable.marker_grey;
-                    break;
-                case SELECTED:
-                    markerId = R.drawable.marker_blue;
-                    break;
-                case MOVING:
-                    markerId = R.drawable.marker_red;
-                    break;
-            }
-
-            String bitmapCacheId = markerId.toString() + iconId.toString();
+            String bitmapCacheId = markerId + iconId.toString();
 
             // Try to retrieve bmOverlay from cache
             Bitmap bmOverlay = getBitmapFromMemCache(bitmapCacheId);
 
             // If we don't have the combination into memory yet, compute it manually
             if (bmOverlay == null) {
-
-                // If still too slow (lots of sources), we might change this and also include partials into cache
-                // Right now, I don't think the use case proves its usefulness
-                markerWrapper = BitmapFactory.decodeResource(context.getResources(), markerId);
-                icon = BitmapFactory.decodeResource(context.getResources(), iconId);
-
-                bmOverlay = Bitmap.createBitmap(markerWrapper.getWidth(), markerWrapper.getHeight(), markerWrapper.getConfig());
-                Canvas canvas = new Canvas(bmOverlay);
-
-                int x = markerWrapper.getWidth() / 2 - icon.getWidth() / 2;
-                int y = markerWrapper.getHeight() / 4 - icon.getHeight() / 2 - (int) (0.05 * markerWrapper.getHeight());
-
-                canvas.drawBitmap(markerWrapper, 0, 0, null);
-                canvas.drawBitmap(icon, x, y, null);
+                Bitmap markerWrapper = BitmapFactory.decodeResource(context.getResources(), markerId);
+                Bitmap icon = BitmapFactory.decodeResource(context.getResources(), iconId);
+                bmOverlay = composeMarker(markerWrapper, icon);
                 addBitmapToMemoryCache(bitmapCacheId, bmOverlay);
-
             }
 
             return bmOverlay;
@@ -279,6 +444,44 @@ public class BitmapHandler {
         }
     }
 
+    /**
+     * Put an icon into a pin.
+     *
+     * @param markerWrapper The pin.
+     * @param icon          The icon.
+     * @return The marker.
+     */
+    private Bitmap composeMarker(Bitmap markerWrapper, Bitmap icon) {
+        Bitmap bmOverlay = Bitmap.createBitmap(markerWrapper.getWidth(), markerWrapper.getHeight(), markerWrapper.getConfig());
+        Canvas canvas = new Canvas(bmOverlay);
+
+        int x = markerWrapper.getWidth() / 2 - icon.getWidth() / 2;
+        int y = markerWrapper.getHeight() / 4 - icon.getHeight() / 2 - (int) (0.05 * markerWrapper.getHeight());
+
+        canvas.drawBitmap(markerWrapper, 0, 0, null);
+        canvas.drawBitmap(icon, x, y, null);
+        return bmOverlay;
+    }
+
+    /**
+     * Get the pin drawable id corresponding to the state of a Poi.
+     *
+     * @param state State of the Poi.
+     * @return The pin drawable id.
+     */
+    private int getMarkerDrawableId(Poi.State state) {
+        switch (state) {
+            case NOT_SYNCED:
+                return R.drawable.marker_grey;
+            case SELECTED:
+                return R.drawable.marker_blue;
+            case MOVING:
+                return R.drawable.marker_red;
+            default:
+                return R.drawable.marker_white;
+        }
+    }
+
     /**
      * Get the white icon corresponding to a poiType.
      *
@@ -286,28 +489,39 @@ public class BitmapHandler {
      * @return The white icon.
      */
     public Drawable getIconWhite(PoiType poiType) {
-        Bitmap myBitmap = BitmapFactory.decodeResource(context.getResources(), poiType == null ? R.drawable.open_book : getIconDrawableId(poiType));
-        myBitmap = myBitmap.copy(myBitmap.getConfig(), true);
-
-        int[] allpixels = new int[myBitmap.getHeight() * myBitmap.getWidth()];
-
-        myBitmap.getPixels(allpixels, 0, myBitmap.getWidth(), 0, 0, myBitmap.getWidth(), myBitmap.getHeight());
-
-        for (int i = 0; i < myBitmap.getHeight() * myBitmap.getWidth(); i++) {
-            if (allpixels[i] != 0) {
-                int A = Color.alpha(allpixels[i]);
-                // inverting byte for each R/G/B channel
-                int R = 255 - Color.red(allpixels[i]);
-                int G = 255 - Color.green(allpixels[i]);
-                int B = 255 - Color.blue(allpixels[i]);
-                // set newly-inverted pixel to output image
-                allpixels[i] = Color.argb(A, R, G, B);
+        Atlas current = getAtlas();
+        Bitmap whiteIcon = null;
+        if (current != null) {
+            if (poiType == null) {
+                whiteIcon = current.noteWhiteIcon;
+            } else if (poiType.getId() != null) {
+                whiteIcon = current.whiteIcons.get(poiType.getId());
             }
         }
+        if (whiteIcon == null) {
+            int iconId = poiType == null ? R.drawable.open_book : getIconDrawableId(poiType);
+            String bitmapCacheId = "WHITE_" + iconId;
+            whiteIcon = getBitmapFromMemCache(bitmapCacheId);
+            if (whiteIcon == null) {
+                whiteIcon = invert(BitmapFactory.decodeResource(context.getResources(), iconId));
+                addBitmapToMemoryCache(bitmapCacheId, whiteIcon);
+            }
+        }
+        return new BitmapDrawable(context.getResources(), whiteIcon);
+    }
 
-        myBitmap.setPixels(allpixels, 0, myBitmap.getWidth(), 0, 0, myBitmap.getWidth(), myBitmap.getHeight());
-
-        return new BitmapDrawable(context.getResources(), myBitmap);
+    /**
+     * Invert the colors of an icon, keeping its transparency.
+     *
+     * @param icon The icon.
+     * @return A new bitmap with the inverted icon.
+     */
+    private Bitmap invert(Bitmap icon) {
+        Bitmap inverted = Bitmap.createBitmap(icon.getWidth(), icon.getHeight(), Bitmap.Config.ARGB_8888);
+        Paint paint = new Paint();
+        paint.setColorFilter(INVERT_FILTER);
+        new Canvas(inverted).drawBitmap(icon, 0, 0, paint);
+        return inverted;
     }
 
     /**
@@ -327,43 +541,88 @@ public class BitmapHandler {
      * @return The bitmap in the corresponding color.
      */
     Bitmap getNoteBitmap(Note.State state) {
+        Atlas current = getAtlas();
+        if (current != null) {
+            return current.notes[state.ordinal()];
+        }
+
         // Try to retrieve bmOverlay from cache
         Bitmap bmOverlay = getBitmapFromMemCache(state.toString());
-        Integer markerId;
 
         // If we don't have the combination into memory yet, compute it manually
         if (bmOverlay == null) {
-            switch (state) {
-                case OPEN:
-                    markerId = R.drawable.note_pink;
-                    break;
-                case CLOSED:
-                    markerId = R.drawable.note_green;
-                    break;
-                case SYNC:
-                    markerId = R.drawable.note_grey;
-                    break;
-                case SELECTED:
-                    markerId = R.drawable.note_blue;
-                    break;
-                case MOVING:
-                    markerId = R.drawable.note_orange;
-                    break;
-
-                default:
-                    markerId = R.drawable.note_green;
-                    break;
-            }
-
-            // If still too slow (lots of sources), we might change this and also include partials into cache
-            // Right now, I don't think the use case proves its usefulness
-            bmOverlay = BitmapFactory.decodeResource(context.getResources(), markerId);
+            bmOverlay = BitmapFactory.decodeResource(context.getResources(), getNoteDrawableId(state));
             addBitmapToMemoryCache(state.toString(), bmOverlay);
         }
 
         return bmOverlay;
     }
 
+    /**
+     * Get the note drawable id corresponding to the state of a note.
+     *
+     * @param state The state of the note.
+     * @return The note drawable id.
+     */
+    private int getNoteDrawableId(Note.State state) {
+        switch (state) {
+            case OPEN:
+                return R.drawable.note_pink;
+            case SYNC:
+                return R.drawable.note_grey;
+            case SELECTED:
+                return R.drawable.note_blue;
+            case MOVING:
+                return R.drawable.note_orange;
+            default:
+                return R.drawable.note_green;
+        }
+    }
+
+    /**
+     * Get the bitmap of a cluster of Pois, a disk with the number of Pois.
+     * <br/>
+     * The big counts are rounded down to a few labels so that only a handful of bitmaps are cached.
+     *
+     * @param count The number of Pois in the cluster.
+     * @return The bitmap of the cluster.
+     */
+    Bitmap getClusterBitmap(int count) {
+        String label;
+        if (count < 10) {
+            label = String.valueOf(count);
+        } else if (count < 50) {
+            label = (count / 10 * 10) + "+";
+        } else if (count < 100) {
+            label = "50+";
+        } else if (count < 1000) {
+            label = (count / 100 * 100) + "+";
+        } else {
+            label = "1k+";
+        }
+
+        String bitmapCacheId = "CLUSTER_" + label;
+        Bitmap bmOverlay = getBitmapFromMemCache(bitmapCacheId);
+        if (bmOverlay == null) {
+            int size = context.getResources().getDimensionPixelSize(R.dimen.cluster_marker_size);
+            bmOverlay = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bmOverlay);
+
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setColor(context.getResources().getColor(R.color.cluster_marker_border));
+            canvas.drawCircle(size / 2f, size / 2f, size / 2f, paint);
+            paint.setColor(context.getResources().getColor(R.color.cluster_marker));
+            canvas.drawCircle(size / 2f, size / 2f, size / 2f - size / 10f, paint);
+
+            paint.setColor(Color.WHITE);
+            paint.setTextAlign(Paint.Align.CENTER);
+            paint.setTextSize(context.getResources().getDimension(R.dimen.cluster_text_size));
+            canvas.drawText(label, size / 2f, size / 2f - (paint.descent() + paint.ascent()) / 2, paint);
+            addBitmapToMemoryCache(bitmapCacheId, bmOverlay);
+        }
+        return bmOverlay;
+    }
+
     /**
      * Get the drawable corresponding to the icon name.
      *
@@ -391,4 +650,81 @@ public class BitmapHandler {
         }
         return iconId != 0 ? iconId : R.drawable.default_marker;
     }
+
+    /**
+     * Get the atlas if it was rendered at the current density of the screen.
+     *
+     * @return The atlas or null.
+     */
+    private Atlas getAtlas() {
+        Atlas current = atlas;
+        if (current != null && current.densityDpi == context.getResources().getDisplayMetrics().densityDpi) {
+            return current;
+        }
+        return null;
+    }
+
+    /**
+     * Bitmaps rendered in advance, never modified once built.
+     */
+    private static final class Atlas {
+        private final int densityDpi;
+
+        /**
+         * The states of the markers rendered in advance.
+         */
+        private final Poi.State[] states;
+
+        /**
+         * The icon drawable ids by PoiType id.
+         */
+        private final LongSparseArray<Integer> iconIds;
+
+        /**
+         * The markers of each PoiType by PoiType id, indexed by the ordinal of the {@link Poi.State}, null for the
+         * states not rendered in advance.
+         */
+        private final LongSparseArray<Bitmap[]> markers;
+
+        /**
+         * The white icons by PoiType id.
+         */
+        private final LongSparseArray<Bitmap> whiteIcons;
+
+        /**
+         * The notes indexed by the ordinal of the {@link Note.State}.
+         */
+        private final Bitmap[] notes = new Bitmap[Note.State.values().length];
+
+        private Bitmap noteWhiteIcon;
+
+        private Atlas(int densityDpi, Poi.State[] states) {
+            this(densityDpi, states, new LongSparseArray<Integer>(), new LongSparseArray<Bitmap[]>(), new LongSparseArray<Bitmap>());
+        }
+
+        private Atlas(int densityDpi, Poi.State[] states, LongSparseArray<Integer> iconIds,
+                      LongSparseArray<Bitmap[]> markers, LongSparseArray<Bitmap> whiteIcons) {
+            this.densityDpi = densityDpi;
+            this.states = states;
+            this.iconIds = iconIds;
+            this.markers = markers;
+            this.whiteIcons = whiteIcons;
+        }
+
+        private void put(long poiTypeId, int iconId, Bitmap[] markers, Bitmap whiteIcon) {
+            this.iconIds.put(poiTypeId, iconId);
+            this.markers.put(poiTypeId, markers);
+            this.whiteIcons.put(poiTypeId, whiteIcon);
+        }
+
+        /**
+         * Copy the atlas to extend it, the bitmaps are shared.
+         */
+        private Atlas copy() {
+            Atlas copy = new Atlas(densityDpi, states, iconIds.clone(), markers.clone(), whiteIcons.clone());
+            System.arraycopy(notes, 0, copy.notes, 0, notes.length);
+            copy.noteWhiteIcon = noteWhiteIcon;
+            return copy;
+        }
+    }
 }
@@ -32,6 +32,7 @@ public class LocationMarker extends Marker {
         POI,
         NODE_REF,
         NOTE,
+        CLUSTER,
         NONE
     }
 
@@ -55,6 +56,12 @@ public class LocationMarker extends Marker {
         setRelatedObject(poiNodeRef);
     }
 
+    public LocationMarker(PoiClusterer.Cluster cluster) {
+        super(null, null, new LatLng(cluster.getLatitude(), cluster.getLongitude()));
+        this.type = MarkerType.CLUSTER;
+        setRelatedObject(cluster);
+    }
+
     public MarkerType getType() {
         return type;
     }
@@ -80,6 +87,15 @@ public class LocationMarker extends Marker {
         return (Note) getRelatedObject();
     }
 
+    public PoiClusterer.Cluster getCluster() {
+        return (PoiClusterer.Cluster) getRelatedObject();
+    }
+
+    public void setCluster(PoiClusterer.Cluster cluster) {
+        setRelatedObject(cluster);
+        setPoint(new LatLng(cluster.getLatitude(), cluster.getLongitude()));
+    }
+
     public boolean isPoi() {
         return type.equals(MarkerType.POI);
     }
@@ -92,6 +108,10 @@ public class LocationMarker extends Marker {
         return type.equals(MarkerType.NOTE);
     }
 
+    public boolean isCluster() {
+        return type.equals(MarkerType.CLUSTER);
+    }
+
     @Override
     public void setPoint(LatLng point) {
         super.setPoint(point);
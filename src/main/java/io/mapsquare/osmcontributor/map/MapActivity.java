@@ -68,6 +68,7 @@ import io.mapsquare.osmcontributor.map.events.PleaseInitializeArpiEvent;
 import io.mapsquare.osmcontributor.map.events.PleaseInitializeDrawer;
 import io.mapsquare.osmcontributor.map.events.PleaseInitializeNoteDrawerEvent;
 import io.mapsquare.osmcontributor.map.events.PleaseShowMeArpiglEvent;
+import io.mapsquare.osmcontributor.map.events.PleaseSaveOfflineMapEvent;
 import io.mapsquare.osmcontributor.map.events.PleaseSwitchMapStyleEvent;
 import io.mapsquare.osmcontributor.map.events.PleaseSwitchWayEditionModeEvent;
 import io.mapsquare.osmcontributor.map.events.PleaseTellIfDbChanges;
@@ -188,6 +189,11 @@ public class MapActivity extends AppCompatActivity {
             navigationView.getMenu().findItem(R.id.replay_tuto_menu).setVisible(true);
         }
 
+        // Only the template flavor displays its map from MBTiles files
+        if (FlavorUtils.isTemplate()) {
+            navigationView.getMenu().findItem(R.id.save_offline_map).setVisible(true);
+        }
+
         navigationView.getMenu().findItem(R.id.save_changes).setEnabled(false);
 
         drawerLayout.setDrawerListener(new DrawerLayout.DrawerListener() {
@@ -462,6 +468,10 @@ public class MapActivity extends AppCompatActivity {
                 eventBus.post(new PleaseSwitchMapStyleEvent());
                 drawerLayout.closeDrawer(navigationView);
                 break;
+            case R.id.save_offline_map:
+                eventBus.post(new PleaseSaveOfflineMapEvent());
+                drawerLayout.closeDrawer(navigationView);
+                break;
             case R.id.preferences_menu:
                 startPreferencesActivity();
                 break;
@@ -73,12 +73,15 @@ import com.mapbox.mapboxsdk.tileprovider.tilesource.TileLayer;
 import com.mapbox.mapboxsdk.views.MapView;
 import com.mapbox.mapboxsdk.views.MapViewListener;
 import com.mapbox.mapboxsdk.views.util.TilesLoadedListener;
+import com.squareup.okhttp.OkHttpClient;
 
 import java.io.IOException;
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -118,6 +121,7 @@ import io.mapsquare.osmcontributor.map.events.LastUsePoiTypeLoaded;
 import io.mapsquare.osmcontributor.map.events.MapCenterValueEvent;
 import io.mapsquare.osmcontributor.map.events.NewNoteCreatedEvent;
 import io.mapsquare.osmcontributor.map.events.NewPoiTypeSelected;
+import io.mapsquare.osmcontributor.map.events.OfflineMapPackagedEvent;
 import io.mapsquare.osmcontributor.map.events.OnBackPressedMapEvent;
 import io.mapsquare.osmcontributor.map.events.PleaseApplyNoteFilterEvent;
 import io.mapsquare.osmcontributor.map.events.PleaseApplyPoiFilter;
@@ -134,6 +138,8 @@ import io.mapsquare.osmcontributor.map.events.PleaseInitializeNoteDrawerEvent;
 import io.mapsquare.osmcontributor.map.events.PleaseLoadEditVectorialTileEvent;
 import io.mapsquare.osmcontributor.map.events.PleaseLoadLastUsedPoiType;
 import io.mapsquare.osmcontributor.map.events.PleaseOpenEditionEvent;
+import io.mapsquare.osmcontributor.map.events.PleasePackageOfflineMapEvent;
+import io.mapsquare.osmcontributor.map.events.PleaseSaveOfflineMapEvent;
 import io.mapsquare.osmcontributor.map.events.PleaseSelectNodeRefByID;
 import io.mapsquare.osmcontributor.map.events.PleaseShowMeArpiglEvent;
 import io.mapsquare.osmcontributor.map.events.PleaseSwitchMapStyleEvent;
@@ -160,6 +166,7 @@ import io.mapsquare.osmcontributor.sync.events.error.SyncUploadRetrofitErrorEven
 import io.mapsquare.osmcontributor.sync.events.error.TooManyRequestsEvent;
 import io.mapsquare.osmcontributor.tileslayer.BingTileLayer;
 import io.mapsquare.osmcontributor.tileslayer.MBTilesLayer;
+import io.mapsquare.osmcontributor.tileslayer.TileFetchScheduler;
 import io.mapsquare.osmcontributor.tileslayer.WebSourceTileLayer;
 import io.mapsquare.osmcontributor.utils.Box;
 import io.mapsquare.osmcontributor.utils.FlavorUtils;
@@ -193,6 +200,7 @@ public class MapFragment extends Fragment {
     private Map<Long, LocationMarker> markersPoi;
     private Map<Long, LocationMarker> markersNotes;
     private Map<Long, LocationMarker> markersNodeRef;
+    private Map<Long, LocationMarker> markersCluster;
 
     private int maxPoiType;
     private PoiType poiTypeSelected;
@@ -225,6 +233,9 @@ public class MapFragment extends Fragment {
     @Inject
     ConfigManager configManager;
 
+    @Inject
+    OkHttpClient okHttpClient;
+
     //olduv
     //For testing purpose
     @BindView(R.id.zoom_level)
@@ -250,6 +261,7 @@ public class MapFragment extends Fragment {
         markersPoi = new HashMap<>();
         markersNotes = new HashMap<>();
         markersNodeRef = new HashMap<>();
+        markersCluster = new HashMap<>();
 
         ((OsmTemplateApplication) getActivity().getApplication()).getOsmTemplateComponent().inject(this);
         unbinder = ButterKnife.bind(this, rootView);
@@ -359,6 +371,8 @@ public class MapFragment extends Fragment {
 
             @Override
             public void onScroll(ScrollEvent scrollEvent) {
+                updateTileFetchViewport();
+
                 deltaX = initialX - scrollEvent.getX();
                 deltaY = initialY - scrollEvent.getY();
 
@@ -383,6 +397,7 @@ public class MapFragment extends Fragment {
                 // For testing purpose
                 zoomLevelText.setText(df.format(zoomEvent.getZoomLevel()));
 
+                updateTileFetchViewport();
                 presenter.loadPoisIfNeeded();
                 Timber.v("new zoom : %s", zoomEvent.getZoomLevel());
 
@@ -436,6 +451,9 @@ public class MapFragment extends Fragment {
                             case NOTE:
                                 onNoteMarkerClick(locationMarker);
                                 break;
+                            case CLUSTER:
+                                onClusterMarkerClick(locationMarker);
+                                break;
                             default:
                                 break;
                         }
@@ -507,6 +525,12 @@ public class MapFragment extends Fragment {
     }
 
 
+    private void onClusterMarkerClick(LocationMarker marker) {
+        // Zoom on the cluster until its Pois are displayed separately
+        mapView.setCenter(marker.getPoint());
+        mapView.setZoom(Math.max(getZoomLevel() + 1, configManager.getZoomCluster()));
+    }
+
     private void onNodeRefClick(LocationMarker marker) {
         editNodeRefPosition.setVisibility(View.VISIBLE);
         ValueAnimator valueAnimator = ValueAnimator.ofFloat(0, OsmAnimatorUpdateListener.STEPS_CENTER_ANIMATION);
@@ -597,6 +621,10 @@ public class MapFragment extends Fragment {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        // The web tile layers are kept with the fragment, so is their scheduler
+        if (tileFetchScheduler != null) {
+            tileFetchScheduler.shutdown();
+        }
         // Clear bitmapHandler even if activity leaks.
         bitmapHandler = null;
     }
@@ -1055,7 +1083,7 @@ public class MapFragment extends Fragment {
     }
 
     public boolean hasMarkers() {
-        return !markersPoi.isEmpty();
+        return !markersPoi.isEmpty() || !markersCluster.isEmpty();
     }
 
     public void removeAllMarkers() {
@@ -1075,24 +1103,47 @@ public class MapFragment extends Fragment {
             removeMarker(markersPoi.get(markerId));
         }
         markersPoi.clear();
+        setClusterMarkers(Collections.<PoiClusterer.Cluster>emptyList());
     }
 
-    public void removePoiMarkersNotIn(List<Long> poiIds) {
-        Set<Long> idsToRemove = new HashSet<>(markersPoi.keySet());
-        idsToRemove.removeAll(poiIds);
-        for (Long id : idsToRemove) {
-            removeMarker(markersPoi.get(id));
+    /**
+     * Display the clusters of Pois, replacing the clusters previously displayed.
+     * The markers of the cells already displayed are reused.
+     *
+     * @param clusters The clusters to display.
+     */
+    public void setClusterMarkers(List<PoiClusterer.Cluster> clusters) {
+        Map<Long, LocationMarker> previous = markersCluster;
+        markersCluster = new HashMap<>(clusters.size());
+        for (PoiClusterer.Cluster cluster : clusters) {
+            LocationMarker marker = previous.remove(cluster.getCell());
+            if (marker == null) {
+                marker = new LocationMarker(cluster);
+                marker.setIcon(new Icon(new BitmapDrawable(getResources(), bitmapHandler.getClusterBitmap(cluster.size()))));
+                mapView.addMarker(marker);
+            } else {
+                if (marker.getCluster().size() != cluster.size()) {
+                    marker.setIcon(new Icon(new BitmapDrawable(getResources(), bitmapHandler.getClusterBitmap(cluster.size()))));
+                }
+                marker.setCluster(cluster);
+            }
+            markersCluster.put(cluster.getCell(), marker);
+        }
+        for (LocationMarker marker : previous.values()) {
+            mapView.removeMarker(marker);
+        }
+    }
+
+    public void removePoiMarkers(Collection<Long> poiIds) {
+        for (Long id : poiIds) {
+            removeMarker(markersPoi.remove(id));
         }
-        markersPoi.keySet().removeAll(idsToRemove);
     }
 
-    public void removeNoteMarkersNotIn(List<Long> noteIds) {
-        Set<Long> idsToRemove = new HashSet<>(markersNotes.keySet());
-        idsToRemove.removeAll(noteIds);
-        for (Long id : idsToRemove) {
-            removeMarker(markersNotes.get(id));
+    public void removeNoteMarkers(Collection<Long> noteIds) {
+        for (Long id : noteIds) {
+            removeMarker(markersNotes.remove(id));
         }
-        markersNotes.keySet().removeAll(idsToRemove);
     }
 
     public Map<Long, LocationMarker> getMarkersPoi() {
@@ -1484,6 +1535,7 @@ public class MapFragment extends Fragment {
         poi.setToDelete(true);
         markersPoi.remove(poi.getId());
         removeMarker(markerSelected);
+        presenter.onPoiMarkerRemoved(poi.getId());
         eventBus.post(new PleaseDeletePoiEvent(poi));
         switchMode(MapMode.DEFAULT);
     }
@@ -1690,6 +1742,7 @@ public class MapFragment extends Fragment {
         Marker m = markersPoi.remove(id);
         if (m != null) {
             mapView.removeMarker(m);
+            presenter.onPoiMarkerRemoved(id);
         }
         defaultMap();
     }
@@ -1699,6 +1752,7 @@ public class MapFragment extends Fragment {
         Marker m = markersNotes.remove(id);
         if (m != null) {
             mapView.removeMarker(m);
+            presenter.onNoteMarkerRemoved(id);
         }
         defaultMap();
     }
@@ -1974,6 +2028,7 @@ public class MapFragment extends Fragment {
         Timber.d("filtering Pois by type");
         poiTypeHidden = event.getPoiTypeIdsToHide();
         applyPoiFilter();
+        presenter.refreshPoiMarkers();
     }
 
     @Subscribe(threadMode = ThreadMode.MAIN)
@@ -2152,6 +2207,10 @@ public class MapFragment extends Fragment {
     private TileLayer osmTileLayer;
     private TileLayer bingTileLayer;
 
+    // Number of web tiles downloaded in parallel
+    private static final int MAX_PARALLEL_TILE_FETCHES = 4;
+    private TileFetchScheduler tileFetchScheduler;
+
     // Ids of tile layers
     public static final String OSM_TILE_SOURCE = "OSM_TILE_SOURCE";
     public static final String BING_TILE_SOURCE = "BING_TILE_SOURCE";
@@ -2161,6 +2220,17 @@ public class MapFragment extends Fragment {
 
     private BoundingBox scrollableAreaLimit = null;
 
+    /**
+     * Give the current viewport to the tile fetch scheduler, to download the visible tiles first
+     * and cancel the ones which left the screen.
+     */
+    private void updateTileFetchViewport() {
+        BoundingBox viewport = getViewBoundingBox();
+        if (tileFetchScheduler != null && viewport != null) {
+            tileFetchScheduler.setViewport(viewport.getLatNorth(), viewport.getLonEast(), viewport.getLatSouth(), viewport.getLonWest(), getZoomLevel());
+        }
+    }
+
     /**
      * Switch the tile source between the osm tile source and the bing aerial vue tile source.
      */
@@ -2197,7 +2267,13 @@ public class MapFragment extends Fragment {
         if (FlavorUtils.isTemplate()) {
             try {
                 List<String> assetsList = Arrays.asList(getActivity().getResources().getAssets().list(""));
-                if (assetsList.contains(OSM_MBTILES_FILE)) {
+                if (offlineMapManager.hasOfflineMap()) {
+                    // Create a TileSource with the Tiles of the area saved by the user
+                    osmTileLayer = new MBTilesLayer(offlineMapManager.getOfflineMapFile(), configManager.getZoomMaxProvider())
+                            .setName("OpenStreetMap")
+                            .setAttribution("© OpenStreetMap Contributors")
+                            .setMaximumZoomLevel(configManager.getZoomMax());
+                } else if (assetsList.contains(OSM_MBTILES_FILE)) {
                     // Create a TileSource with OpenstreetMap's Tiles from a MBTiles file
                     osmTileLayer = new MBTilesLayer(getActivity(), OSM_MBTILES_FILE, configManager.getZoomMaxProvider())
                             .setName("OpenStreetMap")
@@ -2216,9 +2292,14 @@ public class MapFragment extends Fragment {
             }
         }
 
+        if (tileFetchScheduler == null && (osmTileLayer == null || bingTileLayer == null)) {
+            // Shared by the web tile layers, which outlive the map view
+            tileFetchScheduler = new TileFetchScheduler(okHttpClient, MAX_PARALLEL_TILE_FETCHES);
+        }
+
         if (osmTileLayer == null) {
             // Create a TileSource from OpenStreetMap server
-            osmTileLayer = new WebSourceTileLayer("openstreetmap", configManager.getMapUrl(), configManager.getZoomMaxProvider())
+            osmTileLayer = new WebSourceTileLayer("openstreetmap", configManager.getMapUrl(), configManager.getZoomMaxProvider(), tileFetchScheduler)
                     .setName("OpenStreetMap")
                     .setAttribution("© OpenStreetMap Contributors")
                     .setMinimumZoomLevel(MIN_ZOOM_LEVEL)
@@ -2226,7 +2307,7 @@ public class MapFragment extends Fragment {
         }
         if (bingTileLayer == null) {
             // Create a TileSource from Bing map with aerial with label style
-            bingTileLayer = new BingTileLayer(configManager.getBingApiKey(), BingTileLayer.IMAGERYSET_AERIALWITHLABELS, configManager.getZoomMaxProvider())
+            bingTileLayer = new BingTileLayer(configManager.getBingApiKey(), BingTileLayer.IMAGERYSET_AERIALWITHLABELS, configManager.getZoomMaxProvider(), tileFetchScheduler)
                     .setName("Bing aerial view")
                     .setMinimumZoomLevel(MIN_ZOOM_LEVEL)
                     .setMaximumZoomLevel(configManager.getZoomMax());
@@ -2248,4 +2329,25 @@ public class MapFragment extends Fragment {
     public void onPleaseSwitchMapStyleEvent(PleaseSwitchMapStyleEvent event) {
         switchTileSource();
     }
+
+    @Inject
+    OfflineMapManager offlineMapManager;
+
+    /**
+     * Save the OpenStreetMap tiles of the displayed area, from the current zoom level to the zoom limit of the provider.
+     */
+    @Subscribe(threadMode = ThreadMode.MAIN)
+    public void onPleaseSaveOfflineMapEvent(PleaseSaveOfflineMapEvent event) {
+        BoundingBox viewport = getViewBoundingBox();
+        if (viewport == null || offlineMapManager.isPackaging()) {
+            return;
+        }
+        Toast.makeText(getActivity(), R.string.offline_map_saving, Toast.LENGTH_SHORT).show();
+        eventBus.post(new PleasePackageOfflineMapEvent(viewport, (int) Math.floor(getZoomLevel())));
+    }
+
+    @Subscribe(threadMode = ThreadMode.MAIN)
+    public void onOfflineMapPackagedEvent(OfflineMapPackagedEvent event) {
+        Toast.makeText(getActivity(), event.isComplete() ? R.string.offline_map_saved : R.string.offline_map_incomplete, Toast.LENGTH_LONG).show();
+    }
 }
\ No newline at end of file
@@ -25,7 +25,10 @@ import com.mapbox.mapboxsdk.geometry.BoundingBox;
 import com.mapbox.mapboxsdk.overlay.Icon;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.inject.Inject;
 
@@ -35,6 +38,7 @@ import org.greenrobot.eventbus.ThreadMode;
 
 import io.mapsquare.osmcontributor.OsmTemplateApplication;
 import io.mapsquare.osmcontributor.core.ConfigManager;
+import io.mapsquare.osmcontributor.core.database.PoiSnapshot;
 import io.mapsquare.osmcontributor.core.events.NotesLoadedEvent;
 import io.mapsquare.osmcontributor.core.events.PleaseLoadNotesEvent;
 import io.mapsquare.osmcontributor.core.events.PleaseLoadPoiTypes;
@@ -45,9 +49,12 @@ import io.mapsquare.osmcontributor.core.events.PoisLoadedEvent;
 import io.mapsquare.osmcontributor.core.model.Note;
 import io.mapsquare.osmcontributor.core.model.Poi;
 import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.map.events.NoteMarkersDiffEvent;
 import io.mapsquare.osmcontributor.map.events.PleaseChangeValuesDetailNoteFragmentEvent;
 import io.mapsquare.osmcontributor.map.events.PleaseChangeValuesDetailPoiFragmentEvent;
 import io.mapsquare.osmcontributor.map.events.PleaseInitializeDrawer;
+import io.mapsquare.osmcontributor.map.events.PleaseRefreshPoiMarkersEvent;
+import io.mapsquare.osmcontributor.map.events.PoiMarkersDiffEvent;
 import io.mapsquare.osmcontributor.sync.events.SyncDownloadPoisAndNotesEvent;
 import io.mapsquare.osmcontributor.core.events.RevertFinishedEvent;
 import io.mapsquare.osmcontributor.utils.Box;
@@ -55,6 +62,26 @@ import timber.log.Timber;
 
 public class MapFragmentPresenter {
 
+    /**
+     * Size in pixels of the cells in which the Pois are clustered.
+     */
+    private static final int CLUSTER_CELL_SIZE = 64;
+
+    /**
+     * Minimum number of Pois in a cell to display them as a cluster.
+     */
+    private static final int MIN_CLUSTER_SIZE = 3;
+
+    /**
+     * Maximum number of single Poi markers displayed on the map, the Pois are clustered above it.
+     */
+    private static final int MAX_POI_MARKERS = 300;
+
+    /**
+     * Factor applied to the view to keep the markers just outside of it when culling.
+     */
+    private static final double CULLING_FACTOR = 1.25;
+
     MapFragment mapFragment;
 
     @Inject
@@ -66,9 +93,28 @@ public class MapFragmentPresenter {
     private boolean forceRefreshPoi = false;
     private boolean forceRefreshNotes = false;
 
+    private PoiClusterer poiClusterer;
+
+    // The state used by the computation of the markers off the main thread
+    private final MarkerDiffer markerDiffer = new MarkerDiffer();
+    private volatile ViewState viewState;
+    private volatile boolean markersCleared = false;
+    // The markers removed by the map without a diff, forgotten by the differ before the next diff
+    private final Queue<Long> removedPoiMarkers = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> removedNoteMarkers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Boxes of the last loads requested, the results of the older loads are dropped.
+     */
+    private volatile Box requestedPoisBox;
+    private volatile Box requestedNotesBox;
+    private PoiSnapshot loadedPois = PoiSnapshot.EMPTY;
+    private boolean clustersDisplayed = false;
+
     public MapFragmentPresenter(MapFragment mapFragment) {
         this.mapFragment = mapFragment;
         ((OsmTemplateApplication) mapFragment.getActivity().getApplication()).getOsmTemplateComponent().inject(this);
+        poiClusterer = new PoiClusterer(configManager.getZoomCluster(), CLUSTER_CELL_SIZE, MIN_CLUSTER_SIZE, MAX_POI_MARKERS);
     }
 
     public void register() {
@@ -126,16 +172,25 @@ public class MapFragmentPresenter {
             if (mapFragment.getZoomLevel() > 15) {
                 if (shouldReload(viewBoundingBox)) {
                     Timber.d("Reloading pois");
+                    updateViewState();
                     previousZoom = mapFragment.getZoomLevel();
                     triggerReloadPoiBoundingBox = enlarge(viewBoundingBox, 1.5);
-                    eventBus.post(new PleaseLoadPoisEvent(enlarge(viewBoundingBox, 1.75)));
-                    eventBus.post(new PleaseLoadNotesEvent(enlarge(viewBoundingBox, 1.75)));
+                    PleaseLoadPoisEvent poisRequest = new PleaseLoadPoisEvent(enlarge(viewBoundingBox, 1.75));
+                    PleaseLoadNotesEvent notesRequest = new PleaseLoadNotesEvent(enlarge(viewBoundingBox, 1.75));
+                    requestedPoisBox = poisRequest.getBox();
+                    requestedNotesBox = notesRequest.getBox();
+                    eventBus.post(poisRequest);
+                    eventBus.post(notesRequest);
+                } else {
+                    // The loaded Pois are still enough, only update the culling and the clusters
+                    refreshPoiMarkers();
                 }
             } else {
                 if (mapFragment.hasMarkers()) {
                     Timber.d("area displayed is too big, hiding pois");
                     previousZoom = mapFragment.getZoomLevel();
                     mapFragment.removeAllMarkers();
+                    markersCleared = true;
                 }
             }
         }
@@ -186,121 +241,288 @@ public class MapFragmentPresenter {
         loadPoisIfNeeded();
     }
 
-    @Subscribe(threadMode = ThreadMode.MAIN)
-    public void onPoisLoadedEvent(PoisLoadedEvent event) {
-        List<Poi> pois = event.getPois();
-        Timber.d("Received event PoisLoaded  : " + pois.size());
-        forceRefreshPoi = false;
+    /**
+     * State of the view used off the main thread to compute the markers to display.
+     */
+    private static class ViewState {
+        private final BoundingBox boundingBox;
+        private final float zoom;
+        private final Long keptPoiId;
+        private final List<Long> poiTypeHidden;
+
+        ViewState(BoundingBox boundingBox, float zoom, Long keptPoiId, List<Long> poiTypeHidden) {
+            this.boundingBox = boundingBox;
+            this.zoom = zoom;
+            this.keptPoiId = keptPoiId;
+            this.poiTypeHidden = poiTypeHidden;
+        }
+    }
 
-        List<Long> poiIds = new ArrayList<>(pois.size());
-        LocationMarker markerSelected = mapFragment.getMarkerSelected();
-        for (Poi poi : pois) {
-            poiIds.add(poi.getId());
-            LocationMarker locationMarker = mapFragment.getMarkersPoi().get(poi.getId());
-            boolean selected = false;
-            if (locationMarker == null) {
-                locationMarker = new LocationMarker(poi);
-
-                //is it the marker selected
-                if (mapFragment.getSelectedMarkerType().equals(LocationMarker.MarkerType.POI) && poi.getId().equals(mapFragment.getMarkerSelectedId())) {
-                    mapFragment.setMarkerSelected(locationMarker);
-                    selected = true;
-                } else if (mapFragment.getSelectedMarkerType().equals(LocationMarker.MarkerType.POI) && markerSelected != null && poi.getId().equals(markerSelected.getPoi().getId())) {
-                    selected = true;
-                }
+    /**
+     * Save the current state of the view for the computation of the markers.
+     */
+    private void updateViewState() {
+        BoundingBox viewBoundingBox = mapFragment.getViewBoundingBox();
+        if (viewBoundingBox == null) {
+            return;
+        }
+        Long keptPoiId = null;
+        if (mapFragment.getSelectedMarkerType().equals(LocationMarker.MarkerType.POI)) {
+            LocationMarker markerSelected = mapFragment.getMarkerSelected();
+            keptPoiId = markerSelected != null ? markerSelected.getPoi().getId() : mapFragment.getMarkerSelectedId();
+        }
+        viewState = new ViewState(enlarge(viewBoundingBox, CULLING_FACTOR), mapFragment.getZoomLevel(), keptPoiId,
+                new ArrayList<>(mapFragment.getPoiTypeHidden()));
+    }
 
-                //the poi in edition should be hidden
-                if (!(markerSelected != null && mapFragment.getMapMode() == MapMode.POI_POSITION_EDITION && markerSelected.equals(locationMarker)) && !poi.getToDelete()) {
-                    mapFragment.addMarker(locationMarker);
-                }
+    /**
+     * Signal that the marker of a Poi was removed from the map outside of a diff, so that it's added back
+     * if the Poi is displayed again.
+     *
+     * @param id The id of the Poi.
+     */
+    public void onPoiMarkerRemoved(Long id) {
+        removedPoiMarkers.add(id);
+    }
 
-            } else {
-                locationMarker.setPoi(poi);
+    /**
+     * Signal that the marker of a Note was removed from the map outside of a diff, so that it's added back
+     * if the Note is displayed again.
+     *
+     * @param id The id of the Note.
+     */
+    public void onNoteMarkerRemoved(Long id) {
+        removedNoteMarkers.add(id);
+    }
 
-                if (mapFragment.getSelectedMarkerType().equals(LocationMarker.MarkerType.POI) && (poi.getId().equals(mapFragment.getMarkerSelectedId()) || markerSelected != null && poi.getId().equals(markerSelected.getPoi().getId()))) {
-                    selected = true;
-                }
+    /**
+     * Cluster the loaded Pois again, for example after a change of the filters.
+     */
+    public void refreshPoiMarkers() {
+        updateViewState();
+        eventBus.post(new PleaseRefreshPoiMarkersEvent());
+    }
 
-                //update the detail banner data
-                if (selected && mapFragment.getMapMode() == MapMode.DETAIL_POI) {
-                    eventBus.post(new PleaseChangeValuesDetailPoiFragmentEvent(poi.getType().getName(), poi.getName(), poi.getWay()));
-                }
-            }
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onPoisLoadedEvent(PoisLoadedEvent event) {
+        if (event.getBox() != requestedPoisBox) {
+            Timber.v("Dropping the Pois of a superseded load");
+            return;
+        }
+        Timber.d("Received event PoisLoaded  : " + event.getPois().size());
+        synchronized (markerDiffer) {
+            loadedPois = event.getPois();
+            diffPoiMarkers(true);
+        }
+    }
 
-            // Draw the marker in the right color
-            Bitmap bitmap = mapFragment.getBitmapHandler().getMarkerBitmap(poi.getType(), Poi.computeState(selected, false, poi.getUpdated()));
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onPleaseRefreshPoiMarkersEvent(PleaseRefreshPoiMarkersEvent event) {
+        synchronized (markerDiffer) {
+            diffPoiMarkers(false);
+        }
+    }
 
-            if (bitmap != null) {
-                locationMarker.setIcon(new Icon(new BitmapDrawable(mapFragment.getResources(), bitmap)));
+    /**
+     * Compute off the main thread the Pois visible in the view, cluster the crowded ones and post the changes
+     * to apply to the markers. Must be called while holding the lock of the differ so that the diffs are posted
+     * in the order they are computed.
+     *
+     * @param reload Whether the Pois were reloaded from the database.
+     */
+    private void diffPoiMarkers(boolean reload) {
+        ViewState state = viewState;
+        if (state == null) {
+            return;
+        }
+        if (markersCleared) {
+            markersCleared = false;
+            markerDiffer.reset();
+            clustersDisplayed = false;
+        }
+        for (Long id = removedPoiMarkers.poll(); id != null; id = removedPoiMarkers.poll()) {
+            markerDiffer.forgetPoi(id);
+        }
+
+        PoiSnapshot pois = loadedPois;
+        int[] displayable = new int[pois.size()];
+        int displayableCount = 0;
+        for (int i = 0; i < pois.size(); i++) {
+            PoiType poiType = pois.getType(i);
+            if (poiType != null && !state.poiTypeHidden.contains(poiType.getId()) && !pois.isToDelete(i)) {
+                displayable[displayableCount++] = i;
             }
         }
 
-        mapFragment.removePoiMarkersNotIn(poiIds);
+        BoundingBox box = state.boundingBox;
+        PoiClusterer.Result result = poiClusterer.cluster(pois, Arrays.copyOf(displayable, displayableCount), box.getLatNorth(), box.getLonEast(),
+                box.getLatSouth(), box.getLonWest(), state.zoom, state.keptPoiId);
+        MarkerDiffer.Diff<Poi> diff = markerDiffer.diffPois(result.getPois());
 
-        //use to click on the selected marker when the activity resume
-        if (mapFragment.getMapMode() == MapMode.DEFAULT) {
-            mapFragment.reselectMarker();
+        if (!reload && diff.isEmpty() && result.getClusters().isEmpty() && !clustersDisplayed) {
+            return;
         }
+        clustersDisplayed = !result.getClusters().isEmpty();
 
-        if (mapFragment.getSelectedMarkerType().equals(LocationMarker.MarkerType.POI) && markerSelected == null) {
-            mapFragment.setMarkerSelectedId(-1L);
+        // Compute the bitmaps of the new markers here so that the main thread finds them in the cache
+        for (List<Poi> pois : Arrays.asList(diff.getAdded(), diff.getUpdated())) {
+            for (Poi poi : pois) {
+                mapFragment.getBitmapHandler().getMarkerBitmap(poi.getType(), Poi.computeState(false, false, poi.getUpdated()));
+            }
         }
 
-        mapFragment.invalidateMap();
+        eventBus.post(new PoiMarkersDiffEvent(diff, result.getClusters(), reload));
     }
 
     @Subscribe(threadMode = ThreadMode.MAIN)
-    public void onNotesLoadedEvent(NotesLoadedEvent event) {
-        Timber.d("Showing notes : " + event.getNotes().size());
-        List<Note> notes = event.getNotes();
-        forceRefreshNotes = false;
-        LocationMarker marker;
+    public void onPoiMarkersDiffEvent(PoiMarkersDiffEvent event) {
+        if (mapFragment.getZoomLevel() <= 15) {
+            // The markers were hidden while the diff was computed
+            markersCleared = true;
+            return;
+        }
+        MarkerDiffer.Diff<Poi> diff = event.getDiff();
+        if (event.isReload()) {
+            forceRefreshPoi = false;
+        }
 
-        List<Long> noteIds = new ArrayList<>(notes.size());
-        for (Note note : notes) {
-            noteIds.add(note.getId());
-            if (mapFragment.getNote(note.getId()) == null) {
+        LocationMarker markerSelected = mapFragment.getMarkerSelected();
+        boolean poiSelected = mapFragment.getSelectedMarkerType().equals(LocationMarker.MarkerType.POI);
+
+        mapFragment.removePoiMarkers(diff.getRemoved());
 
-                marker = new LocationMarker(note);
-                Bitmap bitmap;
+        for (List<Poi> pois : Arrays.asList(diff.getAdded(), diff.getUpdated())) {
+            for (Poi poi : pois) {
+                LocationMarker locationMarker = mapFragment.getMarkersPoi().get(poi.getId());
+                boolean selected = false;
+                if (locationMarker == null) {
+                    locationMarker = new LocationMarker(poi);
+
+                    //is it the marker selected
+                    if (poiSelected && poi.getId().equals(mapFragment.getMarkerSelectedId())) {
+                        mapFragment.setMarkerSelected(locationMarker);
+                        selected = true;
+                    } else if (poiSelected && markerSelected != null && poi.getId().equals(markerSelected.getPoi().getId())) {
+                        selected = true;
+                    }
+
+                    //the poi in edition should be hidden
+                    if (!(markerSelected != null && mapFragment.getMapMode() == MapMode.POI_POSITION_EDITION && markerSelected.equals(locationMarker))) {
+                        mapFragment.addMarker(locationMarker);
+                    }
 
-                if (mapFragment.getSelectedMarkerType().equals(LocationMarker.MarkerType.NOTE) && note.getId().equals(mapFragment.getMarkerSelectedId())) {
-                    mapFragment.setMarkerSelected(marker);
-                    bitmap = mapFragment.getBitmapHandler().getNoteBitmap(Note.computeState(note, true, false));
                 } else {
-                    bitmap = mapFragment.getBitmapHandler().getNoteBitmap(Note.computeState(note, false, false));
-                }
+                    locationMarker.setPoi(poi);
 
-                if (bitmap != null) {
-                    marker.setIcon(new Icon(new BitmapDrawable(mapFragment.getResources(), bitmap)));
-                }
-                mapFragment.addNote(marker);
-            } else {
-                boolean selected = false;
-                LocationMarker currentMarker = mapFragment.getNote(note.getId());
-                // refresh the note inside the marker the data may have changed
-                currentMarker.setNote(note);
-                //if it's the selected marker refresh the banner view
-
-                if (mapFragment.getSelectedMarkerType().equals(LocationMarker.MarkerType.NOTE) && mapFragment.getMarkerSelected() != null && note.getId().equals(mapFragment.getMarkerSelected().getNote().getId())) {
-                    //detailNoteFragment.setNote(mapFragment.getMarkerSelected().getNote());
-                    selected = true;
-                }
+                    if (poiSelected && (poi.getId().equals(mapFragment.getMarkerSelectedId()) || markerSelected != null && poi.getId().equals(markerSelected.getPoi().getId()))) {
+                        selected = true;
+                    }
 
-                //update the detail banner data
-                if (selected && mapFragment.getMapMode() == MapMode.DETAIL_NOTE) {
-                    eventBus.post(new PleaseChangeValuesDetailNoteFragmentEvent(note));
+                    //update the detail banner data
+                    if (selected && mapFragment.getMapMode() == MapMode.DETAIL_POI) {
+                        eventBus.post(new PleaseChangeValuesDetailPoiFragmentEvent(poi.getType().getName(), poi.getName(), poi.getWay()));
+                    }
                 }
 
-                // refresh the icon
-                Bitmap bitmap = mapFragment.getBitmapHandler().getNoteBitmap(Note.computeState(note, selected, false));
+                // Draw the marker in the right color
+                Bitmap bitmap = mapFragment.getBitmapHandler().getMarkerBitmap(poi.getType(), Poi.computeState(selected, false, poi.getUpdated()));
+
                 if (bitmap != null) {
-                    currentMarker.setIcon(new Icon(new BitmapDrawable(mapFragment.getResources(), bitmap)));
+                    locationMarker.setIcon(new Icon(new BitmapDrawable(mapFragment.getResources(), bitmap)));
                 }
             }
         }
 
-        mapFragment.removeNoteMarkersNotIn(noteIds);
+        mapFragment.setClusterMarkers(event.getClusters());
+
+        if (event.isReload()) {
+            //use to click on the selected marker when the activity resume
+            if (mapFragment.getMapMode() == MapMode.DEFAULT) {
+                mapFragment.reselectMarker();
+            }
+
+            if (poiSelected && markerSelected == null) {
+                mapFragment.setMarkerSelectedId(-1L);
+            }
+        }
+
+        mapFragment.invalidateMap();
+    }
+
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onNotesLoadedEvent(NotesLoadedEvent event) {
+        if (event.getBox() != requestedNotesBox) {
+            Timber.v("Dropping the notes of a superseded load");
+            return;
+        }
+        Timber.d("Showing notes : " + event.getNotes().size());
+        synchronized (markerDiffer) {
+            if (markersCleared) {
+                markersCleared = false;
+                markerDiffer.reset();
+                clustersDisplayed = false;
+            }
+            for (Long id = removedNoteMarkers.poll(); id != null; id = removedNoteMarkers.poll()) {
+                markerDiffer.forgetNote(id);
+            }
+            eventBus.post(new NoteMarkersDiffEvent(markerDiffer.diffNotes(event.getNotes())));
+        }
+    }
+
+    @Subscribe(threadMode = ThreadMode.MAIN)
+    public void onNoteMarkersDiffEvent(NoteMarkersDiffEvent event) {
+        if (mapFragment.getZoomLevel() <= 15) {
+            // The markers were hidden while the diff was computed
+            markersCleared = true;
+            return;
+        }
+        MarkerDiffer.Diff<Note> diff = event.getDiff();
+        forceRefreshNotes = false;
+
+        mapFragment.removeNoteMarkers(diff.getRemoved());
+
+        for (List<Note> notes : Arrays.asList(diff.getAdded(), diff.getUpdated())) {
+            for (Note note : notes) {
+                if (mapFragment.getNote(note.getId()) == null) {
+
+                    LocationMarker marker = new LocationMarker(note);
+                    Bitmap bitmap;
+
+                    if (mapFragment.getSelectedMarkerType().equals(LocationMarker.MarkerType.NOTE) && note.getId().equals(mapFragment.getMarkerSelectedId())) {
+                        mapFragment.setMarkerSelected(marker);
+                        bitmap = mapFragment.getBitmapHandler().getNoteBitmap(Note.computeState(note, true, false));
+                    } else {
+                        bitmap = mapFragment.getBitmapHandler().getNoteBitmap(Note.computeState(note, false, false));
+                    }
+
+                    if (bitmap != null) {
+                        marker.setIcon(new Icon(new BitmapDrawable(mapFragment.getResources(), bitmap)));
+                    }
+                    mapFragment.addNote(marker);
+                } else {
+                    boolean selected = false;
+                    LocationMarker currentMarker = mapFragment.getNote(note.getId());
+                    // refresh the note inside the marker the data may have changed
+                    currentMarker.setNote(note);
+                    //if it's the selected marker refresh the banner view
+
+                    if (mapFragment.getSelectedMarkerType().equals(LocationMarker.MarkerType.NOTE) && mapFragment.getMarkerSelected() != null && note.getId().equals(mapFragment.getMarkerSelected().getNote().getId())) {
+                        selected = true;
+                    }
+
+                    //update the detail banner data
+                    if (selected && mapFragment.getMapMode() == MapMode.DETAIL_NOTE) {
+                        eventBus.post(new PleaseChangeValuesDetailNoteFragmentEvent(note));
+                    }
+
+                    // refresh the icon
+                    Bitmap bitmap = mapFragment.getBitmapHandler().getNoteBitmap(Note.computeState(note, selected, false));
+                    if (bitmap != null) {
+                        currentMarker.setIcon(new Icon(new BitmapDrawable(mapFragment.getResources(), bitmap)));
+                    }
+                }
+            }
+        }
 
         if ((mapFragment.getMapMode() == MapMode.DEFAULT || mapFragment.getMapMode() == MapMode.POI_CREATION)) {
             mapFragment.reselectMarker();
@@ -0,0 +1,214 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.map;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import io.mapsquare.osmcontributor.core.model.Note;
+import io.mapsquare.osmcontributor.core.model.Poi;
+
+/**
+ * Compute off the main thread the changes to apply to the markers of the map.
+ * <br/>
+ * The differ remembers a hash of the displayed fields of each displayed Poi and Note, so that a new result set
+ * is reduced to the objects added, modified or removed since the previous one. The markers of the unchanged
+ * objects don't need to be touched. The hashes are computed from the fields directly and kept in place in the
+ * entries of the displayed objects, so that a diff only allocates for the objects added.
+ * <br/>
+ * The markers removed from the map without a diff must be forgotten with {@link #forgetPoi(Long)} and
+ * {@link #forgetNote(Long)}, otherwise they are not added back when their objects are displayed again.
+ */
+public class MarkerDiffer {
+
+    /**
+     * Changes to apply to the markers.
+     *
+     * @param <T> Type of the objects displayed by the markers.
+     */
+    public static class Diff<T> {
+        private final List<T> added = new ArrayList<>();
+        private final List<T> updated = new ArrayList<>();
+        private final List<Long> removed = new ArrayList<>();
+
+        /**
+         * @return The objects which weren't displayed yet.
+         */
+        public List<T> getAdded() {
+            return added;
+        }
+
+        /**
+         * @return The displayed objects which changed.
+         */
+        public List<T> getUpdated() {
+            return updated;
+        }
+
+        /**
+         * @return The ids of the objects which must not be displayed anymore.
+         */
+        public List<Long> getRemoved() {
+            return removed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    /**
+     * Identity and displayed state of the objects of a type.
+     */
+    private interface Hasher<T> {
+        Long getId(T item);
+
+        long hash(T item);
+    }
+
+    private static final Hasher<Poi> POI_HASHER = new Hasher<Poi>() {
+        @Override
+        public Long getId(Poi poi) {
+            return poi.getId();
+        }
+
+        @Override
+        public long hash(Poi poi) {
+            // The version changes with the edits of the backend, the other fields with the local edits
+            long hash = mix(0, poi.getVersion());
+            hash = mix(hash, poi.getUpdated());
+            hash = mix(hash, poi.getLatitude());
+            hash = mix(hash, poi.getLongitude());
+            hash = mix(hash, poi.getType() != null ? poi.getType().getId() : null);
+            return mix(hash, poi.getName());
+        }
+    };
+
+    private static final Hasher<Note> NOTE_HASHER = new Hasher<Note>() {
+        @Override
+        public Long getId(Note note) {
+            return note.getId();
+        }
+
+        @Override
+        public long hash(Note note) {
+            long hash = mix(0, note.getStatus());
+            hash = mix(hash, note.getUpdated());
+            hash = 31 * hash + note.getComments().size();
+            hash = mix(hash, note.getLatitude());
+            return mix(hash, note.getLongitude());
+        }
+    };
+
+    /**
+     * Hash of a displayed object, updated in place by each diff.
+     */
+    private static class Displayed {
+        private long hash;
+        private int generation;
+    }
+
+    private final Map<Long, Displayed> displayedPois = new HashMap<>();
+    private final Map<Long, Displayed> displayedNotes = new HashMap<>();
+    private int generation;
+
+    /**
+     * Compute the changes between the displayed Pois and the Pois to display, which become the displayed ones.
+     *
+     * @param pois The Pois to display.
+     * @return The changes to apply to the Poi markers.
+     */
+    public synchronized Diff<Poi> diffPois(List<Poi> pois) {
+        return diff(displayedPois, pois, POI_HASHER);
+    }
+
+    /**
+     * Compute the changes between the displayed Notes and the Notes to display, which become the displayed ones.
+     *
+     * @param notes The Notes to display.
+     * @return The changes to apply to the Note markers.
+     */
+    public synchronized Diff<Note> diffNotes(List<Note> notes) {
+        return diff(displayedNotes, notes, NOTE_HASHER);
+    }
+
+    /**
+     * Forget a Poi whose marker was removed from the map outside of a diff.
+     *
+     * @param id The id of the Poi.
+     */
+    public synchronized void forgetPoi(Long id) {
+        displayedPois.remove(id);
+    }
+
+    /**
+     * Forget a Note whose marker was removed from the map outside of a diff.
+     *
+     * @param id The id of the Note.
+     */
+    public synchronized void forgetNote(Long id) {
+        displayedNotes.remove(id);
+    }
+
+    /**
+     * Forget the displayed objects, to call when the markers are removed from the map.
+     */
+    public synchronized void reset() {
+        displayedPois.clear();
+        displayedNotes.clear();
+    }
+
+    private <T> Diff<T> diff(Map<Long, Displayed> displayed, List<T> items, Hasher<T> hasher) {
+        Diff<T> diff = new Diff<>();
+        int current = ++generation;
+        for (T item : items) {
+            Long id = hasher.getId(item);
+            long hash = hasher.hash(item);
+            Displayed previous = displayed.get(id);
+            if (previous == null) {
+                previous = new Displayed();
+                displayed.put(id, previous);
+                diff.getAdded().add(item);
+            } else if (previous.hash != hash) {
+                diff.getUpdated().add(item);
+            }
+            previous.hash = hash;
+            previous.generation = current;
+        }
+        for (Iterator<Map.Entry<Long, Displayed>> iterator = displayed.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Long, Displayed> entry = iterator.next();
+            if (entry.getValue().generation != current) {
+                diff.getRemoved().add(entry.getKey());
+                iterator.remove();
+            }
+        }
+        return diff;
+    }
+
+    private static long mix(long hash, Object value) {
+        return 31 * hash + (value == null ? 0 : value.hashCode());
+    }
+
+    private static long mix(long hash, Double value) {
+        return 31 * hash + (value == null ? 0 : Double.doubleToLongBits(value));
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.map;
+
+import android.app.Application;
+
+import com.mapbox.mapboxsdk.geometry.BoundingBox;
+import com.squareup.okhttp.OkHttpClient;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import io.mapsquare.osmcontributor.core.ConfigManager;
+import io.mapsquare.osmcontributor.map.events.OfflineMapPackagedEvent;
+import io.mapsquare.osmcontributor.map.events.PleasePackageOfflineMapEvent;
+import io.mapsquare.osmcontributor.tileslayer.MBTilesPackager;
+import io.mapsquare.osmcontributor.tileslayer.WebSourceTileLayer;
+import timber.log.Timber;
+
+/**
+ * Save the OpenStreetMap tiles of an area into an MBTiles file of the application, used as the map
+ * of the template flavor instead of the web tiles.
+ */
+@Singleton
+public class OfflineMapManager {
+
+    private static final String OFFLINE_MBTILES_FILE = "offline.mbtiles";
+
+    /**
+     * Number of tiles downloaded in parallel, the same as the web tile layers.
+     */
+    private static final int MAX_PARALLEL_DOWNLOADS = 4;
+
+    EventBus bus;
+    Application application;
+    ConfigManager configManager;
+
+    private final MBTilesPackager packager;
+    private final AtomicBoolean packaging = new AtomicBoolean();
+
+    @Inject
+    public OfflineMapManager(EventBus bus, Application application, ConfigManager configManager, OkHttpClient okHttpClient) {
+        this.bus = bus;
+        this.application = application;
+        this.configManager = configManager;
+        this.packager = new MBTilesPackager(okHttpClient, MAX_PARALLEL_DOWNLOADS);
+    }
+
+    /**
+     * @return The MBTiles file of the saved area, it may not exist.
+     */
+    public File getOfflineMapFile() {
+        return new File(application.getFilesDir(), OFFLINE_MBTILES_FILE);
+    }
+
+    /**
+     * @return Whether an area was saved.
+     */
+    public boolean hasOfflineMap() {
+        return getOfflineMapFile().exists();
+    }
+
+    /**
+     * @return Whether an area is being saved.
+     */
+    public boolean isPackaging() {
+        return packaging.get();
+    }
+
+    @Subscribe(threadMode = ThreadMode.ASYNC)
+    public void onPleasePackageOfflineMapEvent(PleasePackageOfflineMapEvent event) {
+        // The packagings of the same file can't run together, the first one wins
+        if (!packaging.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            WebSourceTileLayer source = new WebSourceTileLayer("openstreetmap", configManager.getMapUrl(), configManager.getZoomMaxProvider());
+            source.setName("OpenStreetMap");
+            source.setAttribution("© OpenStreetMap Contributors");
+
+            // Packaging the same area again completes the file with the missing tiles
+            BoundingBox box = event.getBoundingBox();
+            MBTilesPackager.Result result = packager.pack(source, getOfflineMapFile(), box.getLatNorth(), box.getLonEast(),
+                    box.getLatSouth(), box.getLonWest(), event.getMinZoom(), configManager.getZoomMaxProvider(), null);
+            Timber.d("Offline map packaged: %s", result);
+            bus.post(new OfflineMapPackagedEvent(result.isComplete()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            packaging.set(false);
+        }
+    }
+}
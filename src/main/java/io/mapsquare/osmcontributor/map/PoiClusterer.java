@@ -0,0 +1,357 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.map;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.mapsquare.osmcontributor.core.database.PoiSnapshot;
+import io.mapsquare.osmcontributor.core.model.Poi;
+
+/**
+ * Select the Pois to display as markers in a view.
+ * <br/>
+ * The Pois outside of the view are culled. Under the cluster zoom level, or when more Pois than
+ * {@link #getMaxMarkers()} are visible, the Pois are grouped in a grid of cells of {@link #getCellSize()}
+ * pixels and each crowded cell is displayed as a single {@link Cluster}. The number of markers on
+ * the map is thus bounded by the size of the screen whatever the density of the data: the cells are enlarged
+ * when needed so that the view contains at most about {@link #getMaxMarkers()} markers.
+ */
+public class PoiClusterer {
+
+    /**
+     * Size in pixels of the tiles of the map, used to convert a zoom level in pixels.
+     */
+    private static final int TILE_SIZE = 256;
+
+    private static final double MAX_LATITUDE = 85.0511;
+
+    private final int zoomCluster;
+    private final int cellSize;
+    private final int minClusterSize;
+    private final int maxMarkers;
+
+    /**
+     * @param zoomCluster    The zoom level under which the Pois are clustered.
+     * @param cellSize       The size in pixels of the cells of the clustering grid.
+     * @param minClusterSize The minimum number of Pois in a cell to make a cluster.
+     * @param maxMarkers     The maximum number of single Pois displayed before clustering at any zoom level.
+     */
+    public PoiClusterer(int zoomCluster, int cellSize, int minClusterSize, int maxMarkers) {
+        this.zoomCluster = zoomCluster;
+        this.cellSize = cellSize;
+        this.minClusterSize = minClusterSize;
+        this.maxMarkers = maxMarkers;
+    }
+
+    public int getZoomCluster() {
+        return zoomCluster;
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public int getMaxMarkers() {
+        return maxMarkers;
+    }
+
+    /**
+     * Group of nearby Pois displayed as a single marker.
+     */
+    public static class Cluster {
+        private final long cell;
+        private int size;
+        private double latitudeSum;
+        private double longitudeSum;
+        private double north = -Double.MAX_VALUE;
+        private double east = -Double.MAX_VALUE;
+        private double south = Double.MAX_VALUE;
+        private double west = Double.MAX_VALUE;
+
+        Cluster(long cell) {
+            this.cell = cell;
+        }
+
+        void add(double latitude, double longitude) {
+            size++;
+            latitudeSum += latitude;
+            longitudeSum += longitude;
+            north = Math.max(north, latitude);
+            south = Math.min(south, latitude);
+            east = Math.max(east, longitude);
+            west = Math.min(west, longitude);
+        }
+
+        /**
+         * @return The identifier of the grid cell of the cluster, stable while the zoom level and the view size don't change.
+         */
+        public long getCell() {
+            return cell;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public double getLatitude() {
+            return latitudeSum / size;
+        }
+
+        public double getLongitude() {
+            return longitudeSum / size;
+        }
+
+        public double getNorth() {
+            return north;
+        }
+
+        public double getEast() {
+            return east;
+        }
+
+        public double getSouth() {
+            return south;
+        }
+
+        public double getWest() {
+            return west;
+        }
+    }
+
+    /**
+     * Markers to display for a view.
+     */
+    public static class Result {
+        private final List<Poi> pois;
+        private final List<Cluster> clusters;
+
+        Result(List<Poi> pois, List<Cluster> clusters) {
+            this.pois = pois;
+            this.clusters = clusters;
+        }
+
+        /**
+         * @return The Pois to display as single markers.
+         */
+        public List<Poi> getPois() {
+            return pois;
+        }
+
+        public List<Cluster> getClusters() {
+            return clusters;
+        }
+    }
+
+    /**
+     * Access by index to the Pois to cluster, so that the clustering reads the coordinates without creating
+     * a Poi object for each of them.
+     */
+    private interface Points {
+        int size();
+
+        boolean hasCoordinates(int index);
+
+        double getLatitude(int index);
+
+        double getLongitude(int index);
+
+        boolean hasId(int index, Long id);
+
+        Poi toPoi(int index);
+    }
+
+    /**
+     * Compute the markers to display for a view.
+     *
+     * @param pois      The loaded Pois.
+     * @param north     North bound of the view.
+     * @param east      East bound of the view.
+     * @param south     South bound of the view.
+     * @param west      West bound of the view.
+     * @param zoom      The zoom level of the map.
+     * @param keptPoiId Id of a Poi which must be displayed as a single marker even if it's crowded or out of
+     *                  the view, may be null.
+     * @return The single Pois and the clusters to display.
+     */
+    public Result cluster(Collection<Poi> pois, double north, double east, double south, double west, float zoom, Long keptPoiId) {
+        final List<Poi> list = new ArrayList<>(pois);
+        return cluster(new Points() {
+            @Override
+            public int size() {
+                return list.size();
+            }
+
+            @Override
+            public boolean hasCoordinates(int index) {
+                return list.get(index).getLatitude() != null && list.get(index).getLongitude() != null;
+            }
+
+            @Override
+            public double getLatitude(int index) {
+                return list.get(index).getLatitude();
+            }
+
+            @Override
+            public double getLongitude(int index) {
+                return list.get(index).getLongitude();
+            }
+
+            @Override
+            public boolean hasId(int index, Long id) {
+                return id.equals(list.get(index).getId());
+            }
+
+            @Override
+            public Poi toPoi(int index) {
+                return list.get(index);
+            }
+        }, north, east, south, west, zoom, keptPoiId);
+    }
+
+    /**
+     * Compute the markers to display for a view from a snapshot of the loaded Pois.
+     * <br/>
+     * Only the Pois displayed as single markers are materialized, see {@link PoiSnapshot#toPoi(int)}.
+     *
+     * @param snapshot  The loaded Pois.
+     * @param indexes   The indexes in the snapshot of the Pois to display.
+     * @param north     North bound of the view.
+     * @param east      East bound of the view.
+     * @param south     South bound of the view.
+     * @param west      West bound of the view.
+     * @param zoom      The zoom level of the map.
+     * @param keptPoiId Id of a Poi which must be displayed as a single marker even if it's crowded or out of
+     *                  the view, may be null.
+     * @return The single Pois and the clusters to display.
+     */
+    public Result cluster(final PoiSnapshot snapshot, final int[] indexes, double north, double east, double south, double west, float zoom, Long keptPoiId) {
+        return cluster(new Points() {
+            @Override
+            public int size() {
+                return indexes.length;
+            }
+
+            @Override
+            public boolean hasCoordinates(int index) {
+                return true;
+            }
+
+            @Override
+            public double getLatitude(int index) {
+                return snapshot.getLatitude(indexes[index]);
+            }
+
+            @Override
+            public double getLongitude(int index) {
+                return snapshot.getLongitude(indexes[index]);
+            }
+
+            @Override
+            public boolean hasId(int index, Long id) {
+                return snapshot.getId(indexes[index]) == id;
+            }
+
+            @Override
+            public Poi toPoi(int index) {
+                return snapshot.toPoi(indexes[index]);
+            }
+        }, north, east, south, west, zoom, keptPoiId);
+    }
+
+    private Result cluster(Points points, double north, double east, double south, double west, float zoom, Long keptPoiId) {
+        int[] visible = new int[points.size()];
+        int visibleCount = 0;
+        for (int i = 0; i < points.size(); i++) {
+            if (!points.hasCoordinates(i)) {
+                continue;
+            }
+            double latitude = points.getLatitude(i);
+            double longitude = points.getLongitude(i);
+            if (latitude <= north && latitude >= south && longitude <= east && longitude >= west
+                    || keptPoiId != null && points.hasId(i, keptPoiId)) {
+                visible[visibleCount++] = i;
+            }
+        }
+
+        if (zoom >= zoomCluster && visibleCount <= maxMarkers) {
+            List<Poi> singles = new ArrayList<>(visibleCount);
+            for (int k = 0; k < visibleCount; k++) {
+                singles.add(points.toPoi(visible[k]));
+            }
+            return new Result(singles, Collections.<Cluster>emptyList());
+        }
+
+        double worldSize = TILE_SIZE * Math.pow(2, zoom);
+        // Each cell gives either a cluster or less than minClusterSize single markers: grow the cells
+        // when the view contains too many of them to stay around maxMarkers
+        double viewWidth = longitudeToPixel(east, worldSize) - longitudeToPixel(west, worldSize);
+        double viewHeight = latitudeToPixel(south, worldSize) - latitudeToPixel(north, worldSize);
+        int maxCells = Math.max(1, maxMarkers / Math.max(1, minClusterSize - 1));
+        double size = Math.max(cellSize, Math.sqrt(viewWidth * viewHeight / maxCells));
+        Map<Long, Cluster> cells = new LinkedHashMap<>();
+        // The cell of each visible Poi, null for the kept Poi
+        Cluster[] visibleCells = new Cluster[visibleCount];
+        for (int k = 0; k < visibleCount; k++) {
+            int i = visible[k];
+            if (keptPoiId != null && points.hasId(i, keptPoiId)) {
+                continue;
+            }
+            double latitude = points.getLatitude(i);
+            double longitude = points.getLongitude(i);
+            long x = (long) Math.floor(longitudeToPixel(longitude, worldSize) / size);
+            long y = (long) Math.floor(latitudeToPixel(latitude, worldSize) / size);
+            Long cell = (x << 32) | (y & 0xffffffffL);
+            Cluster cluster = cells.get(cell);
+            if (cluster == null) {
+                cluster = new Cluster(cell);
+                cells.put(cell, cluster);
+            }
+            cluster.add(latitude, longitude);
+            visibleCells[k] = cluster;
+        }
+
+        List<Poi> singles = new ArrayList<>();
+        for (int k = 0; k < visibleCount; k++) {
+            if (visibleCells[k] == null || visibleCells[k].size() < minClusterSize) {
+                singles.add(points.toPoi(visible[k]));
+            }
+        }
+        List<Cluster> clusters = new ArrayList<>();
+        for (Cluster cluster : cells.values()) {
+            if (cluster.size() >= minClusterSize) {
+                clusters.add(cluster);
+            }
+        }
+        return new Result(singles, clusters);
+    }
+
+    static double longitudeToPixel(double longitude, double worldSize) {
+        return (longitude + 180) / 360 * worldSize;
+    }
+
+    static double latitudeToPixel(double latitude, double worldSize) {
+        double sin = Math.sin(Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude))));
+        return (0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * worldSize;
+    }
+}
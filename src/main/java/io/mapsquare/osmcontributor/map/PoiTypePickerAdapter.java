@@ -32,7 +32,6 @@ import android.widget.Filterable;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -42,12 +41,16 @@ import org.greenrobot.eventbus.EventBus;
 import io.mapsquare.osmcontributor.R;
 import io.mapsquare.osmcontributor.core.model.PoiType;
 import io.mapsquare.osmcontributor.map.events.NewPoiTypeSelected;
+import io.mapsquare.osmcontributor.type.adapter.PoiTypeAdapter;
+import io.mapsquare.osmcontributor.utils.Function;
+import io.mapsquare.osmcontributor.utils.SearchIndex;
 
 public class PoiTypePickerAdapter extends BaseAdapter implements Filterable {
 
     private List<PoiType> originalValues = null;
     private List<PoiType> filteredValues = null;
     private List<PoiType> lastUseValues = null;
+    private SearchIndex<PoiType> searchIndex = null;
     private LayoutInflater inflater;
     private ItemFilter filter = new ItemFilter();
     private EditText editText;
@@ -122,12 +125,14 @@ public class PoiTypePickerAdapter extends BaseAdapter implements Filterable {
     public void addAll(Collection<PoiType> poiTypes) {
         originalValues.clear();
         originalValues.addAll(poiTypes);
+        invalidateSearchIndex();
         notifyDataSetChanged();
     }
 
     public void addAllLastUse(Collection<PoiType> poiTypes) {
         lastUseValues.clear();
         lastUseValues.addAll(poiTypes);
+        invalidateSearchIndex();
         notifyDataSetChanged();
     }
 
@@ -204,33 +209,37 @@ public class PoiTypePickerAdapter extends BaseAdapter implements Filterable {
         return filter;
     }
 
+    /**
+     * The index of the types, built on the first search after the types change.
+     */
+    private synchronized SearchIndex<PoiType> getSearchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new SearchIndex<>(originalValues, new Function<PoiType, String>() {
+                @Override
+                public String apply(PoiType poiType) {
+                    return PoiTypeAdapter.searchableText(poiType);
+                }
+            });
+        }
+        return searchIndex;
+    }
+
+    private synchronized void invalidateSearchIndex() {
+        searchIndex = null;
+    }
+
     private class ItemFilter extends Filter {
         @Override
         protected FilterResults performFiltering(CharSequence constraint) {
-
-            String filterString = constraint.toString().toLowerCase();
-
-
             FilterResults results = new FilterResults();
 
-            final List<PoiType> list = originalValues;
-
-            int count = list.size();
-            final ArrayList<PoiType> newValuesList = new ArrayList<>(count);
-
-            if (filterString.isEmpty()) {
+            if (SearchIndex.normalize(constraint).isEmpty()) {
                 results.values = lastUseValues;
                 results.count = lastUseValues.size();
                 return results;
             }
 
-            for (int i = 0; i < count; i++) {
-                String filterableString = list.get(i).getKeyWords() + " " + list.get(i).getName() + " " + list.get(i).getTechnicalName();
-                if (filterableString.toLowerCase().contains(filterString) || filterableString.toLowerCase().equals(filterString)) {
-                    newValuesList.add(list.get(i));
-                }
-            }
-
+            List<PoiType> newValuesList = getSearchIndex().search(constraint);
             results.values = newValuesList;
             results.count = newValuesList.size();
 
@@ -240,7 +249,7 @@ public class PoiTypePickerAdapter extends BaseAdapter implements Filterable {
         @SuppressWarnings("unchecked")
         @Override
         protected void publishResults(CharSequence constraint, FilterResults results) {
-            filteredValues = (ArrayList<PoiType>) results.values;
+            filteredValues = (List<PoiType>) results.values;
             notifyDataSetChanged();
         }
 
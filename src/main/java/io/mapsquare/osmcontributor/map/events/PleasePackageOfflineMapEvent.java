@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.map.events;
+
+import com.mapbox.mapboxsdk.geometry.BoundingBox;
+
+public class PleasePackageOfflineMapEvent {
+    private final BoundingBox boundingBox;
+    private final int minZoom;
+
+    public PleasePackageOfflineMapEvent(BoundingBox boundingBox, int minZoom) {
+        this.boundingBox = boundingBox;
+        this.minZoom = minZoom;
+    }
+
+    public BoundingBox getBoundingBox() {
+        return boundingBox;
+    }
+
+    public int getMinZoom() {
+        return minZoom;
+    }
+}
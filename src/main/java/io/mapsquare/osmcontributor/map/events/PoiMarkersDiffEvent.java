@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.map.events;
+
+import java.util.List;
+
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.map.MarkerDiffer;
+import io.mapsquare.osmcontributor.map.PoiClusterer;
+
+public class PoiMarkersDiffEvent {
+    private final MarkerDiffer.Diff<Poi> diff;
+    private final List<PoiClusterer.Cluster> clusters;
+    private final boolean reload;
+
+    public PoiMarkersDiffEvent(MarkerDiffer.Diff<Poi> diff, List<PoiClusterer.Cluster> clusters, boolean reload) {
+        this.diff = diff;
+        this.clusters = clusters;
+        this.reload = reload;
+    }
+
+    public MarkerDiffer.Diff<Poi> getDiff() {
+        return diff;
+    }
+
+    public List<PoiClusterer.Cluster> getClusters() {
+        return clusters;
+    }
+
+    /**
+     * @return Whether the diff follows a reload of the Pois from the database.
+     */
+    public boolean isReload() {
+        return reload;
+    }
+}
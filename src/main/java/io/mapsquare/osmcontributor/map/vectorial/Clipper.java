@@ -21,37 +21,19 @@ package io.mapsquare.osmcontributor.map.vectorial;
 import android.graphics.Rect;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 public class Clipper {
 
-    private interface Function1<R, P> {
-        R apply(P param);
-    }
-
-
-    private static class Edge {
-        final XY pointA, pointB;
-        final Function1<Boolean, XY> insideCheck;
-
-        public Edge(XY pointA, XY pointB, Function1<Boolean, XY> insideCheck) {
-            this.pointA = pointA;
-            this.pointB = pointB;
-            this.insideCheck = insideCheck;
-        }
-
-
-        @Override
-        public String toString() {
-            return "Edge{" +
-                    "pointA=" + pointA +
-                    ", pointB=" + pointB +
-                    '}';
-        }
-    }
+    private static final int TOP = 0;
+    private static final int RIGHT = 1;
+    private static final int BOTTOM = 2;
+    private static final int LEFT = 3;
 
-    Edge[] edges = new Edge[4];
+    private double left;
+    private double top;
+    private double right;
+    private double bottom;
 
     public Clipper(Rect clippingBounds) {
         setClippingBounds(clippingBounds);
@@ -61,39 +43,24 @@ public class Clipper {
 
     }
 
-    public void setClippingBounds(final Rect clippingBounds) {
-        edges[0] = new Edge(new XY(clippingBounds.left, clippingBounds.top), new XY(clippingBounds.right, clippingBounds.top), new Function1<Boolean, XY>() {
-            @Override
-            public Boolean apply(XY param) {
-                return param.getY() > clippingBounds.top;
-            }
-        });
-        edges[1] = new Edge(new XY(clippingBounds.right, clippingBounds.top), new XY(clippingBounds.right, clippingBounds.bottom), new Function1<Boolean, XY>() {
-            @Override
-            public Boolean apply(XY param) {
-                return param.getX() < clippingBounds.right;
-            }
-        });
-        edges[2] = new Edge(new XY(clippingBounds.right, clippingBounds.bottom), new XY(clippingBounds.left, clippingBounds.bottom), new Function1<Boolean, XY>() {
-            @Override
-            public Boolean apply(XY param) {
-                return param.getY() < clippingBounds.bottom;
-            }
-        });
-        edges[3] = new Edge(new XY(clippingBounds.left, clippingBounds.bottom), new XY(clippingBounds.left, clippingBounds.top), new Function1<Boolean, XY>() {
-            @Override
-            public Boolean apply(XY param) {
-                return param.getX() > clippingBounds.left;
-            }
-        });
+    public void setClippingBounds(Rect clippingBounds) {
+        setClippingBounds(clippingBounds.left, clippingBounds.top, clippingBounds.right, clippingBounds.bottom);
     }
 
+    public void setClippingBounds(double left, double top, double right, double bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
 
     /**
-     * Lists used in the algorithm, we use the same lists for each invocation of the clipping method to minimise memory allocations.
+     * Buffers used in the algorithm, we use the same buffers for each invocation of the clipping method
+     * to avoid memory allocations.
      */
-    private List<XY> resultList = new ArrayList<>(100);
-    private List<XY> tmpList = new ArrayList<>(100);
+    private PointBuffer resultBuffer = new PointBuffer(100);
+    private PointBuffer tmpBuffer = new PointBuffer(100);
+    private PointBuffer inputBuffer = new PointBuffer(100);
 
 
     /**
@@ -104,40 +71,100 @@ public class Clipper {
      *
      * @param pointsToClip list of XY points forming a line or polygon to clip
      * @param isPolygon
-     * @return list of XY points forming the clipped line or polygon, for memory allocations reasons,
-     * this list will be modified on the next call to the clip method, be sure you make a copy of it
-     * if you need to keep it !
+     * @return new list of XY points forming the clipped line or polygon. Prefer
+     * {@link #clip(PointBuffer, boolean)} when drawing, it doesn't allocate.
      */
     public List<XY> clip(List<XY> pointsToClip, boolean isPolygon) {
-        resultList.clear();
-        resultList.addAll(pointsToClip);
-        for (Edge edge : edges) {
-            tmpList.clear();
-            tmpList.addAll(resultList);
-            resultList.clear();
-            if (tmpList.isEmpty()) {
-                return Collections.emptyList();
-            }
-            XY s;
-            if (isPolygon) {
-                s = tmpList.get(tmpList.size() - 1);
-            } else {
-                s = tmpList.get(0);
+        inputBuffer.clear();
+        for (XY xy : pointsToClip) {
+            inputBuffer.add(xy.getX(), xy.getY());
+        }
+        PointBuffer clipped = clip(inputBuffer, isPolygon);
+        List<XY> result = new ArrayList<>(clipped.size());
+        for (int i = 0; i < clipped.size(); i++) {
+            result.add(new XY(clipped.getX(i), clipped.getY(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Sutherland–Hodgman algorithm for clipping polygons.
+     * Clip the polygon or line to the Rect of the Clipper without allocating memory.
+     *
+     * This method is not threadsafe
+     *
+     * @param pointsToClip buffer of the points forming a line or polygon to clip, it is not modified
+     * @param isPolygon
+     * @return buffer of the points forming the clipped line or polygon, for memory allocations reasons,
+     * this buffer will be modified on the next call to the clip method, be sure you make a copy of it
+     * if you need to keep it !
+     */
+    public PointBuffer clip(PointBuffer pointsToClip, boolean isPolygon) {
+        PointBuffer input = pointsToClip;
+        for (int edge = TOP; edge <= LEFT; edge++) {
+            // The output of an edge is the input of the next one, swap the buffers
+            PointBuffer output = input == resultBuffer ? tmpBuffer : resultBuffer;
+            output.clear();
+            int size = input.size();
+            if (size == 0) {
+                return output;
             }
-            for (XY e : tmpList) {
-                if (edge.insideCheck.apply(e)) {
-                    if (!edge.insideCheck.apply(s)) {
-                        resultList.add(intersection(s, e, edge.pointA, edge.pointB));
+            int start = isPolygon ? size - 1 : 0;
+            double sx = input.getX(start);
+            double sy = input.getY(start);
+            boolean sInside = isInside(edge, sx, sy);
+            for (int i = 0; i < size; i++) {
+                double ex = input.getX(i);
+                double ey = input.getY(i);
+                boolean eInside = isInside(edge, ex, ey);
+                if (eInside) {
+                    if (!sInside) {
+                        addIntersection(output, edge, sx, sy, ex, ey);
                     }
-                    resultList.add(e);
-                } else if (edge.insideCheck.apply(s)) {
-                    resultList.add(intersection(s, e, edge.pointA, edge.pointB));
+                    output.add(ex, ey);
+                } else if (sInside) {
+                    addIntersection(output, edge, sx, sy, ex, ey);
                 }
-                s = e;
+                sx = ex;
+                sy = ey;
+                sInside = eInside;
             }
+            input = output;
+        }
+        return input;
+    }
+
+    private boolean isInside(int edge, double x, double y) {
+        switch (edge) {
+            case TOP:
+                return y > top;
+            case RIGHT:
+                return x < right;
+            case BOTTOM:
+                return y < bottom;
+            default:
+                return x > left;
+        }
+    }
 
+    /**
+     * Add to the buffer the intersection of the segment with the edge. The caller must ensure the intersection exists.
+     */
+    private void addIntersection(PointBuffer buffer, int edge, double sx, double sy, double ex, double ey) {
+        switch (edge) {
+            case TOP:
+                buffer.add(sx + (top - sy) * (ex - sx) / (ey - sy), top);
+                break;
+            case RIGHT:
+                buffer.add(right, sy + (right - sx) * (ey - sy) / (ex - sx));
+                break;
+            case BOTTOM:
+                buffer.add(sx + (bottom - sy) * (ex - sx) / (ey - sy), bottom);
+                break;
+            default:
+                buffer.add(left, sy + (left - sx) * (ey - sy) / (ex - sx));
+                break;
         }
-        return resultList;
     }
 
 
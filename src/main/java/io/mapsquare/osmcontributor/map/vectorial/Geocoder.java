@@ -33,6 +33,7 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.greenrobot.eventbus.EventBus;
+import io.mapsquare.osmcontributor.core.RequestExecutor;
 import io.mapsquare.osmcontributor.map.events.AddressFoundEvent;
 import io.mapsquare.osmcontributor.map.events.PleaseFindAddressEvent;
 import io.mapsquare.osmcontributor.utils.EventCountDownTimer;
@@ -41,17 +42,22 @@ import timber.log.Timber;
 @Singleton
 public class Geocoder {
 
+    private static final String FIND_ADDRESS_REQUEST = "findAddress";
+
     EventBus eventBus;
+    RequestExecutor requestExecutor;
 
     public static final String URL = "http://nominatim.openstreetmap.org/reverse?format=json&lat=%s&lon=%s&zoom=18&addressdetails=1";
 
-    private OkHttpClient client = new OkHttpClient();
+    private OkHttpClient client;
 
     private EventCountDownTimer timer;
 
     @Inject
-    public Geocoder(EventBus eventBus) {
+    public Geocoder(EventBus eventBus, OkHttpClient client, RequestExecutor requestExecutor) {
         this.eventBus = eventBus;
+        this.requestExecutor = requestExecutor;
+        this.client = client;
         this.timer = new EventCountDownTimer(2000, 2000, eventBus);
     }
 
@@ -61,12 +67,18 @@ public class Geocoder {
         timer.start();
     }
 
-    @Subscribe(threadMode = ThreadMode.ASYNC)
-    public void onPleaseFindAddressEvent(PleaseFindAddressEvent event) {
-        String address = reverseGeocoding(event.getLat(), event.getLng());
-        if (!address.isEmpty()) {
-            eventBus.post(new AddressFoundEvent(address));
-        }
+    @Subscribe(threadMode = ThreadMode.POSTING)
+    public void onPleaseFindAddressEvent(final PleaseFindAddressEvent event) {
+        // Only the address of the last position is displayed
+        requestExecutor.submit(new RequestExecutor.Request(FIND_ADDRESS_REQUEST, RequestExecutor.Priority.BACKGROUND) {
+            @Override
+            protected void execute() {
+                String address = reverseGeocoding(event.getLat(), event.getLng());
+                if (!address.isEmpty() && !isSuperseded()) {
+                    eventBus.post(new AddressFoundEvent(address));
+                }
+            }
+        });
     }
 
     public String reverseGeocoding(double lat, double lng) {
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.map.vectorial;
+
+import java.util.Arrays;
+
+/**
+ * Growable buffer of points stored in primitive arrays.
+ * <br/>
+ * The buffer is meant to be cleared and refilled at each frame: once it reached the size of the biggest
+ * object drawn it doesn't allocate anymore.
+ */
+public class PointBuffer {
+
+    private double[] xs;
+    private double[] ys;
+    private int size;
+
+    public PointBuffer() {
+        this(64);
+    }
+
+    public PointBuffer(int capacity) {
+        xs = new double[capacity];
+        ys = new double[capacity];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void add(double x, double y) {
+        if (size == xs.length) {
+            int capacity = Math.max(16, size * 2);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+    public double getX(int i) {
+        return xs[i];
+    }
+
+    public double getY(int i) {
+        return ys[i];
+    }
+}
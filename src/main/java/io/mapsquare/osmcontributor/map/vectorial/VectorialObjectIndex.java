@@ -0,0 +1,272 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.map.vectorial;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Store of the {@link VectorialObject}s partitioned by level, each level having a grid index of the
+ * bounding boxes of its objects.
+ * <br/>
+ * A query only touches the objects of the requested level whose bounding box intersects the requested box
+ * and returns them in the drawing order of the objects (see {@link VectorialObject#compareTo}).
+ * Queries don't allocate memory, the results are stored in a buffer reused by the next query.
+ * <br/>
+ * This class is not threadsafe.
+ */
+public class VectorialObjectIndex {
+
+    /**
+     * Maximum number of cells of the grid on each axis.
+     */
+    private static final int MAX_GRID_SIZE = 256;
+
+    /**
+     * Under this number of results, the results are sorted. Above it, the objects of the level are scanned in order.
+     */
+    private static final int SORT_THRESHOLD = 256;
+
+    private final double[] levels;
+    private final LevelIndex[] levelIndexes;
+    private final int size;
+
+    private int[] result = new int[64];
+    private LevelIndex resultLevel;
+    private int resultSize;
+
+    public VectorialObjectIndex(Collection<VectorialObject> vectorialObjects) {
+        Map<Double, List<VectorialObject>> byLevel = new TreeMap<>();
+        for (VectorialObject vectorialObject : vectorialObjects) {
+            List<VectorialObject> levelObjects = byLevel.get(vectorialObject.getLevel());
+            if (levelObjects == null) {
+                levelObjects = new ArrayList<>();
+                byLevel.put(vectorialObject.getLevel(), levelObjects);
+            }
+            levelObjects.add(vectorialObject);
+        }
+
+        levels = new double[byLevel.size()];
+        levelIndexes = new LevelIndex[byLevel.size()];
+        int i = 0;
+        for (Map.Entry<Double, List<VectorialObject>> entry : byLevel.entrySet()) {
+            levels[i] = entry.getKey();
+            levelIndexes[i] = new LevelIndex(entry.getValue());
+            i++;
+        }
+        size = vectorialObjects.size();
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find the objects of a level intersecting a box, in the coordinates of the points of the objects.
+     *
+     * @param level The level of the objects.
+     * @param minX  The left of the box.
+     * @param minY  The top of the box.
+     * @param maxX  The right of the box.
+     * @param maxY  The bottom of the box.
+     * @return The number of objects found, get them with {@link #get(int)}.
+     */
+    public int query(double level, double minX, double minY, double maxX, double maxY) {
+        resultSize = 0;
+        int levelPosition = Arrays.binarySearch(levels, level);
+        if (levelPosition < 0) {
+            resultLevel = null;
+            return 0;
+        }
+        resultLevel = levelIndexes[levelPosition];
+        resultLevel.query(minX, minY, maxX, maxY);
+        return resultSize;
+    }
+
+    /**
+     * Get an object found by the last query.
+     *
+     * @param i The position of the object in the results, between 0 and the number of objects found.
+     * @return The object.
+     */
+    public VectorialObject get(int i) {
+        return resultLevel.objects[result[i]];
+    }
+
+    private void addResult(int objectIndex) {
+        if (resultSize == result.length) {
+            result = Arrays.copyOf(result, resultSize * 2);
+        }
+        result[resultSize++] = objectIndex;
+    }
+
+    /**
+     * Index of the objects of a level.
+     */
+    private class LevelIndex {
+        // Objects in drawing order and their bounding boxes
+        private final VectorialObject[] objects;
+        private final double[] minXs;
+        private final double[] minYs;
+        private final double[] maxXs;
+        private final double[] maxYs;
+
+        // Query id stamped on the objects already found by the current query
+        private final int[] stamps;
+        private int queryId;
+
+        // Grid over the extent of the level, the objects of cell c are cellObjects[cellStarts[c]..cellStarts[c + 1]]
+        private double originX;
+        private double originY;
+        private double cellWidth;
+        private double cellHeight;
+        private final int gridSize;
+        private final int[] cellStarts;
+        private final int[] cellObjects;
+
+        LevelIndex(List<VectorialObject> levelObjects) {
+            List<VectorialObject> sorted = new ArrayList<>(levelObjects);
+            Collections.sort(sorted);
+            int count = sorted.size();
+            objects = sorted.toArray(new VectorialObject[count]);
+            minXs = new double[count];
+            minYs = new double[count];
+            maxXs = new double[count];
+            maxYs = new double[count];
+            stamps = new int[count];
+
+            double extentMinX = Double.MAX_VALUE;
+            double extentMinY = Double.MAX_VALUE;
+            double extentMaxX = -Double.MAX_VALUE;
+            double extentMaxY = -Double.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                minXs[i] = Double.MAX_VALUE;
+                minYs[i] = Double.MAX_VALUE;
+                maxXs[i] = -Double.MAX_VALUE;
+                maxYs[i] = -Double.MAX_VALUE;
+                for (XY xy : objects[i].getXyList()) {
+                    minXs[i] = Math.min(minXs[i], xy.getX());
+                    minYs[i] = Math.min(minYs[i], xy.getY());
+                    maxXs[i] = Math.max(maxXs[i], xy.getX());
+                    maxYs[i] = Math.max(maxYs[i], xy.getY());
+                }
+                if (minXs[i] <= maxXs[i]) {
+                    extentMinX = Math.min(extentMinX, minXs[i]);
+                    extentMinY = Math.min(extentMinY, minYs[i]);
+                    extentMaxX = Math.max(extentMaxX, maxXs[i]);
+                    extentMaxY = Math.max(extentMaxY, maxYs[i]);
+                }
+            }
+
+            if (extentMinX > extentMaxX) {
+                // No object has points
+                gridSize = 0;
+                cellStarts = new int[1];
+                cellObjects = new int[0];
+                return;
+            }
+
+            // About 2 objects per cell
+            gridSize = Math.max(1, Math.min(MAX_GRID_SIZE, (int) Math.ceil(Math.sqrt(count / 2.0))));
+            originX = extentMinX;
+            originY = extentMinY;
+            // Avoid empty cells for objects on a line
+            cellWidth = Math.max((extentMaxX - extentMinX) / gridSize, Double.MIN_NORMAL);
+            cellHeight = Math.max((extentMaxY - extentMinY) / gridSize, Double.MIN_NORMAL);
+
+            // Count the objects of each cell then fill the cells
+            cellStarts = new int[gridSize * gridSize + 1];
+            for (int i = 0; i < count; i++) {
+                if (minXs[i] > maxXs[i]) {
+                    continue;
+                }
+                for (int y = cellY(minYs[i]); y <= cellY(maxYs[i]); y++) {
+                    for (int x = cellX(minXs[i]); x <= cellX(maxXs[i]); x++) {
+                        cellStarts[y * gridSize + x + 1]++;
+                    }
+                }
+            }
+            for (int c = 0; c < gridSize * gridSize; c++) {
+                cellStarts[c + 1] += cellStarts[c];
+            }
+            cellObjects = new int[cellStarts[gridSize * gridSize]];
+            int[] cellFill = Arrays.copyOf(cellStarts, gridSize * gridSize);
+            for (int i = 0; i < count; i++) {
+                if (minXs[i] > maxXs[i]) {
+                    continue;
+                }
+                for (int y = cellY(minYs[i]); y <= cellY(maxYs[i]); y++) {
+                    for (int x = cellX(minXs[i]); x <= cellX(maxXs[i]); x++) {
+                        cellObjects[cellFill[y * gridSize + x]++] = i;
+                    }
+                }
+            }
+        }
+
+        private int cellX(double x) {
+            return Math.max(0, Math.min(gridSize - 1, (int) ((x - originX) / cellWidth)));
+        }
+
+        private int cellY(double y) {
+            return Math.max(0, Math.min(gridSize - 1, (int) ((y - originY) / cellHeight)));
+        }
+
+        void query(double minX, double minY, double maxX, double maxY) {
+            if (gridSize == 0 || maxX < originX || maxY < originY
+                    || minX > originX + cellWidth * gridSize || minY > originY + cellHeight * gridSize) {
+                return;
+            }
+
+            queryId++;
+            for (int y = cellY(minY); y <= cellY(maxY); y++) {
+                for (int x = cellX(minX); x <= cellX(maxX); x++) {
+                    int cell = y * gridSize + x;
+                    for (int c = cellStarts[cell]; c < cellStarts[cell + 1]; c++) {
+                        int i = cellObjects[c];
+                        if (stamps[i] != queryId && maxXs[i] >= minX && minXs[i] <= maxX && maxYs[i] >= minY && minYs[i] <= maxY) {
+                            stamps[i] = queryId;
+                            addResult(i);
+                        }
+                    }
+                }
+            }
+
+            // Restore the drawing order
+            if (resultSize < SORT_THRESHOLD) {
+                Arrays.sort(result, 0, resultSize);
+            } else {
+                resultSize = 0;
+                for (int i = 0; i < objects.length; i++) {
+                    if (stamps[i] == queryId) {
+                        addResult(i);
+                    }
+                }
+            }
+        }
+    }
+}
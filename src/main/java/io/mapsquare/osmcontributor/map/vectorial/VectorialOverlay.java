@@ -33,7 +33,6 @@ import com.mapbox.mapboxsdk.views.safecanvas.SafeTranslatedPath;
 import com.mapbox.mapboxsdk.views.util.Projection;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
@@ -45,7 +44,11 @@ public class VectorialOverlay extends SafeDrawOverlay {
     private static final String TAG = "VectorialOverlay";
     private static final int PRECISION = 1000;
 
-    private List<VectorialObject> vectorialObjectList;
+    // Coordinate of the point projected to compute the scale of the projection
+    private static final double PROJECTION_SAMPLE = 1 << 20;
+
+    private List<VectorialObject> vectorialObjects = new ArrayList<>();
+    private VectorialObjectIndex vectorialObjectIndex = new VectorialObjectIndex(vectorialObjects);
     private String movingObjectId;
     private String selectedObjectId;
 
@@ -102,6 +105,7 @@ public class VectorialOverlay extends SafeDrawOverlay {
 
     public void setMovingObjectId(String movingObjectId) {
         this.movingObjectId = movingObjectId;
+        computeMovingBounds();
     }
 
     public void setSelectedObjectId(String selectedObjectId) {
@@ -109,11 +113,45 @@ public class VectorialOverlay extends SafeDrawOverlay {
     }
 
     public void setVectorialObjects(Set<VectorialObject> vectorialObjects) {
-        vectorialObjectList = new ArrayList<>(vectorialObjects);
-        Collections.sort(vectorialObjectList);
+        vectorialObjectIndex = new VectorialObjectIndex(vectorialObjects);
+        this.vectorialObjects = new ArrayList<>(vectorialObjects);
+        computeMovingBounds();
         Timber.d("vectorial object size : %s ", vectorialObjects.size());
     }
 
+    /**
+     * Compute the bounds of the objects containing the point being moved. These objects are linked to the
+     * point at the center of the screen so they must be drawn even if they are out of the screen.
+     */
+    private void computeMovingBounds() {
+        hasMovingBounds = false;
+        if (movingObjectId == null) {
+            return;
+        }
+        movingMinX = Double.MAX_VALUE;
+        movingMinY = Double.MAX_VALUE;
+        movingMaxX = -Double.MAX_VALUE;
+        movingMaxY = -Double.MAX_VALUE;
+        for (VectorialObject vectorialObject : vectorialObjects) {
+            boolean containsMovingPoint = false;
+            for (XY xy : vectorialObject.getXyList()) {
+                if (movingObjectId.equals(xy.getNodeRefId())) {
+                    containsMovingPoint = true;
+                    break;
+                }
+            }
+            if (containsMovingPoint) {
+                hasMovingBounds = true;
+                for (XY xy : vectorialObject.getXyList()) {
+                    movingMinX = Math.min(movingMinX, xy.getX());
+                    movingMinY = Math.min(movingMinY, xy.getY());
+                    movingMaxX = Math.max(movingMaxX, xy.getX());
+                    movingMaxY = Math.max(movingMaxY, xy.getY());
+                }
+            }
+        }
+    }
+
     public double getLevel() {
         return level;
     }
@@ -148,7 +186,52 @@ public class VectorialOverlay extends SafeDrawOverlay {
         levels.add(level);
     }
 
-    boolean isBeingEditObj = false;
+    /**
+     * Projection of the coordinates of the points of the objects to the screen.
+     */
+    interface ScreenProjection {
+        /**
+         * @param input  The coordinates of the point.
+         * @param result Receives the screen coordinates of the point.
+         */
+        void project(double[] input, double[] result);
+    }
+
+    /**
+     * Receives the points and paths of a frame, once projected and clipped.
+     */
+    interface FrameRenderer {
+        void drawPoint(double x, double y, SafePaint paint);
+
+        /**
+         * @param vObject The drawn object.
+         * @param points  The clipped points of the object, only valid during the call.
+         */
+        void drawPath(VectorialObject vObject, PointBuffer points);
+    }
+
+    // Objects reused at each frame to avoid memory allocations while drawing
+    private final SafeTranslatedPath path = new SafeTranslatedPath();
+    private final PointBuffer projectedPoints = new PointBuffer();
+    private final double[] projectionInput = new double[2];
+    private final double[] projectionResult = new double[2];
+    private final Rect clippingRect = new Rect();
+    private final MapProjection mapProjection = new MapProjection();
+    private final CanvasRenderer canvasRenderer = new CanvasRenderer();
+    private PathDashPathEffect dashPathEffect;
+    private double dashScaleFactor;
+    private double scaleFactor;
+
+    // Bounds of the objects containing the point being moved
+    private boolean hasMovingBounds;
+    private double movingMinX;
+    private double movingMinY;
+    private double movingMaxX;
+    private double movingMaxY;
+
+    // Screen position of the point being moved during the current frame
+    private double movingX;
+    private double movingY;
 
     @Override
     protected void drawSafe(ISafeCanvas canvas, MapView mapView, boolean shadow) {
@@ -156,7 +239,7 @@ public class VectorialOverlay extends SafeDrawOverlay {
         float zoomLevel = mapView.getZoomLevel();
 
         // nothing to paint
-        if (shadow || zoomLevel < zoomVectorial || vectorialObjectList.isEmpty()) {
+        if (shadow || zoomLevel < zoomVectorial || vectorialObjectIndex.isEmpty()) {
             return;
         }
 
@@ -164,24 +247,56 @@ public class VectorialOverlay extends SafeDrawOverlay {
         canvas.drawColor(0x37FFFFFF);
 
         final Projection pj = mapView.getProjection();
-        enlargeRect(pj.getScreenRect(), 100);
-        clipper.setClippingBounds(enlargeRect(pj.getScreenRect(), 100));
+        enlargeRect(pj.getScreenRect(), 100, clippingRect);
 
-        double scaleFactor = Math.pow(1.75, Math.floor(zoomLevel) - 18);
+        scaleFactor = Math.pow(1.75, Math.floor(zoomLevel) - 18);
 
-        PathDashPathEffect dashPathEffect = new SafeDashPathEffect(new float[]{(float) (10 * scaleFactor), (float) (10 * scaleFactor)}, 0, (float) (3 * scaleFactor));
+        // The dash effect only changes with the zoom level
+        if (dashPathEffect == null || dashScaleFactor != scaleFactor) {
+            dashScaleFactor = scaleFactor;
+            dashPathEffect = new SafeDashPathEffect(new float[]{(float) (10 * scaleFactor), (float) (10 * scaleFactor)}, 0, (float) (3 * scaleFactor));
+        }
+
+        if (movingObjectId != null) {
+            Rect clipBounds = canvas.getClipBounds();
+            movingX = clipBounds.exactCenterX();
+            movingY = clipBounds.exactCenterY();
+        }
 
-        SafeTranslatedPath path = new SafeTranslatedPath();
         path.onDrawCycleStart(canvas);
-        double[] projectionResult = new double[2];
 
-        for (VectorialObject vObject : vectorialObjectList) {
-            isBeingEditObj = false;
+        mapProjection.projection = pj;
+        canvasRenderer.canvas = canvas;
+        try {
+            drawObjects(mapProjection, clippingRect.left, clippingRect.top, clippingRect.right, clippingRect.bottom, canvasRenderer);
+        } finally {
+            mapProjection.projection = null;
+            canvasRenderer.canvas = null;
+        }
+    }
 
-            if (level != vObject.getLevel()) {
-                continue;
-            }
-            final int size = vObject.getNumberOfPoints();
+    /**
+     * Project and clip the objects of the current level intersecting the clipping bounds and hand them to
+     * the renderer. This is the work done by {@link #drawSafe} for each frame, it doesn't allocate memory.
+     *
+     * @param pj       The projection of the points to the screen.
+     * @param left     Left bound of the clipping, in screen coordinates.
+     * @param top      Top bound of the clipping.
+     * @param right    Right bound of the clipping.
+     * @param bottom   Bottom bound of the clipping.
+     * @param renderer The renderer of the projected points and paths.
+     */
+    void drawObjects(ScreenProjection pj, double left, double top, double right, double bottom, FrameRenderer renderer) {
+        clipper.setClippingBounds(left, top, right, bottom);
+
+        // Only the objects of the current level intersecting the clipping rect are drawn
+        int count = queryVisibleObjects(pj, left, top, right, bottom);
+
+        // Indexed loops to avoid allocating iterators
+        for (int o = 0; o < count; o++) {
+            final VectorialObject vObject = vectorialObjectIndex.get(o);
+            final List<XY> xyList = vObject.getXyList();
+            final int size = xyList.size();
 
             // nothing to paint
             if (size == 0) {
@@ -190,49 +305,132 @@ public class VectorialOverlay extends SafeDrawOverlay {
 
             // paint a point
             if (size == 1) {
-                final XY point = vObject.getXyList().get(0);
-                pj.toMapPixelsTranslated(point.getAsDoubleArray(), projectionResult);
+                final XY point = xyList.get(0);
 
-                XY currentPoint = applyChangesOnSelectedPoint(point, canvas);
-
-                if (isBeingEditObj) {
-                    canvas.drawPoint(currentPoint.getX(), currentPoint.getY(), movingPaint);
-                    isBeingEditObj = false;
-                } else if (currentPoint.getNodeRefId().equals(selectedObjectId)) {
-                    canvas.drawPoint(projectionResult[0], projectionResult[1], selectedPaint);
+                if (isMoving(point)) {
+                    renderer.drawPoint(movingX, movingY, movingPaint);
                 } else {
-                    canvas.drawPoint(projectionResult[0], projectionResult[1], vObject.getPaint());
+                    project(pj, point);
+                    if (selectedObjectId != null && selectedObjectId.equals(point.getNodeRefId())) {
+                        renderer.drawPoint(projectionResult[0], projectionResult[1], selectedPaint);
+                    } else {
+                        renderer.drawPoint(projectionResult[0], projectionResult[1], vObject.getPaint());
+                    }
                 }
                 continue;
             }
 
             // Compute points to screen coordinates
-            List<XY> computedList = new ArrayList<>(size);
-            for (final XY point : vObject.getXyList()) {
-                XY currentPoint = applyChangesOnSelectedPoint(point, canvas);
-
-                if (isBeingEditObj) {
-                    computedList.add(currentPoint);
-                    isBeingEditObj = false;
+            projectedPoints.clear();
+            for (int i = 0; i < size; i++) {
+                final XY point = xyList.get(i);
+                if (isMoving(point)) {
+                    projectedPoints.add(movingX, movingY);
                 } else {
-                    pj.toMapPixelsTranslated(currentPoint.getAsDoubleArray(), projectionResult);
-                    computedList.add(new XY(projectionResult[0], projectionResult[1], currentPoint.getNodeRefId()));
+                    project(pj, point);
+                    projectedPoints.add(projectionResult[0], projectionResult[1]);
                 }
             }
 
             // Clip lines and polygons to screen size
-            List<XY> clippedList = clipper.clip(computedList, vObject.isFilled());
+            PointBuffer clippedPoints = clipper.clip(projectedPoints, vObject.isFilled());
 
             // Nothing to draw
-            if (clippedList.size() < 2) {
+            if (clippedPoints.size() < 2) {
                 continue;
             }
 
+            renderer.drawPath(vObject, clippedPoints);
+        }
+    }
+
+    /**
+     * Query the index with the clipping bounds converted in the coordinates of the points of the objects.
+     * The projection of the points being a scale and a translation, it is deduced from the projection of two points.
+     *
+     * @return The number of objects to draw.
+     */
+    private int queryVisibleObjects(ScreenProjection pj, double left, double top, double right, double bottom) {
+        projectionInput[0] = 0;
+        projectionInput[1] = 0;
+        pj.project(projectionInput, projectionResult);
+        double offsetX = projectionResult[0];
+        double offsetY = projectionResult[1];
+
+        projectionInput[0] = PROJECTION_SAMPLE;
+        projectionInput[1] = PROJECTION_SAMPLE;
+        pj.project(projectionInput, projectionResult);
+        double scaleX = (projectionResult[0] - offsetX) / PROJECTION_SAMPLE;
+        double scaleY = (projectionResult[1] - offsetY) / PROJECTION_SAMPLE;
+
+        double x1 = (left - offsetX) / scaleX;
+        double x2 = (right - offsetX) / scaleX;
+        double y1 = (top - offsetY) / scaleY;
+        double y2 = (bottom - offsetY) / scaleY;
+        double minX = Math.min(x1, x2);
+        double maxX = Math.max(x1, x2);
+        double minY = Math.min(y1, y2);
+        double maxY = Math.max(y1, y2);
+
+        if (hasMovingBounds) {
+            minX = Math.min(minX, movingMinX);
+            minY = Math.min(minY, movingMinY);
+            maxX = Math.max(maxX, movingMaxX);
+            maxY = Math.max(maxY, movingMaxY);
+        }
+        return vectorialObjectIndex.query(level, minX, minY, maxX, maxY);
+    }
+
+    private boolean isMoving(XY point) {
+        return movingObjectId != null && movingObjectId.equals(point.getNodeRefId());
+    }
+
+    /**
+     * Project the point to the screen, the result is put in {@link #projectionResult}.
+     */
+    private void project(ScreenProjection pj, XY point) {
+        projectionInput[0] = point.getX();
+        projectionInput[1] = point.getY();
+        pj.project(projectionInput, projectionResult);
+    }
+
+    private void enlargeRect(Rect rect, int width, Rect res) {
+        res.left = rect.left - width;
+        res.top = rect.top - width;
+        res.right = rect.right + width;
+        res.bottom = rect.bottom + width;
+    }
+
+    /**
+     * The projection of the map during a frame.
+     */
+    private static class MapProjection implements ScreenProjection {
+        private Projection projection;
+
+        @Override
+        public void project(double[] input, double[] result) {
+            projection.toMapPixelsTranslated(input, result);
+        }
+    }
+
+    /**
+     * Draw the points and paths of a frame on the canvas of the map.
+     */
+    private class CanvasRenderer implements FrameRenderer {
+        private ISafeCanvas canvas;
+
+        @Override
+        public void drawPoint(double x, double y, SafePaint paint) {
+            canvas.drawPoint(x, y, paint);
+        }
+
+        @Override
+        public void drawPath(VectorialObject vObject, PointBuffer points) {
             // Make the path to draw
             path.reset();
-            path.moveTo(clippedList.get(0).getX(), clippedList.get(0).getY());
-            for (int i = 1; i < clippedList.size(); i++) {
-                path.lineTo(clippedList.get(i).getX(), clippedList.get(i).getY());
+            path.moveTo(points.getX(0), points.getY(0));
+            for (int i = 1; i < points.size(); i++) {
+                path.lineTo(points.getX(i), points.getY(i));
             }
 
             // Draw path
@@ -251,27 +449,5 @@ public class VectorialOverlay extends SafeDrawOverlay {
                 vObject.getPaint().setStrokeWidth(realWidth);
             }
         }
-
-    }
-
-    private XY applyChangesOnSelectedPoint(XY point, ISafeCanvas canvas) {
-        if (movingObjectId != null && movingObjectId.equals(point.getNodeRefId())) {
-            XY res = new XY();
-            res.setX(canvas.getClipBounds().exactCenterX());
-            res.setY(canvas.getClipBounds().exactCenterY());
-            res.setNodeRefId(point.getNodeRefId());
-            isBeingEditObj = true;
-            return res;
-        }
-        return point;
-    }
-
-    private Rect enlargeRect(Rect rect, int width) {
-        Rect res = new Rect();
-        res.left = rect.left - width;
-        res.top = rect.top - width;
-        res.right = rect.right + width;
-        res.bottom = rect.bottom + width;
-        return res;
     }
 }
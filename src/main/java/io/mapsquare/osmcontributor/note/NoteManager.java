@@ -33,6 +33,7 @@ import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 
 import io.mapsquare.osmcontributor.core.ConfigManager;
+import io.mapsquare.osmcontributor.core.RequestExecutor;
 import io.mapsquare.osmcontributor.core.database.DatabaseHelper;
 import io.mapsquare.osmcontributor.core.database.dao.CommentDao;
 import io.mapsquare.osmcontributor.core.database.dao.NoteDao;
@@ -66,6 +67,11 @@ import static io.mapsquare.osmcontributor.core.database.DatabaseHelper.loadLazyF
  */
 public class NoteManager {
 
+    /**
+     * Key of the stream of the loads of the Notes of the viewport in the {@link RequestExecutor}.
+     */
+    private static final String LOAD_NOTES_REQUEST = "loadNotes";
+
     CommentDao commentDao;
     NoteDao noteDao;
     DatabaseHelper databaseHelper;
@@ -74,9 +80,10 @@ public class NoteManager {
     Application application;
     SyncNoteManager syncNoteManager;
     LoginManager loginManager;
+    RequestExecutor requestExecutor;
 
     @Inject
-    public NoteManager(NoteDao noteDao, CommentDao commentDao, DatabaseHelper databaseHelper, ConfigManager configManager, EventBus bus, Application application, SyncNoteManager syncNoteManager, LoginManager loginManager) {
+    public NoteManager(NoteDao noteDao, CommentDao commentDao, DatabaseHelper databaseHelper, ConfigManager configManager, EventBus bus, Application application, SyncNoteManager syncNoteManager, LoginManager loginManager, RequestExecutor requestExecutor) {
         this.noteDao = noteDao;
         this.commentDao = commentDao;
         this.databaseHelper = databaseHelper;
@@ -85,6 +92,7 @@ public class NoteManager {
         this.bus = bus;
         this.syncNoteManager = syncNoteManager;
         this.loginManager = loginManager;
+        this.requestExecutor = requestExecutor;
     }
 
     // ********************************
@@ -96,7 +104,7 @@ public class NoteManager {
         bus.post(new NoteLoadedEvent(queryForId(event.getNoteId())));
     }
 
-    @Subscribe(threadMode = ThreadMode.ASYNC)
+    @Subscribe(threadMode = ThreadMode.POSTING)
     public void onPleaseLoadNotesEvent(PleaseLoadNotesEvent event) {
         loadNotes(event);
     }
@@ -334,9 +342,20 @@ public class NoteManager {
      * Send a {@link io.mapsquare.osmcontributor.core.events.NotesLoadedEvent} containing all the Notes
      * in the Box of the {@link io.mapsquare.osmcontributor.core.events.PleaseLoadNotesEvent}.
      *
+     * <br/>
+     * The load is dropped when a newer load is requested before it ends.
+     *
      * @param event Event containing the box to load.
      */
-    private void loadNotes(PleaseLoadNotesEvent event) {
-        bus.post(new NotesLoadedEvent(event.getBox(), queryForAllInRect(event.getBox())));
+    private void loadNotes(final PleaseLoadNotesEvent event) {
+        requestExecutor.submit(new RequestExecutor.Request(LOAD_NOTES_REQUEST, RequestExecutor.Priority.VIEWPORT) {
+            @Override
+            protected void execute() {
+                List<Note> notes = queryForAllInRect(event.getBox());
+                if (!isSuperseded()) {
+                    bus.post(new NotesLoadedEvent(event.getBox(), notes));
+                }
+            }
+        });
     }
 }
@@ -18,7 +18,11 @@
  */
 package io.mapsquare.osmcontributor.sync;
 
+import org.joda.time.DateTime;
+
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import io.mapsquare.osmcontributor.core.model.Poi;
 import io.mapsquare.osmcontributor.core.model.PoiType;
@@ -32,7 +36,11 @@ public interface Backend {
      * Represent the status of the request.
      */
     enum ModificationStatus {
-        SUCCESS, FAILURE_CONFLICT, FAILURE_NOT_EXISTING, FAILURE_UNKNOWN
+        SUCCESS, FAILURE_CONFLICT, FAILURE_NOT_EXISTING, FAILURE_UNKNOWN,
+        /**
+         * The connection was lost, the backend may or may not have applied the request.
+         */
+        FAILURE_NETWORK
     }
 
     /**
@@ -89,6 +97,134 @@ public interface Backend {
         }
     }
 
+    /**
+     * Class representing the result of the upload of all the changes of a transaction in a single request.
+     */
+    class UploadResult {
+        /**
+         * Status of the request.
+         */
+        private final ModificationStatus status;
+        /**
+         * Backend ids of the newly created POIs, mapped by their local id.
+         */
+        private final Map<Long, String> backendIds;
+        /**
+         * New versions of the created and updated POIs, mapped by their local id.
+         */
+        private final Map<Long, String> versions;
+
+        public UploadResult(ModificationStatus status, Map<Long, String> backendIds, Map<Long, String> versions) {
+            this.status = status;
+            this.backendIds = backendIds;
+            this.versions = versions;
+        }
+
+        public ModificationStatus getStatus() {
+            return status;
+        }
+
+        public Map<Long, String> getBackendIds() {
+            return backendIds;
+        }
+
+        public Map<Long, String> getVersions() {
+            return versions;
+        }
+    }
+
+    /**
+     * Class representing the changes found already applied in a transaction, after an upload whose answer was lost.
+     */
+    class AppliedChanges {
+        /**
+         * Backend ids of the POIs found created, mapped by their local id.
+         */
+        private final Map<Long, String> backendIds;
+        /**
+         * Versions of the POIs found created or updated, mapped by their local id.
+         */
+        private final Map<Long, String> versions;
+        /**
+         * Local ids of the POIs found deleted.
+         */
+        private final Set<Long> deletedPoiIds;
+
+        public AppliedChanges(Map<Long, String> backendIds, Map<Long, String> versions, Set<Long> deletedPoiIds) {
+            this.backendIds = backendIds;
+            this.versions = versions;
+            this.deletedPoiIds = deletedPoiIds;
+        }
+
+        public Map<Long, String> getBackendIds() {
+            return backendIds;
+        }
+
+        public Map<Long, String> getVersions() {
+            return versions;
+        }
+
+        public Set<Long> getDeletedPoiIds() {
+            return deletedPoiIds;
+        }
+
+        public boolean isApplied(Poi poi) {
+            return versions.containsKey(poi.getId()) || deletedPoiIds.contains(poi.getId());
+        }
+    }
+
+    /**
+     * Class representing the result of the download of the changes of an area.
+     */
+    class ChangesResult {
+        /**
+         * Number of changed POIs handed to the handler, -1 if the download failed.
+         */
+        private final int count;
+        /**
+         * Backend ids of all the nodes of an available type currently in the area, changed or not.
+         */
+        private final Set<String> nodeBackendIds;
+        /**
+         * Date of the backend data the node backend ids were read from.
+         */
+        private final DateTime snapshotDate;
+
+        public ChangesResult(int count, Set<String> nodeBackendIds, DateTime snapshotDate) {
+            this.count = count;
+            this.nodeBackendIds = nodeBackendIds;
+            this.snapshotDate = snapshotDate;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public Set<String> getNodeBackendIds() {
+            return nodeBackendIds;
+        }
+
+        public DateTime getSnapshotDate() {
+            return snapshotDate;
+        }
+
+        public boolean isSuccess() {
+            return count >= 0;
+        }
+    }
+
+    /**
+     * Handler receiving the downloaded POIs chunk by chunk.
+     */
+    interface PoiChunkHandler {
+        /**
+         * Called each time a chunk of POIs has been read from the backend response.
+         *
+         * @param pois The POIs of the chunk.
+         */
+        void onPois(List<Poi> pois);
+    }
+
     /**
      * Initialize a transaction with the backend.
      *
@@ -97,6 +233,26 @@ public interface Backend {
      */
     String initializeTransaction(String comment);
 
+    /**
+     * Check whether a transaction created by {@link #initializeTransaction(String)} still accepts changes.
+     *
+     * @param transactionId The id of the transaction.
+     * @return Whether changes can still be sent in the transaction.
+     */
+    boolean isTransactionOpen(String transactionId);
+
+    /**
+     * Read back a transaction to find which of the given changes it already contains, after an upload interrupted
+     * before its answer was received. The created POIs are recognized by their position and their tags.
+     *
+     * @param transactionId The transaction in which the changes were sent.
+     * @param newPois       The POIs sent for creation.
+     * @param updatedPois   The POIs sent for update.
+     * @param toDeletePois  The POIs sent for deletion.
+     * @return The changes found in the transaction or null if it couldn't be read.
+     */
+    AppliedChanges findAppliedChanges(String transactionId, List<Poi> newPois, List<Poi> updatedPois, List<Poi> toDeletePois);
+
     /**
      * Download all the POIs contained in the area delimited by the box.
      *
@@ -105,6 +261,30 @@ public interface Backend {
      */
     List<Poi> getPoisInBox(final Box box);
 
+    /**
+     * Download all the POIs contained in the area delimited by the box and hand them to the handler
+     * in bounded chunks as soon as they are read, without keeping the whole response in memory.
+     *
+     * @param box     The bounds of the area.
+     * @param handler The handler receiving the chunks of downloaded POIs.
+     * @return The number of POIs handed to the handler or -1 if the download failed.
+     */
+    int downloadPoisInBox(final Box box, PoiChunkHandler handler);
+
+    /**
+     * Download only the POIs of the area modified or created since the given date and hand them to the handler
+     * in bounded chunks, like {@link #downloadPoisInBox(Box, PoiChunkHandler)}.
+     * <br/>
+     * The result also lists the ids of all the nodes still in the area, the local nodes missing from it were
+     * deleted, retagged or moved away.
+     *
+     * @param box     The bounds of the area.
+     * @param since   The date of the oldest change to download.
+     * @param handler The handler receiving the chunks of changed POIs.
+     * @return The result of the download or null if the backend doesn't support downloading the changes only.
+     */
+    ChangesResult downloadPoiChangesInBox(final Box box, DateTime since, PoiChunkHandler handler);
+
     /**
      * Download a Poi from the backend by its id.
      *
@@ -113,6 +293,15 @@ public interface Backend {
      */
     Poi getPoiById(String backendId);
 
+    /**
+     * Download the current version of several POIs from the backend, in as few requests as possible.
+     *
+     * @param pois The POIs to download, identified by their backend id.
+     * @return The downloaded POIs by id of the local POI, the POIs deleted from the backend are absent.
+     * Null if the download failed.
+     */
+    Map<Long, Poi> getPoisByIds(List<Poi> pois);
+
     /**
      * Add a Poi to the backend.
      *
@@ -140,6 +329,19 @@ public interface Backend {
      */
     ModificationStatus deletePoi(Poi poi, String transactionId);
 
+    /**
+     * Upload all the creations, modifications and deletions of POIs in a single request.
+     * <br/>
+     * The upload is atomic: if the status of the result isn't a success, none of the changes were applied.
+     *
+     * @param newPois       The POIs to add to the backend.
+     * @param updatedPois   The POIs to update in the backend.
+     * @param toDeletePois  The POIs to delete.
+     * @param transactionId The transaction in which the changes are sent.
+     * @return The result of the upload or null if the backend doesn't support uploading all the changes at once.
+     */
+    UploadResult uploadPois(List<Poi> newPois, List<Poi> updatedPois, List<Poi> toDeletePois, String transactionId);
+
     /**
      * Download the list of PoiType from the backend.
      *
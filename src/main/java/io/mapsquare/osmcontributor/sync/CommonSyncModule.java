@@ -18,27 +18,75 @@
  */
 package io.mapsquare.osmcontributor.sync;
 
+import android.app.Application;
+
 import com.google.gson.Gson;
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Interceptor;
 import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
 
 import org.simpleframework.xml.convert.AnnotationStrategy;
 import org.simpleframework.xml.core.Persister;
 import org.simpleframework.xml.strategy.Strategy;
 import org.simpleframework.xml.transform.RegistryMatcher;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Singleton;
 
 import dagger.Module;
 import dagger.Provides;
+import io.mapsquare.osmcontributor.BuildConfig;
 import io.mapsquare.osmcontributor.sync.converter.JodaTimeDateTimeTransform;
+import io.mapsquare.osmcontributor.sync.rest.HttpMetrics;
+import timber.log.Timber;
 
 @Module
 @Singleton
 public class CommonSyncModule {
 
+    private static final long HTTP_CACHE_SIZE = 50 * 1024 * 1024;
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_DURATION_MS = 5 * 60 * 1000;
+    private static final String USER_AGENT = "OSM Contributor/" + BuildConfig.VERSION_NAME;
+
+    /**
+     * The single http client of the application, shared by the REST clients, the geocoder and the tile layers.
+     * <br/>
+     * Its connections are kept alive and reused between the requests to the same host, the responses are
+     * transparently gzipped and stored in a disk cache revalidated with their ETag or Last-Modified headers.
+     */
     @Provides
-    OkHttpClient getOkHttpClient() {
-        return new OkHttpClient();
+    @Singleton
+    OkHttpClient getOkHttpClient(Application application, HttpMetrics httpMetrics) {
+        OkHttpClient client = new OkHttpClient();
+        client.setConnectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MS));
+        // Same timeouts as the client created by default by Retrofit
+        client.setConnectTimeout(15, TimeUnit.SECONDS);
+        client.setReadTimeout(20, TimeUnit.SECONDS);
+        try {
+            client.setCache(new Cache(new File(application.getCacheDir(), "http"), HTTP_CACHE_SIZE));
+        } catch (IOException e) {
+            Timber.e(e, "Couldn't create the http cache");
+        }
+        client.interceptors().add(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Request request = chain.request();
+                if (request.header("User-Agent") == null) {
+                    request = request.newBuilder().header("User-Agent", USER_AGENT).build();
+                }
+                return chain.proceed(request);
+            }
+        });
+        client.interceptors().add(httpMetrics.getApplicationInterceptor());
+        client.networkInterceptors().add(httpMetrics.getNetworkInterceptor());
+        return client;
     }
 
     @Provides
@@ -19,22 +19,36 @@
 package io.mapsquare.osmcontributor.sync;
 
 import android.support.annotation.NonNull;
+import android.text.TextUtils;
 
 import org.greenrobot.eventbus.EventBus;
+import org.joda.time.DateTime;
+import org.xmlpull.v1.XmlPullParserException;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import io.mapsquare.osmcontributor.core.PoiManager;
 import io.mapsquare.osmcontributor.core.model.Poi;
 import io.mapsquare.osmcontributor.core.model.PoiType;
-import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
 import io.mapsquare.osmcontributor.sync.assets.PoiAssetLoader;
 import io.mapsquare.osmcontributor.sync.converter.PoiConverter;
+import io.mapsquare.osmcontributor.sync.converter.PoiStreamConverter;
+import io.mapsquare.osmcontributor.sync.dto.osm.ChangeSetDownloadDto;
 import io.mapsquare.osmcontributor.sync.dto.osm.ChangeSetDto;
+import io.mapsquare.osmcontributor.sync.dto.osm.DiffResultDto;
+import io.mapsquare.osmcontributor.sync.dto.osm.DiffResultEntryDto;
 import io.mapsquare.osmcontributor.sync.dto.osm.NodeDto;
+import io.mapsquare.osmcontributor.sync.dto.osm.OsmChangeActionDto;
+import io.mapsquare.osmcontributor.sync.dto.osm.OsmChangeDto;
 import io.mapsquare.osmcontributor.sync.dto.osm.OsmDto;
+import io.mapsquare.osmcontributor.sync.dto.osm.PoiDto;
 import io.mapsquare.osmcontributor.sync.dto.osm.TagDto;
 import io.mapsquare.osmcontributor.sync.dto.osm.WayDto;
 import io.mapsquare.osmcontributor.sync.events.error.SyncDownloadRetrofitErrorEvent;
@@ -42,7 +56,9 @@ import io.mapsquare.osmcontributor.sync.events.error.SyncUploadRetrofitErrorEven
 import io.mapsquare.osmcontributor.sync.rest.OsmRestClient;
 import io.mapsquare.osmcontributor.sync.rest.OverpassRestClient;
 import io.mapsquare.osmcontributor.utils.Box;
+import io.mapsquare.osmcontributor.utils.CollectionUtils;
 import retrofit.RetrofitError;
+import retrofit.client.Response;
 import retrofit.mime.TypedString;
 import timber.log.Timber;
 
@@ -53,6 +69,16 @@ import static java.util.Collections.singletonList;
  */
 public class OsmBackend implements Backend {
 
+    /**
+     * Maximum number of ids in a request downloading several elements, to keep the url short.
+     */
+    private static final int MAX_IDS_PER_REQUEST = 150;
+
+    /**
+     * Precision of the coordinates stored by OpenStreetMap.
+     */
+    private static final double COORDINATE_PRECISION = 1e-7;
+
     PoiManager poiManager;
 
     PoiAssetLoader poiAssetLoader;
@@ -65,16 +91,17 @@ public class OsmBackend implements Backend {
 
     PoiConverter poiConverter;
 
-    EventBus bus;
+    PoiStreamConverter poiStreamConverter;
 
-    public static final String[] OBJECT_TYPES = new String[]{"node", "way"};
+    EventBus bus;
 
-    public OsmBackend(EventBus bus, OSMProxy osmProxy, OverpassRestClient overpassRestClient, OsmRestClient osmRestClient, PoiConverter poiConverter, PoiManager poiManager, PoiAssetLoader poiAssetLoader) {
+    public OsmBackend(EventBus bus, OSMProxy osmProxy, OverpassRestClient overpassRestClient, OsmRestClient osmRestClient, PoiConverter poiConverter, PoiStreamConverter poiStreamConverter, PoiManager poiManager, PoiAssetLoader poiAssetLoader) {
         this.bus = bus;
         this.osmProxy = osmProxy;
         this.overpassRestClient = overpassRestClient;
         this.osmRestClient = osmRestClient;
         this.poiConverter = poiConverter;
+        this.poiStreamConverter = poiStreamConverter;
         this.poiManager = poiManager;
         this.poiAssetLoader = poiAssetLoader;
     }
@@ -112,6 +139,127 @@ public class OsmBackend implements Backend {
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isTransactionOpen(final String transactionId) {
+        OSMProxy.Result<OsmDto> result = osmProxy.proceed(new OSMProxy.NetworkAction<OsmDto>() {
+            @Override
+            public OsmDto proceed() {
+                return osmRestClient.getChangeSet(transactionId);
+            }
+        });
+        if (!result.isSuccess()) {
+            Timber.e(result.getRetrofitError(), "Couldn't get changeSet %s", transactionId);
+            return false;
+        }
+        ChangeSetDto changeSetDto = result.getResult().getChangeSetDto();
+        return changeSetDto != null && changeSetDto.isOpen();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AppliedChanges findAppliedChanges(final String transactionId, List<Poi> newPois, List<Poi> updatedPois, List<Poi> toDeletePois) {
+        OSMProxy.Result<ChangeSetDownloadDto> result = osmProxy.proceed(new OSMProxy.NetworkAction<ChangeSetDownloadDto>() {
+            @Override
+            public ChangeSetDownloadDto proceed() {
+                return osmRestClient.downloadChangeSet(transactionId);
+            }
+        });
+        if (!result.isSuccess()) {
+            Timber.e(result.getRetrofitError(), "Couldn't download changeSet %s", transactionId);
+            return null;
+        }
+
+        ChangeSetDownloadDto changeSet = result.getResult();
+        Map<Long, String> backendIds = new HashMap<>();
+        Map<Long, String> versions = new HashMap<>();
+        Set<Long> deletedPoiIds = new HashSet<>();
+
+        List<PoiDto> created = new ArrayList<>();
+        Map<String, PoiDto> modified = new HashMap<>();
+        Set<String> deleted = new HashSet<>();
+        if (changeSet != null) {
+            for (OsmChangeActionDto action : changeSet.getCreateList()) {
+                created.addAll(action.getNodeDtoList());
+                created.addAll(action.getWayDtoList());
+            }
+            for (OsmChangeActionDto action : changeSet.getModifyList()) {
+                for (PoiDto dto : concat(action)) {
+                    PoiDto previous = modified.get(elementKey(dto.isWay(), dto.getId()));
+                    if (previous == null || previous.getVersion() < dto.getVersion()) {
+                        modified.put(elementKey(dto.isWay(), dto.getId()), dto);
+                    }
+                }
+            }
+            for (OsmChangeActionDto action : changeSet.getDeleteList()) {
+                for (PoiDto dto : concat(action)) {
+                    deleted.add(elementKey(dto.isWay(), dto.getId()));
+                }
+            }
+        }
+
+        for (Poi poi : newPois) {
+            PoiDto dto = findCreated(poi, created);
+            if (dto != null) {
+                created.remove(dto);
+                backendIds.put(poi.getId(), dto.getId());
+                versions.put(poi.getId(), String.valueOf(dto.getVersion()));
+            }
+        }
+        for (Poi poi : updatedPois) {
+            PoiDto dto = modified.get(elementKey(poi.getWay(), poi.getBackendId()));
+            if (dto != null && (poi.getVersion() == null || dto.getVersion() > Integer.parseInt(poi.getVersion()))) {
+                versions.put(poi.getId(), String.valueOf(dto.getVersion()));
+            }
+        }
+        for (Poi poi : toDeletePois) {
+            if (deleted.contains(elementKey(poi.getWay(), poi.getBackendId()))) {
+                deletedPoiIds.add(poi.getId());
+            }
+        }
+        return new AppliedChanges(backendIds, versions, deletedPoiIds);
+    }
+
+    private static List<PoiDto> concat(OsmChangeActionDto action) {
+        List<PoiDto> dtos = new ArrayList<>();
+        dtos.addAll(action.getNodeDtoList());
+        dtos.addAll(action.getWayDtoList());
+        return dtos;
+    }
+
+    private static String elementKey(boolean way, String backendId) {
+        return (way ? "w" : "n") + backendId;
+    }
+
+    /**
+     * Find the element created for a new Poi: an element of the same kind with the same tags, at the same position
+     * for a node.
+     */
+    private static PoiDto findCreated(Poi poi, List<PoiDto> created) {
+        Map<String, String> tags = poi.getTagsMap();
+        for (PoiDto dto : created) {
+            if (dto.isWay() != poi.getWay()) {
+                continue;
+            }
+            if (!dto.isWay() && (Math.abs(dto.getLat() - poi.getLatitude()) > COORDINATE_PRECISION
+                    || Math.abs(dto.getLon() - poi.getLongitude()) > COORDINATE_PRECISION)) {
+                continue;
+            }
+            Map<String, String> dtoTags = new HashMap<>();
+            for (TagDto tagDto : dto.getTagsDtoList()) {
+                dtoTags.put(tagDto.getKey(), tagDto.getValue());
+            }
+            if (dtoTags.equals(tags)) {
+                return dto;
+            }
+        }
+        return null;
+    }
+
 
     /**
      * {@inheritDoc}
@@ -140,6 +288,71 @@ public class OsmBackend implements Backend {
         return convertPois(osmDto);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int downloadPoisInBox(final Box box, PoiChunkHandler handler) {
+        Timber.d("Requesting overpass for streamed download");
+        return streamOverpassRequest(generateOverpassRequest(box), handler, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChangesResult downloadPoiChangesInBox(final Box box, DateTime since, PoiChunkHandler handler) {
+        Timber.d("Requesting overpass for the changes since %s", since);
+        String request = OverpassQueryPlanner.buildChangesQuery(poiManager.loadPoiTypes().values(), box, since);
+        PoiStreamConverter.IdOnlyNodes nodes = new PoiStreamConverter.IdOnlyNodes();
+        int count = streamOverpassRequest(request, handler, nodes);
+        // Without the date of the Overpass snapshot, only the nodes older than the previous download are trusted
+        DateTime snapshotDate = nodes.getSnapshotDate() != null ? nodes.getSnapshotDate() : since;
+        return new ChangesResult(count, nodes.getIds(), snapshotDate);
+    }
+
+    /**
+     * Send the request to Overpass and hand the POIs of the response to the handler while reading it.
+     *
+     * @param request       The Overpass query.
+     * @param handler       The handler receiving the chunks of downloaded POIs.
+     * @param idOnlyNodes   The collector of the ids of the nodes output without metadata, or null.
+     * @return The number of POIs handed to the handler or -1 if the download failed.
+     */
+    private int streamOverpassRequest(final String request, PoiChunkHandler handler, PoiStreamConverter.IdOnlyNodes idOnlyNodes) {
+        OSMProxy.Result<Response> result = osmProxy.proceed(new OSMProxy.NetworkAction<Response>() {
+            @Override
+            public Response proceed() {
+                return overpassRestClient.sendStreamingRequest(new TypedString(request));
+            }
+        });
+        if (!result.isSuccess()) {
+            if (result.getRetrofitError() != null) {
+                Timber.e(result.getRetrofitError(), "Retrofit error, couldn't download from overpass");
+            }
+            bus.post(new SyncDownloadRetrofitErrorEvent());
+            return -1;
+        }
+
+        InputStream inputStream = null;
+        try {
+            inputStream = result.getResult().getBody().in();
+            return poiStreamConverter.convertStream(inputStream, PoiStreamConverter.DEFAULT_CHUNK_SIZE, handler, idOnlyNodes);
+        } catch (IOException | XmlPullParserException e) {
+            Timber.e(e, "Couldn't read the overpass response");
+            bus.post(new SyncDownloadRetrofitErrorEvent());
+            return -1;
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    Timber.w(e, "Couldn't close the overpass response");
+                }
+            }
+        }
+    }
+
     @NonNull
     private List<Poi> convertPois(OsmDto osmDto) {
         List<Poi> pois = poiConverter.convertDtosToPois(osmDto.getNodeDtoList());
@@ -148,60 +361,7 @@ public class OsmBackend implements Backend {
     }
 
     private String generateOverpassRequest(Box box) {
-        StringBuilder cmplReq = new StringBuilder("(");
-
-        Map<Long, PoiType> poiTypes = poiManager.loadPoiTypes();
-        if (poiTypes.size() > 15) {
-            // we've got lots of pois, overpath will struggle with the finer request, download all the pois in the box
-            for (String type : OBJECT_TYPES) {
-                for (String key : poiManager.loadPoiTypeKeysWithDefaultValues()) {
-                    cmplReq.append(type)
-                            .append("[\"")
-                            .append(key)
-                            .append("\"]")
-                            .append("(")
-                            .append(box.getSouth()).append(",")
-                            .append(box.getWest()).append(",")
-                            .append(box.getNorth()).append(",")
-                            .append(box.getEast())
-                            .append(");");
-                }
-            }
-        } else {
-            // Download all the pois in the box who are of one of the PoiType contained in the database
-            for (String type : OBJECT_TYPES) {
-                // For each poiTypes, add the corresponding part to the request
-                for (PoiType poiTypeDto : poiTypes.values()) {
-                    // Check for tags who have a value and add a ["key"~"value"] string to the request
-                    boolean valid = false;
-                    for (PoiTypeTag poiTypeTag : poiTypeDto.getTags()) {
-                        if (poiTypeTag.getValue() != null) {
-                            if (!valid) {
-                                cmplReq.append(type);
-                            }
-                            valid = true;
-                            cmplReq.append("[\"")
-                                    .append(poiTypeTag.getKey())
-                                    .append("\"~\"")
-                                    .append(poiTypeTag.getValue())
-                                    .append("\"]");
-                        }
-                    }
-                    // If there was at least one tag with a value, add the box coordinates to the request
-                    if (valid) {
-                        cmplReq.append("(")
-                                .append(box.getSouth()).append(",")
-                                .append(box.getWest()).append(",")
-                                .append(box.getNorth()).append(",")
-                                .append(box.getEast())
-                                .append(");");
-                    }
-                }
-            }
-        }
-
-        cmplReq.append(");out meta center;");
-        return cmplReq.toString();
+        return OverpassQueryPlanner.buildQuery(poiManager.loadPoiTypes().values(), box);
     }
 
     /**
@@ -238,6 +398,9 @@ public class OsmBackend implements Backend {
             return new CreationResult(ModificationStatus.SUCCESS, result.getResult());
         }
         Timber.e(result.getRetrofitError(), "Couldn't add node %s", poi);
+        if (isNetworkError(result.getRetrofitError())) {
+            return new CreationResult(ModificationStatus.FAILURE_NETWORK, null);
+        }
         return new CreationResult(ModificationStatus.FAILURE_UNKNOWN, null);
     }
 
@@ -277,7 +440,10 @@ public class OsmBackend implements Backend {
 
         if (result.getRetrofitError() != null) {
             RetrofitError e = result.getRetrofitError();
-            if (e.getResponse() != null && e.getResponse().getStatus() == 400) {
+            if (isNetworkError(e)) {
+                Timber.e(e, "Couldn't update node, connection lost");
+                return new UpdateResult(ModificationStatus.FAILURE_NETWORK, null);
+            } else if (e.getResponse() != null && e.getResponse().getStatus() == 400) {
                 Timber.e(e, "Couldn't update node, conflicting version");
                 return new UpdateResult(ModificationStatus.FAILURE_CONFLICT, null);
             } else if (e.getResponse() != null && e.getResponse().getStatus() == 404) {
@@ -328,7 +494,9 @@ public class OsmBackend implements Backend {
 
         RetrofitError retrofitError = result.getRetrofitError();
         if (retrofitError != null) {
-            if (retrofitError.getResponse() != null && retrofitError.getResponse().getStatus() == 400) {
+            if (isNetworkError(retrofitError)) {
+                return ModificationStatus.FAILURE_NETWORK;
+            } else if (retrofitError.getResponse() != null && retrofitError.getResponse().getStatus() == 400) {
                 return ModificationStatus.FAILURE_CONFLICT;
             } else if (retrofitError.getResponse() != null && retrofitError.getResponse().getStatus() == 404) {
                 //the point doesn't exist
@@ -342,6 +510,84 @@ public class OsmBackend implements Backend {
 
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UploadResult uploadPois(List<Poi> newPois, List<Poi> updatedPois, List<Poi> toDeletePois, final String transactionId) {
+        final OsmChangeDto osmChangeDto = poiConverter.convertPoisToOsmChangeDto(newPois, updatedPois, toDeletePois, transactionId);
+
+        OSMProxy.Result<DiffResultDto> result = osmProxy.proceed(new OSMProxy.NetworkAction<DiffResultDto>() {
+            @Override
+            public DiffResultDto proceed() {
+                DiffResultDto diffResultDto = osmRestClient.uploadChangeSet(transactionId, osmChangeDto);
+                Timber.d("Uploaded changeSet %s", transactionId);
+                return diffResultDto;
+            }
+        });
+
+        if (!result.isSuccess()) {
+            RetrofitError e = result.getRetrofitError();
+            if (isNetworkError(e)) {
+                Timber.e(e, "Couldn't upload changeSet, connection lost");
+                return new UploadResult(ModificationStatus.FAILURE_NETWORK, null, null);
+            }
+            if (e != null && e.getResponse() != null) {
+                int status = e.getResponse().getStatus();
+                if (status == 409 || status == 412) {
+                    Timber.e(e, "Couldn't upload changeSet, conflicting elements");
+                    return new UploadResult(ModificationStatus.FAILURE_CONFLICT, null, null);
+                } else if (status == 404 || status == 410) {
+                    Timber.e(e, "Couldn't upload changeSet, some elements don't exist anymore");
+                    return new UploadResult(ModificationStatus.FAILURE_NOT_EXISTING, null, null);
+                }
+            }
+            Timber.e(e, "Couldn't upload changeSet");
+            return new UploadResult(ModificationStatus.FAILURE_UNKNOWN, null, null);
+        }
+
+        // Map the ids sent in the osmChange to the local POIs
+        Map<String, Poi> nodesBySentId = new HashMap<>();
+        Map<String, Poi> waysBySentId = new HashMap<>();
+        for (int i = 0; i < newPois.size(); i++) {
+            Poi poi = newPois.get(i);
+            Map<String, Poi> poisBySentId = poi.getWay() ? waysBySentId : nodesBySentId;
+            poisBySentId.put(PoiConverter.placeholderId(i), poi);
+        }
+        for (Poi poi : updatedPois) {
+            Map<String, Poi> poisBySentId = poi.getWay() ? waysBySentId : nodesBySentId;
+            poisBySentId.put(poi.getBackendId(), poi);
+        }
+
+        Map<Long, String> backendIds = new HashMap<>();
+        Map<Long, String> versions = new HashMap<>();
+        DiffResultDto diffResultDto = result.getResult();
+        if (diffResultDto != null) {
+            readDiffResultEntries(diffResultDto.getNodeDtoList(), nodesBySentId, backendIds, versions);
+            readDiffResultEntries(diffResultDto.getWayDtoList(), waysBySentId, backendIds, versions);
+        }
+        return new UploadResult(ModificationStatus.SUCCESS, backendIds, versions);
+    }
+
+    private static boolean isNetworkError(RetrofitError e) {
+        return e != null && e.getKind() == RetrofitError.Kind.NETWORK;
+    }
+
+    private void readDiffResultEntries(List<DiffResultEntryDto> entries, Map<String, Poi> poisBySentId, Map<Long, String> backendIds, Map<Long, String> versions) {
+        if (entries == null) {
+            return;
+        }
+        for (DiffResultEntryDto entry : entries) {
+            Poi poi = poisBySentId.get(entry.getOldId());
+            // Deleted elements have no new id nor version
+            if (poi == null || entry.getNewId() == null) {
+                continue;
+            }
+            backendIds.put(poi.getId(), entry.getNewId());
+            versions.put(poi.getId(), entry.getNewVersion());
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -366,6 +612,80 @@ public class OsmBackend implements Backend {
 
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Long, Poi> getPoisByIds(List<Poi> pois) {
+        Map<String, Poi> nodes = new HashMap<>();
+        Map<String, Poi> ways = new HashMap<>();
+        for (Poi poi : pois) {
+            if (poi.getBackendId() != null) {
+                (poi.getWay() ? ways : nodes).put(poi.getBackendId(), poi);
+            }
+        }
+
+        Map<Long, Poi> result = new HashMap<>();
+        for (final List<String> ids : CollectionUtils.partition(nodes.keySet(), MAX_IDS_PER_REQUEST)) {
+            OSMProxy.Result<OsmDto> nodesResult = osmProxy.proceed(new OSMProxy.NetworkAction<OsmDto>() {
+                @Override
+                public OsmDto proceed() {
+                    return osmRestClient.getNode(TextUtils.join(",", ids));
+                }
+            });
+            if (!nodesResult.isSuccess()) {
+                Timber.e(nodesResult.getRetrofitError(), "Couldn't download %d nodes", ids.size());
+                return null;
+            }
+
+            List<NodeDto> visibleNodes = new ArrayList<>();
+            if (nodesResult.getResult().getNodeDtoList() != null) {
+                for (NodeDto nodeDto : nodesResult.getResult().getNodeDtoList()) {
+                    if (!Boolean.FALSE.equals(nodeDto.isVisible())) {
+                        visibleNodes.add(nodeDto);
+                    }
+                }
+            }
+            putByLocalId(poiConverter.convertDtosToPois(visibleNodes, false), nodes, result);
+        }
+
+        for (final List<String> ids : CollectionUtils.partition(ways.keySet(), MAX_IDS_PER_REQUEST)) {
+            OSMProxy.Result<OsmDto> waysResult = osmProxy.proceed(new OSMProxy.NetworkAction<OsmDto>() {
+                @Override
+                public OsmDto proceed() {
+                    return osmRestClient.getWays(TextUtils.join(",", ids));
+                }
+            });
+            if (!waysResult.isSuccess()) {
+                Timber.e(waysResult.getRetrofitError(), "Couldn't download %d ways", ids.size());
+                return null;
+            }
+
+            List<WayDto> visibleWays = new ArrayList<>();
+            if (waysResult.getResult().getWayDtoList() != null) {
+                for (WayDto wayDto : waysResult.getResult().getWayDtoList()) {
+                    if (!Boolean.FALSE.equals(wayDto.getVisible())) {
+                        visibleWays.add(wayDto);
+                    }
+                }
+            }
+            putByLocalId(poiConverter.convertDtosToPois(visibleWays, false), ways, result);
+        }
+        return result;
+    }
+
+    /**
+     * Index the downloaded POIs by the id of the local POI with the same backend id.
+     */
+    private static void putByLocalId(List<Poi> downloaded, Map<String, Poi> requested, Map<Long, Poi> result) {
+        for (Poi poi : downloaded) {
+            Poi local = requested.get(poi.getBackendId());
+            if (local != null) {
+                result.put(local.getId(), poi);
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
+import io.mapsquare.osmcontributor.utils.Box;
+
+/**
+ * Build the Overpass query downloading the nodes and ways of the PoiTypes in a box.
+ * <p/>
+ * A PoiType selects the elements having all of its tags with a value. Rather than one clause per PoiType and
+ * element type, each repeating the box, the query is planned as follows:
+ * <ul>
+ * <li>the box is given once as the global bbox of the query,</li>
+ * <li>nodes and ways are selected together with {@code nw},</li>
+ * <li>the PoiTypes defined by a single tag are merged by key into one {@code ["key"~"^(v1|v2)$"]} clause,</li>
+ * <li>the PoiTypes with several tags are dropped when one of their tags alone is already a PoiType, the others
+ * are merged when they only differ by the value of their last key.</li>
+ * </ul>
+ * The values are matched exactly, where the former query matched them as unanchored regular expressions.
+ * <p/>
+ * The query of the changes selects the same elements but only outputs the ids of the nodes and the elements
+ * modified since a date with {@code newer}. The ids are a few bytes per node and tell which local nodes were
+ * deleted, which an augmented diff would also give but at the cost of the full old and new versions.
+ */
+public final class OverpassQueryPlanner {
+
+    private OverpassQueryPlanner() {
+    }
+
+    /**
+     * Build the query downloading the elements of the PoiTypes in the box, with their metadata and the center of the ways.
+     *
+     * @param poiTypes The PoiTypes to download.
+     * @param box      The bounds of the download.
+     * @return The Overpass query.
+     */
+    public static String buildQuery(Collection<PoiType> poiTypes, Box box) {
+        StringBuilder query = new StringBuilder();
+        appendBbox(query, box);
+        query.append("(");
+        appendClauses(query, poiTypes);
+        return query.append(");out meta center;").toString();
+    }
+
+    /**
+     * Build the query downloading the ids of the nodes of the PoiTypes in the box, followed by the elements of the
+     * PoiTypes in the box modified since the date with their metadata and the center of the ways.
+     *
+     * @param poiTypes The PoiTypes to download.
+     * @param box      The bounds of the download.
+     * @param since    The date of the oldest modification to download.
+     * @return The Overpass query.
+     */
+    public static String buildChangesQuery(Collection<PoiType> poiTypes, Box box, DateTime since) {
+        StringBuilder query = new StringBuilder();
+        appendBbox(query, box);
+        query.append("(");
+        appendClauses(query, poiTypes);
+        return query.append(")->.all;node.all;out ids;nw.all(newer:\"")
+                .append(since.withZone(DateTimeZone.UTC).toString("yyyy-MM-dd'T'HH:mm:ss'Z'"))
+                .append("\");out meta center;")
+                .toString();
+    }
+
+    private static void appendBbox(StringBuilder query, Box box) {
+        query.append("[bbox:")
+                .append(box.getSouth()).append(",")
+                .append(box.getWest()).append(",")
+                .append(box.getNorth()).append(",")
+                .append(box.getEast())
+                .append("];");
+    }
+
+    /**
+     * Append the union of the clauses selecting the elements of the PoiTypes, without the enclosing parentheses.
+     */
+    private static void appendClauses(StringBuilder query, Collection<PoiType> poiTypes) {
+        // Key -> values of the PoiTypes defined by a single tag
+        Map<String, Set<String>> singleTagTypes = new TreeMap<>();
+        List<TreeMap<String, String>> multiTagTypes = new ArrayList<>();
+        for (PoiType poiType : poiTypes) {
+            TreeMap<String, String> filters = new TreeMap<>();
+            for (PoiTypeTag poiTypeTag : poiType.getTags()) {
+                if (poiTypeTag.getValue() != null) {
+                    filters.put(poiTypeTag.getKey(), poiTypeTag.getValue());
+                }
+            }
+            if (filters.size() == 1) {
+                Map.Entry<String, String> filter = filters.firstEntry();
+                getValues(singleTagTypes, filter.getKey()).add(filter.getValue());
+            } else if (filters.size() > 1) {
+                multiTagTypes.add(filters);
+            }
+        }
+
+        // Filters on all the keys but the last -> last key -> values
+        Map<String, Map<String, Set<String>>> mergedMultiTagTypes = new TreeMap<>();
+        for (TreeMap<String, String> filters : multiTagTypes) {
+            if (isSubsumed(filters, singleTagTypes)) {
+                continue;
+            }
+            Map.Entry<String, String> last = filters.lastEntry();
+            String prefix = filtersToString(filters.headMap(last.getKey()));
+            Map<String, Set<String>> lastKeys = mergedMultiTagTypes.get(prefix);
+            if (lastKeys == null) {
+                lastKeys = new TreeMap<>();
+                mergedMultiTagTypes.put(prefix, lastKeys);
+            }
+            getValues(lastKeys, last.getKey()).add(last.getValue());
+        }
+
+        for (Map.Entry<String, Set<String>> entry : singleTagTypes.entrySet()) {
+            query.append("nw");
+            appendFilter(query, entry.getKey(), entry.getValue());
+            query.append(";");
+        }
+        for (Map.Entry<String, Map<String, Set<String>>> entry : mergedMultiTagTypes.entrySet()) {
+            for (Map.Entry<String, Set<String>> last : entry.getValue().entrySet()) {
+                query.append("nw").append(entry.getKey());
+                appendFilter(query, last.getKey(), last.getValue());
+                query.append(";");
+            }
+        }
+    }
+
+    /**
+     * Whether one of the tags of a PoiType is already a PoiType by itself, so that its elements are already selected.
+     */
+    private static boolean isSubsumed(Map<String, String> filters, Map<String, Set<String>> singleTagTypes) {
+        for (Map.Entry<String, String> filter : filters.entrySet()) {
+            Set<String> values = singleTagTypes.get(filter.getKey());
+            if (values != null && values.contains(filter.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> getValues(Map<String, Set<String>> valuesByKey, String key) {
+        Set<String> values = valuesByKey.get(key);
+        if (values == null) {
+            values = new TreeSet<>();
+            valuesByKey.put(key, values);
+        }
+        return values;
+    }
+
+    private static String filtersToString(Map<String, String> filters) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> filter : filters.entrySet()) {
+            builder.append("[\"").append(escapeString(filter.getKey())).append("\"=\"")
+                    .append(escapeString(filter.getValue())).append("\"]");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Append an exact match of the key with one of the values, an equality for a single value, an anchored
+     * regular expression for several values.
+     */
+    private static void appendFilter(StringBuilder query, String key, Set<String> values) {
+        query.append("[\"").append(escapeString(key)).append("\"");
+        if (values.size() == 1) {
+            query.append("=\"").append(escapeString(values.iterator().next())).append("\"]");
+            return;
+        }
+        StringBuilder regex = new StringBuilder("^(");
+        boolean first = true;
+        for (String value : values) {
+            if (!first) {
+                regex.append("|");
+            }
+            first = false;
+            regex.append(escapeRegex(value));
+        }
+        regex.append(")$");
+        query.append("~\"").append(escapeString(regex.toString())).append("\"]");
+    }
+
+    /**
+     * Escape the special characters of a POSIX extended regular expression.
+     */
+    static String escapeRegex(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Escape the backslashes and double quotes of an Overpass string literal.
+     */
+    static String escapeString(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
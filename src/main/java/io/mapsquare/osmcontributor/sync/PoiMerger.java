@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.PoiNodeRef;
+import io.mapsquare.osmcontributor.core.model.PoiTag;
+
+/**
+ * Three-way merge of a POI modified both locally and in the backend.
+ * <p/>
+ * The base is the old copy of the POI saved before the local edition, the version the local changes were made on.
+ * Each tag and the position are merged independently: a value changed on one side only takes the changed value and
+ * a value changed the same way on both sides is kept. The merge fails when both sides changed a value differently.
+ * <p/>
+ * The geometry of a way is not merged: its nodes must be the same on both sides.
+ */
+public final class PoiMerger {
+
+    /**
+     * Coordinates closer than this are equal, the backend stores them with 7 decimals.
+     */
+    private static final double COORDINATE_EPSILON = 1e-7;
+
+    private PoiMerger() {
+    }
+
+    /**
+     * Merge the remote changes of a POI into the local POI.
+     *
+     * @param base   The version of the POI the local changes were made on.
+     * @param local  The POI modified locally, modified in place with the result of the merge.
+     * @param remote The current version of the POI in the backend.
+     * @return Whether the changes could be merged, the local POI is left untouched otherwise.
+     */
+    public static boolean merge(Poi base, Poi local, Poi remote) {
+        Map<String, String> tags = mergeTags(base.getTagsMap(), local.getTagsMap(), remote.getTagsMap());
+        if (tags == null) {
+            return false;
+        }
+
+        Poi position = local;
+        if (local.getWay()) {
+            if (!nodeBackendIds(local).equals(nodeBackendIds(remote))) {
+                return false;
+            }
+        } else {
+            position = mergePosition(base, local, remote);
+            if (position == null) {
+                return false;
+            }
+        }
+
+        applyTags(local, tags);
+        local.setLatitude(position.getLatitude());
+        local.setLongitude(position.getLongitude());
+        local.setVersion(remote.getVersion());
+        return true;
+    }
+
+    /**
+     * Merge the tags key by key.
+     *
+     * @param base   The tags the local changes were made on.
+     * @param local  The local tags.
+     * @param remote The tags of the backend.
+     * @return The merged tags or null if a tag was changed differently on both sides.
+     */
+    static Map<String, String> mergeTags(Map<String, String> base, Map<String, String> local, Map<String, String> remote) {
+        Set<String> keys = new HashSet<>(base.keySet());
+        keys.addAll(local.keySet());
+        keys.addAll(remote.keySet());
+
+        Map<String, String> merged = new HashMap<>();
+        for (String key : keys) {
+            String baseValue = base.get(key);
+            String localValue = local.get(key);
+            String remoteValue = remote.get(key);
+
+            String value;
+            if (equals(localValue, baseValue)) {
+                value = remoteValue;
+            } else if (equals(remoteValue, baseValue) || equals(localValue, remoteValue)) {
+                value = localValue;
+            } else {
+                return null;
+            }
+            if (value != null) {
+                merged.put(key, value);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Merge the position of a node as a single value.
+     *
+     * @return The POI holding the merged position or null if the node was moved differently on both sides.
+     */
+    private static Poi mergePosition(Poi base, Poi local, Poi remote) {
+        if (samePosition(local, base)) {
+            return remote;
+        }
+        if (samePosition(remote, base) || samePosition(local, remote)) {
+            return local;
+        }
+        return null;
+    }
+
+    private static boolean samePosition(Poi first, Poi second) {
+        return Math.abs(first.getLatitude() - second.getLatitude()) < COORDINATE_EPSILON
+                && Math.abs(first.getLongitude() - second.getLongitude()) < COORDINATE_EPSILON;
+    }
+
+    private static List<String> nodeBackendIds(Poi poi) {
+        List<String> ids = new ArrayList<>();
+        if (poi.getNodeRefs() != null) {
+            for (PoiNodeRef nodeRef : poi.getNodeRefs()) {
+                ids.add(nodeRef.getNodeBackendId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Replace the tags of the POI by the given ones, reusing the existing PoiTags.
+     */
+    private static void applyTags(Poi poi, Map<String, String> tags) {
+        Map<String, String> missing = new HashMap<>(tags);
+        List<PoiTag> poiTags = new ArrayList<>(tags.size());
+
+        if (poi.getTags() != null) {
+            for (PoiTag poiTag : poi.getTags()) {
+                String value = missing.remove(poiTag.getKey());
+                if (value != null) {
+                    poiTag.setValue(value);
+                    poiTags.add(poiTag);
+                }
+            }
+        }
+
+        for (Map.Entry<String, String> entry : missing.entrySet()) {
+            PoiTag poiTag = new PoiTag();
+            poiTag.setKey(entry.getKey());
+            poiTag.setValue(entry.getValue());
+            poiTag.setPoi(poi);
+            poiTags.add(poiTag);
+        }
+
+        poi.setTags(poiTags);
+        poi.setName(tags.get("name"));
+        poi.setLevel(tags.get("level"));
+    }
+
+    private static boolean equals(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
@@ -21,13 +21,24 @@ package io.mapsquare.osmcontributor.sync;
 import android.app.Application;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
+import org.joda.time.DateTime;
 
 import io.mapsquare.osmcontributor.core.PoiManager;
 import io.mapsquare.osmcontributor.core.database.dao.PoiDao;
@@ -36,7 +47,9 @@ import io.mapsquare.osmcontributor.core.events.PoiTypesLoaded;
 import io.mapsquare.osmcontributor.core.events.PoisAndNotesDownloadedEvent;
 import io.mapsquare.osmcontributor.core.model.Note;
 import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.PoiNodeRef;
 import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.core.model.UploadItem;
 import io.mapsquare.osmcontributor.login.LoginManager;
 import io.mapsquare.osmcontributor.note.NoteManager;
 import io.mapsquare.osmcontributor.sync.assets.events.DbInitializedEvent;
@@ -58,6 +71,11 @@ import timber.log.Timber;
  */
 public class SyncManager {
 
+    /**
+     * Maximum number of tiles downloaded at the same time, Overpass servers usually allow 2 concurrent requests per client.
+     */
+    public static final int MAX_PARALLEL_TILE_DOWNLOADS = 2;
+
     Application application;
     PoiManager poiManager;
     NoteManager noteManager;
@@ -68,9 +86,11 @@ public class SyncManager {
     SyncWayManager syncWayManager;
     SyncNoteManager syncNoteManager;
     LoginManager loginManager;
+    TileDownloadPlanner tileDownloadPlanner;
+    UploadOutbox uploadOutbox;
 
     @Inject
-    public SyncManager(Application application, PoiManager poiManager, LoginManager loginManager, NoteManager noteManager, PoiDao poiDao, PoiTypeDao poiTypeDao, EventBus bus, Backend backend, SyncWayManager syncWayManager, SyncNoteManager syncNoteManager) {
+    public SyncManager(Application application, PoiManager poiManager, LoginManager loginManager, NoteManager noteManager, PoiDao poiDao, PoiTypeDao poiTypeDao, EventBus bus, Backend backend, SyncWayManager syncWayManager, SyncNoteManager syncNoteManager, TileDownloadPlanner tileDownloadPlanner, UploadOutbox uploadOutbox) {
         this.application = application;
         this.poiManager = poiManager;
         this.noteManager = noteManager;
@@ -81,6 +101,8 @@ public class SyncManager {
         this.backend = backend;
         this.syncWayManager = syncWayManager;
         this.syncNoteManager = syncNoteManager;
+        this.tileDownloadPlanner = tileDownloadPlanner;
+        this.uploadOutbox = uploadOutbox;
     }
 
 
@@ -173,7 +195,13 @@ public class SyncManager {
 
     /**
      * Download from backend the list of Poi contained in the box.
-     * Update the database with the obtained list.
+     * <br/>
+     * The box is split in tiles and only the tiles not downloaded recently are requested, at most
+     * {@link #MAX_PARALLEL_TILE_DOWNLOADS} at the same time. The database is updated with each chunk
+     * of POIs as soon as it is read from the response.
+     * <br/>
+     * For the tiles downloaded recently with the same PoiTypes, only the changes since the last download are
+     * requested when the backend supports it, then the nodes which left the tile are deleted.
      *
      * @param box The Box to synchronize with the database.
      */
@@ -183,18 +211,77 @@ public class SyncManager {
             syncDownloadPoiTypes();
         }
 
-        List<Poi> pois = backend.getPoisInBox(box);
-        if (pois.size() > 0) {
-            Timber.d("Updating %d nodes", pois.size());
-            poiManager.mergeFromOsmPois(pois);
-        } else {
-            Timber.d("No new node found in the area");
+        final int signature = tileDownloadPlanner.currentSignature();
+        List<TileDownloadPlanner.Tile> tiles = tileDownloadPlanner.staleTiles(box, signature);
+        if (tiles.isEmpty()) {
+            Timber.d("All the tiles of the area are up to date");
+            return;
+        }
+        Timber.d("Downloading %d tiles", tiles.size());
+
+        final Backend.PoiChunkHandler handler = new Backend.PoiChunkHandler() {
+            @Override
+            public void onPois(List<Poi> pois) {
+                Timber.d("Updating %d nodes", pois.size());
+                poiManager.mergeFromOsmPois(pois);
+            }
+        };
+
+        List<Callable<Integer>> downloads = new ArrayList<>(tiles.size());
+        for (final TileDownloadPlanner.Tile tile : tiles) {
+            downloads.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    if (tile.getSince() != null) {
+                        Backend.ChangesResult changes = backend.downloadPoiChangesInBox(tile.getBox(), tile.getSince(), handler);
+                        if (changes != null) {
+                            if (changes.isSuccess()) {
+                                poiManager.deleteRemovedNodes(tile.getBox(), changes.getNodeBackendIds(), changes.getSnapshotDate());
+                                tileDownloadPlanner.markDownloaded(tile, signature);
+                            }
+                            return changes.getCount();
+                        }
+                    }
+                    int count = backend.downloadPoisInBox(tile.getBox(), handler);
+                    if (count >= 0) {
+                        tileDownloadPlanner.markDownloaded(tile, signature);
+                    }
+                    return count;
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_PARALLEL_TILE_DOWNLOADS, tiles.size()));
+        try {
+            int count = 0;
+            for (Future<Integer> future : executor.invokeAll(downloads)) {
+                try {
+                    count += Math.max(0, future.get());
+                } catch (ExecutionException e) {
+                    Timber.e(e.getCause(), "Couldn't download a tile");
+                }
+            }
+            if (count == 0) {
+                Timber.d("No new node found in the area");
+            }
+        } catch (InterruptedException e) {
+            Timber.w("Download of the tiles interrupted");
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
         }
     }
 
     /**
      * Send in a unique changeSet all the new POIs, modified and suppressed ones from ids send in params.
      * <p/>
+     * All the changes are sent in a single osmChange upload when the backend supports it. If the backend
+     * rejects the upload, the POIs are sent one by one so that only the conflicting ones fail. The current version of
+     * the conflicting POIs is then downloaded in bulk and merged with the local changes when possible.
+     * <p/>
+     * The changes go through the {@link UploadOutbox}: an upload interrupted by the loss of the connection keeps the
+     * local changes and resumes in the same changeSet, without sending again the changes already acknowledged.
+     * <p/>
      * Send a {@link io.mapsquare.osmcontributor.sync.events.SyncFinishUploadPoiEvent} with the counts.
      *
      * @param comment       The comment of the changeSet.
@@ -224,25 +311,68 @@ public class SyncManager {
     }
 
     private void remoteAddOrUpdateOrDeletePois(String comment, List<Poi> updatedPois, List<Poi> newPois, List<Poi> toDeletePois) {
-        int successfullyAddedPoisCount = 0;
-        int successfullyUpdatedPoisCount = 0;
-        int successfullyDeletedPoisCount = 0;
-
+        UploadCounts counts = new UploadCounts();
 
         if (updatedPois.size() == 0 && newPois.size() == 0 && toDeletePois.size() == 0) {
             Timber.i("No new or updatable or to delete POIs to send to osm");
         } else {
             Timber.i("Found %d new, %d updated and %d to delete POIs to send to osm", newPois.size(), updatedPois.size(), toDeletePois.size());
 
-            final String changeSetId = backend.initializeTransaction(comment);
+            Map<Long, UploadItem> items = uploadOutbox.enqueue(newPois, updatedPois, toDeletePois);
+            final String changeSetId;
+            if (!reconcileInFlight(items, newPois, updatedPois, toDeletePois, counts)) {
+                bus.post(new SyncUploadRetrofitErrorEvent(-1L));
+                changeSetId = null;
+            } else if (newPois.isEmpty() && updatedPois.isEmpty() && toDeletePois.isEmpty()) {
+                Timber.i("All the changes were already applied by the backend");
+                changeSetId = null;
+            } else {
+                changeSetId = openChangeSet(comment);
+            }
 
             if (changeSetId != null) {
-                successfullyAddedPoisCount = remoteAddPois(newPois, changeSetId);
-                successfullyUpdatedPoisCount = remoteUpdatePois(updatedPois, changeSetId);
-                successfullyDeletedPoisCount = remoteDeletePois(toDeletePois, changeSetId);
+                uploadOutbox.markInFlight(items.values(), changeSetId);
+                Backend.UploadResult uploadResult = backend.uploadPois(newPois, updatedPois, toDeletePois, changeSetId);
+
+                if (uploadResult != null && uploadResult.getStatus() == Backend.ModificationStatus.SUCCESS) {
+                    Set<Long> appliedPoiIds = applyUploadResult(uploadResult, newPois, updatedPois, toDeletePois);
+                    List<UploadItem> acked = new ArrayList<>();
+                    for (UploadItem item : items.values()) {
+                        if (appliedPoiIds.contains(item.getPoiId())) {
+                            acked.add(item);
+                        }
+                    }
+                    // The changes missing from the diffResult stay in flight, the changeSet is read back at the next upload
+                    uploadOutbox.markAcked(acked);
+                    if (acked.size() < items.size()) {
+                        Timber.w("%d changes are missing from the diffResult of changeSet %s", items.size() - acked.size(), changeSetId);
+                    }
+                    counts.added += filterPois(newPois, appliedPoiIds).size();
+                    counts.updated += filterPois(updatedPois, appliedPoiIds).size();
+                    counts.deleted += toDeletePois.size();
+                } else if (uploadResult == null || uploadResult.getStatus() == Backend.ModificationStatus.FAILURE_CONFLICT
+                        || uploadResult.getStatus() == Backend.ModificationStatus.FAILURE_NOT_EXISTING) {
+                    // The diff upload isn't supported or was rejected as a whole, send the POIs one by one
+                    // to isolate the failing ones
+                    uploadOutbox.markPending(items.values());
+                    remoteAddPois(newPois, items, changeSetId, counts);
+                    remoteUpdatePois(updatedPois, items, changeSetId, counts);
+                    remoteDeletePois(toDeletePois, items, changeSetId, counts);
+                    resolveConflicts(items, changeSetId, counts);
+                    if (counts.interrupted) {
+                        bus.post(new SyncUploadRetrofitErrorEvent(-1L));
+                    }
+                } else if (uploadResult.getStatus() == Backend.ModificationStatus.FAILURE_NETWORK) {
+                    // The items stay in flight, the upload will resume in the same changeSet
+                    bus.post(new SyncUploadRetrofitErrorEvent(-1L));
+                } else {
+                    uploadOutbox.markPending(items.values());
+                    bus.post(new SyncUploadRetrofitErrorEvent(-1L));
+                }
             }
+            uploadOutbox.clearAcknowledged();
         }
-        bus.post(new SyncFinishUploadPoiEvent(successfullyAddedPoisCount, successfullyUpdatedPoisCount, successfullyDeletedPoisCount));
+        bus.post(new SyncFinishUploadPoiEvent(counts.added, counts.updated, counts.deleted));
     }
 
     // *********************************
@@ -250,161 +380,500 @@ public class SyncManager {
     // *********************************
 
     /**
-     * Add a List of POIs to the backend.
+     * Counts of the POIs sent one by one.
+     */
+    private static class UploadCounts {
+        int added;
+        int updated;
+        int deleted;
+        /**
+         * Whether the connection was lost, the remaining POIs are left in the outbox.
+         */
+        boolean interrupted;
+        /**
+         * POIs whose update was rejected because they were modified in the backend.
+         */
+        final List<Poi> updateConflicts = new ArrayList<>();
+        /**
+         * POIs whose deletion was rejected because they were modified in the backend.
+         */
+        final List<Poi> deleteConflicts = new ArrayList<>();
+    }
+
+    /**
+     * Reuse the changeSet of the last upload if it is still open, otherwise create a new one.
+     *
+     * @param comment The comment of the new changeSet.
+     * @return The id of the changeSet or null if it couldn't be created.
+     */
+    private String openChangeSet(String comment) {
+        String changeSetId = uploadOutbox.getOpenChangeSetId();
+        if (changeSetId != null && backend.isTransactionOpen(changeSetId)) {
+            Timber.d("Resuming the upload in changeSet %s", changeSetId);
+            return changeSetId;
+        }
+        return backend.initializeTransaction(comment);
+    }
+
+    /**
+     * Read back the changeSets of the changes left in flight by an interrupted upload, whose answer was lost.
+     * The changes found applied by the backend are saved, acknowledged and removed from the lists to send.
+     * The others were not applied and are marked pending to be sent again.
+     *
+     * @param items        The items of the outbox by POI id.
+     * @param newPois      The POIs to add to the backend.
+     * @param updatedPois  The POIs to update in the backend.
+     * @param toDeletePois The POIs to delete.
+     * @param counts       The counts to increment with the changes already applied.
+     * @return False if a changeSet couldn't be read. Nothing must be sent then, a creation sent again would be duplicated.
+     */
+    private boolean reconcileInFlight(Map<Long, UploadItem> items, List<Poi> newPois, List<Poi> updatedPois, List<Poi> toDeletePois, UploadCounts counts) {
+        Map<String, List<UploadItem>> inFlightByChangeSet = new HashMap<>();
+        for (UploadItem item : items.values()) {
+            if (item.getState() == UploadItem.State.IN_FLIGHT) {
+                List<UploadItem> inFlight = inFlightByChangeSet.get(item.getChangeSetId());
+                if (inFlight == null) {
+                    inFlight = new ArrayList<>();
+                    inFlightByChangeSet.put(item.getChangeSetId(), inFlight);
+                }
+                inFlight.add(item);
+            }
+        }
+
+        for (Map.Entry<String, List<UploadItem>> entry : inFlightByChangeSet.entrySet()) {
+            Set<Long> poiIds = new HashSet<>();
+            for (UploadItem item : entry.getValue()) {
+                poiIds.add(item.getPoiId());
+            }
+            List<Poi> sentNewPois = filterPois(newPois, poiIds);
+            List<Poi> sentUpdatedPois = filterPois(updatedPois, poiIds);
+            List<Poi> sentToDeletePois = filterPois(toDeletePois, poiIds);
+
+            Backend.AppliedChanges appliedChanges = backend.findAppliedChanges(entry.getKey(), sentNewPois, sentUpdatedPois, sentToDeletePois);
+            if (appliedChanges == null) {
+                Timber.w("Couldn't check the changes in flight in changeSet %s, the upload is postponed", entry.getKey());
+                return false;
+            }
+
+            Set<Long> appliedPoiIds = applyUploadResult(new Backend.UploadResult(Backend.ModificationStatus.SUCCESS, appliedChanges.getBackendIds(), appliedChanges.getVersions()),
+                    sentNewPois, sentUpdatedPois, filterPois(sentToDeletePois, appliedChanges.getDeletedPoiIds()));
+            List<Poi> appliedNewPois = filterPois(sentNewPois, appliedPoiIds);
+            List<Poi> appliedUpdatedPois = filterPois(sentUpdatedPois, appliedPoiIds);
+            List<Poi> appliedToDeletePois = filterPois(sentToDeletePois, appliedPoiIds);
+
+            List<UploadItem> acked = new ArrayList<>();
+            List<UploadItem> notApplied = new ArrayList<>();
+            for (UploadItem item : entry.getValue()) {
+                if (appliedPoiIds.contains(item.getPoiId())) {
+                    acked.add(item);
+                    items.remove(item.getPoiId());
+                } else {
+                    notApplied.add(item);
+                }
+            }
+            uploadOutbox.markAcked(acked);
+            uploadOutbox.markPending(notApplied);
+            Timber.i("%d of the %d changes in flight in changeSet %s were already applied", acked.size(), entry.getValue().size(), entry.getKey());
+
+            newPois.removeAll(appliedNewPois);
+            updatedPois.removeAll(appliedUpdatedPois);
+            toDeletePois.removeAll(appliedToDeletePois);
+            counts.added += appliedNewPois.size();
+            counts.updated += appliedUpdatedPois.size();
+            counts.deleted += appliedToDeletePois.size();
+        }
+        return true;
+    }
+
+    private static List<Poi> filterPois(List<Poi> pois, Set<Long> poiIds) {
+        List<Poi> result = new ArrayList<>();
+        for (Poi poi : pois) {
+            if (poiIds.contains(poi.getId())) {
+                result.add(poi);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Apply to the database the result of the upload of all the changes in a single request.
+     * <p/>
+     * The new and updated POIs without an id or a version in the result are not confirmed and are left untouched.
+     *
+     * @param uploadResult The result of the upload.
+     * @param newPois      The POIs who were added to the backend.
+     * @param updatedPois  The POIs who were updated in the backend.
+     * @param toDeletePois The POIs who were deleted from the backend.
+     * @return The ids of the POIs whose change was applied.
+     */
+    private Set<Long> applyUploadResult(Backend.UploadResult uploadResult, List<Poi> newPois, List<Poi> updatedPois, List<Poi> toDeletePois) {
+        Map<Long, String> backendIds = uploadResult.getBackendIds();
+        Map<Long, String> versions = uploadResult.getVersions();
+        Set<Long> appliedPoiIds = new HashSet<>();
+        List<Poi> toSave = new ArrayList<>(newPois.size() + updatedPois.size());
+
+        for (Poi poi : newPois) {
+            if (backendIds.get(poi.getId()) == null || versions.get(poi.getId()) == null) {
+                Timber.w("The creation of POI %d isn't confirmed by the backend", poi.getId());
+                continue;
+            }
+            poi.setBackendId(backendIds.get(poi.getId()));
+            poi.setVersion(versions.get(poi.getId()));
+            poi.setUpdateDate(new DateTime());
+            poi.setUpdated(false);
+            toSave.add(poi);
+        }
+
+        for (Poi poi : updatedPois) {
+            if (versions.get(poi.getId()) == null) {
+                Timber.w("The update of POI %d isn't confirmed by the backend", poi.getId());
+                continue;
+            }
+            poiManager.deleteOldPoiAssociated(poi);
+            poi.setVersion(versions.get(poi.getId()));
+            poi.setUpdateDate(new DateTime());
+            poi.setUpdated(false);
+            toSave.add(poi);
+        }
+
+        poiManager.savePois(toSave);
+        for (Poi poi : toSave) {
+            appliedPoiIds.add(poi.getId());
+        }
+
+        for (Poi poi : toDeletePois) {
+            poiManager.deleteOldPoiAssociated(poi);
+            poiManager.deletePoi(poi);
+            appliedPoiIds.add(poi.getId());
+        }
+        return appliedPoiIds;
+    }
+
+    /**
+     * Add a List of POIs to the backend, stopping at the loss of the connection.
      *
      * @param pois        The List of POIs to add to the backend.
+     * @param items       The items of the outbox by POI id.
      * @param changeSetId The changeSet in which the POIs are sent.
-     * @return The number of POIs who where successfully added.
+     * @param counts      The counts to increment.
      */
-    private int remoteAddPois(List<Poi> pois, String changeSetId) {
-        int count = 0;
-
+    private void remoteAddPois(List<Poi> pois, Map<Long, UploadItem> items, String changeSetId, UploadCounts counts) {
         for (Poi poi : pois) {
-            if (remoteAddPoi(poi, changeSetId)) {
-                count++;
+            if (counts.interrupted) {
+                return;
+            }
+            if (isSent(remoteAddPoi(poi, items.get(poi.getId()), changeSetId), counts)) {
+                counts.added++;
             }
         }
-        return count;
     }
 
     /**
      * Add a Poi to the backend.
      *
      * @param poi         The Poi to add to the backend.
+     * @param item        The item of the Poi in the outbox.
      * @param changeSetId The changeSet in which the Poi is sent.
-     * @return Whether the addition was a success or not.
+     * @return The status of the addition.
      */
-    private boolean remoteAddPoi(final Poi poi, String changeSetId) {
+    private Backend.ModificationStatus remoteAddPoi(final Poi poi, UploadItem item, String changeSetId) {
+        uploadOutbox.markInFlight(Collections.singletonList(item), changeSetId);
         Backend.CreationResult creationResult = backend.addPoi(poi, changeSetId);
         switch (creationResult.getStatus()) {
             case SUCCESS:
                 poi.setBackendId(creationResult.getBackendId());
+                poi.setUpdateDate(new DateTime());
                 poi.setUpdated(false);
                 poiManager.savePoi(poi);
-                return true;
+                uploadOutbox.markAcked(Collections.singletonList(item));
+                return Backend.ModificationStatus.SUCCESS;
+            case FAILURE_NETWORK:
+                return Backend.ModificationStatus.FAILURE_NETWORK;
             case FAILURE_UNKNOWN:
             default:
                 poiManager.deletePoi(poi);
+                uploadOutbox.remove(item);
                 bus.post(new SyncNewNodeErrorEvent(poi.getName(), poi.getId()));
-                return false;
+                return creationResult.getStatus();
         }
     }
 
     /**
-     * Update a List of POIs to the backend.
+     * Update a List of POIs to the backend, stopping at the loss of the connection.
      *
      * @param pois        The List of POIs to update to the backend.
+     * @param items       The items of the outbox by POI id.
      * @param changeSetId The changeSet in which the POIs are sent.
-     * @return The number of POIs who where successfully updated.
+     * @param counts      The counts to increment.
      */
-    private int remoteUpdatePois(List<Poi> pois, String changeSetId) {
-        int count = 0;
+    private void remoteUpdatePois(List<Poi> pois, Map<Long, UploadItem> items, String changeSetId, UploadCounts counts) {
         for (Poi poi : pois) {
-            if (remoteUpdatePoi(poi, changeSetId)) {
-                count++;
+            if (counts.interrupted) {
+                return;
+            }
+            Backend.ModificationStatus status = remoteUpdatePoi(poi, items.get(poi.getId()), changeSetId);
+            if (status == Backend.ModificationStatus.FAILURE_CONFLICT) {
+                counts.updateConflicts.add(poi);
+            } else if (isSent(status, counts)) {
+                counts.updated++;
             }
         }
-        return count;
     }
 
     /**
      * Update a Poi of the backend.
      *
      * @param poi         The Poi to update.
+     * @param item        The item of the Poi in the outbox.
      * @param changeSetId The changeSet in which the Poi is sent.
-     * @return Whether the update was a success or not.
+     * @return The status of the update, a conflicting Poi is left pending with its old copy for the resolution.
      */
-    private boolean remoteUpdatePoi(final Poi poi, String changeSetId) {
+    private Backend.ModificationStatus remoteUpdatePoi(final Poi poi, UploadItem item, String changeSetId) {
+        uploadOutbox.markInFlight(Collections.singletonList(item), changeSetId);
         Backend.UpdateResult updateResult = backend.updatePoi(poi, changeSetId);
+        if (updateResult.getStatus() == Backend.ModificationStatus.FAILURE_NETWORK) {
+            return Backend.ModificationStatus.FAILURE_NETWORK;
+        }
+        if (updateResult.getStatus() == Backend.ModificationStatus.FAILURE_CONFLICT) {
+            Timber.w("Couldn't update poi %s: conflict", poi);
+            uploadOutbox.markPending(Collections.singletonList(item));
+            return Backend.ModificationStatus.FAILURE_CONFLICT;
+        }
         poiManager.deleteOldPoiAssociated(poi);
 
         switch (updateResult.getStatus()) {
             case SUCCESS:
                 poi.setVersion(updateResult.getVersion());
+                poi.setUpdateDate(new DateTime());
                 poi.setUpdated(false);
                 poiManager.savePoi(poi);
-                return true;
-            case FAILURE_CONFLICT:
-                bus.post(new SyncConflictingNodeErrorEvent(poi.getName(), poi.getId()));
-                Timber.e("Couldn't update poi %s: conflict, redownloading last version of poi", poi);
-                deleteAndRetrieveUnmodifiedPoi(poi);
-                return false;
+                uploadOutbox.markAcked(Collections.singletonList(item));
+                break;
             case FAILURE_NOT_EXISTING:
                 Timber.e("Couldn't update poi %s, it didn't exist. Deleting the incriminated poi", poi);
                 poiManager.deletePoi(poi);
+                uploadOutbox.remove(item);
                 bus.post(new SyncConflictingNodeErrorEvent(poi.getName(), poi.getId()));
-                return false;
+                break;
             case FAILURE_UNKNOWN:
             default:
                 Timber.e("Couldn't update poi %s. Deleting the incriminated poi", poi);
                 poiManager.deletePoi(poi);
+                uploadOutbox.remove(item);
                 bus.post(new SyncUploadRetrofitErrorEvent(poi.getId()));
-                return false;
+                break;
         }
+        return updateResult.getStatus();
     }
 
     /**
-     * Delete a List of POIs to the backend.
+     * Delete a List of POIs to the backend, stopping at the loss of the connection.
      *
      * @param pois        The List of POIs to delete to the backend.
+     * @param items       The items of the outbox by POI id.
      * @param changeSetId The changeSet in which the POIs are sent.
-     * @return The number of POIs who where successfully deleted.
+     * @param counts      The counts to increment.
      */
-    private int remoteDeletePois(List<Poi> pois, String changeSetId) {
-        int count = 0;
+    private void remoteDeletePois(List<Poi> pois, Map<Long, UploadItem> items, String changeSetId, UploadCounts counts) {
         for (Poi poi : pois) {
-            if (remoteDeletePoi(poi, changeSetId)) {
-                count++;
+            if (counts.interrupted) {
+                return;
+            }
+            Backend.ModificationStatus status = remoteDeletePoi(poi, items.get(poi.getId()), changeSetId);
+            if (status == Backend.ModificationStatus.FAILURE_CONFLICT) {
+                counts.deleteConflicts.add(poi);
+            } else if (isSent(status, counts)) {
+                counts.deleted++;
             }
         }
-        return count;
     }
 
     /**
      * Delete a Poi of the backend.
      *
      * @param poi         The Poi to delete.
+     * @param item        The item of the Poi in the outbox.
      * @param changeSetId The changeSet in which the Poi is sent.
-     * @return Whether the delete was a success or not.
+     * @return The status of the deletion, a POI already deleted counts as a success. A conflicting Poi is left
+     * pending for the resolution.
      */
-    private boolean remoteDeletePoi(final Poi poi, String changeSetId) {
+    private Backend.ModificationStatus remoteDeletePoi(final Poi poi, UploadItem item, String changeSetId) {
+        uploadOutbox.markInFlight(Collections.singletonList(item), changeSetId);
         Backend.ModificationStatus modificationStatus = backend.deletePoi(poi, changeSetId);
+        if (modificationStatus == Backend.ModificationStatus.FAILURE_NETWORK) {
+            return modificationStatus;
+        }
+        if (modificationStatus == Backend.ModificationStatus.FAILURE_CONFLICT) {
+            Timber.w("Couldn't delete poi %s: conflict", poi);
+            uploadOutbox.markPending(Collections.singletonList(item));
+            return modificationStatus;
+        }
         poiManager.deleteOldPoiAssociated(poi);
 
         switch (modificationStatus) {
             case SUCCESS:
             case FAILURE_NOT_EXISTING:
                 poiManager.deletePoi(poi);
-                return true;
-            case FAILURE_CONFLICT:
-                bus.post(new SyncConflictingNodeErrorEvent(poi.getName(), poi.getId()));
-                Timber.e("Couldn't update poi %s: conflict, redownloading last version of poi", poi);
-                deleteAndRetrieveUnmodifiedPoi(poi);
-                return false;
+                uploadOutbox.markAcked(Collections.singletonList(item));
+                return Backend.ModificationStatus.SUCCESS;
             case FAILURE_UNKNOWN:
             default:
                 Timber.e("Couldn't delete poi %s", poi);
+                uploadOutbox.markPending(Collections.singletonList(item));
                 bus.post(new SyncUploadRetrofitErrorEvent(poi.getId()));
-                return false;
+                return modificationStatus;
         }
     }
 
     /**
-     * Delete the Poi from the database and re-download it from the backend.
+     * Interpret the status of a POI sent alone.
      *
-     * @param poi The Poi to delete and re-download.
+     * @param status The status of the request.
+     * @param counts The counts, marked as interrupted if the connection was lost.
+     * @return Whether the POI was sent successfully.
      */
-    // TODO manage way pois
-    private void deleteAndRetrieveUnmodifiedPoi(final Poi poi) {
-        poiManager.deletePoi(poi);
-        if (poi.getBackendId() != null) {
+    private static boolean isSent(Backend.ModificationStatus status, UploadCounts counts) {
+        if (status == Backend.ModificationStatus.FAILURE_NETWORK) {
+            Timber.w("Connection lost, the remaining POIs stay in the upload outbox");
+            counts.interrupted = true;
+            return false;
+        }
+        return status == Backend.ModificationStatus.SUCCESS;
+    }
+
+    /**
+     * Resolve the conflicts of the POIs sent one by one, with a bulk download of their current version.
+     * <p/>
+     * The local changes of an updated Poi are merged with the changes of the backend against the old copy saved
+     * before the edition, then sent again. The local changes which can't be merged and the deletions of POIs
+     * modified in the backend are discarded for the current version of the backend.
+     * <p/>
+     * If the download fails, the conflicting POIs stay in the outbox with their local changes.
+     *
+     * @param items       The items of the outbox by POI id.
+     * @param changeSetId The changeSet in which the merged POIs are sent.
+     * @param counts      The counts to increment.
+     */
+    private void resolveConflicts(Map<Long, UploadItem> items, String changeSetId, UploadCounts counts) {
+        List<Poi> conflicts = new ArrayList<>(counts.updateConflicts);
+        conflicts.addAll(counts.deleteConflicts);
+        if (conflicts.isEmpty() || counts.interrupted) {
+            return;
+        }
+
+        Map<Long, Poi> remotePois = backend.getPoisByIds(conflicts);
+        if (remotePois == null) {
+            Timber.w("Couldn't download the %d conflicting POIs, they stay in the upload outbox", conflicts.size());
+            return;
+        }
 
-            Poi backendPoi = backend.getPoiById(poi.getBackendId());
-            if (backendPoi != null) {
-                poiManager.savePoi(backendPoi);
+        List<Poi> mergedPois = new ArrayList<>();
+        for (Poi poi : counts.updateConflicts) {
+            Poi remote = remotePois.get(poi.getId());
+            Poi base = poi.getOldPoiId() != null ? poiManager.queryForId(poi.getOldPoiId()) : null;
+            if (remote != null && base != null && PoiMerger.merge(base, poi, remote)) {
+                replaceOldVersion(poi, remote);
+                mergedPois.add(poi);
             } else {
-                Timber.w("The poi with id %s couldn't be found ", poi.getBackendId());
+                discardLocalChanges(poi, remote, items.get(poi.getId()));
+            }
+        }
+        for (Poi poi : counts.deleteConflicts) {
+            discardLocalChanges(poi, remotePois.get(poi.getId()), items.get(poi.getId()));
+        }
+
+        if (mergedPois.isEmpty()) {
+            return;
+        }
+
+        Timber.i("Merged %d conflicting POIs, sending them again", mergedPois.size());
+        UploadCounts retry = new UploadCounts();
+        remoteUpdatePois(mergedPois, items, changeSetId, retry);
+        counts.updated += retry.updated;
+        counts.interrupted = retry.interrupted;
+
+        // Modified again in the backend since the download, the local changes are discarded
+        if (!retry.updateConflicts.isEmpty() && !retry.interrupted) {
+            remotePois = backend.getPoisByIds(retry.updateConflicts);
+            if (remotePois != null) {
+                for (Poi poi : retry.updateConflicts) {
+                    discardLocalChanges(poi, remotePois.get(poi.getId()), items.get(poi.getId()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace the old copy of a merged Poi by the current version of the backend, the base of the merged changes.
+     *
+     * @param poi    The merged Poi.
+     * @param remote The current version of the Poi in the backend.
+     */
+    private void replaceOldVersion(Poi poi, Poi remote) {
+        poiManager.deleteOldPoiAssociated(poi);
+        remote.setOld(true);
+        remote.setType(poi.getType());
+        if (poi.getWay()) {
+            keepLocalGeometry(poi, remote);
+        }
+        poiManager.savePoi(remote);
+
+        poi.setOldPoiId(remote.getId());
+        poiManager.savePoi(poi);
+    }
+
+    /**
+     * Give up the local changes of a conflicting Poi for the current version of the backend.
+     *
+     * @param poi    The conflicting Poi.
+     * @param remote The current version of the Poi in the backend, null if it was deleted.
+     * @param item   The item of the Poi in the outbox.
+     */
+    private void discardLocalChanges(Poi poi, Poi remote, UploadItem item) {
+        Timber.e("Couldn't send poi %s: conflict, replacing it by the last version of the backend", poi);
+        bus.post(new SyncConflictingNodeErrorEvent(poi.getName(), poi.getId()));
+
+        poiManager.deleteOldPoiAssociated(poi);
+        poiManager.deletePoi(poi);
+        uploadOutbox.remove(item);
+
+        if (remote == null) {
+            Timber.w("The poi with id %s couldn't be found", poi.getBackendId());
+        } else if (remote.getWay() && !keepLocalGeometry(poi, remote)) {
+            // The nodes of the way changed, it will be downloaded again with its area
+            Timber.w("The nodes of the way %s changed", poi.getBackendId());
+        } else {
+            remote.setType(poi.getType());
+            poiManager.savePoi(remote);
+        }
+    }
+
+    /**
+     * Give a downloaded way the position and node coordinates of the local way, the ways downloaded by id
+     * come without coordinates.
+     *
+     * @param local  The local way.
+     * @param remote The downloaded way.
+     * @return Whether the ways have the same nodes, the downloaded way is left untouched otherwise.
+     */
+    private static boolean keepLocalGeometry(Poi local, Poi remote) {
+        List<PoiNodeRef> localNodeRefs = new ArrayList<>(local.getNodeRefs());
+        List<PoiNodeRef> remoteNodeRefs = new ArrayList<>(remote.getNodeRefs());
+        if (localNodeRefs.size() != remoteNodeRefs.size()) {
+            return false;
+        }
+        for (int i = 0; i < localNodeRefs.size(); i++) {
+            if (!localNodeRefs.get(i).getNodeBackendId().equals(remoteNodeRefs.get(i).getNodeBackendId())) {
+                return false;
             }
         }
+
+        for (int i = 0; i < localNodeRefs.size(); i++) {
+            remoteNodeRefs.get(i).setLatitude(localNodeRefs.get(i).getLatitude());
+            remoteNodeRefs.get(i).setLongitude(localNodeRefs.get(i).getLongitude());
+        }
+        remote.setLatitude(local.getLatitude());
+        remote.setLongitude(local.getLongitude());
+        return true;
     }
 }
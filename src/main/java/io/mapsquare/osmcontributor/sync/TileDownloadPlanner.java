@@ -0,0 +1,256 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync;
+
+import org.joda.time.DateTime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.inject.Inject;
+
+import io.mapsquare.osmcontributor.core.PoiManager;
+import io.mapsquare.osmcontributor.core.database.dao.DownloadedTileDao;
+import io.mapsquare.osmcontributor.core.model.DownloadedTile;
+import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
+import io.mapsquare.osmcontributor.utils.Box;
+
+/**
+ * Split the download of an area in fixed tiles and keep track of the last download of each tile,
+ * so that only the tiles missing or downloaded too long ago are requested again.
+ * <br/>
+ * A tile is also considered stale if the PoiTypes changed since its last download.
+ * <br/>
+ * A stale tile downloaded recently enough with the same PoiTypes carries the date from which only its changes
+ * need to be downloaded, see {@link Tile#getSince()}.
+ */
+public class TileDownloadPlanner {
+
+    /**
+     * Zoom level of the downloaded tiles, a z14 tile is about 2.4km wide at the equator.
+     */
+    public static final int ZOOM = 14;
+
+    /**
+     * Delay after which a downloaded tile must be downloaded again.
+     */
+    public static final int FRESHNESS_MINUTES = 30;
+
+    /**
+     * Delay after which a tile is downloaded entirely instead of downloading its changes.
+     * <br/>
+     * The changes of a way don't include the moves of its nodes, the full download refreshes the geometry of the ways.
+     */
+    public static final int MAX_DELTA_DAYS = 7;
+
+    /**
+     * Margin taken before the last download when downloading the changes of a tile, to cover the delay
+     * between an edit on the OSM API and its availability on Overpass.
+     */
+    public static final int DELTA_SAFETY_MINUTES = 60;
+
+    private static final double MAX_LATITUDE = 85.0511;
+
+    DownloadedTileDao downloadedTileDao;
+    PoiManager poiManager;
+
+    @Inject
+    public TileDownloadPlanner(DownloadedTileDao downloadedTileDao, PoiManager poiManager) {
+        this.downloadedTileDao = downloadedTileDao;
+        this.poiManager = poiManager;
+    }
+
+    /**
+     * Tile of the map in the slippy map tilenames scheme.
+     */
+    public static class Tile {
+        private final int zoom;
+        private final int x;
+        private final int y;
+        private DateTime since;
+
+        public Tile(int zoom, int x, int y) {
+            this.zoom = zoom;
+            this.x = x;
+            this.y = y;
+        }
+
+        public int getZoom() {
+            return zoom;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        /**
+         * Get the date from which the changes of the tile must be downloaded. It isn't part of the identity of the tile.
+         *
+         * @return The date or null if the tile must be downloaded entirely.
+         */
+        public DateTime getSince() {
+            return since;
+        }
+
+        void setSince(DateTime since) {
+            this.since = since;
+        }
+
+        /**
+         * Get the bounds of the tile.
+         *
+         * @return The box covered by the tile.
+         */
+        public Box getBox() {
+            return new Box(tileToLatitude(y, zoom), tileToLongitude(x + 1, zoom), tileToLatitude(y + 1, zoom), tileToLongitude(x, zoom));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Tile tile = (Tile) o;
+            return zoom == tile.zoom && x == tile.x && y == tile.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * zoom + x) + y;
+        }
+
+        @Override
+        public String toString() {
+            return "Tile{" +
+                    "zoom=" + zoom +
+                    ", x=" + x +
+                    ", y=" + y +
+                    ", since=" + since +
+                    '}';
+        }
+    }
+
+    /**
+     * Compute the signature of the current PoiTypes. The tiles downloaded with another signature are stale.
+     *
+     * @return The signature of the PoiTypes.
+     */
+    public int currentSignature() {
+        // Sorted by id so that the signature doesn't depend on the order of the query
+        TreeMap<Long, PoiType> poiTypes = new TreeMap<>(poiManager.loadPoiTypes());
+        StringBuilder builder = new StringBuilder();
+        for (PoiType poiType : poiTypes.values()) {
+            builder.append(poiType.getId()).append('[');
+            if (poiType.getTags() != null) {
+                for (PoiTypeTag poiTypeTag : poiType.getTags()) {
+                    builder.append(poiTypeTag.getKey()).append('=').append(poiTypeTag.getValue()).append(';');
+                }
+            }
+            builder.append(']');
+        }
+        return builder.toString().hashCode();
+    }
+
+    /**
+     * List the tiles covering the box which were never downloaded, downloaded more than {@link #FRESHNESS_MINUTES}
+     * ago or downloaded with other PoiTypes.
+     * <br/>
+     * The tiles downloaded with the current PoiTypes less than {@link #MAX_DELTA_DAYS} ago have a
+     * {@link Tile#getSince() since} date, {@link #DELTA_SAFETY_MINUTES} before their last download.
+     *
+     * @param box       The area to download.
+     * @param signature The signature of the current PoiTypes.
+     * @return The tiles to download.
+     */
+    public List<Tile> staleTiles(Box box, int signature) {
+        int minX = longitudeToTile(box.getWest(), ZOOM);
+        int maxX = longitudeToTile(box.getEast(), ZOOM);
+        // The y axis of the tiles goes from north to south
+        int minY = latitudeToTile(box.getNorth(), ZOOM);
+        int maxY = latitudeToTile(box.getSouth(), ZOOM);
+
+        Map<Tile, DownloadedTile> downloadedTiles = new HashMap<>();
+        for (DownloadedTile downloadedTile : downloadedTileDao.queryForRange(ZOOM, minX, maxX, minY, maxY)) {
+            downloadedTiles.put(new Tile(downloadedTile.getZoom(), downloadedTile.getX(), downloadedTile.getY()), downloadedTile);
+        }
+
+        DateTime now = new DateTime();
+        DateTime freshnessLimit = now.minusMinutes(FRESHNESS_MINUTES);
+        DateTime deltaLimit = now.minusDays(MAX_DELTA_DAYS);
+        List<Tile> result = new ArrayList<>();
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                Tile tile = new Tile(ZOOM, x, y);
+                DownloadedTile downloadedTile = downloadedTiles.get(tile);
+                if (downloadedTile == null || downloadedTile.getSignature() != signature) {
+                    result.add(tile);
+                } else if (downloadedTile.getLastDownload().isBefore(freshnessLimit)) {
+                    if (downloadedTile.getLastDownload().isAfter(deltaLimit)) {
+                        tile.setSince(downloadedTile.getLastDownload().minusMinutes(DELTA_SAFETY_MINUTES));
+                    }
+                    result.add(tile);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Record the successful download of a tile.
+     *
+     * @param tile      The downloaded tile.
+     * @param signature The signature of the PoiTypes used for the download.
+     */
+    public void markDownloaded(Tile tile, int signature) {
+        downloadedTileDao.saveDownload(tile.getZoom(), tile.getX(), tile.getY(), signature, new DateTime());
+    }
+
+    static int longitudeToTile(double longitude, int zoom) {
+        int tiles = 1 << zoom;
+        int x = (int) Math.floor((longitude + 180) / 360 * tiles);
+        return Math.max(0, Math.min(tiles - 1, x));
+    }
+
+    static int latitudeToTile(double latitude, int zoom) {
+        int tiles = 1 << zoom;
+        double latRad = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude)));
+        int y = (int) Math.floor((1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * tiles);
+        return Math.max(0, Math.min(tiles - 1, y));
+    }
+
+    static double tileToLongitude(int x, int zoom) {
+        return x / (double) (1 << zoom) * 360 - 180;
+    }
+
+    static double tileToLatitude(int y, int zoom) {
+        double n = Math.PI - 2 * Math.PI * y / (1 << zoom);
+        return Math.toDegrees(Math.atan(Math.sinh(n)));
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync;
+
+import org.joda.time.DateTime;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.inject.Inject;
+
+import io.mapsquare.osmcontributor.core.database.DatabaseHelper;
+import io.mapsquare.osmcontributor.core.database.dao.UploadItemDao;
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.UploadItem;
+import timber.log.Timber;
+
+/**
+ * Persisted list of the changes of POIs to upload, with the progress of each change and the changeSet in which it was sent.
+ * <br/>
+ * An upload interrupted by the loss of the connection resumes in the same changeSet while it is still open, the
+ * changes acknowledged by the backend are applied to the database before being marked as such and are never sent again.
+ * The changes left in flight may have been applied by the backend: their changeSet is read back before the upload
+ * resumes, only the changes missing from it are sent again.
+ */
+public class UploadOutbox {
+
+    /**
+     * Delay after which the last changeSet is not reused. OpenStreetMap closes the changeSets after one hour of inactivity.
+     */
+    public static final int CHANGESET_IDLE_MINUTES = 50;
+
+    UploadItemDao uploadItemDao;
+    DatabaseHelper databaseHelper;
+
+    @Inject
+    public UploadOutbox(UploadItemDao uploadItemDao, DatabaseHelper databaseHelper) {
+        this.uploadItemDao = uploadItemDao;
+        this.databaseHelper = databaseHelper;
+    }
+
+    /**
+     * Bring the outbox in line with the POIs to upload: add the changes missing from it, update the operation
+     * of the POIs changed again and remove the items of the POIs which don't need an upload anymore.
+     *
+     * @param newPois      The POIs to add to the backend.
+     * @param updatedPois  The POIs to update in the backend.
+     * @param toDeletePois The POIs to delete.
+     * @return The items to send, mapped by the local id of their POI.
+     */
+    public Map<Long, UploadItem> enqueue(final List<Poi> newPois, final List<Poi> updatedPois, final List<Poi> toDeletePois) {
+        return databaseHelper.callInTransaction(new Callable<Map<Long, UploadItem>>() {
+            @Override
+            public Map<Long, UploadItem> call() throws Exception {
+                uploadItemDao.deleteAcknowledged();
+
+                Map<Long, UploadItem> items = new LinkedHashMap<>();
+                for (UploadItem item : uploadItemDao.queryForUnacknowledged()) {
+                    items.put(item.getPoiId(), item);
+                }
+
+                Map<Long, UploadItem> result = new LinkedHashMap<>();
+                enqueue(newPois, UploadItem.Operation.ADD, items, result);
+                enqueue(updatedPois, UploadItem.Operation.UPDATE, items, result);
+                enqueue(toDeletePois, UploadItem.Operation.DELETE, items, result);
+
+                // The remaining items are the changes reverted or dropped since they were added
+                for (UploadItem item : items.values()) {
+                    uploadItemDao.delete(item);
+                }
+                return result;
+            }
+        });
+    }
+
+    private void enqueue(List<Poi> pois, UploadItem.Operation operation, Map<Long, UploadItem> items, Map<Long, UploadItem> result) {
+        for (Poi poi : pois) {
+            UploadItem item = items.remove(poi.getId());
+            if (item == null) {
+                item = new UploadItem(poi.getId(), operation);
+                uploadItemDao.create(item);
+            } else {
+                if (item.getState() == UploadItem.State.IN_FLIGHT) {
+                    Timber.w("Resuming the upload of %s, it may have been applied", item);
+                }
+                if (item.getOperation() != operation) {
+                    item.setOperation(operation);
+                    uploadItemDao.update(item);
+                }
+            }
+            result.put(poi.getId(), item);
+        }
+    }
+
+    /**
+     * Get the changeSet used by the last upload if it was used recently enough to still be open.
+     *
+     * @return The id of the changeSet or null if a new one must be created.
+     */
+    public String getOpenChangeSetId() {
+        UploadItem lastSent = uploadItemDao.queryForLastSent();
+        if (lastSent == null || lastSent.getChangeSetId() == null
+                || lastSent.getLastSent().isBefore(new DateTime().minusMinutes(CHANGESET_IDLE_MINUTES))) {
+            return null;
+        }
+        return lastSent.getChangeSetId();
+    }
+
+    /**
+     * Record that the items are being sent in the changeSet.
+     *
+     * @param items       The items sent.
+     * @param changeSetId The id of the changeSet.
+     */
+    public void markInFlight(Collection<UploadItem> items, String changeSetId) {
+        DateTime now = new DateTime();
+        for (UploadItem item : items) {
+            item.setChangeSetId(changeSetId);
+            item.setLastSent(now);
+        }
+        setState(items, UploadItem.State.IN_FLIGHT);
+    }
+
+    /**
+     * Record that the items were rejected as a whole without being applied, they will be sent again.
+     *
+     * @param items The rejected items.
+     */
+    public void markPending(Collection<UploadItem> items) {
+        setState(items, UploadItem.State.PENDING);
+    }
+
+    /**
+     * Record that the backend applied the items. Call it once the result of the upload is saved in the database.
+     *
+     * @param items The acknowledged items.
+     */
+    public void markAcked(Collection<UploadItem> items) {
+        setState(items, UploadItem.State.ACKED);
+    }
+
+    /**
+     * Remove an item whose change was dropped, after a conflict or an error of the backend.
+     *
+     * @param item The item to remove.
+     */
+    public void remove(UploadItem item) {
+        uploadItemDao.delete(item);
+    }
+
+    /**
+     * Remove the acknowledged items, once the upload is over.
+     */
+    public void clearAcknowledged() {
+        uploadItemDao.deleteAcknowledged();
+    }
+
+    private void setState(final Collection<UploadItem> items, final UploadItem.State state) {
+        databaseHelper.callInTransaction(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                for (UploadItem item : items) {
+                    item.setState(state);
+                    uploadItemDao.update(item);
+                }
+                return null;
+            }
+        });
+    }
+}
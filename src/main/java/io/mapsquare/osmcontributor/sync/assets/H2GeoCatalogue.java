@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync.assets;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.sync.converter.PoiTypeConverter;
+
+/**
+ * The h2geo catalogue of PoiTypes, precompiled at build time from h2geo.json by the compileH2Geo gradle task.
+ * <br/>
+ * Parsing the json and its translations took most of the first start of the application. The compiled file is
+ * read in one pass without reflection. It contains, written by a {@link java.io.DataOutputStream}:
+ * <ul>
+ * <li>the magic number {@link #MAGIC} and the version {@link #FORMAT_VERSION} of the format,</li>
+ * <li>the h2geo version and generation date, as modified UTF-8 strings,</li>
+ * <li>the table of the distinct strings: their count as an int then the strings,</li>
+ * <li>the count of types as an int then for each type:
+ * <ul>
+ * <li>its name and usage count as ints,</li>
+ * <li>its labels then its descriptions: the count of languages as a short then the language and text of each,</li>
+ * <li>its keywords: the count of languages as a short then for each the language, the count of keywords as a short
+ * and the keywords,</li>
+ * <li>its tags: their count as a short then for each the key, the value, a byte of flags ({@link #MANDATORY},
+ * {@link #IMPLIED}), the count of possible values as a short and the possible values.</li>
+ * </ul>
+ * </li>
+ * </ul>
+ * All the strings of the types are int indexes in the table of strings, -1 for a null value.
+ */
+public final class H2GeoCatalogue {
+
+    /**
+     * Name of the compiled catalogue in the assets.
+     */
+    public static final String ASSET = "h2geo.bin";
+
+    /**
+     * "H2GB" in ASCII.
+     */
+    public static final int MAGIC = 0x48324742;
+
+    public static final int FORMAT_VERSION = 1;
+
+    public static final int MANDATORY = 1;
+    public static final int IMPLIED = 2;
+
+    private final String version;
+    private final String generationDate;
+    private final List<PoiType> poiTypes;
+
+    private H2GeoCatalogue(String version, String generationDate, List<PoiType> poiTypes) {
+        this.version = version;
+        this.generationDate = generationDate;
+        this.poiTypes = poiTypes;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getGenerationDate() {
+        return generationDate;
+    }
+
+    public List<PoiType> getPoiTypes() {
+        return poiTypes;
+    }
+
+    /**
+     * Read a compiled catalogue.
+     *
+     * @param inputStream The content of the catalogue, it is not closed.
+     * @param converter   The converter creating the PoiTypes in the language of the system.
+     * @return The catalogue.
+     * @throws IOException If the content is not a catalogue of the supported format.
+     */
+    public static H2GeoCatalogue read(InputStream inputStream, PoiTypeConverter converter) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream));
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a compiled h2geo catalogue");
+        }
+        int formatVersion = input.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported h2geo catalogue format " + formatVersion);
+        }
+        String version = input.readUTF();
+        String generationDate = input.readUTF();
+
+        String[] strings = new String[input.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = input.readUTF();
+        }
+
+        int count = input.readInt();
+        List<PoiType> poiTypes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = readString(input, strings);
+            int usageCount = input.readInt();
+            Map<String, String> labels = readTranslations(input, strings);
+            Map<String, String> descriptions = readTranslations(input, strings);
+            Map<String, List<String>> keyWords = new HashMap<>();
+            for (int languages = input.readShort(); languages > 0; languages--) {
+                String language = readString(input, strings);
+                keyWords.put(language, readStrings(input, strings));
+            }
+
+            PoiType poiType = converter.convert(name, labels, descriptions, keyWords, usageCount);
+            for (int tags = input.readShort(); tags > 0; tags--) {
+                String key = readString(input, strings);
+                String value = readString(input, strings);
+                int flags = input.readByte();
+                List<String> possibleValues = readStrings(input, strings);
+                converter.addTag(poiType, key, value, (flags & MANDATORY) != 0, (flags & IMPLIED) != 0, possibleValues);
+            }
+            poiTypes.add(poiType);
+        }
+        return new H2GeoCatalogue(version, generationDate, poiTypes);
+    }
+
+    private static Map<String, String> readTranslations(DataInputStream input, String[] strings) throws IOException {
+        int count = input.readShort();
+        Map<String, String> translations = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String language = readString(input, strings);
+            translations.put(language, readString(input, strings));
+        }
+        return translations;
+    }
+
+    private static List<String> readStrings(DataInputStream input, String[] strings) throws IOException {
+        int count = input.readShort();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(input, strings));
+        }
+        return values;
+    }
+
+    private static String readString(DataInputStream input, String[] strings) throws IOException {
+        int index = input.readInt();
+        return index < 0 ? null : strings[index];
+    }
+}
@@ -21,12 +21,9 @@ package io.mapsquare.osmcontributor.sync.assets;
 import android.app.Application;
 import android.content.SharedPreferences;
 
-import com.google.gson.Gson;
-
 import org.simpleframework.xml.core.Persister;
 
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.InputStream;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -37,7 +34,6 @@ import io.mapsquare.osmcontributor.core.model.Poi;
 import io.mapsquare.osmcontributor.core.model.PoiType;
 import io.mapsquare.osmcontributor.sync.converter.PoiConverter;
 import io.mapsquare.osmcontributor.sync.converter.PoiTypeConverter;
-import io.mapsquare.osmcontributor.sync.dto.dma.H2GeoDto;
 import io.mapsquare.osmcontributor.sync.dto.osm.OsmDto;
 import io.mapsquare.osmcontributor.utils.CloseableUtils;
 import timber.log.Timber;
@@ -47,42 +43,40 @@ public class PoiAssetLoader {
 
     Application application;
     PoiConverter poiConverter;
-    Gson gson;
     Persister simple;
     PoiTypeConverter poiTypeConverter;
     SharedPreferences sharedPreferences;
 
     @Inject
-    public PoiAssetLoader(Application application, PoiConverter poiConverter, Gson gson, Persister simple, PoiTypeConverter poiTypeConverter, SharedPreferences sharedPreferences) {
+    public PoiAssetLoader(Application application, PoiConverter poiConverter, Persister simple, PoiTypeConverter poiTypeConverter, SharedPreferences sharedPreferences) {
         this.application = application;
         this.poiConverter = poiConverter;
-        this.gson = gson;
         this.simple = simple;
         this.poiTypeConverter = poiTypeConverter;
         this.sharedPreferences = sharedPreferences;
     }
 
     /**
-     * Load the PoiTypes from the poitypes.json file located in the assets directory.
+     * Load the PoiTypes from the h2geo catalogue compiled in the assets directory.
      *
      * @return The loaded PoiTypes.
      */
     public List<PoiType> loadPoiTypesFromAssets() {
-        Reader reader = null;
+        InputStream inputStream = null;
         try {
-            reader = new InputStreamReader(application.getAssets().open("h2geo.json"));
-            H2GeoDto h2GeoDto = gson.fromJson(reader, H2GeoDto.class);
+            inputStream = application.getAssets().open(H2GeoCatalogue.ASSET);
+            H2GeoCatalogue catalogue = H2GeoCatalogue.read(inputStream, poiTypeConverter);
             // Save the h2Geo version and generation date in the shared preferences.
             sharedPreferences.edit()
-                    .putString(application.getString(R.string.shared_prefs_h2geo_version), h2GeoDto.getH2GeoVersion())
-                    .putString(application.getString(R.string.shared_prefs_h2geo_date), h2GeoDto.getGenerationDate())
+                    .putString(application.getString(R.string.shared_prefs_h2geo_version), catalogue.getVersion())
+                    .putString(application.getString(R.string.shared_prefs_h2geo_date), catalogue.getGenerationDate())
                     .apply();
-            return poiTypeConverter.convert(h2GeoDto.getData());
+            return catalogue.getPoiTypes();
         } catch (Exception e) {
             Timber.e(e, "Error while loading POI Types from assets");
             throw new RuntimeException(e);
         } finally {
-            CloseableUtils.closeQuietly(reader);
+            CloseableUtils.closeQuietly(inputStream);
         }
     }
 
@@ -25,26 +25,26 @@ import java.util.List;
 
 import javax.inject.Inject;
 
-import io.mapsquare.osmcontributor.core.database.dao.PoiTypeDao;
 import io.mapsquare.osmcontributor.core.model.Poi;
 import io.mapsquare.osmcontributor.core.model.PoiNodeRef;
 import io.mapsquare.osmcontributor.core.model.PoiTag;
 import io.mapsquare.osmcontributor.core.model.PoiType;
-import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
 import io.mapsquare.osmcontributor.sync.dto.osm.NdDto;
 import io.mapsquare.osmcontributor.sync.dto.osm.NodeDto;
+import io.mapsquare.osmcontributor.sync.dto.osm.OsmChangeActionDto;
+import io.mapsquare.osmcontributor.sync.dto.osm.OsmChangeDto;
 import io.mapsquare.osmcontributor.sync.dto.osm.PoiDto;
 import io.mapsquare.osmcontributor.sync.dto.osm.TagDto;
 import io.mapsquare.osmcontributor.sync.dto.osm.WayDto;
 
 public class PoiConverter {
 
-    PoiTypeDao poiTypeDao;
+    PoiTypeMatcher poiTypeMatcher;
     PoiTagConverter poiTagConverter;
 
     @Inject
-    public PoiConverter(PoiTypeDao poiTypeDao, PoiTagConverter poiTagConverter) {
-        this.poiTypeDao = poiTypeDao;
+    public PoiConverter(PoiTypeMatcher poiTypeMatcher, PoiTagConverter poiTagConverter) {
+        this.poiTypeMatcher = poiTypeMatcher;
         this.poiTagConverter = poiTagConverter;
     }
 
@@ -63,9 +63,8 @@ public class PoiConverter {
     public List<Poi> convertDtosToPois(List<? extends PoiDto> dtos, boolean typeFiltering) {
         List<Poi> result = new ArrayList<>();
         if (dtos != null) {
-            List<PoiType> availableTypes = poiTypeDao.queryForAll();
             for (PoiDto dto : dtos) {
-                PoiType type = findType(dto, availableTypes);
+                PoiType type = poiTypeMatcher.findType(dto.getTagsDtoList());
                 if (type == null && typeFiltering) {
                     continue; // poi not of an available type
                 }
@@ -155,35 +154,76 @@ public class PoiConverter {
         for (PoiNodeRef poiNodeRef : poi.getNodeRefs()) {
             NdDto ndDto = new NdDto();
             ndDto.setRef(poiNodeRef.getNodeBackendId());
+            ndDtos.add(ndDto);
         }
         wayDto.setNdDtoList(ndDtos);
 
         return wayDto;
     }
 
-    private PoiType findType(PoiDto dto, List<PoiType> availableTypes) {
-        if (dto.getTagsDtoList() != null) {
-            for (PoiType type : availableTypes) {
-                int tagsWithValues = 0;
-                int matchingTags = 0;
-                for (PoiTypeTag poiTypeTag : type.getTags()) {
-                    if (poiTypeTag.getValue() != null) {
-                        tagsWithValues++;
-                        for (TagDto tagDto : dto.getTagsDtoList()) {
-                            if (tagDto.getKey().equals(poiTypeTag.getKey())) {
-                                if (tagDto.getValue().equals(poiTypeTag.getValue())) {
-                                    matchingTags++;
-                                }
-                            }
-                        }
-                    }
-                }
-                if (tagsWithValues == matchingTags) {
-                    return type;
-                }
-            }
+    /**
+     * Build an osmChange document containing all the creations, modifications and deletions of POIs.
+     * <p/>
+     * New POIs don't have a backend id yet, they are given the placeholder id {@code -(i + 1)} where i is
+     * their index in the {@code newPois} list. The diffResult returned by the backend maps those placeholders
+     * to the real ids.
+     *
+     * @param newPois      The POIs to create.
+     * @param updatedPois  The POIs to modify.
+     * @param toDeletePois The POIs to delete.
+     * @param changeSetId  The changeSet in which the changes are sent.
+     * @return The osmChange document.
+     */
+    public OsmChangeDto convertPoisToOsmChangeDto(List<Poi> newPois, List<Poi> updatedPois, List<Poi> toDeletePois, String changeSetId) {
+        OsmChangeDto osmChangeDto = new OsmChangeDto();
+
+        OsmChangeActionDto create = new OsmChangeActionDto();
+        for (int i = 0; i < newPois.size(); i++) {
+            addPoiToOsmChangeAction(create, newPois.get(i), placeholderId(i), changeSetId);
+        }
+
+        OsmChangeActionDto modify = new OsmChangeActionDto();
+        for (Poi poi : updatedPois) {
+            addPoiToOsmChangeAction(modify, poi, poi.getBackendId(), changeSetId);
+        }
+
+        OsmChangeActionDto delete = new OsmChangeActionDto();
+        for (Poi poi : toDeletePois) {
+            addPoiToOsmChangeAction(delete, poi, poi.getBackendId(), changeSetId);
+        }
+
+        if (!create.isEmpty()) {
+            osmChangeDto.setCreate(create);
+        }
+        if (!modify.isEmpty()) {
+            osmChangeDto.setModify(modify);
+        }
+        if (!delete.isEmpty()) {
+            osmChangeDto.setDelete(delete);
+        }
+        return osmChangeDto;
+    }
+
+    /**
+     * Get the placeholder id given to a new POI in an osmChange document.
+     *
+     * @param index The index of the POI in the list of new POIs.
+     * @return The placeholder id.
+     */
+    public static String placeholderId(int index) {
+        return String.valueOf(-(index + 1));
+    }
+
+    private void addPoiToOsmChangeAction(OsmChangeActionDto action, Poi poi, String id, String changeSetId) {
+        if (poi.getWay()) {
+            WayDto wayDto = convertPoiToWayDto(poi, changeSetId);
+            wayDto.setId(id);
+            action.getWayDtoList().add(wayDto);
+        } else {
+            NodeDto nodeDto = convertPoiToNodeDto(poi, changeSetId);
+            nodeDto.setId(id);
+            action.getNodeDtoList().add(nodeDto);
         }
-        return null;
     }
 
 }
@@ -0,0 +1,250 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync.converter;
+
+import android.util.Xml;
+
+import org.joda.time.DateTime;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.inject.Inject;
+
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.sync.Backend;
+import io.mapsquare.osmcontributor.sync.dto.osm.CenterDto;
+import io.mapsquare.osmcontributor.sync.dto.osm.NdDto;
+import io.mapsquare.osmcontributor.sync.dto.osm.NodeDto;
+import io.mapsquare.osmcontributor.sync.dto.osm.PoiDto;
+import io.mapsquare.osmcontributor.sync.dto.osm.TagDto;
+import io.mapsquare.osmcontributor.sync.dto.osm.WayDto;
+import timber.log.Timber;
+
+/**
+ * Convert an OSM XML document (as returned by Overpass or the OSM API) to POIs while reading it.
+ * <br/>
+ * Only one node or way is kept in memory at a time, the POIs are handed to a
+ * {@link io.mapsquare.osmcontributor.sync.Backend.PoiChunkHandler} by chunks of bounded size.
+ */
+public class PoiStreamConverter {
+
+    /**
+     * Default number of POIs handed at once to the handler.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final String NODE = "node";
+    private static final String WAY = "way";
+    private static final String TAG = "tag";
+    private static final String ND = "nd";
+    private static final String CENTER = "center";
+    private static final String REMARK = "remark";
+    private static final String META = "meta";
+
+    PoiConverter poiConverter;
+    JodaTimeDateTimeTransform dateTimeTransform = new JodaTimeDateTimeTransform();
+
+    @Inject
+    public PoiStreamConverter(PoiConverter poiConverter) {
+        this.poiConverter = poiConverter;
+    }
+
+    /**
+     * Read the OSM XML document and hand the POIs of an available type to the handler.
+     *
+     * @param inputStream The stream of the document. It is not closed by this method.
+     * @param chunkSize   The maximum number of POIs handed at once to the handler.
+     * @param handler     The handler receiving the POIs.
+     * @return The number of POIs handed to the handler.
+     * @throws XmlPullParserException If the document is malformed.
+     * @throws IOException            If the stream couldn't be read.
+     */
+    public int convertStream(InputStream inputStream, int chunkSize, Backend.PoiChunkHandler handler) throws XmlPullParserException, IOException {
+        return convertStream(inputStream, chunkSize, handler, null);
+    }
+
+    /**
+     * Read the OSM XML document and hand the POIs of an available type to the handler.
+     * <br/>
+     * The nodes output without metadata ({@code out ids}) are not POIs, their ids are collected in the given
+     * {@link IdOnlyNodes} with the date of the Overpass snapshot they were read from.
+     *
+     * @param inputStream The stream of the document. It is not closed by this method.
+     * @param chunkSize   The maximum number of POIs handed at once to the handler.
+     * @param handler     The handler receiving the POIs.
+     * @param idOnlyNodes The collector of the ids of the nodes without metadata, or null to read them as POIs.
+     * @return The number of POIs handed to the handler.
+     * @throws XmlPullParserException If the document is malformed.
+     * @throws IOException            If the stream couldn't be read.
+     */
+    public int convertStream(InputStream inputStream, int chunkSize, Backend.PoiChunkHandler handler, IdOnlyNodes idOnlyNodes) throws XmlPullParserException, IOException {
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        parser.setInput(inputStream, null);
+
+        List<PoiDto> dtos = new ArrayList<>(chunkSize);
+        int count = 0;
+
+        NodeDto node = null;
+        WayDto way = null;
+        int eventType = parser.getEventType();
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG) {
+                String name = parser.getName();
+                if (NODE.equals(name) && idOnlyNodes != null && parser.getAttributeValue(null, "version") == null) {
+                    idOnlyNodes.getIds().add(parser.getAttributeValue(null, "id"));
+                } else if (NODE.equals(name)) {
+                    node = readNode(parser);
+                } else if (WAY.equals(name)) {
+                    way = readWay(parser);
+                } else if (TAG.equals(name)) {
+                    // Tags of other elements (relations, changesets...) are ignored
+                    if (node != null) {
+                        node.getTagsDtoList().add(readTag(parser));
+                    } else if (way != null) {
+                        way.getTagsDtoList().add(readTag(parser));
+                    }
+                } else if (ND.equals(name) && way != null) {
+                    way.getNdDtoList().add(readNd(parser));
+                } else if (CENTER.equals(name) && way != null) {
+                    way.setCenter(readCenter(parser));
+                } else if (META.equals(name) && idOnlyNodes != null) {
+                    String osmBase = parser.getAttributeValue(null, "osm_base");
+                    idOnlyNodes.setSnapshotDate(osmBase != null ? dateTimeTransform.read(osmBase) : null);
+                } else if (REMARK.equals(name)) {
+                    Timber.w("Remark in the OSM response: %s", parser.nextText());
+                }
+            } else if (eventType == XmlPullParser.END_TAG) {
+                String name = parser.getName();
+                PoiDto dto = null;
+                if (NODE.equals(name) && node != null) {
+                    dto = node;
+                    node = null;
+                } else if (WAY.equals(name) && way != null) {
+                    dto = way;
+                    way = null;
+                }
+                if (dto != null) {
+                    dtos.add(dto);
+                    if (dtos.size() >= chunkSize) {
+                        count += flush(dtos, handler);
+                    }
+                }
+            }
+            eventType = parser.next();
+        }
+        count += flush(dtos, handler);
+        return count;
+    }
+
+    private int flush(List<PoiDto> dtos, Backend.PoiChunkHandler handler) {
+        if (dtos.isEmpty()) {
+            return 0;
+        }
+        List<Poi> pois = poiConverter.convertDtosToPois(dtos);
+        dtos.clear();
+        if (!pois.isEmpty()) {
+            handler.onPois(pois);
+        }
+        return pois.size();
+    }
+
+    private NodeDto readNode(XmlPullParser parser) {
+        NodeDto nodeDto = new NodeDto();
+        nodeDto.setId(parser.getAttributeValue(null, "id"));
+        nodeDto.setLat(readDouble(parser, "lat"));
+        nodeDto.setLon(readDouble(parser, "lon"));
+        nodeDto.setVersion(readInt(parser, "version"));
+        nodeDto.setTimestamp(readDateTime(parser));
+        return nodeDto;
+    }
+
+    private WayDto readWay(XmlPullParser parser) {
+        WayDto wayDto = new WayDto();
+        wayDto.setId(parser.getAttributeValue(null, "id"));
+        wayDto.setVersion(readInt(parser, "version"));
+        wayDto.setTimestamp(readDateTime(parser));
+        wayDto.setNdDtoList(new ArrayList<NdDto>());
+        return wayDto;
+    }
+
+    private TagDto readTag(XmlPullParser parser) {
+        return new TagDto(parser.getAttributeValue(null, "v"), parser.getAttributeValue(null, "k"));
+    }
+
+    private NdDto readNd(XmlPullParser parser) {
+        NdDto ndDto = new NdDto();
+        ndDto.setRef(parser.getAttributeValue(null, "ref"));
+        ndDto.setLat(readDouble(parser, "lat"));
+        ndDto.setLon(readDouble(parser, "lon"));
+        return ndDto;
+    }
+
+    private CenterDto readCenter(XmlPullParser parser) {
+        CenterDto centerDto = new CenterDto();
+        centerDto.setLat(readDouble(parser, "lat"));
+        centerDto.setLon(readDouble(parser, "lon"));
+        return centerDto;
+    }
+
+    private double readDouble(XmlPullParser parser, String attribute) {
+        String value = parser.getAttributeValue(null, attribute);
+        return value != null ? Double.parseDouble(value) : 0;
+    }
+
+    private int readInt(XmlPullParser parser, String attribute) {
+        String value = parser.getAttributeValue(null, attribute);
+        return value != null ? Integer.parseInt(value) : 0;
+    }
+
+    private DateTime readDateTime(XmlPullParser parser) {
+        String value = parser.getAttributeValue(null, "timestamp");
+        return value != null ? dateTimeTransform.read(value) : null;
+    }
+
+    /**
+     * Ids of the nodes output without metadata and date of the Overpass snapshot they were read from.
+     */
+    public static class IdOnlyNodes {
+        private final Set<String> ids = new HashSet<>();
+        private DateTime snapshotDate;
+
+        public Set<String> getIds() {
+            return ids;
+        }
+
+        /**
+         * @return The date of the data of the document ({@code osm_base} of Overpass), null if not given.
+         */
+        public DateTime getSnapshotDate() {
+            return snapshotDate;
+        }
+
+        public void setSnapshotDate(DateTime snapshotDate) {
+            this.snapshotDate = snapshotDate;
+        }
+    }
+}
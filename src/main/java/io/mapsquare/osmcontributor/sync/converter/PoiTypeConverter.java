@@ -18,13 +18,8 @@
  */
 package io.mapsquare.osmcontributor.sync.converter;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonElement;
-import com.google.gson.reflect.TypeToken;
-
 import org.joda.time.DateTime;
 
-import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -35,14 +30,11 @@ import javax.inject.Inject;
 
 import io.mapsquare.osmcontributor.core.model.PoiType;
 import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
-import io.mapsquare.osmcontributor.sync.dto.dma.PoiTypeDto;
-import io.mapsquare.osmcontributor.sync.dto.dma.PoiTypeTagDto;
 
 public class PoiTypeConverter {
 
     private String language;
     private DateTime dateTime;
-    private Gson gson;
 
     @Inject
     public PoiTypeConverter() {
@@ -51,50 +43,57 @@ public class PoiTypeConverter {
             language = "en";
         }
         dateTime = new DateTime(0);
-        gson = new Gson();
     }
 
-    private PoiType convert(PoiTypeDto dto) {
+    /**
+     * Create a PoiType from its definition in h2geo, keeping the texts in the language of the system.
+     * <br/>
+     * The tags of the type are added with {@link #addTag(PoiType, String, String, boolean, boolean, List)}.
+     *
+     * @param name         The name of the type, like "amenity=restaurant".
+     * @param labels       The labels of the type by language, may be null.
+     * @param descriptions The descriptions of the type by language, may be null.
+     * @param keyWords     The keywords of the type by language, may be null.
+     * @param usageCount   The number of uses of the type in OpenStreetMap.
+     * @return The PoiType, with no tags yet.
+     */
+    public PoiType convert(String name, Map<String, String> labels, Map<String, String> descriptions, Map<String, List<String>> keyWords, int usageCount) {
         PoiType type = new PoiType();
-        type.setName(getTranslationFormJson(dto.getLabels(), getName(dto.getName())));
-        type.setTechnicalName(dto.getName());
-        type.setDescription(getTranslationFormJson(dto.getDescription(), ""));
-        type.setKeyWords(getKeywordsFormJson(dto.getKeyWords()));
-        type.setIcon(getName(dto.getName()));
-        type.setUsageCount(dto.getUsageCount());
+        type.setName(getTranslation(labels, getName(name)));
+        type.setTechnicalName(name);
+        type.setDescription(getTranslation(descriptions, ""));
+        type.setKeyWords(getKeywords(keyWords));
+        type.setIcon(getName(name));
+        type.setUsageCount(usageCount);
         // When creating a new PoiType from file, put the same date of last use to all new PoiTypes : 1970-01-01T00:00:00Z
         type.setLastUse(dateTime);
-
-        int ordinal = 0;
-        if (dto.getTags() != null) {
-            ArrayList<PoiTypeTag> tags = new ArrayList<>(dto.getTags().size());
-            type.setTags(tags);
-            for (PoiTypeTagDto tagDto : dto.getTags()) {
-                // If the tag is implied, do not keep it
-                if (!tagDto.isImplied()) {
-                    PoiTypeTag poiTypeTag = new PoiTypeTag();
-                    poiTypeTag.setPoiType(type);
-                    poiTypeTag.setKey(tagDto.getKey());
-                    poiTypeTag.setValue(tagDto.getValue());
-                    poiTypeTag.setMandatory(tagDto.isMandatory());
-                    poiTypeTag.setOrdinal(ordinal++);
-                    poiTypeTag.setPossibleValues(getPossibleValues(tagDto.getPossibleValues()));
-                    tags.add(poiTypeTag);
-                }
-            }
-        }
+        type.setTags(new ArrayList<PoiTypeTag>());
         return type;
     }
 
-    public List<PoiType> convert(List<PoiTypeDto> dtos) {
-        if (dtos == null) {
-            return null;
-        }
-        ArrayList<PoiType> result = new ArrayList<>(dtos.size());
-        for (PoiTypeDto dto : dtos) {
-            result.add(convert(dto));
+    /**
+     * Add a tag to a PoiType created by {@link #convert(String, Map, Map, Map, int)}, the implied tags are not kept.
+     *
+     * @param type           The PoiType.
+     * @param key            The key of the tag.
+     * @param value          The value of the tag, null if it is free.
+     * @param mandatory      Whether the tag is mandatory.
+     * @param implied        Whether the tag is implied by the type.
+     * @param possibleValues The values proposed for the tag, may be null.
+     */
+    public void addTag(PoiType type, String key, String value, boolean mandatory, boolean implied, List<String> possibleValues) {
+        // If the tag is implied, do not keep it
+        if (implied) {
+            return;
         }
-        return result;
+        PoiTypeTag poiTypeTag = new PoiTypeTag();
+        poiTypeTag.setPoiType(type);
+        poiTypeTag.setKey(key);
+        poiTypeTag.setValue(value);
+        poiTypeTag.setMandatory(mandatory);
+        poiTypeTag.setOrdinal(type.getTags().size());
+        poiTypeTag.setPossibleValues(getPossibleValues(possibleValues));
+        type.getTags().add(poiTypeTag);
     }
 
     /**
@@ -115,49 +114,41 @@ public class PoiTypeConverter {
     }
 
     /**
-     * Get the value of the JsonElement in the language of the system. If the language is not found, search for English.
+     * Get the translation in the language of the system. If the language is not found, search for English.
      * If the language is still not found, put the default name.
      *
-     * @param jsonElement The json element containing a value in many languages.
-     * @param defaultName The default value if no translation was found for the system language or in English.
-     * @return The value of the element for the system language or in English.
+     * @param translations The value in many languages, may be null.
+     * @param defaultName  The default value if no translation was found for the system language or in English.
+     * @return The value for the system language or in English.
      */
-    private String getTranslationFormJson(JsonElement jsonElement, String defaultName) {
-        if (jsonElement != null) {
-            Type mapType = (new TypeToken<Map<String, String>>() {
-            }).getType();
-            Map<String, String> map = gson.fromJson(jsonElement, mapType);
-
+    private String getTranslation(Map<String, String> translations, String defaultName) {
+        if (translations != null) {
             // if there is a translation for the user language
-            if (map.containsKey(language)) {
-                return map.get(language);
+            if (translations.containsKey(language)) {
+                return translations.get(language);
             }
             // else we look for the english translation
-            if (map.containsKey("en")) {
-                return map.get("en");
+            if (translations.containsKey("en")) {
+                return translations.get("en");
             }
         }
 
-        // if we don't have the translation we use the name from the JSON file
+        // if we don't have the translation we use the name from the catalogue
         return defaultName;
     }
 
     /**
-     * Get the keywords from a JsonElement in the language of the system.
+     * Get the keywords in the language of the system, separated by spaces.
      *
-     * @param jsonElement The json element containing the keywords in many languages.
-     * @return The list of keywords.
+     * @param keyWords The keywords in many languages, may be null.
+     * @return The keywords.
      */
-    private String getKeywordsFormJson(JsonElement jsonElement) {
+    private String getKeywords(Map<String, List<String>> keyWords) {
         StringBuilder stringBuilder = new StringBuilder();
-        Type mapType = (new TypeToken<Map<String, List<String>>>() {
-        }).getType();
-        Map<String, List<String>> map = gson.fromJson(jsonElement, mapType);
 
         // if there is a translation for the user language
-        if (map.containsKey(language)) {
-            List<String> strList = map.get(language);
-            for (String keyword : strList) {
+        if (keyWords != null && keyWords.containsKey(language)) {
+            for (String keyword : keyWords.get(language)) {
                 stringBuilder.append(keyword);
                 stringBuilder.append(" ");
             }
@@ -167,17 +158,15 @@ public class PoiTypeConverter {
     }
 
     /**
-     * Get the possible values from a JsonElement as a String with each values separated by a Group Separator character (ASCII character 29).
+     * Get the possible values as a String with each values separated by a Group Separator character (ASCII character 29).
      *
-     * @param jsonElement The jsonElement containing the possible values.
+     * @param values The possible values, may be null.
      * @return The possible values.
      */
-    private String getPossibleValues(JsonElement jsonElement) {
+    private String getPossibleValues(List<String> values) {
         StringBuilder possibleValues = new StringBuilder();
 
-        if (jsonElement != null) {
-            List<String> values = gson.fromJson(jsonElement, (new TypeToken<List<String>>() {
-            }).getType());
+        if (values != null) {
             Iterator<String> it = values.iterator();
             if (it.hasNext()) {
                 possibleValues.append(it.next());
@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync.converter;
+
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import io.mapsquare.osmcontributor.core.database.dao.PoiTypeDao;
+import io.mapsquare.osmcontributor.core.events.PoiTypesLoaded;
+import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
+import io.mapsquare.osmcontributor.sync.dto.osm.TagDto;
+import timber.log.Timber;
+
+/**
+ * Find the PoiType of downloaded elements from their tags.
+ * <br/>
+ * The PoiTypes are indexed by the key and value of their tags, so that the type of an element is resolved
+ * in one pass over its tags. The index is built from the database on first use and rebuilt each time a
+ * {@link io.mapsquare.osmcontributor.core.events.PoiTypesLoaded} event is received.
+ */
+@Singleton
+public class PoiTypeMatcher {
+
+    private final PoiTypeDao poiTypeDao;
+
+    private volatile Index index;
+
+    @Inject
+    public PoiTypeMatcher(PoiTypeDao poiTypeDao) {
+        this.poiTypeDao = poiTypeDao;
+    }
+
+    // ********************************
+    // ************ Events ************
+    // ********************************
+
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onPoiTypesLoaded(PoiTypesLoaded event) {
+        Timber.d("Rebuilding the PoiType index");
+        index = new Index(event.getPoiTypes());
+    }
+
+    // *********************************
+    // ************ Public *************
+    // *********************************
+
+    /**
+     * Find the type of an element from its tags.
+     * <br/>
+     * A type matches if all its tags having a value are present in the element's tags. When several types match,
+     * the one with the lowest id is returned.
+     *
+     * @param tags The tags of the element.
+     * @return The matching type or null if there is none.
+     */
+    public PoiType findType(List<TagDto> tags) {
+        if (tags == null) {
+            return null;
+        }
+        Index current = index;
+        if (current == null) {
+            current = new Index(poiTypeDao.queryForAll());
+            index = current;
+        }
+        return current.findType(tags);
+    }
+
+    /**
+     * Immutable index of the PoiTypes by the key and value of their tags.
+     */
+    static class Index {
+        /**
+         * The indexed types, ordered by id.
+         */
+        private final PoiType[] types;
+        /**
+         * For each type, the number of its tags having a value.
+         */
+        private final int[] requiredMatches;
+        /**
+         * Positions of the types in {@link #types} for each key and value, a position appears once per tag of the type.
+         */
+        private final Map<String, Map<String, int[]>> positionsByKeyAndValue = new HashMap<>();
+        /**
+         * Position of the first type without any tag having a value, such a type matches every element.
+         */
+        private final int firstMatchingAll;
+
+        Index(List<PoiType> poiTypes) {
+            List<PoiType> sorted = new ArrayList<>(poiTypes);
+            Collections.sort(sorted, new Comparator<PoiType>() {
+                @Override
+                public int compare(PoiType lhs, PoiType rhs) {
+                    // Same order as the database, types which are not saved yet keep their order at the end
+                    if (lhs.getId() == null || rhs.getId() == null) {
+                        return lhs.getId() != null ? -1 : rhs.getId() != null ? 1 : 0;
+                    }
+                    return lhs.getId().compareTo(rhs.getId());
+                }
+            });
+
+            types = sorted.toArray(new PoiType[sorted.size()]);
+            requiredMatches = new int[types.length];
+            int matchingAll = Integer.MAX_VALUE;
+
+            Map<String, Map<String, List<Integer>>> positions = new HashMap<>();
+            for (int i = 0; i < types.length; i++) {
+                if (types[i].getTags() != null) {
+                    for (PoiTypeTag poiTypeTag : types[i].getTags()) {
+                        if (poiTypeTag.getValue() != null) {
+                            requiredMatches[i]++;
+                            Map<String, List<Integer>> byValue = positions.get(poiTypeTag.getKey());
+                            if (byValue == null) {
+                                byValue = new HashMap<>();
+                                positions.put(poiTypeTag.getKey(), byValue);
+                            }
+                            List<Integer> list = byValue.get(poiTypeTag.getValue());
+                            if (list == null) {
+                                list = new ArrayList<>();
+                                byValue.put(poiTypeTag.getValue(), list);
+                            }
+                            list.add(i);
+                        }
+                    }
+                }
+                if (requiredMatches[i] == 0 && matchingAll == Integer.MAX_VALUE) {
+                    matchingAll = i;
+                }
+            }
+            firstMatchingAll = matchingAll;
+
+            for (Map.Entry<String, Map<String, List<Integer>>> keyEntry : positions.entrySet()) {
+                Map<String, int[]> byValue = new HashMap<>(keyEntry.getValue().size());
+                for (Map.Entry<String, List<Integer>> valueEntry : keyEntry.getValue().entrySet()) {
+                    List<Integer> list = valueEntry.getValue();
+                    int[] array = new int[list.size()];
+                    for (int i = 0; i < array.length; i++) {
+                        array[i] = list.get(i);
+                    }
+                    byValue.put(valueEntry.getKey(), array);
+                }
+                positionsByKeyAndValue.put(keyEntry.getKey(), byValue);
+            }
+        }
+
+        PoiType findType(List<TagDto> tags) {
+            Map<Integer, Integer> matches = null;
+            for (TagDto tag : tags) {
+                Map<String, int[]> byValue = positionsByKeyAndValue.get(tag.getKey());
+                if (byValue == null) {
+                    continue;
+                }
+                int[] positions = byValue.get(tag.getValue());
+                if (positions == null) {
+                    continue;
+                }
+                if (matches == null) {
+                    matches = new HashMap<>();
+                }
+                for (int position : positions) {
+                    if (position < firstMatchingAll) {
+                        Integer count = matches.get(position);
+                        matches.put(position, count == null ? 1 : count + 1);
+                    }
+                }
+            }
+
+            int best = firstMatchingAll;
+            if (matches != null) {
+                for (Map.Entry<Integer, Integer> entry : matches.entrySet()) {
+                    int position = entry.getKey();
+                    if (position < best && entry.getValue() == requiredMatches[position]) {
+                        best = position;
+                    }
+                }
+            }
+            return best < types.length ? types[best] : null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync.dto.osm;
+
+import org.simpleframework.xml.ElementList;
+import org.simpleframework.xml.Root;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The osmChange document of a changeSet download. Unlike an uploaded {@link OsmChangeDto}, it can contain
+ * several blocks of each action.
+ */
+@Root(name = "osmChange", strict = false)
+public class ChangeSetDownloadDto {
+
+    @ElementList(inline = true, entry = "create", required = false)
+    private List<OsmChangeActionDto> createList = new ArrayList<>();
+
+    @ElementList(inline = true, entry = "modify", required = false)
+    private List<OsmChangeActionDto> modifyList = new ArrayList<>();
+
+    @ElementList(inline = true, entry = "delete", required = false)
+    private List<OsmChangeActionDto> deleteList = new ArrayList<>();
+
+    public ChangeSetDownloadDto() {
+    }
+
+    public List<OsmChangeActionDto> getCreateList() {
+        return createList;
+    }
+
+    public void setCreateList(List<OsmChangeActionDto> createList) {
+        this.createList = createList;
+    }
+
+    public List<OsmChangeActionDto> getModifyList() {
+        return modifyList;
+    }
+
+    public void setModifyList(List<OsmChangeActionDto> modifyList) {
+        this.modifyList = modifyList;
+    }
+
+    public List<OsmChangeActionDto> getDeleteList() {
+        return deleteList;
+    }
+
+    public void setDeleteList(List<OsmChangeActionDto> deleteList) {
+        this.deleteList = deleteList;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSetDownloadDto{" +
+                "createList=" + createList +
+                ", modifyList=" + modifyList +
+                ", deleteList=" + deleteList +
+                '}';
+    }
+}
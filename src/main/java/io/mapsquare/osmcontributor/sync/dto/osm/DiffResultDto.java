@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync.dto.osm;
+
+import org.simpleframework.xml.ElementList;
+import org.simpleframework.xml.Root;
+
+import java.util.List;
+
+@Root(name = "diffResult", strict = false)
+public class DiffResultDto {
+
+    @ElementList(inline = true, entry = "node", required = false)
+    private List<DiffResultEntryDto> nodeDtoList;
+
+    @ElementList(inline = true, entry = "way", required = false)
+    private List<DiffResultEntryDto> wayDtoList;
+
+    public DiffResultDto() {
+    }
+
+    public List<DiffResultEntryDto> getNodeDtoList() {
+        return nodeDtoList;
+    }
+
+    public void setNodeDtoList(List<DiffResultEntryDto> nodeDtoList) {
+        this.nodeDtoList = nodeDtoList;
+    }
+
+    public List<DiffResultEntryDto> getWayDtoList() {
+        return wayDtoList;
+    }
+
+    public void setWayDtoList(List<DiffResultEntryDto> wayDtoList) {
+        this.wayDtoList = wayDtoList;
+    }
+
+    @Override
+    public String toString() {
+        return "DiffResultDto{" +
+                "nodeDtoList=" + nodeDtoList +
+                ", wayDtoList=" + wayDtoList +
+                '}';
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync.dto.osm;
+
+import org.simpleframework.xml.Attribute;
+import org.simpleframework.xml.Root;
+
+/**
+ * An element of a {@link DiffResultDto}. Deleted elements only have an old id.
+ */
+@Root(strict = false)
+public class DiffResultEntryDto {
+
+    @Attribute(name = "old_id")
+    private String oldId;
+
+    @Attribute(name = "new_id", required = false)
+    private String newId;
+
+    @Attribute(name = "new_version", required = false)
+    private String newVersion;
+
+    public String getOldId() {
+        return oldId;
+    }
+
+    public void setOldId(String oldId) {
+        this.oldId = oldId;
+    }
+
+    public String getNewId() {
+        return newId;
+    }
+
+    public void setNewId(String newId) {
+        this.newId = newId;
+    }
+
+    public String getNewVersion() {
+        return newVersion;
+    }
+
+    public void setNewVersion(String newVersion) {
+        this.newVersion = newVersion;
+    }
+
+    @Override
+    public String toString() {
+        return "DiffResultEntryDto{" +
+                "oldId='" + oldId + '\'' +
+                ", newId='" + newId + '\'' +
+                ", newVersion='" + newVersion + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync.dto.osm;
+
+import org.simpleframework.xml.ElementList;
+import org.simpleframework.xml.Root;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A create, modify or delete block of an {@link OsmChangeDto}.
+ */
+@Root(strict = false)
+public class OsmChangeActionDto {
+
+    @ElementList(inline = true, required = false)
+    private List<NodeDto> nodeDtoList = new ArrayList<>();
+
+    @ElementList(inline = true, required = false)
+    private List<WayDto> wayDtoList = new ArrayList<>();
+
+    public OsmChangeActionDto() {
+    }
+
+    public List<NodeDto> getNodeDtoList() {
+        return nodeDtoList;
+    }
+
+    public void setNodeDtoList(List<NodeDto> nodeDtoList) {
+        this.nodeDtoList = nodeDtoList;
+    }
+
+    public List<WayDto> getWayDtoList() {
+        return wayDtoList;
+    }
+
+    public void setWayDtoList(List<WayDto> wayDtoList) {
+        this.wayDtoList = wayDtoList;
+    }
+
+    public boolean isEmpty() {
+        return (nodeDtoList == null || nodeDtoList.isEmpty()) && (wayDtoList == null || wayDtoList.isEmpty());
+    }
+
+    @Override
+    public String toString() {
+        return "OsmChangeActionDto{" +
+                "nodeDtoList=" + nodeDtoList +
+                ", wayDtoList=" + wayDtoList +
+                '}';
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync.dto.osm;
+
+import org.simpleframework.xml.Attribute;
+import org.simpleframework.xml.Element;
+import org.simpleframework.xml.Root;
+
+@Root(name = "osmChange", strict = false)
+public class OsmChangeDto {
+
+    @Attribute(required = false)
+    private String version = "0.6";
+
+    @Attribute(required = false)
+    private String generator;
+
+    @Element(name = "create", required = false)
+    private OsmChangeActionDto create;
+
+    @Element(name = "modify", required = false)
+    private OsmChangeActionDto modify;
+
+    @Element(name = "delete", required = false)
+    private OsmChangeActionDto delete;
+
+    public OsmChangeDto() {
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    public String getGenerator() {
+        return generator;
+    }
+
+    public void setGenerator(String generator) {
+        this.generator = generator;
+    }
+
+    public OsmChangeActionDto getCreate() {
+        return create;
+    }
+
+    public void setCreate(OsmChangeActionDto create) {
+        this.create = create;
+    }
+
+    public OsmChangeActionDto getModify() {
+        return modify;
+    }
+
+    public void setModify(OsmChangeActionDto modify) {
+        this.modify = modify;
+    }
+
+    public OsmChangeActionDto getDelete() {
+        return delete;
+    }
+
+    public void setDelete(OsmChangeActionDto delete) {
+        this.delete = delete;
+    }
+
+    @Override
+    public String toString() {
+        return "OsmChangeDto{" +
+                "version='" + version + '\'' +
+                ", generator='" + generator + '\'' +
+                ", create=" + create +
+                ", modify=" + modify +
+                ", delete=" + delete +
+                '}';
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync.rest;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import timber.log.Timber;
+
+/**
+ * Per host counters of the requests made with the shared {@link com.squareup.okhttp.OkHttpClient}.
+ * <br/>
+ * The {@link #getApplicationInterceptor() application interceptor} sees every request, including the ones answered
+ * by the disk cache, and measures the latency seen by the caller. The {@link #getNetworkInterceptor() network interceptor}
+ * only sees the requests reaching the network and counts the bytes announced by the servers, before decompression.
+ */
+@Singleton
+public class HttpMetrics {
+
+    private final ConcurrentMap<String, HostMetrics> hosts = new ConcurrentHashMap<>();
+
+    private final Interceptor applicationInterceptor = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            HostMetrics metrics = getHostMetrics(request.url().getHost());
+            long start = System.nanoTime();
+            try {
+                Response response = chain.proceed(request);
+                metrics.requests.incrementAndGet();
+                if (response.networkResponse() == null) {
+                    metrics.cacheHits.incrementAndGet();
+                } else if (response.networkResponse().code() == 304) {
+                    metrics.conditionalHits.incrementAndGet();
+                }
+                return response;
+            } catch (IOException e) {
+                metrics.failures.incrementAndGet();
+                throw e;
+            } finally {
+                metrics.latencyMillis.addAndGet((System.nanoTime() - start) / 1000000);
+            }
+        }
+    };
+
+    private final Interceptor networkInterceptor = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Response response = chain.proceed(chain.request());
+            HostMetrics metrics = getHostMetrics(chain.request().url().getHost());
+            metrics.networkRequests.incrementAndGet();
+            String contentLength = response.header("Content-Length");
+            if (contentLength != null) {
+                try {
+                    metrics.bytesReceived.addAndGet(Long.parseLong(contentLength));
+                } catch (NumberFormatException e) {
+                    Timber.w("Invalid Content-Length %s", contentLength);
+                }
+            }
+            return response;
+        }
+    };
+
+    @Inject
+    public HttpMetrics() {
+    }
+
+    public Interceptor getApplicationInterceptor() {
+        return applicationInterceptor;
+    }
+
+    public Interceptor getNetworkInterceptor() {
+        return networkInterceptor;
+    }
+
+    /**
+     * Get the counters of all the hosts contacted since the start of the application.
+     *
+     * @return The counters by host, sorted by host.
+     */
+    public Map<String, HostMetrics> getMetrics() {
+        return new TreeMap<>(hosts);
+    }
+
+    /**
+     * Log the counters of all the hosts.
+     */
+    public void log() {
+        for (Map.Entry<String, HostMetrics> entry : getMetrics().entrySet()) {
+            Timber.d("%s: %s", entry.getKey(), entry.getValue());
+        }
+    }
+
+    private HostMetrics getHostMetrics(String host) {
+        HostMetrics metrics = hosts.get(host);
+        if (metrics == null) {
+            HostMetrics created = new HostMetrics();
+            metrics = hosts.putIfAbsent(host, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Counters of the requests made to one host.
+     */
+    public static class HostMetrics {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong cacheHits = new AtomicLong();
+        private final AtomicLong conditionalHits = new AtomicLong();
+        private final AtomicLong networkRequests = new AtomicLong();
+        private final AtomicLong latencyMillis = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+
+        /**
+         * @return The number of requests which got a response, from the network or from the cache.
+         */
+        public long getRequests() {
+            return requests.get();
+        }
+
+        /**
+         * @return The number of requests which failed without response.
+         */
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * @return The number of requests answered by the cache without contacting the server.
+         */
+        public long getCacheHits() {
+            return cacheHits.get();
+        }
+
+        /**
+         * @return The number of requests answered by the cache after the server confirmed it was up to date.
+         */
+        public long getConditionalHits() {
+            return conditionalHits.get();
+        }
+
+        /**
+         * @return The number of requests sent to the server, redirections and retries included.
+         */
+        public long getNetworkRequests() {
+            return networkRequests.get();
+        }
+
+        /**
+         * @return The total time spent waiting for the responses, in milliseconds.
+         */
+        public long getLatencyMillis() {
+            return latencyMillis.get();
+        }
+
+        /**
+         * @return The number of bytes announced by the server in the Content-Length header of its responses.
+         */
+        public long getBytesReceived() {
+            return bytesReceived.get();
+        }
+
+        @Override
+        public String toString() {
+            long count = requests.get() + failures.get();
+            return "HostMetrics{" +
+                    "requests=" + requests +
+                    ", failures=" + failures +
+                    ", cacheHits=" + cacheHits +
+                    ", conditionalHits=" + conditionalHits +
+                    ", networkRequests=" + networkRequests +
+                    ", averageLatencyMillis=" + (count > 0 ? latencyMillis.get() / count : 0) +
+                    ", bytesReceived=" + bytesReceived +
+                    '}';
+        }
+    }
+}
@@ -18,6 +18,9 @@
  */
 package io.mapsquare.osmcontributor.sync.rest;
 
+import io.mapsquare.osmcontributor.sync.dto.osm.ChangeSetDownloadDto;
+import io.mapsquare.osmcontributor.sync.dto.osm.DiffResultDto;
+import io.mapsquare.osmcontributor.sync.dto.osm.OsmChangeDto;
 import io.mapsquare.osmcontributor.sync.dto.osm.OsmDto;
 import retrofit.client.Response;
 import retrofit.http.Body;
@@ -59,13 +62,13 @@ public interface OsmRestClient {
     OsmDto getNotes(@Query("bbox") String box);
 
     /**
-     * Get a way from it's OSM id.
+     * Get ways from their OSM ids.
      *
-     * @param id The id of the way.
-     * @return The way.
+     * @param ids The ids of the ways, separated by commas.
+     * @return The ways, the deleted ones are not visible.
      */
     @GET("/ways")
-    OsmDto getWay(@Query("ways") long id);
+    OsmDto getWays(@Query("ways") String ids);
 
     /**
      * Get a changeSet and it's discussion from it's id.
@@ -76,6 +79,15 @@ public interface OsmRestClient {
     @GET("/changeset/{id}?include_discussion=true")
     OsmDto getChangeSet(@Path("id") String id);
 
+    /**
+     * Download all the changes made in a changeSet.
+     *
+     * @param id The id of the changeSet.
+     * @return The osmChange document of the changeSet, with one block per group of elements created, modified or deleted.
+     */
+    @GET("/changeset/{id}/download")
+    ChangeSetDownloadDto downloadChangeSet(@Path("id") String id);
+
     /**
      * Create a ChangeSet.
      *
@@ -96,6 +108,18 @@ public interface OsmRestClient {
     @PUT("/changeset/{id}/close")
     Response closeChangeSet(@Path("id") String id);
 
+    /**
+     * Upload in a single request all the creations, modifications and deletions of a changeSet.
+     * The upload is atomic: either all the changes are applied or none of them.
+     * Returns a 409 if the version of one of the elements doesn't match.
+     *
+     * @param id        Id of the changeSet in which the changes are uploaded.
+     * @param osmChange The osmChange document containing the changes.
+     * @return The diffResult mapping the ids of the uploaded elements to their new ids and versions.
+     */
+    @POST("/changeset/{id}/upload")
+    DiffResultDto uploadChangeSet(@Path("id") String id, @Body OsmChangeDto osmChange);
+
     /**
      * Create a Node.
      *
@@ -19,8 +19,10 @@
 package io.mapsquare.osmcontributor.sync.rest;
 
 import io.mapsquare.osmcontributor.sync.dto.osm.OsmDto;
+import retrofit.client.Response;
 import retrofit.http.Body;
 import retrofit.http.POST;
+import retrofit.http.Streaming;
 import retrofit.mime.TypedString;
 
 public interface OverpassRestClient {
@@ -28,4 +30,14 @@ public interface OverpassRestClient {
 
     @POST("/")
     OsmDto sendRequest(@Body TypedString data);
+
+    /**
+     * Send a request to Overpass without converting the response, so that its body can be read as a stream.
+     *
+     * @param data The Overpass QL request.
+     * @return The raw response, its body must be closed by the caller.
+     */
+    @Streaming
+    @POST("/")
+    Response sendStreamingRequest(@Body TypedString data);
 }
@@ -37,6 +37,8 @@ import io.mapsquare.osmcontributor.R;
 import io.mapsquare.osmcontributor.core.model.PoiType;
 import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
 import io.mapsquare.osmcontributor.map.BitmapHandler;
+import io.mapsquare.osmcontributor.utils.Function;
+import io.mapsquare.osmcontributor.utils.SearchIndex;
 import io.mapsquare.osmcontributor.utils.helper.SwipeItemTouchHelperAdapter;
 import io.mapsquare.osmcontributor.utils.helper.ItemTouchHelperViewHolder;
 import timber.log.Timber;
@@ -47,6 +49,7 @@ public class PoiTypeAdapter extends RecyclerView.Adapter<PoiTypeAdapter.PoiTypeV
     private BitmapHandler bitmapHandler;
     private List<PoiType> originalValues = null;
     private List<PoiType> filteredValues = null;
+    private SearchIndex<PoiType> searchIndex = null;
     private PoiTypeAdapterListener listener = null;
 
     private PoiType lastRemovedItem = null;
@@ -88,6 +91,7 @@ public class PoiTypeAdapter extends RecyclerView.Adapter<PoiTypeAdapter.PoiTypeV
         lastRemovedItem = getItem(position);
         originalValues.remove(lastRemovedItem);
         filteredValues.remove(lastRemovedItem);
+        invalidateSearchIndex();
         if (listener != null) {
             listener.onItemRemoved(lastRemovedItem);
         }
@@ -97,6 +101,7 @@ public class PoiTypeAdapter extends RecyclerView.Adapter<PoiTypeAdapter.PoiTypeV
     public void setPoiTypes(List<PoiType> poiTypes) {
         originalValues = poiTypes;
         filteredValues = poiTypes;
+        invalidateSearchIndex();
         notifyDataSetChanged();
     }
 
@@ -112,34 +117,25 @@ public class PoiTypeAdapter extends RecyclerView.Adapter<PoiTypeAdapter.PoiTypeV
     }
 
     public int addItem(PoiType item) {
-        int insertedIndex = -1;
         // If the item was not in the adapter, add it
-        if (originalValues.indexOf(item) == -1) {
+        boolean added = originalValues.indexOf(item) == -1;
+        if (added) {
             originalValues.add(item);
-            Collections.sort(originalValues);
-
-            // Check if the new item should be displayed with the current filter
-            if (item.getName() != null && filter.lastFilterConstraint != null && item.getName().toLowerCase().contains(filter.lastFilterConstraint)) {
-                filteredValues.add(item);
-                Collections.sort(filteredValues);
-                insertedIndex = filteredValues.indexOf(item);
-                notifyItemInserted(insertedIndex);
-            }
-        } else {
-            // The item is already in the adapter, we must update the view
-            Collections.sort(originalValues);
+        }
+        Collections.sort(originalValues);
+        invalidateSearchIndex();
 
-            filteredValues.remove(item);
+        // Filter again with the rules of the index so that the results keep their ranking
+        String constraint = filter.lastFilterConstraint;
+        filteredValues = constraint.isEmpty() ? new ArrayList<>(originalValues) : getSearchIndex().search(constraint);
+        int insertedIndex = filteredValues.indexOf(item);
 
-            // Display the item depending on the filter
-            if (item.getName() != null && filter.lastFilterConstraint != null && item.getName().toLowerCase().contains(filter.lastFilterConstraint)) {
-                filteredValues.add(item);
-                Collections.sort(filteredValues);
-                insertedIndex = filteredValues.indexOf(item);
-            }
+        if (!added) {
+            // The item is already in the adapter, we must update the view
             notifyDataSetChanged();
+        } else if (insertedIndex != -1) {
+            notifyItemInserted(insertedIndex);
         }
-
         return insertedIndex;
     }
 
@@ -240,14 +236,48 @@ public class PoiTypeAdapter extends RecyclerView.Adapter<PoiTypeAdapter.PoiTypeV
         }
     }
 
+    /**
+     * The index of the types searched by name, technical name and keywords, built on the first search after a change.
+     */
+    private synchronized SearchIndex<PoiType> getSearchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new SearchIndex<>(originalValues, new Function<PoiType, String>() {
+                @Override
+                public String apply(PoiType poiType) {
+                    return searchableText(poiType);
+                }
+            });
+        }
+        return searchIndex;
+    }
+
+    private synchronized void invalidateSearchIndex() {
+        searchIndex = null;
+    }
+
+    /**
+     * The text of a type matched by the searches: its name first, so that the types named by the query come first.
+     */
+    public static String searchableText(PoiType poiType) {
+        StringBuilder text = new StringBuilder();
+        for (String part : new String[]{poiType.getName(), poiType.getTechnicalName(), poiType.getKeyWords()}) {
+            if (part != null && !part.isEmpty()) {
+                if (text.length() > 0) {
+                    text.append(' ');
+                }
+                text.append(part);
+            }
+        }
+        return text.toString();
+    }
+
     private class ItemFilter extends Filter {
 
         private String lastFilterConstraint = "";
 
         @Override
         protected FilterResults performFiltering(CharSequence constraint) {
-
-            String filterString = constraint.toString().toLowerCase();
+            String filterString = SearchIndex.normalize(constraint);
             lastFilterConstraint = filterString;
             FilterResults results = new FilterResults();
 
@@ -257,17 +287,7 @@ public class PoiTypeAdapter extends RecyclerView.Adapter<PoiTypeAdapter.PoiTypeV
                 return results;
             }
 
-            final List<PoiType> list = originalValues;
-
-            final ArrayList<PoiType> newValuesList = new ArrayList<>();
-
-            for (int i = 0; i < list.size(); i++) {
-                String filterableString = list.get(i).getKeyWords() + " " + list.get(i).getName() + " " + list.get(i).getTechnicalName();
-                if (filterableString.toLowerCase().contains(filterString) || filterableString.equalsIgnoreCase(filterString)) {
-                    newValuesList.add(list.get(i));
-                }
-            }
-
+            List<PoiType> newValuesList = getSearchIndex().search(filterString);
             results.values = newValuesList;
             results.count = newValuesList.size();
 
@@ -277,7 +297,7 @@ public class PoiTypeAdapter extends RecyclerView.Adapter<PoiTypeAdapter.PoiTypeV
         @SuppressWarnings("unchecked")
         @Override
         protected void publishResults(CharSequence constraint, FilterResults results) {
-            filteredValues = (ArrayList<PoiType>) results.values;
+            filteredValues = (List<PoiType>) results.values;
             notifyDataSetChanged();
         }
     }
@@ -20,6 +20,7 @@ package io.mapsquare.osmcontributor.utils;
 
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public final class CollectionUtils {
@@ -45,4 +46,25 @@ public final class CollectionUtils {
         }
         return result;
     }
+
+    /**
+     * Split a {@link java.util.Collection} in consecutive lists of at most {@code size} elements.
+     *
+     * @param collection The collection to split.
+     * @param size       The maximum size of the lists.
+     * @param <T>        The type of the collection.
+     * @return The lists, empty if the collection is empty.
+     */
+    public static <T> List<List<T>> partition(Collection<T> collection, int size) {
+        List<List<T>> result = new ArrayList<>();
+        List<T> current = null;
+        for (T element : collection) {
+            if (current == null || current.size() == size) {
+                current = new ArrayList<>(size);
+                result.add(current);
+            }
+            current.add(element);
+        }
+        return result;
+    }
 }
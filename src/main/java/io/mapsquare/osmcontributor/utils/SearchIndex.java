@@ -0,0 +1,287 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.utils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory full text index of a list of items, built once and queried on each keystroke of a search field.
+ * <br/>
+ * The texts are normalized with {@link #normalize(CharSequence)} so that the search ignores the case and the accents.
+ * An item matches when its text contains the query. All the substrings of up to {@link #GRAM_LENGTH} characters
+ * of the texts are indexed: shorter queries are answered by a single lookup, longer ones by intersecting the
+ * postings of their trigrams then checking the few candidates. The words of the texts are kept sorted to find by
+ * binary search the items having a word starting with the query.
+ * <br/>
+ * The results are ranked: first the items whose text is the query, then the ones whose text starts with the query,
+ * then the ones with a word starting with the query and finally the other matches. Items of the same rank keep
+ * their order in the indexed list.
+ * <br/>
+ * The index is immutable and can be queried from any thread.
+ *
+ * @param <T> The type of the items.
+ */
+public final class SearchIndex<T> {
+
+    /**
+     * Length of the longest indexed substrings.
+     */
+    private static final int GRAM_LENGTH = 3;
+
+    private static final int[] NO_ITEMS = new int[0];
+
+    private final List<T> items;
+    private final String[] texts;
+    private final Map<String, int[]> postings;
+    private final String[] words;
+    private final int[] wordItems;
+
+    /**
+     * Index the items.
+     *
+     * @param items The items, in the order of the results of the same rank.
+     * @param text  The function giving the searchable text of an item.
+     */
+    public SearchIndex(List<T> items, Function<T, String> text) {
+        this.items = new ArrayList<>(items);
+        texts = new String[this.items.size()];
+
+        Map<String, List<Integer>> grams = new HashMap<>();
+        final List<String> itemWords = new ArrayList<>();
+        final List<Integer> itemWordItems = new ArrayList<>();
+        for (int i = 0; i < texts.length; i++) {
+            String normalized = normalize(text.apply(this.items.get(i)));
+            texts[i] = normalized;
+            addGrams(grams, normalized, i);
+            for (String word : normalized.split("[^\\p{L}\\p{N}]+")) {
+                if (!word.isEmpty()) {
+                    itemWords.add(word);
+                    itemWordItems.add(i);
+                }
+            }
+        }
+
+        postings = new HashMap<>(grams.size());
+        for (Map.Entry<String, List<Integer>> entry : grams.entrySet()) {
+            postings.put(entry.getKey(), toArray(entry.getValue()));
+        }
+
+        Integer[] order = new Integer[itemWords.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return itemWords.get(lhs).compareTo(itemWords.get(rhs));
+            }
+        });
+        words = new String[order.length];
+        wordItems = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            words[i] = itemWords.get(order[i]);
+            wordItems[i] = itemWordItems.get(order[i]);
+        }
+    }
+
+    /**
+     * Normalize a text for the search: decompose the characters, remove the accents and lower the case.
+     *
+     * @param text The text to normalize, may be null.
+     * @return The normalized text, empty for a null text.
+     */
+    public static String normalize(CharSequence text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        StringBuilder builder = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                builder.append(Character.toLowerCase(c));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return The number of indexed items.
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Search the items whose text contains the query, ignoring the case and the accents.
+     *
+     * @param query The searched text.
+     * @return The matching items, best ranked first. All the items if the query is empty.
+     */
+    public List<T> search(CharSequence query) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return new ArrayList<>(items);
+        }
+
+        int[] candidates = candidates(normalized);
+        if (candidates.length == 0) {
+            return new ArrayList<>();
+        }
+        BitSet wordPrefixes = wordPrefixMatches(normalized);
+
+        List<List<T>> ranks = new ArrayList<>(4);
+        for (int i = 0; i < 4; i++) {
+            ranks.add(new ArrayList<T>());
+        }
+        for (int candidate : candidates) {
+            String text = texts[candidate];
+            int rank;
+            if (text.equals(normalized)) {
+                rank = 0;
+            } else if (text.startsWith(normalized)) {
+                rank = 1;
+            } else if (wordPrefixes.get(candidate)) {
+                rank = 2;
+            } else {
+                rank = 3;
+            }
+            ranks.get(rank).add(items.get(candidate));
+        }
+
+        List<T> result = new ArrayList<>(candidates.length);
+        for (List<T> rank : ranks) {
+            result.addAll(rank);
+        }
+        return result;
+    }
+
+    /**
+     * The items containing the query, in increasing order.
+     */
+    private int[] candidates(String query) {
+        if (query.length() <= GRAM_LENGTH) {
+            int[] items = postings.get(query);
+            return items != null ? items : NO_ITEMS;
+        }
+
+        // Intersect the postings of the trigrams, the rarest first
+        List<int[]> trigramPostings = new ArrayList<>();
+        for (int i = 0; i + GRAM_LENGTH <= query.length(); i++) {
+            int[] items = postings.get(query.substring(i, i + GRAM_LENGTH));
+            if (items == null) {
+                return NO_ITEMS;
+            }
+            trigramPostings.add(items);
+        }
+        Collections.sort(trigramPostings, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] lhs, int[] rhs) {
+                return lhs.length < rhs.length ? -1 : (lhs.length == rhs.length ? 0 : 1);
+            }
+        });
+        int[] result = trigramPostings.get(0);
+        for (int i = 1; i < trigramPostings.size() && result.length > 0; i++) {
+            result = intersect(result, trigramPostings.get(i));
+        }
+
+        // The trigrams can be in the text in another order
+        int count = 0;
+        int[] verified = new int[result.length];
+        for (int item : result) {
+            if (texts[item].contains(query)) {
+                verified[count++] = item;
+            }
+        }
+        return Arrays.copyOf(verified, count);
+    }
+
+    /**
+     * The items having a word starting with the query.
+     */
+    private BitSet wordPrefixMatches(String query) {
+        BitSet matches = new BitSet(texts.length);
+        int low = 0;
+        int high = words.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (words[middle].compareTo(query) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < words.length && words[i].startsWith(query); i++) {
+            matches.set(wordItems[i]);
+        }
+        return matches;
+    }
+
+    private static void addGrams(Map<String, List<Integer>> grams, String text, int item) {
+        for (int length = 1; length <= GRAM_LENGTH; length++) {
+            for (int start = 0; start + length <= text.length(); start++) {
+                String gram = text.substring(start, start + length);
+                List<Integer> gramItems = grams.get(gram);
+                if (gramItems == null) {
+                    gramItems = new ArrayList<>();
+                    grams.put(gram, gramItems);
+                }
+                // The items are indexed in order, a repeated gram is the last item added
+                if (gramItems.isEmpty() || gramItems.get(gramItems.size() - 1) != item) {
+                    gramItems.add(item);
+                }
+            }
+        }
+    }
+
+    private static int[] intersect(int[] first, int[] second) {
+        int[] result = new int[Math.min(first.length, second.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[count++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -41,6 +41,11 @@ public class PoiStorageConfigManager implements ConfigManager {
         return Integer.parseInt(application.getResources().getString(R.string.zoomVectorial));
     }
 
+    @Override
+    public int getZoomCluster() {
+        return Integer.parseInt(application.getResources().getString(R.string.zoomCluster));
+    }
+
     @Override
     public int getDefaultZoom() {
         return Integer.parseInt(application.getString(R.string.defaultZoom));
@@ -19,9 +19,14 @@
 package io.mapsquare.osmcontributor.sync;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.greenrobot.eventbus.EventBus;
+import org.joda.time.DateTime;
+
 import io.mapsquare.osmcontributor.core.model.Poi;
 import io.mapsquare.osmcontributor.core.model.PoiType;
 import io.mapsquare.osmcontributor.sync.converter.PoiStorageConverter;
@@ -62,13 +67,49 @@ public class PoiStorageBackend implements Backend {
         return "NO NEED FOR TRANSACTIONID";
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isTransactionOpen(String transactionId) {
+        // PoiStorage has no transaction
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AppliedChanges findAppliedChanges(String transactionId, List<Poi> newPois, List<Poi> updatedPois, List<Poi> toDeletePois) {
+        // PoiStorage has no transaction to read back, the changes are sent again
+        return new AppliedChanges(new HashMap<Long, String>(), new HashMap<Long, String>(), new HashSet<Long>());
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public List<Poi> getPoisInBox(Box box) {
+        final List<Poi> pois = new ArrayList<>();
+        downloadPoisInBox(box, new PoiChunkHandler() {
+            @Override
+            public void onPois(List<Poi> chunk) {
+                pois.addAll(chunk);
+            }
+        });
+        return pois;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <br/>
+     * The PoiStorage API returns JSON, the POIs are handed to the handler in a single chunk.
+     */
+    @Override
+    public int downloadPoisInBox(Box box, PoiChunkHandler handler) {
+        List<Poi> pois;
         try {
-            return CollectionUtils.map(client.getPois(null, box.getNorth(), box.getWest(), box.getSouth(), box.getEast()), new Function<PoiDto, Poi>() {
+            pois = CollectionUtils.map(client.getPois(null, box.getNorth(), box.getWest(), box.getSouth(), box.getEast()), new Function<PoiDto, Poi>() {
                 @Override
                 public Poi apply(PoiDto poiDto) {
                     return converter.convertPoi(poiDto);
@@ -77,8 +118,21 @@ public class PoiStorageBackend implements Backend {
         } catch (RetrofitError e) {
             Timber.e(e, "Retrofit error, connection lost; Couldn't download from backend");
             bus.post(new SyncDownloadRetrofitErrorEvent());
-            return new ArrayList<>();
+            return -1;
+        }
+        if (!pois.isEmpty()) {
+            handler.onPois(pois);
         }
+        return pois.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChangesResult downloadPoiChangesInBox(Box box, DateTime since, PoiChunkHandler handler) {
+        // PoiStorage has no filter on the modification date, the whole box is downloaded
+        return null;
     }
 
     /**
@@ -93,6 +147,26 @@ public class PoiStorageBackend implements Backend {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Long, Poi> getPoisByIds(List<Poi> pois) {
+        // PoiStorage has no request returning several POIs by id, they are downloaded one by one
+        Map<Long, Poi> result = new HashMap<>();
+        for (Poi poi : pois) {
+            try {
+                result.put(poi.getId(), converter.convertPoi(client.getPoi(poi.getBackendId())));
+            } catch (RetrofitError e) {
+                if (e.getResponse() == null || e.getResponse().getStatus() != 404) {
+                    Timber.e(e, "Couldn't download poi %s", poi.getBackendId());
+                    return null;
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -103,6 +177,9 @@ public class PoiStorageBackend implements Backend {
             CreationOrUpdateResult result = client.createPoi(poiDto);
             return new CreationResult(ModificationStatus.SUCCESS, result.getBackendId());
         } catch (RetrofitError e) {
+            if (e.getKind() == RetrofitError.Kind.NETWORK) {
+                return new CreationResult(ModificationStatus.FAILURE_NETWORK, null);
+            }
             return new CreationResult(ModificationStatus.FAILURE_UNKNOWN, null);
         }
     }
@@ -117,7 +194,9 @@ public class PoiStorageBackend implements Backend {
             CreationOrUpdateResult result = client.updatePoi(poiDto.getBackendId(), poiDto);
             return new UpdateResult(ModificationStatus.SUCCESS, result.getRevision().toString());
         } catch (RetrofitError e) {
-            if (e.getResponse() != null && e.getResponse().getStatus() == 409) {
+            if (e.getKind() == RetrofitError.Kind.NETWORK) {
+                return new UpdateResult(ModificationStatus.FAILURE_NETWORK, null);
+            } else if (e.getResponse() != null && e.getResponse().getStatus() == 409) {
                 return new UpdateResult(ModificationStatus.FAILURE_CONFLICT, null);
             }
             return new UpdateResult(ModificationStatus.FAILURE_UNKNOWN, null);
@@ -133,13 +212,24 @@ public class PoiStorageBackend implements Backend {
             client.deletePoi(poi.getBackendId());
             return ModificationStatus.SUCCESS;
         } catch (RetrofitError e) {
-            if (e.getResponse() != null && e.getResponse().getStatus() == 404) {
+            if (e.getKind() == RetrofitError.Kind.NETWORK) {
+                return ModificationStatus.FAILURE_NETWORK;
+            } else if (e.getResponse() != null && e.getResponse().getStatus() == 404) {
                 return ModificationStatus.FAILURE_NOT_EXISTING;
             }
             return ModificationStatus.FAILURE_UNKNOWN;
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UploadResult uploadPois(List<Poi> newPois, List<Poi> updatedPois, List<Poi> toDeletePois, String transactionId) {
+        // PoiStorage has no diff upload, POIs are sent one by one
+        return null;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -36,6 +36,11 @@ public class StoreConfigManager implements ConfigManager {
         return BuildConfig.ZOOM_VECTORIAL;
     }
 
+    @Override
+    public int getZoomCluster() {
+        return BuildConfig.ZOOM_CLUSTER;
+    }
+
     @Override
     public int getDefaultZoom() {
         return BuildConfig.DEFAULT_ZOOM;
@@ -33,6 +33,7 @@ import io.mapsquare.osmcontributor.core.database.dao.PoiNodeRefDao;
 import io.mapsquare.osmcontributor.sync.assets.PoiAssetLoader;
 import io.mapsquare.osmcontributor.sync.converter.NoteConverter;
 import io.mapsquare.osmcontributor.sync.converter.PoiConverter;
+import io.mapsquare.osmcontributor.sync.converter.PoiStreamConverter;
 import io.mapsquare.osmcontributor.sync.rest.AuthenticationRequestInterceptor;
 import io.mapsquare.osmcontributor.sync.rest.InterceptorChain;
 import io.mapsquare.osmcontributor.sync.rest.OsmRestClient;
@@ -49,8 +50,8 @@ public class SyncModule {
 
 
     @Provides
-    Backend getBackend(EventBus bus, OSMProxy osmProxy, OverpassRestClient overpassRestClient, OsmRestClient osmRestClient, PoiConverter poiConverter, PoiManager poiManager, PoiAssetLoader poiAssetLoader) {
-        return new OsmBackend(bus, osmProxy, overpassRestClient, osmRestClient, poiConverter, poiManager, poiAssetLoader);
+    Backend getBackend(EventBus bus, OSMProxy osmProxy, OverpassRestClient overpassRestClient, OsmRestClient osmRestClient, PoiConverter poiConverter, PoiStreamConverter poiStreamConverter, PoiManager poiManager, PoiAssetLoader poiAssetLoader) {
+        return new OsmBackend(bus, osmProxy, overpassRestClient, osmRestClient, poiConverter, poiStreamConverter, poiManager, poiAssetLoader);
     }
 
     @Provides
@@ -87,10 +88,11 @@ public class SyncModule {
     }
 
     @Provides
-    OverpassRestClient getOverpassRestClient(Persister persister, ConfigManager configManager) {
+    OverpassRestClient getOverpassRestClient(Persister persister, OkHttpClient okHttpClient, ConfigManager configManager) {
         return new RestAdapter.Builder()
                 .setEndpoint(configManager.getBaseOverpassApiUrl())
                 .setConverter(getXMLConverterWithDateTime(persister))
+                .setClient(new OkClient(okHttpClient))
                 .setLogLevel(RestAdapter.LogLevel.HEADERS).setLog(new AndroidLog("-------------------->"))
                 .build()
                 .create(OverpassRestClient.class);
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor;
+
+import org.joda.time.DateTime;
+
+import java.util.Collections;
+
+import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
+
+/**
+ * PoiTypes shared by the tests.
+ */
+public final class PoiTypeFixtures {
+
+    private PoiTypeFixtures() {
+    }
+
+    /**
+     * @return A type with a single mandatory tag without value, ready to be saved.
+     */
+    public static PoiType getPoiType() {
+        return getPoiType("toto", null, "PoiType", "technical=name");
+    }
+
+    /**
+     * @return A type with a single mandatory tag, ready to be saved.
+     */
+    public static PoiType getPoiType(String key, String value, String name, String technicalName) {
+        PoiType poiType = new PoiType();
+        PoiTypeTag poiTypeTag = new PoiTypeTag();
+        poiTypeTag.setKey(key);
+        poiTypeTag.setValue(value);
+        poiTypeTag.setOrdinal(0);
+        poiTypeTag.setMandatory(true);
+        poiType.setTags(Collections.singletonList(poiTypeTag));
+        poiType.setName(name);
+        poiType.setTechnicalName(technicalName);
+        poiType.setLastUse(new DateTime());
+        poiType.setKeyWords("");
+        return poiType;
+    }
+
+    /**
+     * @return An unsaved type with only an id and an icon, enough to draw markers.
+     */
+    public static PoiType getPoiType(Long id, String icon) {
+        PoiType poiType = new PoiType();
+        poiType.setId(id);
+        poiType.setName(icon);
+        poiType.setIcon(icon);
+        return poiType;
+    }
+}
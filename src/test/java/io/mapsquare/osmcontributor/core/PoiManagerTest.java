@@ -30,6 +30,7 @@ import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -39,9 +40,11 @@ import io.mapsquare.osmcontributor.DaggerOsmTemplateComponent;
 import io.mapsquare.osmcontributor.OsmTemplateComponent;
 import io.mapsquare.osmcontributor.OsmTemplateModule;
 import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.PoiNodeRef;
 import io.mapsquare.osmcontributor.core.model.PoiTag;
 import io.mapsquare.osmcontributor.core.model.PoiType;
 import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
+import io.mapsquare.osmcontributor.utils.Box;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 
@@ -102,6 +105,119 @@ public class PoiManagerTest {
         }
     }
 
+    @Test
+    public void testMergeFromOsmPois() {
+        PoiManager poiManager = component.getPoiManager();
+        PoiType poiType = poiManager.savePoiType(getPoiType());
+
+        List<Poi> remotePois = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            remotePois.add(getRemotePoi(poiType, i, "1", "value1"));
+        }
+        poiManager.mergeFromOsmPois(remotePois);
+
+        Poi merged = poiManager.queryForId(remotePois.get(10).getId());
+        assertThat(merged.getBackendId()).isEqualTo("10");
+        assertThat(merged.getVersion()).isEqualTo("1");
+        assertThat(merged.getType().getId()).isEqualTo(poiType.getId());
+        assertThat(merged.getTagsMap()).hasSize(1);
+        assertThat(merged.getTagsMap().get("tag1")).isEqualTo("value1");
+        assertThat(merged.getNodeRefs()).hasSize(2);
+
+        // A newer version replaces the POI and its tags, an older one is ignored
+        Poi newer = getRemotePoi(poiType, 10, "2", "value2");
+        Poi older = getRemotePoi(poiType, 11, "0", "value0");
+        poiManager.mergeFromOsmPois(Arrays.asList(newer, older));
+
+        assertThat(newer.getId()).isEqualTo(merged.getId());
+        assertThat(older.getId()).isNull();
+        Poi updated = poiManager.queryForId(merged.getId());
+        assertThat(updated.getVersion()).isEqualTo("2");
+        assertThat(updated.getTagsMap()).hasSize(1);
+        assertThat(updated.getTagsMap().get("tag1")).isEqualTo("value2");
+        assertThat(updated.getNodeRefs()).hasSize(2);
+        assertThat(poiManager.queryForId(remotePois.get(11).getId()).getTagsMap().get("tag1")).isEqualTo("value1");
+        assertThat(poiManager.countForBackendId("10")).isEqualTo(1L);
+    }
+
+    @Test
+    public void testTagValueSuggestions() {
+        PoiManager poiManager = component.getPoiManager();
+        PoiType poiType = poiManager.savePoiType(getPoiType());
+
+        List<Poi> pois = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            pois.add(getPoi(poiType, i));
+        }
+        poiManager.savePois(pois);
+        poiManager.mergeFromOsmPois(Arrays.asList(getRemotePoi(poiType, 10, "1", "value2"), getRemotePoi(poiType, 11, "1", "other")));
+        assertThat(poiManager.suggestionsForTagValue("tag1", poiType.getId())).containsExactly("value1", "other", "value2");
+
+        // The counts follow the modifications and deletions of the POIs
+        Poi modified = pois.get(0);
+        modified.getTags().clear();
+        Map<String, String> tags = new HashMap<>();
+        tags.put("tag1", "value2");
+        modified.applyChanges(tags);
+        poiManager.savePoi(modified);
+        assertThat(poiManager.suggestionsForTagValue("tag1", poiType.getId())).containsExactly("value1", "value2", "other");
+
+        poiManager.deletePoi(pois.get(1));
+        assertThat(poiManager.suggestionsForTagValue("tag1", poiType.getId())).containsExactly("value2", "other", "value1");
+
+        poiManager.mergeFromOsmPois(Collections.singletonList(getRemotePoi(poiType, 11, "2", "value2")));
+        assertThat(poiManager.suggestionsForTagValue("tag1", poiType.getId())).containsExactly("value2", "value1");
+        assertThat(poiManager.suggestionsForTagValue("tag2", poiType.getId())).isEmpty();
+    }
+
+    @Test
+    public void testDeleteRemovedNodes() {
+        PoiManager poiManager = component.getPoiManager();
+        PoiType poiType = poiManager.savePoiType(getPoiType());
+        DateTime snapshotDate = new DateTime(2016, 1, 1, 10, 0);
+
+        Poi kept = getPoi(poiType, 1);
+        kept.setBackendId("1");
+        kept.setUpdateDate(snapshotDate.minusDays(1));
+        Poi removed = getPoi(poiType, 2);
+        removed.setBackendId("2");
+        removed.setUpdateDate(snapshotDate.minusDays(1));
+        // Uploaded after the snapshot of the backend, missing from its response
+        Poi uploaded = getPoi(poiType, 3);
+        uploaded.setBackendId("3");
+        uploaded.setUpdateDate(snapshotDate.plusMinutes(1));
+        poiManager.savePois(Arrays.asList(kept, removed, uploaded));
+
+        int deleted = poiManager.deleteRemovedNodes(new Box(43, 74, 41, 72), Collections.singleton("1"), snapshotDate);
+
+        assertThat(deleted).isEqualTo(1);
+        assertThat(poiManager.queryForId(kept.getId())).isNotNull();
+        assertThat(poiManager.queryForId(removed.getId())).isNull();
+        assertThat(poiManager.queryForId(uploaded.getId())).isNotNull();
+    }
+
+    private Poi getRemotePoi(PoiType poiType, int i, String version, String tagValue) {
+        Poi poi = getPoi(poiType, i);
+        poi.setBackendId(String.valueOf(i));
+        poi.setVersion(version);
+        poi.getTags().clear();
+        Map<String, String> tags = new HashMap<>();
+        tags.put("tag1", tagValue);
+        poi.applyChanges(tags);
+        List<PoiNodeRef> nodeRefs = new ArrayList<>();
+        for (int j = 0; j < 2; j++) {
+            PoiNodeRef nodeRef = new PoiNodeRef();
+            nodeRef.setNodeBackendId(i + "-" + j);
+            nodeRef.setOrdinal(j);
+            nodeRef.setLatitude(42.0);
+            nodeRef.setLongitude(73.0);
+            nodeRef.setUpdated(false);
+            nodeRefs.add(nodeRef);
+        }
+        poi.setNodeRefs(nodeRefs);
+        return poi;
+    }
+
     private Poi getPoi(PoiType poiType, int i) {
         Poi poi = new Poi();
         poi.setType(poiType);
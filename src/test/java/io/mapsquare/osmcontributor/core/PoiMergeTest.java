@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.j256.ormlite.android.apptools.OpenHelperManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.mapsquare.osmcontributor.DaggerOsmTemplateComponent;
+import io.mapsquare.osmcontributor.OsmTemplateComponent;
+import io.mapsquare.osmcontributor.OsmTemplateModule;
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.core.model.PoiTag;
+
+import static io.mapsquare.osmcontributor.PoiTypeFixtures.getPoiType;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Merge downloaded POIs with the bulk writer and check the rows it leaves in the database.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PoiMergeTest {
+
+    private static final int POI_COUNT = 2000;
+
+    OsmTemplateComponent component;
+
+    @Before
+    public void before() {
+        component = DaggerOsmTemplateComponent.builder()
+                .osmTemplateModule(new OsmTemplateModule(Robolectric.application)).build();
+    }
+
+    @After
+    public void after() {
+        OpenHelperManager.releaseHelper();
+    }
+
+    @Test
+    public void mergeFromOsmPois() {
+        PoiManager poiManager = component.getPoiManager();
+        PoiType poiType = poiManager.savePoiType(getPoiType("amenity", "bench", "Bench", "amenity=bench"));
+        SQLiteDatabase database = component.getDatabaseOpenHelper().getWritableDatabase();
+
+        poiManager.savePois(getPois(poiType, "saved-", "1"));
+        poiManager.mergeFromOsmPois(getPois(poiType, "merged-", "1"));
+        assertThat(countPois(database, "merged-%")).isEqualTo(POI_COUNT);
+        assertThat(countTags(database, "merged-%")).isEqualTo(3 * POI_COUNT);
+
+        // Same versions: the rows are left untouched
+        database.execSQL("UPDATE " + Poi.TABLE_NAME + " SET " + Poi.NAME + " = 'Local' WHERE " + Poi.BACKEND_ID + " = 'merged-0'");
+        poiManager.mergeFromOsmPois(getPois(poiType, "merged-", "1"));
+        assertThat(poiManager.queryForBackendId("merged-0").get(0).getName()).isEqualTo("Local");
+        assertThat(countPois(database, "merged-%")).isEqualTo(POI_COUNT);
+
+        // Newer versions: the rows and their tags are replaced, not duplicated
+        poiManager.mergeFromOsmPois(getPois(poiType, "merged-", "2"));
+        Poi merged = poiManager.queryForBackendId("merged-0").get(0);
+        assertThat(merged.getName()).isEqualTo("MyPoi0");
+        assertThat(merged.getVersion()).isEqualTo("2");
+        assertThat(countPois(database, "merged-%")).isEqualTo(POI_COUNT);
+        assertThat(countTags(database, "merged-%")).isEqualTo(3 * POI_COUNT);
+
+        // The POIs saved before are not affected by the merges
+        assertThat(countPois(database, "saved-%")).isEqualTo(POI_COUNT);
+        assertThat(countTags(database, "saved-%")).isEqualTo(3 * POI_COUNT);
+    }
+
+    private int countPois(SQLiteDatabase database, String backendIdPattern) {
+        return count(database, "SELECT COUNT(*) FROM " + Poi.TABLE_NAME + " WHERE " + Poi.BACKEND_ID + " LIKE ?", backendIdPattern);
+    }
+
+    private int countTags(SQLiteDatabase database, String backendIdPattern) {
+        return count(database, "SELECT COUNT(*) FROM " + PoiTag.TABLE_NAME + " T JOIN " + Poi.TABLE_NAME + " P ON P." + Poi.ID
+                + " = T." + PoiTag.POI_ID + " WHERE P." + Poi.BACKEND_ID + " LIKE ?", backendIdPattern);
+    }
+
+    private int count(SQLiteDatabase database, String sql, String argument) {
+        Cursor cursor = database.rawQuery(sql, new String[]{argument});
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private List<Poi> getPois(PoiType poiType, String backendIdPrefix, String version) {
+        List<Poi> pois = new ArrayList<>(POI_COUNT);
+        for (int i = 0; i < POI_COUNT; i++) {
+            Poi poi = new Poi();
+            poi.setType(poiType);
+            poi.setName("MyPoi" + i);
+            poi.setBackendId(backendIdPrefix + i);
+            poi.setVersion(version);
+            poi.setLatitude(48 + i / 100000.0);
+            poi.setLongitude(2 + i / 100000.0);
+            poi.setUpdated(false);
+            Map<String, String> tags = new HashMap<>();
+            tags.put("amenity", "bench");
+            tags.put("name", "MyPoi" + i);
+            tags.put("backrest", "yes");
+            poi.applyChanges(tags);
+            pois.add(poi);
+        }
+        return pois;
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class RequestExecutorTest {
+
+    private RequestExecutor requestExecutor;
+    private List<String> executed;
+    private CountDownLatch release;
+
+    @Before
+    public void setUp() {
+        requestExecutor = new RequestExecutor(1);
+        executed = Collections.synchronizedList(new ArrayList<String>());
+        release = new CountDownLatch(1);
+        // Keep the only thread busy while the requests are queued
+        requestExecutor.submit(new RecordingRequest("block", "block", RequestExecutor.Priority.VIEWPORT, release, null));
+    }
+
+    @Test
+    public void onlyNewestRequestOfStreamRuns() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        RecordingRequest first = new RecordingRequest("pois", "first", RequestExecutor.Priority.VIEWPORT, null, null);
+        RecordingRequest second = new RecordingRequest("pois", "second", RequestExecutor.Priority.VIEWPORT, null, null);
+        RecordingRequest third = new RecordingRequest("pois", "third", RequestExecutor.Priority.VIEWPORT, null, done);
+        requestExecutor.submit(first);
+        requestExecutor.submit(second);
+        requestExecutor.submit(third);
+        release.countDown();
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(executed).containsExactly("block", "third");
+        assertThat(first.isSuperseded()).isTrue();
+        assertThat(second.isSuperseded()).isTrue();
+        assertThat(third.isSuperseded()).isFalse();
+    }
+
+    @Test
+    public void requestsOfSameLaneRunInOrder() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        requestExecutor.submit(new RecordingRequest("pois", "pois", RequestExecutor.Priority.VIEWPORT, null, null));
+        requestExecutor.submit(new RecordingRequest("notes", "notes", RequestExecutor.Priority.VIEWPORT, null, done));
+        release.countDown();
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(executed).containsExactly("block", "pois", "notes");
+    }
+
+    @Test
+    public void backgroundRequestDoesNotHoldViewport() throws InterruptedException {
+        release.countDown();
+        CountDownLatch network = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        // A background request waiting for the network
+        requestExecutor.submit(new RecordingRequest("address", "address", RequestExecutor.Priority.BACKGROUND, network, started));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        requestExecutor.submit(new RecordingRequest("pois", "pois", RequestExecutor.Priority.VIEWPORT, null, done));
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        network.countDown();
+        assertThat(executed).containsOnly("block", "address", "pois");
+    }
+
+    @Test
+    public void runningRequestIsSuperseded() throws InterruptedException {
+        release.countDown();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        RecordingRequest running = new RecordingRequest("pois", "running", RequestExecutor.Priority.VIEWPORT, resume, started);
+        requestExecutor.submit(running);
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(running.isSuperseded()).isFalse();
+
+        requestExecutor.submit(new RecordingRequest("pois", "newer", RequestExecutor.Priority.VIEWPORT, null, done));
+        assertThat(running.isSuperseded()).isTrue();
+        resume.countDown();
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(executed).containsExactly("block", "running", "newer");
+    }
+
+    private class RecordingRequest extends RequestExecutor.Request {
+        private final String name;
+        private final CountDownLatch wait;
+        private final CountDownLatch done;
+
+        RecordingRequest(String key, String name, RequestExecutor.Priority priority, CountDownLatch wait, CountDownLatch done) {
+            super(key, priority);
+            this.name = name;
+            this.wait = wait;
+            this.done = done;
+        }
+
+        @Override
+        protected void execute() {
+            executed.add(name);
+            if (done != null) {
+                done.countDown();
+            }
+            try {
+                if (wait != null) {
+                    wait.await(5, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
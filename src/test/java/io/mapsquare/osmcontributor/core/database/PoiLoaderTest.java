@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core.database;
+
+import com.j256.ormlite.android.apptools.OpenHelperManager;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.mapsquare.osmcontributor.DaggerOsmTemplateComponent;
+import io.mapsquare.osmcontributor.OsmTemplateComponent;
+import io.mapsquare.osmcontributor.OsmTemplateModule;
+import io.mapsquare.osmcontributor.core.PoiManager;
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.PoiNodeRef;
+import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.utils.Box;
+
+import static io.mapsquare.osmcontributor.PoiTypeFixtures.getPoiType;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class PoiLoaderTest {
+
+    OsmTemplateComponent component;
+
+    @Before
+    public void before() {
+        component = DaggerOsmTemplateComponent.builder()
+                .osmTemplateModule(new OsmTemplateModule(Robolectric.application)).build();
+    }
+
+    @After
+    public void after() {
+        OpenHelperManager.releaseHelper();
+    }
+
+    @Test
+    public void queryForAllInRect_sameAsOrmLite() {
+        PoiManager poiManager = component.getPoiManager();
+        PoiType poiType = poiManager.savePoiType(getPoiType());
+
+        List<Poi> pois = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            pois.add(getPoi(poiType, "MyPoi" + i, 48.5 + i * 0.001, 2.5));
+        }
+        pois.add(getPoi(poiType, "Outside", 49.5, 2.5));
+        pois.add(getWay());
+        poiManager.savePois(pois);
+
+        List<Poi> loaded = poiManager.queryForAllInRect(new Box(49, 3, 48, 2));
+        assertThat(loaded).hasSize(51);
+
+        for (Poi poi : loaded) {
+            Poi expected = poiManager.queryForId(poi.getId());
+            assertThat(poi.getName()).isEqualTo(expected.getName());
+            assertThat(poi.getLatitude()).isEqualTo(expected.getLatitude());
+            assertThat(poi.getLongitude()).isEqualTo(expected.getLongitude());
+            assertThat(poi.getVersion()).isEqualTo(expected.getVersion());
+            assertThat(poi.getUpdateDate()).isEqualTo(expected.getUpdateDate());
+            assertThat(poi.getUpdated()).isEqualTo(expected.getUpdated());
+            assertThat(poi.getWay()).isEqualTo(expected.getWay());
+            assertThat(poi.getTagsMap()).isEqualTo(expected.getTagsMap());
+            assertThat(poi.getNodeRefs()).hasSize(expected.getNodeRefs().size());
+            if (poi.getType() == null) {
+                assertThat(expected.getType()).isNull();
+            } else {
+                assertThat(poi.getType().getId()).isEqualTo(expected.getType().getId());
+            }
+        }
+    }
+
+    @Test
+    public void queryForAllInRect_nodeRefsOrderedAndTypesShared() {
+        PoiManager poiManager = component.getPoiManager();
+        PoiType poiType = poiManager.savePoiType(getPoiType());
+
+        List<Poi> pois = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            pois.add(getPoi(poiType, "MyPoi" + i, 48.5, 2.5 + i * 0.001));
+        }
+        pois.add(getWay());
+        poiManager.savePois(pois);
+
+        PoiType sharedType = null;
+        for (Poi poi : poiManager.queryForAllInRect(new Box(49, 3, 48, 2))) {
+            if (poi.getWay()) {
+                List<String> nodeBackendIds = new ArrayList<>();
+                for (PoiNodeRef poiNodeRef : poi.getNodeRefs()) {
+                    assertThat(poiNodeRef.getPoi()).isSameAs(poi);
+                    nodeBackendIds.add(poiNodeRef.getNodeBackendId());
+                }
+                assertThat(nodeBackendIds).containsExactly("2", "1", "0");
+                assertThat(poi.getType()).isNull();
+            } else {
+                if (sharedType == null) {
+                    sharedType = poi.getType();
+                }
+                assertThat(poi.getType()).isSameAs(sharedType);
+            }
+        }
+        assertThat(sharedType).isSameAs(component.getPoiTypeIdentityMap().getType(poiType.getId()));
+    }
+
+    @Test
+    public void loadSnapshotInRect_sameAsLoadInRect() {
+        PoiManager poiManager = component.getPoiManager();
+        PoiType poiType = poiManager.savePoiType(getPoiType());
+
+        List<Poi> pois = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Poi poi = getPoi(poiType, "MyPoi" + i, 48.5 + i * 0.001, 2.5);
+            poi.setLevel(i % 2 == 0 ? "0" : "1;2");
+            poi.setUpdated(i % 3 == 0);
+            poi.setToDelete(i % 5 == 0);
+            pois.add(poi);
+        }
+        pois.add(getPoi(poiType, "Outside", 49.5, 2.5));
+        pois.add(getWay());
+        poiManager.savePois(pois);
+
+        Box box = new Box(49, 3, 48, 2);
+        Map<Long, Poi> expected = new HashMap<>();
+        for (Poi poi : poiManager.queryForAllInRect(box)) {
+            expected.put(poi.getId(), poi);
+        }
+
+        PoiSnapshot snapshot = poiManager.loadSnapshotInRect(box);
+        assertThat(snapshot.size()).isEqualTo(101);
+        for (int i = 0; i < snapshot.size(); i++) {
+            Poi poi = expected.get(snapshot.getId(i));
+            assertThat(snapshot.getLatitude(i)).isEqualTo(poi.getLatitude());
+            assertThat(snapshot.getLongitude(i)).isEqualTo(poi.getLongitude());
+            assertThat(snapshot.getName(i)).isEqualTo(poi.getName());
+            assertThat(snapshot.getVersion(i)).isEqualTo(poi.getVersion());
+            assertThat(snapshot.getLevel(i)).isEqualTo(poi.getLevel());
+            assertThat(snapshot.isUpdated(i)).isEqualTo(poi.getUpdated());
+            assertThat(snapshot.isToDelete(i)).isEqualTo(poi.getToDelete());
+            assertThat(snapshot.isWay(i)).isEqualTo(poi.getWay());
+            assertThat(snapshot.getType(i)).isSameAs(poi.getType());
+        }
+    }
+
+    private Poi getPoi(PoiType poiType, String name, double latitude, double longitude) {
+        Poi poi = new Poi();
+        poi.setType(poiType);
+        poi.setName(name);
+        poi.setLatitude(latitude);
+        poi.setLongitude(longitude);
+        poi.setUpdated(false);
+        poi.setUpdateDate(new DateTime(2016, 1, 1, 0, 0));
+        Map<String, String> tags = new HashMap<>();
+        tags.put("tag1", "value1");
+        tags.put("name", name);
+        poi.applyChanges(tags);
+        return poi;
+    }
+
+    private Poi getWay() {
+        Poi way = getPoi(null, "MyWay", 48.55, 2.55);
+        way.setWay(true);
+        // Saved in the reverse order of their ordinals
+        for (int i = 0; i < 3; i++) {
+            PoiNodeRef poiNodeRef = new PoiNodeRef();
+            poiNodeRef.setNodeBackendId(String.valueOf(i));
+            poiNodeRef.setOrdinal(2 - i);
+            poiNodeRef.setLatitude(48.55);
+            poiNodeRef.setLongitude(2.55 + i * 0.001);
+            poiNodeRef.setUpdated(false);
+            way.getNodeRefs().add(poiNodeRef);
+        }
+        return way;
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core.database;
+
+import com.j256.ormlite.stmt.Where;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.Random;
+
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.utils.Box;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class SpatialGridTest {
+
+    @Test
+    public void cellOf_matchesMigrationScript() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            double lat = random.nextDouble() * 180 - 90;
+            double lon = random.nextDouble() * 360 - 180;
+            // CAST((LATITUDE + 90) * 100 AS INTEGER) * 36001 + CAST((LONGITUDE + 180) * 100 AS INTEGER)
+            long expected = ((long) ((lat + 90) * 100)) * 36001 + (long) ((lon + 180) * 100);
+            assertThat(SpatialGrid.cellOf(lat, lon)).isEqualTo(expected);
+        }
+        assertThat(SpatialGrid.cellOf(null, 2.0)).isNull();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void inBox_cellRangesCoverBox() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            double south = random.nextDouble() * 170 - 85;
+            double west = random.nextDouble() * 350 - 175;
+            Box box = new Box(south + random.nextDouble() * 0.5, west + random.nextDouble() * 0.5, south, west);
+
+            Where<Poi, Long> where = mock(Where.class);
+            ArgumentCaptor<Long> low = ArgumentCaptor.forClass(Long.class);
+            ArgumentCaptor<Long> high = ArgumentCaptor.forClass(Long.class);
+            SpatialGrid.inBox(where, Poi.CELL, Poi.LATITUDE, Poi.LONGITUDE, box);
+            verify(where, atLeast(1)).between(anyString(), low.capture(), high.capture());
+
+            List<Long> lows = low.getAllValues();
+            List<Long> highs = high.getAllValues();
+            for (int j = 0; j < 1000; j++) {
+                double lat = box.getSouth() + random.nextDouble() * (box.getNorth() - box.getSouth());
+                double lon = box.getWest() + random.nextDouble() * (box.getEast() - box.getWest());
+                long cell = SpatialGrid.cellOf(lat, lon);
+                boolean covered = false;
+                for (int k = 0; k < lows.size(); k++) {
+                    covered |= lows.get(k) <= cell && cell <= highs.get(k);
+                }
+                assertThat(covered).isTrue();
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void inBox_largeBoxFallsBackToCoordinates() throws Exception {
+        Where<Poi, Long> where = mock(Where.class);
+        SpatialGrid.inBox(where, Poi.CELL, Poi.LATITUDE, Poi.LONGITUDE, new Box(50, 10, 40, 0));
+        verify(where, never()).between(anyString(), any(), any());
+        verify(where).and(4);
+    }
+}
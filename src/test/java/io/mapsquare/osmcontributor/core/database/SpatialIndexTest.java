@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.core.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.j256.ormlite.android.apptools.OpenHelperManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import io.mapsquare.osmcontributor.DaggerOsmTemplateComponent;
+import io.mapsquare.osmcontributor.OsmTemplateComponent;
+import io.mapsquare.osmcontributor.OsmTemplateModule;
+import io.mapsquare.osmcontributor.core.PoiManager;
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.utils.Box;
+
+import static io.mapsquare.osmcontributor.PoiTypeFixtures.getPoiType;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Check that the box queries using the spatial index find the same POIs as a full scan of the POI table.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SpatialIndexTest {
+
+    private static final int POI_COUNT = 20000;
+    private static final int QUERY_COUNT = 50;
+
+    OsmTemplateComponent component;
+
+    @Before
+    public void before() {
+        component = DaggerOsmTemplateComponent.builder()
+                .osmTemplateModule(new OsmTemplateModule(Robolectric.application)).build();
+    }
+
+    @After
+    public void after() {
+        OpenHelperManager.releaseHelper();
+    }
+
+    @Test
+    public void queryForAllInRect() {
+        PoiManager poiManager = component.getPoiManager();
+        PoiType poiType = poiManager.savePoiType(getPoiType());
+
+        // POIs spread over a 1°x1° area, about the size of a big city and its suburbs
+        Random random = new Random(42);
+        List<Poi> pois = new ArrayList<>(POI_COUNT);
+        for (int i = 0; i < POI_COUNT; i++) {
+            pois.add(getPoi(poiType, 48 + random.nextDouble(), 2 + random.nextDouble()));
+        }
+        poiManager.savePois(pois);
+
+        SQLiteDatabase database = component.getDatabaseOpenHelper().getReadableDatabase();
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            // Box of the size of the map at zoom 16
+            double south = 48 + random.nextDouble() * 0.98;
+            double west = 2 + random.nextDouble() * 0.98;
+            Box box = new Box(south + 0.01, west + 0.02, south, west);
+
+            assertThat(poiManager.queryForAllInRect(box).size()).isEqualTo(countWithFullScan(database, box));
+        }
+
+        Cursor plan = database.rawQuery("EXPLAIN QUERY PLAN SELECT * FROM POI WHERE CELL BETWEEN 1 AND 2", null);
+        try {
+            StringBuilder details = new StringBuilder();
+            while (plan.moveToNext()) {
+                details.append(plan.getString(plan.getColumnCount() - 1));
+            }
+            assertThat(details.toString()).contains("POI_CELL_idx");
+        } finally {
+            plan.close();
+        }
+    }
+
+    private int countWithFullScan(SQLiteDatabase database, Box box) {
+        Cursor cursor = database.rawQuery("SELECT COUNT(*) FROM POI NOT INDEXED WHERE LATITUDE > ? AND LATITUDE < ? AND LONGITUDE > ? AND LONGITUDE < ? AND OLD = 0",
+                new String[]{String.valueOf(box.getSouth()), String.valueOf(box.getNorth()), String.valueOf(box.getWest()), String.valueOf(box.getEast())});
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Poi getPoi(PoiType poiType, double latitude, double longitude) {
+        Poi poi = new Poi();
+        poi.setType(poiType);
+        poi.setName("MyPoi");
+        poi.setLatitude(latitude);
+        poi.setLongitude(longitude);
+        poi.setUpdated(false);
+        return poi;
+    }
+}
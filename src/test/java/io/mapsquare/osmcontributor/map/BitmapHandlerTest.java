@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.map;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+
+import io.mapsquare.osmcontributor.R;
+import io.mapsquare.osmcontributor.core.model.Note;
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.type.event.PoiTypeCreatedEvent;
+
+import static io.mapsquare.osmcontributor.PoiTypeFixtures.getPoiType;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class BitmapHandlerTest {
+
+    BitmapHandler bitmapHandler;
+
+    @Before
+    public void before() {
+        bitmapHandler = new BitmapHandler(Robolectric.application);
+    }
+
+    @Test
+    public void markersFromAtlas() {
+        PoiType bar = getPoiType(1L, "bar");
+        PoiType pub = getPoiType(2L, "alcohol");
+        PoiType cafe = getPoiType(3L, "cafe");
+        bitmapHandler.buildAtlas(Arrays.asList(bar, pub, cafe));
+
+        Bitmap normal = bitmapHandler.getMarkerBitmap(bar, Poi.State.NORMAL);
+        assertThat(normal).isNotNull();
+        assertThat(bitmapHandler.getMarkerBitmap(getPoiType(1L, "bar"), Poi.State.NORMAL)).isSameAs(normal);
+
+        // Same icon, same bitmaps
+        assertThat(bitmapHandler.getMarkerBitmap(pub, Poi.State.NORMAL)).isSameAs(normal);
+        assertThat(bitmapHandler.getMarkerBitmap(cafe, Poi.State.NORMAL)).isNotSameAs(normal);
+
+        for (Poi.State state : Poi.State.values()) {
+            if (state != Poi.State.NORMAL) {
+                assertThat(bitmapHandler.getMarkerBitmap(bar, state)).isNotNull().isNotSameAs(normal);
+            }
+        }
+    }
+
+    @Test
+    public void markersMissingFromAtlas() {
+        bitmapHandler.buildAtlas(Arrays.asList(getPoiType(1L, "bar")));
+
+        PoiType created = getPoiType(4L, "cafe");
+        Bitmap marker = bitmapHandler.getMarkerBitmap(created, Poi.State.NORMAL);
+        assertThat(marker).isNotNull();
+        assertThat(bitmapHandler.getMarkerBitmap(created, Poi.State.NORMAL)).isSameAs(marker);
+        assertThat(bitmapHandler.getIconWhite(created)).isNotNull();
+    }
+
+    @Test
+    public void notesFromAtlas() {
+        bitmapHandler.buildAtlas(Arrays.asList(getPoiType(1L, "bar")));
+
+        for (Note.State state : Note.State.values()) {
+            Bitmap note = bitmapHandler.getNoteBitmap(state);
+            assertThat(note).isNotNull();
+            assertThat(bitmapHandler.getNoteBitmap(state)).isSameAs(note);
+        }
+        assertThat(bitmapHandler.getIconWhite(null)).isNotNull();
+    }
+
+    @Test
+    public void markersOverBudget() {
+        PoiType bar = getPoiType(1L, "bar");
+        PoiType cafe = getPoiType(2L, "cafe");
+        long markerBytes = BitmapFactory.decodeResource(Robolectric.application.getResources(), R.drawable.marker_white).getByteCount();
+        assertThat(markerBytes).isGreaterThan(0);
+
+        // Room for the unselected markers of the 2 icons only
+        bitmapHandler.buildAtlas(Arrays.asList(bar, cafe), 2 * 2 * markerBytes);
+        assertThat(bitmapHandler.isInAtlas(bar, Poi.State.NORMAL)).isTrue();
+        assertThat(bitmapHandler.isInAtlas(cafe, Poi.State.NOT_SYNCED)).isTrue();
+        assertThat(bitmapHandler.isInAtlas(bar, Poi.State.SELECTED)).isFalse();
+        assertThat(bitmapHandler.getMarkerBitmap(bar, Poi.State.SELECTED)).isNotNull();
+
+        // Not even room for them, the markers are rendered on demand
+        bitmapHandler.buildAtlas(Arrays.asList(bar, cafe), 2 * 2 * markerBytes - 1);
+        assertThat(bitmapHandler.isInAtlas(bar, Poi.State.NORMAL)).isFalse();
+        Bitmap marker = bitmapHandler.getMarkerBitmap(bar, Poi.State.NORMAL);
+        assertThat(marker).isNotNull();
+        assertThat(bitmapHandler.getMarkerBitmap(bar, Poi.State.NORMAL)).isSameAs(marker);
+        assertThat(bitmapHandler.getIconWhite(bar)).isNotNull();
+        assertThat(bitmapHandler.getNoteBitmap(Note.State.OPEN)).isNotNull();
+    }
+
+    @Test
+    public void atlasExtendedWithNewPoiTypes() {
+        PoiType bar = getPoiType(1L, "bar");
+        bitmapHandler.buildAtlas(Arrays.asList(bar));
+        Bitmap barMarker = bitmapHandler.getMarkerBitmap(bar, Poi.State.NORMAL);
+
+        PoiType cafe = getPoiType(2L, "cafe");
+        bitmapHandler.onBasePoiTypeEvent(new PoiTypeCreatedEvent(cafe));
+        for (Poi.State state : Poi.State.values()) {
+            assertThat(bitmapHandler.isInAtlas(cafe, state)).isTrue();
+        }
+        assertThat(bitmapHandler.getMarkerBitmap(bar, Poi.State.NORMAL)).isSameAs(barMarker);
+
+        // Same icon, same bitmaps
+        PoiType pub = getPoiType(3L, "alcohol");
+        bitmapHandler.onBasePoiTypeEvent(new PoiTypeCreatedEvent(pub));
+        assertThat(bitmapHandler.getMarkerBitmap(pub, Poi.State.NORMAL)).isSameAs(barMarker);
+
+        // The icon of a PoiType changed
+        bitmapHandler.onBasePoiTypeEvent(new PoiTypeCreatedEvent(getPoiType(1L, "cafe")));
+        assertThat(bitmapHandler.getMarkerBitmap(bar, Poi.State.NORMAL)).isSameAs(bitmapHandler.getMarkerBitmap(cafe, Poi.State.NORMAL));
+    }
+}
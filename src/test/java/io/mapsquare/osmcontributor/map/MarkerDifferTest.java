@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.map;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import io.mapsquare.osmcontributor.core.model.Note;
+import io.mapsquare.osmcontributor.core.model.Poi;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class MarkerDifferTest {
+
+    @Test
+    public void diffPois() {
+        MarkerDiffer differ = new MarkerDiffer();
+        Poi poi1 = getPoi(1L, "1");
+        Poi poi2 = getPoi(2L, "1");
+
+        MarkerDiffer.Diff<Poi> diff = differ.diffPois(Arrays.asList(poi1, poi2));
+        assertThat(diff.getAdded()).containsExactly(poi1, poi2);
+        assertThat(diff.getUpdated()).isEmpty();
+        assertThat(diff.getRemoved()).isEmpty();
+
+        // Nothing changed
+        assertThat(differ.diffPois(Arrays.asList(getPoi(1L, "1"), getPoi(2L, "1"))).isEmpty()).isTrue();
+
+        // New version of poi1, poi2 removed and poi3 added
+        Poi newPoi1 = getPoi(1L, "2");
+        Poi poi3 = getPoi(3L, "1");
+        diff = differ.diffPois(Arrays.asList(newPoi1, poi3));
+        assertThat(diff.getAdded()).containsExactly(poi3);
+        assertThat(diff.getUpdated()).containsExactly(newPoi1);
+        assertThat(diff.getRemoved()).containsExactly(2L);
+    }
+
+    @Test
+    public void diffLocalEdition() {
+        MarkerDiffer differ = new MarkerDiffer();
+        differ.diffPois(Collections.singletonList(getPoi(1L, "1")));
+
+        // A local edition doesn't change the version
+        Poi edited = getPoi(1L, "1");
+        edited.setUpdated(true);
+        edited.setName("Edited");
+        assertThat(differ.diffPois(Collections.singletonList(edited)).getUpdated()).containsExactly(edited);
+    }
+
+    @Test
+    public void diffAfterReset() {
+        MarkerDiffer differ = new MarkerDiffer();
+        Poi poi = getPoi(1L, "1");
+        differ.diffPois(Collections.singletonList(poi));
+        differ.reset();
+        assertThat(differ.diffPois(Collections.singletonList(poi)).getAdded()).containsExactly(poi);
+    }
+
+    @Test
+    public void diffAfterForget() {
+        MarkerDiffer differ = new MarkerDiffer();
+        Poi poi1 = getPoi(1L, "1");
+        Poi poi2 = getPoi(2L, "1");
+        differ.diffPois(Arrays.asList(poi1, poi2));
+
+        // The marker of poi1 was removed by the map, it's added back while poi2 is left alone
+        differ.forgetPoi(1L);
+        MarkerDiffer.Diff<Poi> diff = differ.diffPois(Arrays.asList(poi1, poi2));
+        assertThat(diff.getAdded()).containsExactly(poi1);
+        assertThat(diff.getUpdated()).isEmpty();
+        assertThat(diff.getRemoved()).isEmpty();
+    }
+
+    @Test
+    public void diffNotes() {
+        MarkerDiffer differ = new MarkerDiffer();
+        Note note = new Note();
+        note.setId(1L);
+        note.setStatus(Note.STATUS_OPEN);
+        differ.diffNotes(Collections.singletonList(note));
+
+        Note closed = new Note();
+        closed.setId(1L);
+        closed.setStatus(Note.STATUS_CLOSE);
+        assertThat(differ.diffNotes(Collections.singletonList(closed)).getUpdated()).containsExactly(closed);
+        assertThat(differ.diffNotes(Collections.<Note>emptyList()).getRemoved()).containsExactly(1L);
+    }
+
+    private Poi getPoi(Long id, String version) {
+        Poi poi = new Poi();
+        poi.setId(id);
+        poi.setVersion(version);
+        poi.setName("Poi" + id);
+        poi.setLatitude(42.0);
+        poi.setLongitude(73.0);
+        poi.setUpdated(false);
+        return poi;
+    }
+}
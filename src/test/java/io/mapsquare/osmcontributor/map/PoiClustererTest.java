@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.map;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.mapsquare.osmcontributor.core.database.PoiSnapshot;
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.PoiType;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class PoiClustererTest {
+
+    private final PoiClusterer clusterer = new PoiClusterer(18, 64, 3, 100);
+
+    @Test
+    public void cullOutOfView() {
+        List<Poi> pois = new ArrayList<>();
+        pois.add(getPoi(1L, 48.8566, 2.3522));
+        pois.add(getPoi(2L, 49.0, 2.3522));
+
+        PoiClusterer.Result result = clusterer.cluster(pois, 48.86, 2.36, 48.85, 2.35, 19, null);
+        assertThat(result.getPois()).containsExactly(pois.get(0));
+        assertThat(result.getClusters()).isEmpty();
+    }
+
+    @Test
+    public void clusterUnderZoom() {
+        List<Poi> pois = crowd(10);
+
+        PoiClusterer.Result result = clusterer.cluster(pois, 48.86, 2.36, 48.85, 2.35, 16, null);
+        assertThat(result.getPois()).isEmpty();
+        assertThat(result.getClusters()).hasSize(1);
+        assertThat(result.getClusters().get(0).size()).isEqualTo(10);
+
+        // At the cluster zoom level the Pois are displayed separately
+        result = clusterer.cluster(pois, 48.86, 2.36, 48.85, 2.35, 18, null);
+        assertThat(result.getPois()).hasSize(10);
+        assertThat(result.getClusters()).isEmpty();
+    }
+
+    @Test
+    public void keptPoiNotClustered() {
+        List<Poi> pois = crowd(10);
+
+        PoiClusterer.Result result = clusterer.cluster(pois, 48.86, 2.36, 48.85, 2.35, 16, 3L);
+        assertThat(result.getPois()).hasSize(1);
+        assertThat(result.getPois().get(0).getId()).isEqualTo(3L);
+        assertThat(result.getClusters().get(0).size()).isEqualTo(9);
+    }
+
+    @Test
+    public void smallCellsNotClustered() {
+        List<Poi> pois = crowd(2);
+
+        PoiClusterer.Result result = clusterer.cluster(pois, 48.86, 2.36, 48.85, 2.35, 16, null);
+        assertThat(result.getPois()).hasSize(2);
+        assertThat(result.getClusters()).isEmpty();
+    }
+
+    @Test
+    public void markersBoundedAtAnyZoom() {
+        // 10000 Pois spread on a grid over the view
+        List<Poi> pois = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 100; j++) {
+                pois.add(getPoi((long) (i * 100 + j), 48.85 + i * 0.0001, 2.35 + j * 0.0001));
+            }
+        }
+
+        PoiClusterer.Result result = clusterer.cluster(pois, 48.86, 2.36, 48.85, 2.35, 19, null);
+        int clustered = 0;
+        for (PoiClusterer.Cluster cluster : result.getClusters()) {
+            clustered += cluster.size();
+        }
+        assertThat(result.getPois().size() + clustered).isEqualTo(10000);
+        assertThat(result.getPois().size() + result.getClusters().size()).isLessThanOrEqualTo(clusterer.getMaxMarkers());
+    }
+
+    @Test
+    public void clusterSnapshot() {
+        PoiSnapshot.Builder builder = new PoiSnapshot.Builder();
+        for (int i = 0; i < 10; i++) {
+            builder.add(i, 48.8566 + i * 0.00001, 2.3522 + i * 0.00001, PoiSnapshot.NO_TYPE, "Poi" + i, "1", "1;2", i == 3, false, false);
+        }
+        builder.add(10, 49.0, 2.3522, PoiSnapshot.NO_TYPE, null, null, null, false, false, false);
+        PoiSnapshot snapshot = builder.build(Collections.<Long, PoiType>emptyMap());
+
+        // The Poi 0 is filtered out by the caller
+        PoiClusterer.Result result = clusterer.cluster(snapshot, new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, 48.86, 2.36, 48.85, 2.35, 16, 3L);
+        assertThat(result.getClusters()).hasSize(1);
+        assertThat(result.getClusters().get(0).size()).isEqualTo(8);
+        assertThat(result.getPois()).hasSize(1);
+
+        Poi poi = result.getPois().get(0);
+        assertThat(poi.getId()).isEqualTo(3L);
+        assertThat(poi.getName()).isEqualTo("Poi3");
+        assertThat(poi.getVersion()).isEqualTo("1");
+        assertThat(poi.getUpdated()).isTrue();
+        assertThat(poi.getToDelete()).isFalse();
+        assertThat(poi.isAtLevel(2d)).isTrue();
+        assertThat(poi.getTags()).isEmpty();
+
+        result = clusterer.cluster(snapshot, new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, 48.86, 2.36, 48.85, 2.35, 18, null);
+        assertThat(result.getPois()).hasSize(9);
+        assertThat(result.getClusters()).isEmpty();
+    }
+
+    private List<Poi> crowd(int count) {
+        List<Poi> pois = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            pois.add(getPoi((long) i, 48.8566 + i * 0.00001, 2.3522 + i * 0.00001));
+        }
+        return pois;
+    }
+
+    private Poi getPoi(Long id, double latitude, double longitude) {
+        Poi poi = new Poi();
+        poi.setId(id);
+        poi.setLatitude(latitude);
+        poi.setLongitude(longitude);
+        return poi;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.map.vectorial;
+
+import com.mapbox.mapboxsdk.views.safecanvas.SafePaint;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class VectorialObjectIndexTest {
+
+    @Test
+    public void queryByLevelAndBox() {
+        VectorialObject ground = getObject("ground", 0, 0, 0, 10, 10);
+        VectorialObject farAway = getObject("farAway", 0, 1000, 1000, 1010, 1010);
+        VectorialObject firstFloor = getObject("firstFloor", 1, 0, 0, 10, 10);
+
+        VectorialObjectIndex index = new VectorialObjectIndex(Arrays.asList(ground, farAway, firstFloor));
+        assertThat(index.size()).isEqualTo(3);
+
+        assertThat(query(index, 0, -5, -5, 5, 5)).containsExactly(ground);
+        assertThat(query(index, 1, -5, -5, 5, 5)).containsExactly(firstFloor);
+        assertThat(query(index, 0, 500, 500, 2000, 2000)).containsExactly(farAway);
+        assertThat(query(index, 0, 20, 20, 30, 30)).isEmpty();
+        assertThat(query(index, 2, -5, -5, 5, 5)).isEmpty();
+    }
+
+    @Test
+    public void objectBiggerThanBox() {
+        VectorialObject building = getObject("building", 0, 0, 0, 1000, 1000);
+        VectorialObject small = getObject("small", 0, 990, 990, 1000, 1000);
+
+        VectorialObjectIndex index = new VectorialObjectIndex(Arrays.asList(building, small));
+        assertThat(query(index, 0, 400, 400, 410, 410)).containsExactly(building);
+    }
+
+    @Test
+    public void resultsInDrawingOrder() {
+        List<VectorialObject> objects = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            VectorialObject vectorialObject = getObject("object" + i, 0, i, i, i + 5, i + 5);
+            vectorialObject.setPriority(i % 3);
+            objects.add(vectorialObject);
+        }
+        VectorialObjectIndex index = new VectorialObjectIndex(objects);
+
+        // Few results are sorted, many results are scanned: both must keep the drawing order
+        for (int max : new int[]{50, 900}) {
+            List<VectorialObject> result = query(index, 0, 0, 0, max, max);
+            assertThat(result).hasSize(max + 1);
+            for (int i = 1; i < result.size(); i++) {
+                assertThat(result.get(i - 1).compareTo(result.get(i))).isLessThanOrEqualTo(0);
+            }
+        }
+    }
+
+    private List<VectorialObject> query(VectorialObjectIndex index, double level, double minX, double minY, double maxX, double maxY) {
+        List<VectorialObject> result = new ArrayList<>();
+        int count = index.query(level, minX, minY, maxX, maxY);
+        for (int i = 0; i < count; i++) {
+            result.add(index.get(i));
+        }
+        return result;
+    }
+
+    private VectorialObject getObject(String id, double level, double minX, double minY, double maxX, double maxY) {
+        VectorialObject vectorialObject = new VectorialObject(mock(SafePaint.class), true);
+        vectorialObject.setId(id);
+        vectorialObject.setLevel(level);
+        vectorialObject.addPoint(new XY(minX, minY));
+        vectorialObject.addPoint(new XY(maxX, minY));
+        vectorialObject.addPoint(new XY(maxX, maxY));
+        vectorialObject.addPoint(new XY(minX, maxY));
+        return vectorialObject;
+    }
+}
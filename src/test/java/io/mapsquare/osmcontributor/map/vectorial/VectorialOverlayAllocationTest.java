@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.map.vectorial;
+
+import com.mapbox.mapboxsdk.views.safecanvas.SafePaint;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Count the memory allocated by the projection and clipping of the objects drawn in a frame of the
+ * {@link VectorialOverlay}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VectorialOverlayAllocationTest {
+
+    private static final int WAY_COUNT = 2000;
+    private static final int POINTS_PER_WAY = 12;
+    private static final int FRAMES = 20;
+
+    // Clipping bounds of the frames, in screen coordinates
+    private static final double LEFT = -100;
+    private static final double TOP = -100;
+    private static final double RIGHT = 1180;
+    private static final double BOTTOM = 1820;
+
+    // Error allowed on the clipped points
+    private static final double EPSILON = 1e-6;
+
+    // Memory allowed per frame: less than a byte per way, the drawing of a way must not allocate anything
+    private static final long TOLERANCE = WAY_COUNT;
+
+    @Test
+    public void allocationsPerFrame() {
+        com.sun.management.ThreadMXBean threadMXBean = getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        VectorialOverlay overlay = new VectorialOverlay(0, getWays(), 1);
+        TranslationProjection projection = new TranslationProjection();
+        CountingRenderer renderer = new CountingRenderer();
+
+        // The first frames grow the buffers to the size of the biggest way
+        for (int i = 0; i < FRAMES; i++) {
+            projection.offset = i;
+            overlay.drawObjects(projection, LEFT, TOP, RIGHT, BOTTOM, renderer);
+        }
+        assertThat(renderer.paths).isGreaterThan(0);
+        assertThat(renderer.pathsOutOfBounds).isEqualTo(0);
+
+        long overhead = threadMXBean.getThreadAllocatedBytes(threadId);
+        overhead = threadMXBean.getThreadAllocatedBytes(threadId) - overhead;
+
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < FRAMES; i++) {
+            projection.offset = i;
+            overlay.drawObjects(projection, LEFT, TOP, RIGHT, BOTTOM, renderer);
+        }
+        long bytesPerFrame = (threadMXBean.getThreadAllocatedBytes(threadId) - before - overhead) / FRAMES;
+
+        assertThat(bytesPerFrame).isLessThan(TOLERANCE);
+    }
+
+    /**
+     * Ways spread on both sides of the clipping bounds so that they are partly clipped.
+     */
+    private Set<VectorialObject> getWays() {
+        Set<VectorialObject> ways = new HashSet<>(WAY_COUNT);
+        for (int w = 0; w < WAY_COUNT; w++) {
+            VectorialObject way = new VectorialObject(w % 2 == 0);
+            way.setId(String.valueOf(w));
+            double originX = (w % 50) * 30 - 200;
+            double originY = (w / 50) * 40 - 200;
+            for (int i = 0; i < POINTS_PER_WAY; i++) {
+                way.addPoint(new XY(originX + 25 * Math.cos(i), originY + 25 * Math.sin(i), String.valueOf(i)));
+            }
+            ways.add(way);
+        }
+        return ways;
+    }
+
+    private com.sun.management.ThreadMXBean getThreadMXBean() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+        return threadMXBean;
+    }
+
+    /**
+     * Projection moving the points by an offset at each frame.
+     */
+    private static class TranslationProjection implements VectorialOverlay.ScreenProjection {
+        private double offset;
+
+        @Override
+        public void project(double[] input, double[] result) {
+            result[0] = input[0] + offset;
+            result[1] = input[1] - offset;
+        }
+    }
+
+    /**
+     * Count the drawn paths and check that their points are inside the clipping bounds.
+     */
+    private static class CountingRenderer implements VectorialOverlay.FrameRenderer {
+        private int paths;
+        private int pathsOutOfBounds;
+
+        @Override
+        public void drawPoint(double x, double y, SafePaint paint) {
+        }
+
+        @Override
+        public void drawPath(VectorialObject vObject, PointBuffer points) {
+            paths++;
+            for (int i = 0; i < points.size(); i++) {
+                if (points.getX(i) < LEFT - EPSILON || points.getX(i) > RIGHT + EPSILON
+                        || points.getY(i) < TOP - EPSILON || points.getY(i) > BOTTOM + EPSILON) {
+                    pathsOutOfBounds++;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
+import io.mapsquare.osmcontributor.utils.Box;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Check the planned queries select the same sample elements as the former one clause per PoiType queries, using
+ * a minimal evaluator of the Overpass syntax generated by both.
+ */
+public class OverpassQueryPlannerTest {
+
+    private static final Box BOX = new Box(48.9, 2.4, 48.8, 2.3);
+
+    private static final List<Element> ELEMENTS = Arrays.asList(
+            new Element("node", 48.85, 2.35, "amenity", "bar"),
+            new Element("way", 48.85, 2.35, "amenity", "bar"),
+            new Element("relation", 48.85, 2.35, "amenity", "bar"),
+            new Element("node", 48.95, 2.35, "amenity", "bar"),
+            new Element("node", 48.85, 2.45, "amenity", "cafe"),
+            new Element("node", 48.81, 2.31, "amenity", "cafe"),
+            new Element("way", 48.89, 2.39, "amenity", "restaurant", "cuisine", "pizza"),
+            new Element("node", 48.86, 2.36, "amenity", "toilets"),
+            new Element("node", 48.86, 2.36, "shop", "bakery"),
+            new Element("node", 48.86, 2.36, "shop", "books", "second_hand", "yes"),
+            new Element("way", 48.86, 2.36, "leisure", "park"),
+            new Element("node", 48.86, 2.36, "recycling_type", "container", "recycling:glass", "yes"),
+            new Element("node", 48.86, 2.36, "recycling_type", "container", "recycling:paper", "yes"),
+            new Element("node", 48.86, 2.36, "recycling_type", "centre", "recycling:glass", "yes"),
+            new Element("node", 48.86, 2.36, "amenity", "place_of_worship", "religion", "christian"),
+            new Element("node", 48.86, 2.36, "amenity", "place_of_worship", "religion", "muslim"),
+            new Element("node", 48.86, 2.36, "name", "bar"),
+            new Element("node", 48.86, 2.36));
+
+    @Test
+    public void sameElementsAsFormerQuery() {
+        List<PoiType> poiTypes = Arrays.asList(
+                getPoiType("amenity", "bar"),
+                getPoiType("amenity", "cafe"),
+                getPoiType("shop", "bakery"),
+                getPoiType("shop", "books"),
+                getPoiType("leisure", "park", "name", null),
+                getPoiType("recycling_type", "container", "recycling:glass", "yes"),
+                getPoiType("recycling_type", "container", "recycling:paper", "yes"),
+                getPoiType("amenity", "place_of_worship", "religion", "christian"),
+                getPoiType("amenity", "restaurant", "cuisine", "pizza"),
+                getPoiType("amenity", "cafe", "internet_access", "wlan"),
+                getPoiType("name", null));
+
+        String planned = OverpassQueryPlanner.buildQuery(poiTypes, BOX);
+        assertThat(select(planned)).isEqualTo(select(formerQuery(poiTypes, BOX)));
+        assertThat(select(planned)).isNotEmpty();
+    }
+
+    @Test
+    public void compactQuery() {
+        List<PoiType> poiTypes = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            poiTypes.add(getPoiType(new String[]{"amenity", "shop", "tourism"}[i % 3], "value" + i));
+        }
+
+        String query = OverpassQueryPlanner.buildQuery(poiTypes, BOX);
+        assertThat(query).startsWith("[bbox:48.8,2.3,48.9,2.4];(nw[\"amenity\"~\"^(value0|value102|");
+        assertThat(query.split(";")).hasSize(6);
+        assertThat(query).endsWith(");out meta center;");
+    }
+
+    @Test
+    public void mergedMultiTagTypes() {
+        String query = OverpassQueryPlanner.buildQuery(Arrays.asList(
+                getPoiType("recycling_type", "container", "recycling:glass", "yes"),
+                getPoiType("recycling_type", "container", "recycling:paper", "yes"),
+                getPoiType("amenity", "place_of_worship", "religion", "christian"),
+                getPoiType("amenity", "place_of_worship", "religion", "muslim"),
+                getPoiType("amenity", "place_of_worship", "religion", "jewish")), BOX);
+
+        assertThat(query).isEqualTo("[bbox:48.8,2.3,48.9,2.4];("
+                + "nw[\"amenity\"=\"place_of_worship\"][\"religion\"~\"^(christian|jewish|muslim)$\"];"
+                + "nw[\"recycling:glass\"=\"yes\"][\"recycling_type\"=\"container\"];"
+                + "nw[\"recycling:paper\"=\"yes\"][\"recycling_type\"=\"container\"];"
+                + ");out meta center;");
+    }
+
+    @Test
+    public void exactValues() {
+        List<PoiType> poiTypes = Arrays.asList(getPoiType("amenity", "bar"), getPoiType("amenity", "cafe"));
+        List<Element> elements = Arrays.asList(
+                new Element("node", 48.85, 2.35, "amenity", "bar"),
+                new Element("node", 48.85, 2.35, "amenity", "barbecue"));
+
+        // The former query matched the values as unanchored regular expressions
+        assertThat(select(formerQuery(poiTypes, BOX), elements)).containsOnly(0, 1);
+        assertThat(select(OverpassQueryPlanner.buildQuery(poiTypes, BOX), elements)).containsOnly(0);
+    }
+
+    @Test
+    public void escapedValues() {
+        List<PoiType> poiTypes = Arrays.asList(getPoiType("ref", "A.1"), getPoiType("ref", "B\"(2)"), getPoiType("note", "C\\3"));
+        List<Element> elements = Arrays.asList(
+                new Element("node", 48.85, 2.35, "ref", "A.1"),
+                new Element("node", 48.85, 2.35, "ref", "AX1"),
+                new Element("node", 48.85, 2.35, "ref", "B\"(2)"),
+                new Element("node", 48.85, 2.35, "note", "C\\3"));
+
+        assertThat(select(OverpassQueryPlanner.buildQuery(poiTypes, BOX), elements)).containsOnly(0, 2, 3);
+    }
+
+    @Test
+    public void noTypes() {
+        assertThat(select(OverpassQueryPlanner.buildQuery(new ArrayList<PoiType>(), BOX))).isEmpty();
+    }
+
+    @Test
+    public void changesQuery() {
+        List<PoiType> poiTypes = Arrays.asList(getPoiType("amenity", "bar"), getPoiType("shop", "books", "second_hand", "yes"));
+        DateTime since = new DateTime(2016, 1, 1, 10, 30, 15, DateTimeZone.forOffsetHours(1));
+
+        String changes = OverpassQueryPlanner.buildChangesQuery(poiTypes, BOX, since);
+        String suffix = ")->.all;node.all;out ids;nw.all(newer:\"2016-01-01T09:30:15Z\");out meta center;";
+        assertThat(changes).endsWith(suffix);
+
+        // Same elements as the full query
+        String full = OverpassQueryPlanner.buildQuery(poiTypes, BOX);
+        assertThat(changes.substring(0, changes.length() - suffix.length()) + ");out meta center;").isEqualTo(full);
+    }
+
+    /**
+     * The query generated before the planner, for less than 16 PoiTypes.
+     */
+    private static String formerQuery(List<PoiType> poiTypes, Box box) {
+        StringBuilder cmplReq = new StringBuilder("(");
+        for (String type : new String[]{"node", "way"}) {
+            for (PoiType poiTypeDto : poiTypes) {
+                boolean valid = false;
+                for (PoiTypeTag poiTypeTag : poiTypeDto.getTags()) {
+                    if (poiTypeTag.getValue() != null) {
+                        if (!valid) {
+                            cmplReq.append(type);
+                        }
+                        valid = true;
+                        cmplReq.append("[\"").append(poiTypeTag.getKey()).append("\"~\"").append(poiTypeTag.getValue()).append("\"]");
+                    }
+                }
+                if (valid) {
+                    cmplReq.append("(").append(box.getSouth()).append(",").append(box.getWest()).append(",")
+                            .append(box.getNorth()).append(",").append(box.getEast()).append(");");
+                }
+            }
+        }
+        cmplReq.append(");out meta center;");
+        return cmplReq.toString();
+    }
+
+    // ********************************
+    // ********** Evaluator ***********
+    // ********************************
+
+    private static final Pattern SETTINGS = Pattern.compile("^\\[bbox:([^,]+),([^,]+),([^,]+),([^\\]]+)\\];");
+    private static final Pattern STATEMENT = Pattern.compile("^(node|way|nw)((?:\\[\"(?:[^\"\\\\]|\\\\.)*\"[=~]\"(?:[^\"\\\\]|\\\\.)*\"\\])*)(?:\\(([^,]+),([^,]+),([^,]+),([^)]+)\\))?;");
+    private static final Pattern FILTER = Pattern.compile("\\[\"((?:[^\"\\\\]|\\\\.)*)\"([=~])\"((?:[^\"\\\\]|\\\\.)*)\"\\]");
+
+    private static Set<Integer> select(String query) {
+        return select(query, ELEMENTS);
+    }
+
+    /**
+     * Evaluate a union of statements followed by "out meta center;".
+     *
+     * @return The indexes of the selected elements.
+     */
+    private static Set<Integer> select(String query, List<Element> elements) {
+        Box globalBox = null;
+        Matcher settings = SETTINGS.matcher(query);
+        if (settings.find()) {
+            globalBox = toBox(settings.group(1), settings.group(2), settings.group(3), settings.group(4));
+            query = query.substring(settings.end());
+        }
+        assertThat(query).startsWith("(").endsWith(");out meta center;");
+        String union = query.substring(1, query.length() - ");out meta center;".length());
+
+        Set<Integer> selected = new LinkedHashSet<>();
+        while (!union.isEmpty()) {
+            Matcher statement = STATEMENT.matcher(union);
+            assertThat(statement.find()).as(union).isTrue();
+            Box box = statement.group(3) != null ? toBox(statement.group(3), statement.group(4), statement.group(5), statement.group(6)) : globalBox;
+            for (int i = 0; i < elements.size(); i++) {
+                Element element = elements.get(i);
+                if (matchesType(statement.group(1), element.type) && element.isIn(box) && matchesFilters(statement.group(2), element)) {
+                    selected.add(i);
+                }
+            }
+            union = union.substring(statement.end());
+        }
+        return selected;
+    }
+
+    private static boolean matchesType(String selector, String type) {
+        return selector.equals(type) || (selector.equals("nw") && (type.equals("node") || type.equals("way")));
+    }
+
+    private static boolean matchesFilters(String filters, Element element) {
+        Matcher filter = FILTER.matcher(filters);
+        while (filter.find()) {
+            String value = element.tags.get(unescape(filter.group(1)));
+            if (value == null) {
+                return false;
+            }
+            String expected = unescape(filter.group(3));
+            if ("=".equals(filter.group(2)) ? !value.equals(expected) : !Pattern.compile(expected).matcher(value).find()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String unescape(String literal) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (c == '\\') {
+                i++;
+                c = literal.charAt(i);
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static Box toBox(String south, String west, String north, String east) {
+        return new Box(Double.parseDouble(north), Double.parseDouble(east), Double.parseDouble(south), Double.parseDouble(west));
+    }
+
+    private static PoiType getPoiType(String... keyValues) {
+        List<PoiTypeTag> tags = new ArrayList<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            PoiTypeTag poiTypeTag = new PoiTypeTag();
+            poiTypeTag.setKey(keyValues[i]);
+            poiTypeTag.setValue(keyValues[i + 1]);
+            poiTypeTag.setOrdinal(i / 2);
+            tags.add(poiTypeTag);
+        }
+        PoiType poiType = new PoiType();
+        poiType.setName(keyValues[0] + "=" + keyValues[1]);
+        poiType.setTags(tags);
+        return poiType;
+    }
+
+    private static class Element {
+        private final String type;
+        private final double latitude;
+        private final double longitude;
+        private final Map<String, String> tags = new HashMap<>();
+
+        Element(String type, double latitude, double longitude, String... keyValues) {
+            this.type = type;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            for (int i = 0; i < keyValues.length; i += 2) {
+                tags.put(keyValues[i], keyValues[i + 1]);
+            }
+        }
+
+        boolean isIn(Box box) {
+            return latitude >= box.getSouth() && latitude <= box.getNorth() && longitude >= box.getWest() && longitude <= box.getEast();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.PoiNodeRef;
+import io.mapsquare.osmcontributor.core.model.PoiTag;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class PoiMergerTest {
+
+    @Test
+    public void mergeDistinctChanges() {
+        Poi base = node("1", 48.85, 2.35, "amenity", "bar", "name", "Chez Paul", "opening_hours", "Mo-Fr 10:00-20:00");
+        Poi local = node("1", 48.85, 2.35, "amenity", "bar", "name", "Chez Paul", "opening_hours", "Mo-Sa 10:00-20:00", "wheelchair", "yes");
+        Poi remote = node("2", 48.86, 2.36, "amenity", "bar", "name", "Chez Pierre");
+
+        assertThat(PoiMerger.merge(base, local, remote)).isTrue();
+        assertThat(local.getTagsMap()).hasSize(4);
+        assertThat(local.getTagsMap().get("name")).isEqualTo("Chez Pierre");
+        assertThat(local.getTagsMap().get("opening_hours")).isEqualTo("Mo-Sa 10:00-20:00");
+        assertThat(local.getTagsMap().get("wheelchair")).isEqualTo("yes");
+        assertThat(local.getName()).isEqualTo("Chez Pierre");
+        assertThat(local.getLatitude()).isEqualTo(48.86);
+        assertThat(local.getLongitude()).isEqualTo(2.36);
+        assertThat(local.getVersion()).isEqualTo("2");
+    }
+
+    @Test
+    public void keepSameChanges() {
+        Poi base = node("1", 48.85, 2.35, "amenity", "bar", "name", "Chez Paul");
+        Poi local = node("1", 48.86, 2.36, "amenity", "bar", "name", "Chez Pierre");
+        Poi remote = node("2", 48.86, 2.36, "amenity", "bar", "name", "Chez Pierre");
+
+        assertThat(PoiMerger.merge(base, local, remote)).isTrue();
+        assertThat(local.getTagsMap().get("name")).isEqualTo("Chez Pierre");
+        assertThat(local.getLatitude()).isEqualTo(48.86);
+    }
+
+    @Test
+    public void conflictingTag() {
+        Poi base = node("1", 48.85, 2.35, "amenity", "bar", "name", "Chez Paul");
+        Poi local = node("1", 48.85, 2.35, "amenity", "bar", "name", "Chez Jacques");
+        Poi remote = node("2", 48.85, 2.35, "amenity", "bar", "name", "Chez Pierre");
+
+        assertThat(PoiMerger.merge(base, local, remote)).isFalse();
+        assertThat(local.getTagsMap().get("name")).isEqualTo("Chez Jacques");
+        assertThat(local.getVersion()).isEqualTo("1");
+    }
+
+    @Test
+    public void conflictingDeletion() {
+        Poi base = node("1", 48.85, 2.35, "amenity", "bar", "name", "Chez Paul");
+        Poi local = node("1", 48.85, 2.35, "amenity", "bar");
+        Poi remote = node("2", 48.85, 2.35, "amenity", "bar", "name", "Chez Pierre");
+
+        assertThat(PoiMerger.merge(base, local, remote)).isFalse();
+    }
+
+    @Test
+    public void conflictingPosition() {
+        Poi base = node("1", 48.85, 2.35, "amenity", "bar");
+        Poi local = node("1", 48.86, 2.35, "amenity", "bar");
+        Poi remote = node("2", 48.85, 2.36, "amenity", "bar");
+
+        assertThat(PoiMerger.merge(base, local, remote)).isFalse();
+    }
+
+    @Test
+    public void wayWithDifferentNodes() {
+        Poi base = way("1", "building", "yes");
+        Poi local = way("1", "building", "yes", "name", "Town hall");
+        Poi remote = way("2", "building", "yes");
+        remote.getNodeRefs().remove(0);
+
+        assertThat(PoiMerger.merge(base, local, remote)).isFalse();
+
+        remote = way("2", "building", "yes", "height", "12");
+        assertThat(PoiMerger.merge(base, local, remote)).isTrue();
+        assertThat(local.getTagsMap()).hasSize(3);
+        assertThat(local.getLatitude()).isEqualTo(48.85);
+    }
+
+    private static Poi node(String version, double latitude, double longitude, String... tags) {
+        Poi poi = new Poi();
+        poi.setBackendId("10");
+        poi.setVersion(version);
+        poi.setWay(false);
+        poi.setLatitude(latitude);
+        poi.setLongitude(longitude);
+        poi.setNodeRefs(new ArrayList<PoiNodeRef>());
+        List<PoiTag> poiTags = new ArrayList<>();
+        for (int i = 0; i < tags.length; i += 2) {
+            PoiTag poiTag = new PoiTag();
+            poiTag.setKey(tags[i]);
+            poiTag.setValue(tags[i + 1]);
+            poiTags.add(poiTag);
+        }
+        poi.setTags(poiTags);
+        return poi;
+    }
+
+    private static Poi way(String version, String... tags) {
+        Poi poi = node(version, 48.85, 2.35, tags);
+        poi.setWay(true);
+        for (int i = 0; i < 3; i++) {
+            PoiNodeRef nodeRef = new PoiNodeRef();
+            nodeRef.setNodeBackendId(String.valueOf(100 + i));
+            nodeRef.setOrdinal(i);
+            poi.getNodeRefs().add(nodeRef);
+        }
+        return poi;
+    }
+}
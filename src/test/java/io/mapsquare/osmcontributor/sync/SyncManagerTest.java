@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync;
+
+import com.j256.ormlite.android.apptools.OpenHelperManager;
+
+import org.greenrobot.eventbus.EventBus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import io.mapsquare.osmcontributor.DaggerOsmTemplateComponent;
+import io.mapsquare.osmcontributor.OsmTemplateComponent;
+import io.mapsquare.osmcontributor.OsmTemplateModule;
+import io.mapsquare.osmcontributor.core.PoiManager;
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.core.model.UploadItem;
+
+import static io.mapsquare.osmcontributor.PoiTypeFixtures.getPoiType;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class SyncManagerTest {
+
+    OsmTemplateComponent component;
+    SyncManager syncManager;
+    PoiManager poiManager;
+    Backend backend;
+
+    @Before
+    public void before() {
+        component = DaggerOsmTemplateComponent.builder()
+                .osmTemplateModule(new OsmTemplateModule(Robolectric.application)).build();
+        poiManager = component.getPoiManager();
+        backend = mock(Backend.class);
+        syncManager = component.getSyncManager();
+        syncManager.backend = backend;
+        syncManager.bus = mock(EventBus.class);
+        syncManager.syncWayManager = mock(SyncWayManager.class);
+        component.getUploadOutbox().uploadItemDao.deleteAll();
+    }
+
+    @After
+    public void after() {
+        OpenHelperManager.releaseHelper();
+    }
+
+    @Test
+    public void resumeAfterLostResponse() {
+        PoiType poiType = poiManager.savePoiType(getPoiType());
+        Poi applied = poiManager.savePoi(newPoi(poiType, 1));
+        Poi notApplied = poiManager.savePoi(newPoi(poiType, 2));
+
+        // The response of the upload is lost, the backend applied only the first creation
+        when(backend.initializeTransaction(anyString())).thenReturn("42");
+        when(backend.uploadPois(anyListOf(Poi.class), anyListOf(Poi.class), anyListOf(Poi.class), eq("42")))
+                .thenReturn(new Backend.UploadResult(Backend.ModificationStatus.FAILURE_NETWORK, null, null));
+        upload(applied, notApplied);
+
+        Map<Long, String> backendIds = new HashMap<>();
+        backendIds.put(applied.getId(), "100");
+        Map<Long, String> versions = new HashMap<>();
+        versions.put(applied.getId(), "1");
+        when(backend.isTransactionOpen("42")).thenReturn(true);
+        when(backend.findAppliedChanges(eq("42"), anyListOf(Poi.class), anyListOf(Poi.class), anyListOf(Poi.class)))
+                .thenReturn(new Backend.AppliedChanges(backendIds, versions, new HashSet<Long>()));
+        when(backend.uploadPois(anyListOf(Poi.class), anyListOf(Poi.class), anyListOf(Poi.class), eq("42")))
+                .thenReturn(new Backend.UploadResult(Backend.ModificationStatus.SUCCESS,
+                        Collections.singletonMap(notApplied.getId(), "101"), Collections.singletonMap(notApplied.getId(), "1")));
+        upload(applied, notApplied);
+
+        // Only the creation missing from the changeSet is sent again
+        ArgumentCaptor<List> newPois = ArgumentCaptor.forClass(List.class);
+        verify(backend, times(2)).uploadPois(newPois.capture(), anyListOf(Poi.class), anyListOf(Poi.class), eq("42"));
+        assertThat(newPois.getAllValues().get(1)).hasSize(1);
+        assertThat(((Poi) newPois.getAllValues().get(1).get(0)).getId()).isEqualTo(notApplied.getId());
+        verify(backend, times(1)).initializeTransaction(anyString());
+
+        assertThat(poiManager.queryForId(applied.getId()).getBackendId()).isEqualTo("100");
+        assertThat(poiManager.queryForId(notApplied.getId()).getBackendId()).isEqualTo("101");
+        assertThat(component.getUploadOutbox().uploadItemDao.countOf()).isEqualTo(0);
+    }
+
+    @Test
+    public void unverifiedCreationIsNotSentAgain() {
+        PoiType poiType = poiManager.savePoiType(getPoiType());
+        Poi poi = poiManager.savePoi(newPoi(poiType, 1));
+
+        when(backend.initializeTransaction(anyString())).thenReturn("42");
+        when(backend.uploadPois(anyListOf(Poi.class), anyListOf(Poi.class), anyListOf(Poi.class), eq("42")))
+                .thenReturn(new Backend.UploadResult(Backend.ModificationStatus.FAILURE_NETWORK, null, null));
+        upload(poi);
+
+        // The changeSet can't be read back, the upload waits instead of creating the POI twice
+        when(backend.findAppliedChanges(eq("42"), anyListOf(Poi.class), anyListOf(Poi.class), anyListOf(Poi.class))).thenReturn(null);
+        upload(poi);
+
+        verify(backend, times(1)).uploadPois(anyListOf(Poi.class), anyListOf(Poi.class), anyListOf(Poi.class), anyString());
+        verify(backend, never()).addPoi(eq(poi), anyString());
+        assertThat(poiManager.queryForId(poi.getId()).getBackendId()).isNull();
+        assertThat(component.getUploadOutbox().uploadItemDao.countOf()).isEqualTo(1);
+    }
+
+    @Test
+    public void creationMissingFromDiffResultStaysInFlight() {
+        PoiType poiType = poiManager.savePoiType(getPoiType());
+        Poi confirmed = poiManager.savePoi(newPoi(poiType, 1));
+        Poi unconfirmed = poiManager.savePoi(newPoi(poiType, 2));
+
+        // The diffResult has no entry for the second creation
+        when(backend.initializeTransaction(anyString())).thenReturn("42");
+        when(backend.uploadPois(anyListOf(Poi.class), anyListOf(Poi.class), anyListOf(Poi.class), eq("42")))
+                .thenReturn(new Backend.UploadResult(Backend.ModificationStatus.SUCCESS,
+                        Collections.singletonMap(confirmed.getId(), "100"), Collections.singletonMap(confirmed.getId(), "1")));
+        upload(confirmed, unconfirmed);
+
+        assertThat(poiManager.queryForId(confirmed.getId()).getBackendId()).isEqualTo("100");
+        assertThat(poiManager.queryForId(unconfirmed.getId()).getBackendId()).isNull();
+        assertThat(poiManager.queryForId(unconfirmed.getId()).getUpdated()).isTrue();
+        List<UploadItem> items = component.getUploadOutbox().uploadItemDao.queryForAll();
+        assertThat(items).hasSize(1);
+        assertThat(items.get(0).getPoiId()).isEqualTo(unconfirmed.getId());
+        assertThat(items.get(0).getState()).isEqualTo(UploadItem.State.IN_FLIGHT);
+
+        // The next upload reads the changeSet back instead of creating the POI twice
+        when(backend.findAppliedChanges(eq("42"), anyListOf(Poi.class), anyListOf(Poi.class), anyListOf(Poi.class)))
+                .thenReturn(new Backend.AppliedChanges(Collections.singletonMap(unconfirmed.getId(), "101"),
+                        Collections.singletonMap(unconfirmed.getId(), "1"), new HashSet<Long>()));
+        upload(unconfirmed);
+
+        verify(backend, times(1)).uploadPois(anyListOf(Poi.class), anyListOf(Poi.class), anyListOf(Poi.class), anyString());
+        assertThat(poiManager.queryForId(unconfirmed.getId()).getBackendId()).isEqualTo("101");
+        assertThat(component.getUploadOutbox().uploadItemDao.countOf()).isEqualTo(0);
+    }
+
+    private void upload(Poi... pois) {
+        List<Long> poiIds = new ArrayList<>();
+        for (Poi poi : pois) {
+            poiIds.add(poi.getId());
+        }
+        syncManager.remoteAddOrUpdateOrDeletePois("comment", poiIds, Collections.<Long>emptyList());
+    }
+
+    private Poi newPoi(PoiType poiType, int i) {
+        Poi poi = new Poi();
+        poi.setType(poiType);
+        poi.setName("MyPoi" + i);
+        poi.setLatitude(42.0 + i);
+        poi.setLongitude(73.0);
+        poi.setUpdated(true);
+        Map<String, String> tags = new HashMap<>();
+        tags.put("name", "MyPoi" + i);
+        poi.applyChanges(tags);
+        return poi;
+    }
+}
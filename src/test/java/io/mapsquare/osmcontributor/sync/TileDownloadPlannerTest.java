@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync;
+
+import com.j256.ormlite.android.apptools.OpenHelperManager;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+
+import io.mapsquare.osmcontributor.DaggerOsmTemplateComponent;
+import io.mapsquare.osmcontributor.OsmTemplateComponent;
+import io.mapsquare.osmcontributor.OsmTemplateModule;
+import io.mapsquare.osmcontributor.utils.Box;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.offset;
+
+@RunWith(RobolectricTestRunner.class)
+public class TileDownloadPlannerTest {
+
+    OsmTemplateComponent component;
+
+    @Before
+    public void before() {
+        component = DaggerOsmTemplateComponent.builder()
+                .osmTemplateModule(new OsmTemplateModule(Robolectric.application)).build();
+    }
+
+    @After
+    public void after() {
+        OpenHelperManager.releaseHelper();
+    }
+
+    @Test
+    public void tileMath() {
+        // Tile of Paris at zoom 14
+        assertThat(TileDownloadPlanner.longitudeToTile(2.3522, 14)).isEqualTo(8299);
+        assertThat(TileDownloadPlanner.latitudeToTile(48.8566, 14)).isEqualTo(5636);
+
+        Box box = new TileDownloadPlanner.Tile(14, 8299, 5636).getBox();
+        assertThat(box.getWest()).isLessThanOrEqualTo(2.3522);
+        assertThat(box.getEast()).isGreaterThan(2.3522);
+        assertThat(box.getSouth()).isLessThanOrEqualTo(48.8566);
+        assertThat(box.getNorth()).isGreaterThan(48.8566);
+        assertThat(box.getEast() - box.getWest()).isEqualTo(360.0 / (1 << 14), offset(1e-9));
+    }
+
+    @Test
+    public void staleTiles() {
+        TileDownloadPlanner planner = component.getTileDownloadPlanner();
+        Box box = new TileDownloadPlanner.Tile(14, 8299, 5636).getBox();
+        // Shrink the box to stay inside a single tile
+        Box inner = new Box(box.getNorth() - 0.001, box.getEast() - 0.001, box.getSouth() + 0.001, box.getWest() + 0.001);
+
+        List<TileDownloadPlanner.Tile> tiles = planner.staleTiles(inner, 42);
+        assertThat(tiles).containsExactly(new TileDownloadPlanner.Tile(14, 8299, 5636));
+
+        planner.markDownloaded(tiles.get(0), 42);
+        assertThat(planner.staleTiles(inner, 42)).isEmpty();
+
+        // The PoiTypes changed since the download
+        assertThat(planner.staleTiles(inner, 43)).hasSize(1);
+
+        // A bigger box contains other tiles
+        Box outer = new Box(box.getNorth() + 0.001, box.getEast() + 0.001, box.getSouth() - 0.001, box.getWest() - 0.001);
+        assertThat(planner.staleTiles(outer, 42)).hasSize(8);
+    }
+
+    @Test
+    public void deltaTiles() {
+        TileDownloadPlanner planner = component.getTileDownloadPlanner();
+        TileDownloadPlanner.Tile tile = new TileDownloadPlanner.Tile(14, 8299, 5636);
+        Box box = tile.getBox();
+        Box inner = new Box(box.getNorth() - 0.001, box.getEast() - 0.001, box.getSouth() + 0.001, box.getWest() + 0.001);
+
+        // Never downloaded
+        assertThat(planner.staleTiles(inner, 42).get(0).getSince()).isNull();
+
+        // Downloaded a few hours ago, only the changes are needed
+        DateTime lastDownload = new DateTime().minusHours(3);
+        planner.downloadedTileDao.saveDownload(14, 8299, 5636, 42, lastDownload);
+        DateTime since = planner.staleTiles(inner, 42).get(0).getSince();
+        assertThat(since).isNotNull();
+        assertThat(since.getMillis()).isEqualTo(lastDownload.minusMinutes(TileDownloadPlanner.DELTA_SAFETY_MINUTES).getMillis());
+
+        // Downloaded with other PoiTypes
+        assertThat(planner.staleTiles(inner, 43).get(0).getSince()).isNull();
+
+        // Downloaded too long ago
+        planner.downloadedTileDao.saveDownload(14, 8299, 5636, 42, new DateTime().minusDays(TileDownloadPlanner.MAX_DELTA_DAYS + 1));
+        assertThat(planner.staleTiles(inner, 42).get(0).getSince()).isNull();
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync;
+
+import com.j256.ormlite.android.apptools.OpenHelperManager;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import io.mapsquare.osmcontributor.DaggerOsmTemplateComponent;
+import io.mapsquare.osmcontributor.OsmTemplateComponent;
+import io.mapsquare.osmcontributor.OsmTemplateModule;
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.UploadItem;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class UploadOutboxTest {
+
+    OsmTemplateComponent component;
+    UploadOutbox outbox;
+
+    @Before
+    public void before() {
+        component = DaggerOsmTemplateComponent.builder()
+                .osmTemplateModule(new OsmTemplateModule(Robolectric.application)).build();
+        outbox = component.getUploadOutbox();
+    }
+
+    @After
+    public void after() {
+        OpenHelperManager.releaseHelper();
+    }
+
+    @Test
+    public void resumeWithoutAcknowledgedItems() {
+        Poi created = poi(1L);
+        Poi updated = poi(2L);
+        Poi deleted = poi(3L);
+
+        Map<Long, UploadItem> items = outbox.enqueue(list(created), list(updated), list(deleted));
+        assertThat(items.keySet()).containsExactly(1L, 2L, 3L);
+        assertThat(items.get(1L).getOperation()).isEqualTo(UploadItem.Operation.ADD);
+        assertThat(items.get(2L).getOperation()).isEqualTo(UploadItem.Operation.UPDATE);
+        assertThat(items.get(3L).getOperation()).isEqualTo(UploadItem.Operation.DELETE);
+        assertThat(items.get(1L).getState()).isEqualTo(UploadItem.State.PENDING);
+        assertThat(outbox.getOpenChangeSetId()).isNull();
+
+        // The connection is lost after the addition was acknowledged
+        outbox.markInFlight(items.values(), "42");
+        outbox.markAcked(Collections.singletonList(items.get(1L)));
+
+        // The created POI was saved as uploaded, it isn't pending anymore
+        items = outbox.enqueue(list(), list(updated), list(deleted));
+        assertThat(items.keySet()).containsExactly(2L, 3L);
+        assertThat(items.get(2L).getState()).isEqualTo(UploadItem.State.IN_FLIGHT);
+        assertThat(outbox.getOpenChangeSetId()).isEqualTo("42");
+        assertThat(outbox.uploadItemDao.countOf()).isEqualTo(2);
+    }
+
+    @Test
+    public void followLocalChanges() {
+        Poi poi = poi(1L);
+        outbox.enqueue(list(), list(poi), list());
+
+        // Deleted after being modified
+        Map<Long, UploadItem> items = outbox.enqueue(list(), list(), list(poi));
+        assertThat(items.get(1L).getOperation()).isEqualTo(UploadItem.Operation.DELETE);
+        assertThat(outbox.uploadItemDao.countOf()).isEqualTo(1);
+
+        // Reverted
+        assertThat(outbox.enqueue(list(), list(), list())).isEmpty();
+        assertThat(outbox.uploadItemDao.countOf()).isEqualTo(0);
+    }
+
+    @Test
+    public void idleChangeSetIsNotReused() {
+        Map<Long, UploadItem> items = outbox.enqueue(list(poi(1L)), list(), list());
+        outbox.markInFlight(items.values(), "42");
+        assertThat(outbox.getOpenChangeSetId()).isEqualTo("42");
+
+        UploadItem item = items.get(1L);
+        item.setLastSent(new DateTime().minusMinutes(UploadOutbox.CHANGESET_IDLE_MINUTES + 1));
+        outbox.uploadItemDao.update(item);
+        assertThat(outbox.getOpenChangeSetId()).isNull();
+    }
+
+    private static Poi poi(Long id) {
+        Poi poi = new Poi();
+        poi.setId(id);
+        return poi;
+    }
+
+    private static List<Poi> list(Poi... pois) {
+        return new ArrayList<>(Arrays.asList(pois));
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync.assets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
+import io.mapsquare.osmcontributor.sync.converter.PoiTypeConverter;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class H2GeoCatalogueTest {
+
+    private static final String[] STRINGS = {"amenity=bar", "en", "fr", "Bar", "Bar de nuit", "A place to drink", "pub", "amenity", "bar", "name"};
+
+    private Locale defaultLocale;
+
+    @Before
+    public void setUp() {
+        defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.FRENCH);
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(defaultLocale);
+    }
+
+    @Test
+    public void readCatalogue() throws IOException {
+        H2GeoCatalogue catalogue = H2GeoCatalogue.read(new ByteArrayInputStream(catalogue(H2GeoCatalogue.FORMAT_VERSION)), new PoiTypeConverter());
+
+        assertThat(catalogue.getVersion()).isEqualTo("0.4.0");
+        assertThat(catalogue.getGenerationDate()).isEqualTo("2015-12-01T15:20:58.982");
+        assertThat(catalogue.getPoiTypes()).hasSize(1);
+
+        PoiType poiType = catalogue.getPoiTypes().get(0);
+        assertThat(poiType.getTechnicalName()).isEqualTo("amenity=bar");
+        assertThat(poiType.getName()).isEqualTo("Bar de nuit");
+        // No description in french, fallback on english
+        assertThat(poiType.getDescription()).isEqualTo("A place to drink");
+        assertThat(poiType.getKeyWords()).isEqualTo("pub ");
+        assertThat(poiType.getIcon()).isEqualTo("bar");
+        assertThat(poiType.getUsageCount()).isEqualTo(87379);
+
+        // The implied tag is not kept
+        List<PoiTypeTag> tags = new ArrayList<>(poiType.getTags());
+        assertThat(tags).hasSize(2);
+        assertThat(tags.get(0).getKey()).isEqualTo("amenity");
+        assertThat(tags.get(0).getValue()).isEqualTo("bar");
+        assertThat(tags.get(0).getMandatory()).isTrue();
+        assertThat(tags.get(0).getOrdinal()).isEqualTo(0);
+        assertThat(tags.get(1).getKey()).isEqualTo("name");
+        assertThat(tags.get(1).getValue()).isNull();
+        assertThat(tags.get(1).getMandatory()).isFalse();
+        assertThat(tags.get(1).getOrdinal()).isEqualTo(1);
+        assertThat(tags.get(1).getPossibleValues()).isEqualTo("Bar" + (char) 29 + "pub");
+    }
+
+    @Test
+    public void readCompiledCatalogue() throws IOException {
+        // Set by gradle to the output of the compileH2Geo task
+        String path = System.getProperty("h2geo.bin");
+        assertThat(path).isNotNull();
+
+        H2GeoCatalogue catalogue;
+        InputStream inputStream = new FileInputStream(path);
+        try {
+            catalogue = H2GeoCatalogue.read(inputStream, new PoiTypeConverter());
+        } finally {
+            inputStream.close();
+        }
+
+        assertThat(catalogue.getVersion()).isEqualTo("0.4.0");
+        assertThat(catalogue.getPoiTypes()).hasSize(172);
+
+        PoiType bench = null;
+        for (PoiType poiType : catalogue.getPoiTypes()) {
+            if ("amenity=bench".equals(poiType.getTechnicalName())) {
+                bench = poiType;
+            }
+        }
+        assertThat(bench).isNotNull();
+        assertThat(bench.getName()).isEqualTo("banc");
+        assertThat(bench.getUsageCount()).isEqualTo(546312);
+        List<PoiTypeTag> tags = new ArrayList<>(bench.getTags());
+        assertThat(tags).hasSize(1);
+        assertThat(tags.get(0).getKey()).isEqualTo("amenity");
+        assertThat(tags.get(0).getValue()).isEqualTo("bench");
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedFormat() throws IOException {
+        H2GeoCatalogue.read(new ByteArrayInputStream(catalogue(H2GeoCatalogue.FORMAT_VERSION + 1)), new PoiTypeConverter());
+    }
+
+    /**
+     * Write a catalogue as the compileH2Geo gradle task does.
+     */
+    private static byte[] catalogue(int formatVersion) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(H2GeoCatalogue.MAGIC);
+        data.writeInt(formatVersion);
+        data.writeUTF("0.4.0");
+        data.writeUTF("2015-12-01T15:20:58.982");
+        data.writeInt(STRINGS.length);
+        for (String string : STRINGS) {
+            data.writeUTF(string);
+        }
+
+        data.writeInt(1);
+        // Name and usage count
+        data.writeInt(0);
+        data.writeInt(87379);
+        // Labels
+        data.writeShort(2);
+        data.writeInt(1);
+        data.writeInt(3);
+        data.writeInt(2);
+        data.writeInt(4);
+        // Descriptions
+        data.writeShort(1);
+        data.writeInt(1);
+        data.writeInt(5);
+        // Keywords
+        data.writeShort(1);
+        data.writeInt(2);
+        data.writeShort(1);
+        data.writeInt(6);
+        // Tags
+        data.writeShort(3);
+        data.writeInt(7);
+        data.writeInt(8);
+        data.writeByte(H2GeoCatalogue.MANDATORY);
+        data.writeShort(0);
+        data.writeInt(9);
+        data.writeInt(-1);
+        data.writeByte(0);
+        data.writeShort(2);
+        data.writeInt(3);
+        data.writeInt(6);
+        data.writeInt(7);
+        data.writeInt(8);
+        data.writeByte(H2GeoCatalogue.IMPLIED);
+        data.writeShort(0);
+        data.flush();
+        return bytes.toByteArray();
+    }
+}
@@ -31,6 +31,7 @@ import io.mapsquare.osmcontributor.core.model.Poi;
 import io.mapsquare.osmcontributor.core.model.PoiType;
 import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
 import io.mapsquare.osmcontributor.sync.dto.osm.NodeDto;
+import io.mapsquare.osmcontributor.sync.dto.osm.OsmChangeDto;
 import io.mapsquare.osmcontributor.sync.dto.osm.TagDto;
 
 import static java.util.Arrays.asList;
@@ -49,7 +50,7 @@ public class PoiConverterTest {
     @Test
     public void type_basic() {
         when(poiTypeDao.queryForAll()).thenReturn(singletonList(poiType("t1", "key1", "value")));
-        List<Poi> pois = new PoiConverter(poiTypeDao, null).convertDtosToPois(singletonList(getNodeDto("key1", "value")));
+        List<Poi> pois = new PoiConverter(new PoiTypeMatcher(poiTypeDao), null).convertDtosToPois(singletonList(getNodeDto("key1", "value")));
         assertThat(pois).hasSize(1);
         assertThat(pois.get(0).getType().getName()).isEqualTo("t1");
     }
@@ -57,7 +58,7 @@ public class PoiConverterTest {
     @Test
     public void type_ignoreUnknown() {
         when(poiTypeDao.queryForAll()).thenReturn(singletonList(poiType("t1", "key1", "value")));
-        List<Poi> pois = new PoiConverter(poiTypeDao, null).convertDtosToPois(asList(getNodeDto("foo", "bar"), getNodeDto("key1", "value")));
+        List<Poi> pois = new PoiConverter(new PoiTypeMatcher(poiTypeDao), null).convertDtosToPois(asList(getNodeDto("foo", "bar"), getNodeDto("key1", "value")));
         assertThat(pois).hasSize(1);
         assertThat(pois.get(0).getType().getName()).isEqualTo("t1");
     }
@@ -65,11 +66,56 @@ public class PoiConverterTest {
     @Test
     public void type_multiple() {
         when(poiTypeDao.queryForAll()).thenReturn(asList(poiType("t1", "key1", "value"), poiType("t2", "key1", "value2")));
-        List<Poi> pois = new PoiConverter(poiTypeDao, null).convertDtosToPois(asList(getNodeDto("foo", "bar"), getNodeDto("key1", "value2")));
+        List<Poi> pois = new PoiConverter(new PoiTypeMatcher(poiTypeDao), null).convertDtosToPois(asList(getNodeDto("foo", "bar"), getNodeDto("key1", "value2")));
         assertThat(pois).hasSize(1);
         assertThat(pois.get(0).getType().getName()).isEqualTo("t2");
     }
 
+    @Test
+    public void type_lowestIdWins() {
+        PoiType t1 = poiType("t1", "key1", "value");
+        t1.setId(2L);
+        PoiType t2 = poiType("t2", "key1", "value", "key2", "value2");
+        t2.setId(1L);
+        when(poiTypeDao.queryForAll()).thenReturn(asList(t1, t2));
+        List<Poi> pois = new PoiConverter(new PoiTypeMatcher(poiTypeDao), null).convertDtosToPois(singletonList(getNodeDto("key1", "value", "key2", "value2")));
+        assertThat(pois).hasSize(1);
+        assertThat(pois.get(0).getType().getName()).isEqualTo("t2");
+    }
+
+    @Test
+    public void type_allTagsRequired() {
+        when(poiTypeDao.queryForAll()).thenReturn(singletonList(poiType("t1", "key1", "value", "key2", "value2")));
+        List<Poi> pois = new PoiConverter(new PoiTypeMatcher(poiTypeDao), null).convertDtosToPois(singletonList(getNodeDto("key1", "value", "key2", "other")));
+        assertThat(pois).isEmpty();
+    }
+
+    @Test
+    public void osmChange_placeholderIdsAndBlocks() {
+        PoiConverter converter = new PoiConverter(new PoiTypeMatcher(poiTypeDao), new PoiTagConverter());
+        Poi created1 = poi(null, false);
+        Poi created2 = poi(null, true);
+        Poi updated = poi("42", false);
+
+        OsmChangeDto osmChangeDto = converter.convertPoisToOsmChangeDto(asList(created1, created2), singletonList(updated), new ArrayList<Poi>(), "12");
+
+        assertThat(osmChangeDto.getCreate().getNodeDtoList()).hasSize(1);
+        assertThat(osmChangeDto.getCreate().getNodeDtoList().get(0).getId()).isEqualTo("-1");
+        assertThat(osmChangeDto.getCreate().getWayDtoList()).hasSize(1);
+        assertThat(osmChangeDto.getCreate().getWayDtoList().get(0).getId()).isEqualTo("-2");
+        assertThat(osmChangeDto.getModify().getNodeDtoList().get(0).getId()).isEqualTo("42");
+        assertThat(osmChangeDto.getModify().getNodeDtoList().get(0).getChangeset()).isEqualTo("12");
+        assertThat(osmChangeDto.getDelete()).isNull();
+    }
+
+    private Poi poi(String backendId, boolean way) {
+        Poi poi = new Poi();
+        poi.setBackendId(backendId);
+        poi.setWay(way);
+        poi.setLatitude(1.0);
+        poi.setLongitude(1.0);
+        return poi;
+    }
 
     private NodeDto getNodeDto(String... tags) {
         NodeDto nodeDto = new NodeDto();
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync.converter;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.mapsquare.osmcontributor.core.database.dao.PoiTypeDao;
+import io.mapsquare.osmcontributor.core.model.Poi;
+import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
+import io.mapsquare.osmcontributor.sync.Backend;
+
+import static java.util.Collections.singletonList;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class PoiStreamConverterTest {
+
+    private static final String RESPONSE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<osm version=\"0.6\" generator=\"Overpass API\">\n" +
+            "<note>The data included in this document is from www.openstreetmap.org.</note>\n" +
+            "<meta osm_base=\"2016-01-01T00:00:00Z\"/>\n" +
+            "<node id=\"1\" lat=\"48.1\" lon=\"2.1\" version=\"3\" timestamp=\"2016-01-01T10:00:00Z\">\n" +
+            "  <tag k=\"amenity\" v=\"bench\"/>\n" +
+            "  <tag k=\"name\" v=\"Bench 1\"/>\n" +
+            "</node>\n" +
+            "<node id=\"2\" lat=\"48.2\" lon=\"2.2\" version=\"1\">\n" +
+            "  <tag k=\"shop\" v=\"bakery\"/>\n" +
+            "</node>\n" +
+            "<node id=\"3\" lat=\"48.3\" lon=\"2.3\" version=\"1\"/>\n" +
+            "<way id=\"10\" version=\"7\">\n" +
+            "  <center lat=\"48.4\" lon=\"2.4\"/>\n" +
+            "  <nd ref=\"100\"/>\n" +
+            "  <nd ref=\"101\"/>\n" +
+            "  <tag k=\"amenity\" v=\"bench\"/>\n" +
+            "  <tag k=\"level\" v=\"1\"/>\n" +
+            "</way>\n" +
+            "<relation id=\"20\" version=\"1\">\n" +
+            "  <member type=\"way\" ref=\"10\" role=\"\"/>\n" +
+            "  <tag k=\"amenity\" v=\"bench\"/>\n" +
+            "</relation>\n" +
+            "</osm>";
+
+    PoiStreamConverter converter;
+
+    @Before
+    public void before() {
+        PoiTypeDao poiTypeDao = mock(PoiTypeDao.class);
+        when(poiTypeDao.queryForAll()).thenReturn(singletonList(poiType("bench", "amenity", "bench")));
+        converter = new PoiStreamConverter(new PoiConverter(new PoiTypeMatcher(poiTypeDao), null));
+    }
+
+    @Test
+    public void convertStream_nodesAndWays() throws Exception {
+        ChunkCollector collector = new ChunkCollector();
+        int count = converter.convertStream(stream(), 10, collector);
+
+        assertThat(count).isEqualTo(2);
+        assertThat(collector.chunks).hasSize(1);
+
+        Poi node = collector.chunks.get(0).get(0);
+        assertThat(node.getBackendId()).isEqualTo("1");
+        assertThat(node.getWay()).isFalse();
+        assertThat(node.getLatitude()).isEqualTo(48.1);
+        assertThat(node.getLongitude()).isEqualTo(2.1);
+        assertThat(node.getVersion()).isEqualTo("3");
+        assertThat(node.getName()).isEqualTo("Bench 1");
+        assertThat(node.getUpdateDate()).isNotNull();
+        assertThat(node.getTags()).hasSize(2);
+
+        Poi way = collector.chunks.get(0).get(1);
+        assertThat(way.getBackendId()).isEqualTo("10");
+        assertThat(way.getWay()).isTrue();
+        assertThat(way.getLatitude()).isEqualTo(48.4);
+        assertThat(way.getVersion()).isEqualTo("7");
+        assertThat(way.getLevel()).isEqualTo("1");
+        assertThat(way.getNodeRefs()).hasSize(2);
+        assertThat(way.getNodeRefs().get(1).getNodeBackendId()).isEqualTo("101");
+    }
+
+    @Test
+    public void convertStream_boundedChunks() throws Exception {
+        ChunkCollector collector = new ChunkCollector();
+        int count = converter.convertStream(stream(), 1, collector);
+
+        assertThat(count).isEqualTo(2);
+        assertThat(collector.chunks).hasSize(2);
+        assertThat(collector.chunks.get(0)).hasSize(1);
+        assertThat(collector.chunks.get(1)).hasSize(1);
+    }
+
+    @Test
+    public void convertStream_idOnlyNodes() throws Exception {
+        String response = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<osm version=\"0.6\" generator=\"Overpass API\">\n" +
+                "<meta osm_base=\"2016-01-02T08:30:00Z\"/>\n" +
+                "<node id=\"1\"/>\n" +
+                "<node id=\"4\"/>\n" +
+                "<node id=\"1\" lat=\"48.1\" lon=\"2.1\" version=\"3\" timestamp=\"2016-01-01T10:00:00Z\">\n" +
+                "  <tag k=\"amenity\" v=\"bench\"/>\n" +
+                "</node>\n" +
+                "</osm>";
+        ChunkCollector collector = new ChunkCollector();
+        PoiStreamConverter.IdOnlyNodes nodes = new PoiStreamConverter.IdOnlyNodes();
+        int count = converter.convertStream(stream(response), 10, collector, nodes);
+
+        assertThat(nodes.getIds()).containsOnly("1", "4");
+        assertThat(nodes.getSnapshotDate().getMillis()).isEqualTo(new DateTime(2016, 1, 2, 8, 30, DateTimeZone.UTC).getMillis());
+        assertThat(count).isEqualTo(1);
+        assertThat(collector.chunks.get(0).get(0).getVersion()).isEqualTo("3");
+    }
+
+    private InputStream stream() {
+        return stream(RESPONSE);
+    }
+
+    private InputStream stream(String response) {
+        return new ByteArrayInputStream(response.getBytes(Charset.forName("UTF-8")));
+    }
+
+    private PoiType poiType(String name, String key, String value) {
+        PoiType poiType = new PoiType();
+        poiType.setName(name);
+        PoiTypeTag poiTypeTag = new PoiTypeTag();
+        poiTypeTag.setKey(key);
+        poiTypeTag.setValue(value);
+        poiType.setTags(singletonList(poiTypeTag));
+        return poiType;
+    }
+
+    private static class ChunkCollector implements Backend.PoiChunkHandler {
+        final List<List<Poi>> chunks = new ArrayList<>();
+
+        @Override
+        public void onPois(List<Poi> pois) {
+            chunks.add(new ArrayList<>(pois));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync.converter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import io.mapsquare.osmcontributor.core.database.dao.PoiTypeDao;
+import io.mapsquare.osmcontributor.core.model.PoiType;
+import io.mapsquare.osmcontributor.core.model.PoiTypeTag;
+import io.mapsquare.osmcontributor.sync.dto.osm.TagDto;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Check that the indexed PoiType matcher finds the same types as the linear scan of all the types it replaced.
+ */
+public class PoiTypeMatcherTest {
+
+    private static final int TYPE_COUNT = 1000;
+    private static final int DTO_COUNT = 20000;
+    private static final String[] KEYS = {"amenity", "shop", "tourism", "leisure", "highway", "craft", "office", "building"};
+
+    @Test
+    public void findType() {
+        Random random = new Random(42);
+
+        List<PoiType> poiTypes = new ArrayList<>(TYPE_COUNT);
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            PoiType poiType = new PoiType();
+            poiType.setId((long) i);
+            poiType.setName("type" + i);
+            List<PoiTypeTag> tags = new ArrayList<>();
+            tags.add(poiTypeTag(KEYS[random.nextInt(KEYS.length)], "value" + random.nextInt(200)));
+            if (random.nextInt(4) == 0) {
+                tags.add(poiTypeTag(KEYS[random.nextInt(KEYS.length)], "value" + random.nextInt(200)));
+            }
+            // Tags without value don't take part in the matching
+            tags.add(poiTypeTag("name", null));
+            poiType.setTags(tags);
+            poiTypes.add(poiType);
+        }
+
+        List<List<TagDto>> dtoTags = new ArrayList<>(DTO_COUNT);
+        for (int i = 0; i < DTO_COUNT; i++) {
+            List<TagDto> tags = new ArrayList<>();
+            int tagCount = 1 + random.nextInt(6);
+            for (int j = 0; j < tagCount; j++) {
+                tags.add(new TagDto("value" + random.nextInt(200), KEYS[random.nextInt(KEYS.length)]));
+            }
+            dtoTags.add(tags);
+        }
+
+        PoiTypeDao poiTypeDao = mock(PoiTypeDao.class);
+        when(poiTypeDao.queryForAll()).thenReturn(poiTypes);
+        PoiTypeMatcher matcher = new PoiTypeMatcher(poiTypeDao);
+
+        int matched = 0;
+        for (int i = 0; i < DTO_COUNT; i++) {
+            PoiType indexed = matcher.findType(dtoTags.get(i));
+            assertThat(indexed).isSameAs(linearFindType(dtoTags.get(i), poiTypes));
+            if (indexed != null) {
+                matched++;
+            }
+        }
+        // Both outcomes are covered
+        assertThat(matched).isGreaterThan(0).isLessThan(DTO_COUNT);
+    }
+
+    /**
+     * The linear scan previously done by {@link PoiConverter}.
+     */
+    private PoiType linearFindType(List<TagDto> dtoTags, List<PoiType> availableTypes) {
+        for (PoiType type : availableTypes) {
+            int tagsWithValues = 0;
+            int matchingTags = 0;
+            for (PoiTypeTag poiTypeTag : type.getTags()) {
+                if (poiTypeTag.getValue() != null) {
+                    tagsWithValues++;
+                    for (TagDto tagDto : dtoTags) {
+                        if (tagDto.getKey().equals(poiTypeTag.getKey())) {
+                            if (tagDto.getValue().equals(poiTypeTag.getValue())) {
+                                matchingTags++;
+                            }
+                        }
+                    }
+                }
+            }
+            if (tagsWithValues == matchingTags) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private PoiTypeTag poiTypeTag(String key, String value) {
+        PoiTypeTag poiTypeTag = new PoiTypeTag();
+        poiTypeTag.setKey(key);
+        poiTypeTag.setValue(value);
+        return poiTypeTag;
+    }
+}
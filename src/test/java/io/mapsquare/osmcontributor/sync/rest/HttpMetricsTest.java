@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.sync.rest;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HttpMetricsTest {
+
+    private final Request request = new Request.Builder().url("http://api.openstreetmap.org/api/0.6/notes").build();
+
+    @Test
+    public void countsNetworkAndCachedResponses() throws Exception {
+        HttpMetrics httpMetrics = new HttpMetrics();
+
+        Response networkResponse = getResponse(200).newBuilder().header("Content-Length", "1234").build();
+        httpMetrics.getNetworkInterceptor().intercept(getChain(networkResponse));
+        httpMetrics.getApplicationInterceptor().intercept(getChain(getResponse(200).newBuilder().networkResponse(networkResponse).build()));
+
+        Response notModified = getResponse(304);
+        httpMetrics.getNetworkInterceptor().intercept(getChain(notModified));
+        httpMetrics.getApplicationInterceptor().intercept(getChain(getResponse(200).newBuilder().networkResponse(notModified).build()));
+
+        httpMetrics.getApplicationInterceptor().intercept(getChain(getResponse(200)));
+
+        HttpMetrics.HostMetrics metrics = httpMetrics.getMetrics().get("api.openstreetmap.org");
+        assertThat(metrics.getRequests()).isEqualTo(3);
+        assertThat(metrics.getNetworkRequests()).isEqualTo(2);
+        assertThat(metrics.getCacheHits()).isEqualTo(1);
+        assertThat(metrics.getConditionalHits()).isEqualTo(1);
+        assertThat(metrics.getBytesReceived()).isEqualTo(1234);
+        assertThat(metrics.getFailures()).isEqualTo(0);
+    }
+
+    @Test
+    public void countsFailures() throws Exception {
+        HttpMetrics httpMetrics = new HttpMetrics();
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.request()).thenReturn(request);
+        when(chain.proceed(any(Request.class))).thenThrow(new IOException());
+
+        try {
+            httpMetrics.getApplicationInterceptor().intercept(chain);
+            fail("IOException expected");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        HttpMetrics.HostMetrics metrics = httpMetrics.getMetrics().get("api.openstreetmap.org");
+        assertThat(metrics.getRequests()).isEqualTo(0);
+        assertThat(metrics.getFailures()).isEqualTo(1);
+    }
+
+    private Response getResponse(int code) {
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .build();
+    }
+
+    private Interceptor.Chain getChain(Response response) throws IOException {
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.request()).thenReturn(request);
+        when(chain.proceed(any(Request.class))).thenReturn(response);
+        return chain;
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.tileslayer;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.mapbox.mapboxsdk.tileprovider.MapTile;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class MBTilesPackagerTest {
+
+    private static final String URL = "http://tiles.test/{z}/{x}/{y}.png";
+    private static final long TIMEOUT = 5000;
+
+    // An area of Paris covering a few hundred tiles, several batches of inserts
+    private static final double NORTH = 48.90;
+    private static final double EAST = 2.44;
+    private static final double SOUTH = 48.81;
+    private static final double WEST = 2.30;
+    private static final int MIN_ZOOM = 14;
+    private static final int MAX_ZOOM = 15;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    // Behaviour of the tile server
+    private volatile boolean failSomeTiles;
+    private volatile int blockAfter = Integer.MAX_VALUE;
+
+    private File file;
+    private WebSourceTileLayer source;
+    private MBTilesPackager packager;
+    private int total;
+
+    @Before
+    public void before() throws IOException {
+        file = File.createTempFile("packager", ".mbtiles");
+        file.delete();
+
+        // Answer the tiles without network with their url as content
+        OkHttpClient httpClient = new OkHttpClient();
+        httpClient.interceptors().add(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                if (requests.incrementAndGet() > blockAfter) {
+                    try {
+                        released.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                String url = chain.request().urlString();
+                Response.Builder response = new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1);
+                if (failSomeTiles && url.hashCode() % 5 == 0) {
+                    return response.code(500).body(ResponseBody.create(null, new byte[0])).build();
+                }
+                return response.code(200).body(ResponseBody.create(MediaType.parse("image/png"), url.getBytes())).build();
+            }
+        });
+        packager = new MBTilesPackager(httpClient, 2);
+        source = new WebSourceTileLayer("test", URL, MAX_ZOOM);
+
+        for (int z = MIN_ZOOM; z <= MAX_ZOOM; z++) {
+            int columns = (int) Math.floor(TileMath.tileX(EAST, z)) - (int) Math.floor(TileMath.tileX(WEST, z)) + 1;
+            int rows = (int) Math.floor(TileMath.tileY(SOUTH, z)) - (int) Math.floor(TileMath.tileY(NORTH, z)) + 1;
+            total += columns * rows;
+        }
+    }
+
+    @After
+    public void after() {
+        released.countDown();
+        file.delete();
+    }
+
+    @Test
+    public void packAllTiles() throws InterruptedException {
+        MBTilesPackager.Result result = pack();
+
+        assertThat(result.isComplete()).isTrue();
+        assertThat(result.getDownloaded()).isEqualTo(total);
+        assertThat(countTiles()).isEqualTo(total);
+
+        int x = (int) Math.floor(TileMath.tileX(WEST, MAX_ZOOM));
+        int y = (int) Math.floor(TileMath.tileY(NORTH, MAX_ZOOM));
+        assertThat(readTile(MAX_ZOOM, x, y)).isEqualTo(source.getTileURL(new MapTile(MAX_ZOOM, x, y), false));
+        assertThat(readMetadata("format")).isEqualTo("png");
+        assertThat(readMetadata("minzoom")).isEqualTo(String.valueOf(MIN_ZOOM));
+        assertThat(readMetadata("maxzoom")).isEqualTo(String.valueOf(MAX_ZOOM));
+    }
+
+    @Test
+    public void retryFailedTiles() throws InterruptedException {
+        failSomeTiles = true;
+        MBTilesPackager.Result first = pack();
+        assertThat(first.isComplete()).isFalse();
+        assertThat(first.getFailed()).isGreaterThan(0);
+        assertThat(first.getDownloaded() + first.getFailed()).isEqualTo(total);
+        assertThat(countTiles()).isEqualTo(first.getDownloaded());
+
+        // Only the failed tiles are downloaded again
+        failSomeTiles = false;
+        requests.set(0);
+        MBTilesPackager.Result second = pack();
+        assertThat(second.isComplete()).isTrue();
+        assertThat(second.getSkipped()).isEqualTo(first.getDownloaded());
+        assertThat(second.getDownloaded()).isEqualTo(first.getFailed());
+        assertThat(requests.get()).isEqualTo(first.getFailed());
+        assertThat(countTiles()).isEqualTo(total);
+    }
+
+    @Test
+    public void resumeAfterInterruption() throws InterruptedException {
+        // The server stops answering after 100 tiles, more than a batch of inserts, and the packaging is interrupted
+        final int answered = 100;
+        blockAfter = answered;
+        final CountDownLatch written = new CountDownLatch(1);
+        final InterruptedException[] interrupted = new InterruptedException[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    packager.pack(source, file, NORTH, EAST, SOUTH, WEST, MIN_ZOOM, MAX_ZOOM, new MBTilesPackager.ProgressListener() {
+                        @Override
+                        public void onProgress(int done, int total) {
+                            if (done == answered) {
+                                written.countDown();
+                            }
+                        }
+                    });
+                } catch (InterruptedException e) {
+                    interrupted[0] = e;
+                }
+            }
+        };
+        thread.start();
+        assertThat(written.await(TIMEOUT, TimeUnit.MILLISECONDS)).isTrue();
+        thread.interrupt();
+        thread.join(TIMEOUT);
+        assertThat(thread.isAlive()).isFalse();
+        assertThat(interrupted[0]).isNotNull();
+
+        // The tiles received before the interruption are kept, including those of the last incomplete batch
+        assertThat(countTiles()).isEqualTo(answered);
+
+        blockAfter = Integer.MAX_VALUE;
+        requests.set(0);
+        MBTilesPackager.Result result = pack();
+        assertThat(result.isComplete()).isTrue();
+        assertThat(result.getSkipped()).isEqualTo(answered);
+        assertThat(result.getDownloaded()).isEqualTo(total - answered);
+        assertThat(requests.get()).isEqualTo(total - answered);
+        assertThat(countTiles()).isEqualTo(total);
+    }
+
+    private MBTilesPackager.Result pack() throws InterruptedException {
+        return packager.pack(source, file, NORTH, EAST, SOUTH, WEST, MIN_ZOOM, MAX_ZOOM, null);
+    }
+
+    private int countTiles() {
+        SQLiteDatabase database = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            Cursor cursor = database.rawQuery("SELECT COUNT(*) FROM tiles", null);
+            try {
+                cursor.moveToFirst();
+                return cursor.getInt(0);
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            database.close();
+        }
+    }
+
+    private String readTile(int z, int x, int y) {
+        SQLiteDatabase database = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            Cursor cursor = database.rawQuery("SELECT tile_data FROM tiles WHERE zoom_level = ? AND tile_column = ? AND tile_row = ?",
+                    new String[]{String.valueOf(z), String.valueOf(x), String.valueOf((1 << z) - 1 - y)});
+            try {
+                return cursor.moveToFirst() ? new String(cursor.getBlob(0)) : null;
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            database.close();
+        }
+    }
+
+    private String readMetadata(String name) {
+        SQLiteDatabase database = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            Cursor cursor = database.rawQuery("SELECT value FROM metadata WHERE name = ?", new String[]{name});
+            try {
+                return cursor.moveToFirst() ? cursor.getString(0) : null;
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            database.close();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.tileslayer;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.mapbox.mapboxsdk.tileprovider.MapTile;
+import com.mapbox.mapboxsdk.tileprovider.modules.MBTilesFileArchive;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Compare the reads of the tiles of a synthetic MBTiles file through the single handle of the
+ * {@link MBTilesFileArchive} with the parallel reads of the {@link MBTilesReader}.
+ * <br/>
+ * The decoding of the tiles is not covered, the bitmaps are not decoded under Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MBTilesReaderTest {
+
+    private static final int MIN_ZOOM = 12;
+    private static final int MAX_ZOOM = 15;
+    private static final int TILE_BYTES = 8 * 1024;
+    private static final int THREADS = 4;
+
+    private File file;
+    private List<MapTile> tiles = new ArrayList<>();
+
+    @Before
+    public void before() throws IOException {
+        file = File.createTempFile("benchmark", ".mbtiles");
+        file.delete();
+
+        SQLiteDatabase database = SQLiteDatabase.openOrCreateDatabase(file, null);
+        database.execSQL("CREATE TABLE metadata (name TEXT, value TEXT)");
+        database.execSQL("CREATE TABLE tiles (zoom_level INTEGER, tile_column INTEGER, tile_row INTEGER, tile_data BLOB)");
+        database.execSQL("CREATE UNIQUE INDEX tile_index ON tiles (zoom_level, tile_column, tile_row)");
+        SQLiteStatement insert = database.compileStatement("INSERT INTO tiles VALUES (?, ?, ?, ?)");
+
+        // The tiles of an area of about 10km x 10km, with random content as incompressible as png tiles
+        Random random = new Random(42);
+        database.beginTransaction();
+        for (int z = MIN_ZOOM; z <= MAX_ZOOM; z++) {
+            int minX = (int) Math.floor(TileMath.tileX(2.30, z));
+            int maxX = (int) Math.floor(TileMath.tileX(2.44, z));
+            int minY = (int) Math.floor(TileMath.tileY(48.90, z));
+            int maxY = (int) Math.floor(TileMath.tileY(48.81, z));
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    byte[] data = new byte[TILE_BYTES];
+                    random.nextBytes(data);
+                    insert.bindLong(1, z);
+                    insert.bindLong(2, x);
+                    insert.bindLong(3, (1 << z) - 1 - y);
+                    insert.bindBlob(4, data);
+                    insert.executeInsert();
+                    tiles.add(new MapTile(z, x, y));
+                }
+            }
+        }
+        database.setTransactionSuccessful();
+        database.endTransaction();
+        database.close();
+    }
+
+    @After
+    public void after() {
+        file.delete();
+    }
+
+    @Test
+    public void readTiles() throws Exception {
+        MBTilesFileArchive archive = MBTilesFileArchive.getDatabaseFileArchive(file);
+        List<byte[]> archiveData = new ArrayList<>(tiles.size());
+        for (MapTile tile : tiles) {
+            archiveData.add(readFully(archive.getInputStream(null, tile)));
+        }
+        archive.close();
+
+        final MBTilesReader reader = new MBTilesReader(file, THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<byte[]>> futures = new ArrayList<>(tiles.size());
+        for (final MapTile tile : tiles) {
+            futures.add(executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return reader.getTileData(tile.getZ(), tile.getX(), tile.getY());
+                }
+            }));
+        }
+        List<byte[]> readerData = new ArrayList<>(tiles.size());
+        for (Future<byte[]> future : futures) {
+            readerData.add(future.get());
+        }
+        executor.shutdown();
+        assertThat(reader.getTileData(MAX_ZOOM + 1, 0, 0)).isNull();
+        reader.close();
+
+        for (int i = 0; i < tiles.size(); i++) {
+            assertThat(readerData.get(i)).isNotNull().isEqualTo(archiveData.get(i));
+        }
+    }
+
+    @Test
+    public void closeDuringReads() throws Exception {
+        final MBTilesReader reader = new MBTilesReader(file, THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS * 2);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS * 2; t++) {
+            futures.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    // Read until the reader is closed, the reads in progress must not fail
+                    int read = 0;
+                    for (MapTile tile : tiles) {
+                        if (reader.getTileData(tile.getZ(), tile.getX(), tile.getY()) == null) {
+                            break;
+                        }
+                        read++;
+                    }
+                    return read;
+                }
+            }));
+        }
+        reader.close();
+        for (Future<Integer> future : futures) {
+            assertThat(future.get()).isLessThanOrEqualTo(tiles.size());
+        }
+        executor.shutdown();
+
+        assertThat(reader.getTileData(tiles.get(0).getZ(), tiles.get(0).getX(), tiles.get(0).getY())).isNull();
+        // Closing twice is harmless
+        reader.close();
+    }
+
+    private static byte[] readFully(InputStream stream) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(TILE_BYTES);
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        stream.close();
+        return output.toByteArray();
+    }
+}
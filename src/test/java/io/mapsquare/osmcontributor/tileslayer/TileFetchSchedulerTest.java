@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.tileslayer;
+
+import com.mapbox.mapboxsdk.tileprovider.MapTile;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class TileFetchSchedulerTest {
+
+    private static final String URL = "http://tiles.test/";
+    private static final byte[] TILE = {1, 2, 3};
+    private static final long TIMEOUT = 5000;
+
+    // Viewport of about 2° around the point (0, 0), the center of the tile 512/512 at zoom 10
+    private static final double NORTH = 1;
+    private static final double EAST = 1;
+    private static final double SOUTH = -1;
+    private static final double WEST = -1;
+    private static final float ZOOM = 10;
+
+    private final List<String> downloaded = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch blockerStarted = new CountDownLatch(1);
+    private final CountDownLatch blockerReleased = new CountDownLatch(1);
+
+    private TileFetchScheduler scheduler;
+
+    @Before
+    public void before() {
+        // Answer the requests without network, the download of the tile "blocker" waits to be released
+        OkHttpClient httpClient = new OkHttpClient();
+        httpClient.interceptors().add(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                String name = chain.request().urlString().substring(URL.length());
+                if ("blocker".equals(name)) {
+                    blockerStarted.countDown();
+                    try {
+                        blockerReleased.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                downloaded.add(name);
+                return new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .body(ResponseBody.create(MediaType.parse("image/png"), TILE))
+                        .build();
+            }
+        });
+        scheduler = new TileFetchScheduler(httpClient, 1);
+        scheduler.setViewport(NORTH, EAST, SOUTH, WEST, ZOOM);
+    }
+
+    @After
+    public void after() {
+        blockerReleased.countDown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void fetchInOrderOfPriority() throws InterruptedException {
+        // Occupy the only worker while the other fetches are queued
+        FetchThread blocker = fetch(new MapTile(10, 512, 512), "blocker");
+        assertThat(blockerStarted.await(TIMEOUT, TimeUnit.MILLISECONDS)).isTrue();
+
+        FetchThread otherZoom = fetch(new MapTile(11, 1024, 1024), "otherZoom");
+        FetchThread far = fetch(new MapTile(10, 515, 512), "far");
+        FetchThread near = fetch(new MapTile(10, 512, 511), "near");
+        awaitPending(3);
+
+        blockerReleased.countDown();
+        for (FetchThread thread : new FetchThread[]{blocker, otherZoom, far, near}) {
+            assertThat(thread.await()).isEqualTo(TILE);
+        }
+        assertThat(downloaded).containsExactly("blocker", "near", "far", "otherZoom");
+    }
+
+    @Test
+    public void cancelFetchesLeavingViewport() throws InterruptedException {
+        FetchThread blocker = fetch(new MapTile(10, 512, 512), "blocker");
+        assertThat(blockerStarted.await(TIMEOUT, TimeUnit.MILLISECONDS)).isTrue();
+
+        FetchThread left = fetch(new MapTile(10, 509, 512), "left");
+        FetchThread right = fetch(new MapTile(10, 515, 512), "right");
+        awaitPending(2);
+
+        // Move the viewport about 4 tiles to the east
+        double shift = 360.0 * 4 / (1 << 10);
+        scheduler.setViewport(NORTH, EAST + shift, SOUTH, WEST + shift, ZOOM);
+        assertThat(left.await()).isNull();
+
+        blockerReleased.countDown();
+        assertThat(blocker.await()).isEqualTo(TILE);
+        assertThat(right.await()).isEqualTo(TILE);
+        assertThat(downloaded).containsExactly("blocker", "right");
+
+        // Out of the viewport, not even queued
+        assertThat(scheduler.fetch(new MapTile(10, 400, 512), URL + "outside")).isNull();
+        assertThat(downloaded).doesNotContain("outside");
+    }
+
+    @Test
+    public void shutdownCancelsPendingFetches() throws InterruptedException {
+        FetchThread blocker = fetch(new MapTile(10, 512, 512), "blocker");
+        assertThat(blockerStarted.await(TIMEOUT, TimeUnit.MILLISECONDS)).isTrue();
+        FetchThread pending = fetch(new MapTile(10, 512, 511), "pending");
+        awaitPending(1);
+
+        scheduler.shutdown();
+
+        assertThat(pending.await()).isNull();
+        blockerReleased.countDown();
+        blocker.await();
+        assertThat(downloaded).doesNotContain("pending");
+    }
+
+    @Test
+    public void fetchAfterShutdownReturnsNull() throws InterruptedException {
+        scheduler.shutdown();
+
+        // Must not wait for workers which are gone
+        FetchThread thread = fetch(new MapTile(10, 512, 512), "afterShutdown");
+        assertThat(thread.await()).isNull();
+        assertThat(downloaded).isEmpty();
+    }
+
+    private FetchThread fetch(MapTile tile, String name) {
+        FetchThread thread = new FetchThread(tile, URL + name);
+        thread.start();
+        return thread;
+    }
+
+    private void awaitPending(int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (scheduler.getPendingCount() < count) {
+            assertThat(System.currentTimeMillis()).isLessThan(end);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Fetch a tile like the threads of the tile downloader of the map.
+     */
+    private class FetchThread extends Thread {
+        private final MapTile tile;
+        private final String url;
+        private volatile byte[] result;
+
+        FetchThread(MapTile tile, String url) {
+            this.tile = tile;
+            this.url = url;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                result = scheduler.fetch(tile, url);
+            } catch (InterruptedException e) {
+                result = null;
+            }
+        }
+
+        byte[] await() throws InterruptedException {
+            join(TIMEOUT);
+            assertThat(isAlive()).isFalse();
+            return result;
+        }
+    }
+}
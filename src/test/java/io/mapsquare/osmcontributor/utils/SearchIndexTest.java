@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class SearchIndexTest {
+
+    private static final Function<String, String> IDENTITY = new Function<String, String>() {
+        @Override
+        public String apply(String value) {
+            return value;
+        }
+    };
+
+    @Test
+    public void normalize() {
+        assertThat(SearchIndex.normalize("Cr\u00eaperie \u00c9lys\u00e9e")).isEqualTo("creperie elysee");
+        assertThat(SearchIndex.normalize("Stra\u00dfe")).isEqualTo("stra\u00dfe");
+        assertThat(SearchIndex.normalize(null)).isEqualTo("");
+    }
+
+    @Test
+    public void emptyQueryReturnsAllItems() {
+        SearchIndex<String> index = index("restaurant", "bar", "cafe");
+
+        assertThat(index.search("")).containsExactly("restaurant", "bar", "cafe");
+    }
+
+    @Test
+    public void searchIgnoresCaseAndAccents() {
+        SearchIndex<String> index = index("Caf\u00e9 de Flore", "Cr\u00eaperie", "Bar", "CAFETERIA");
+
+        assertThat(index.search("cafe")).containsExactly("Caf\u00e9 de Flore", "CAFETERIA");
+        assertThat(index.search("CR\u00c9P")).containsExactly("Cr\u00eaperie");
+        assertThat(index.search("xyz")).isEmpty();
+    }
+
+    @Test
+    public void shortAndLongQueriesMatchSubstrings() {
+        SearchIndex<String> index = index("fast_food", "food_court", "seafood", "bakery");
+
+        assertThat(index.search("fo")).containsExactly("food_court", "fast_food", "seafood");
+        assertThat(index.search("food")).containsExactly("food_court", "fast_food", "seafood");
+        assertThat(index.search("afoo")).containsExactly("seafood");
+        // All the trigrams are present but not in this order
+        assertThat(index.search("foodfast")).isEmpty();
+    }
+
+    @Test
+    public void resultsAreRanked() {
+        SearchIndex<String> index = index("post box", "lamppost", "post", "post office", "box post");
+
+        assertThat(index.search("post")).containsExactly("post", "post box", "post office", "box post", "lamppost");
+    }
+
+    @Test
+    public void largeDataset() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            values.add("value " + i);
+        }
+        SearchIndex<String> index = new SearchIndex<>(values, IDENTITY);
+
+        assertThat(index.size()).isEqualTo(5000);
+        assertThat(index.search("4999")).containsExactly("value 4999");
+        assertThat(index.search("value 12")).hasSize(111);
+        assertThat(index.search("value 12").get(0)).isEqualTo("value 12");
+    }
+
+    private static SearchIndex<String> index(String... values) {
+        return new SearchIndex<>(Arrays.asList(values), IDENTITY);
+    }
+}
@@ -40,7 +40,6 @@ import android.os.AsyncTask;
 
 import com.mapbox.mapboxsdk.tileprovider.MapTile;
 import com.mapbox.mapboxsdk.tileprovider.tilesource.TileLayer;
-import com.mapbox.mapboxsdk.util.NetworkUtils;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -49,8 +48,6 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.Charset;
 
 /**
@@ -81,7 +78,12 @@ public class BingTileLayer extends WebSourceTileLayer {
 
     // Custom tweak: Set the style in the constructor before calling getMetadata
     public BingTileLayer(String key, String style, int providerZoomLimit) {
-        super("Bing Tile Layer", BASE_URL_PATTERN, false, providerZoomLimit);
+        this(key, style, providerZoomLimit, null);
+    }
+
+    // Custom tweak: Set the style in the constructor before calling getMetadata, add the scheduler parameter
+    public BingTileLayer(String key, String style, int providerZoomLimit, TileFetchScheduler tileFetchScheduler) {
+        super("Bing Tile Layer", BASE_URL_PATTERN, false, providerZoomLimit, tileFetchScheduler);
 
         setBingMapKey(key);
         mStyle = style;
@@ -170,11 +172,16 @@ public class BingTileLayer extends WebSourceTileLayer {
                         return null;
                     }
                     String url = String.format(BASE_URL_PATTERN, mStyle, mKey);
-                    HttpURLConnection connection = NetworkUtils.getHttpURLConnection(new URL(url));
+                    // Custom tweak: Download with the http client of the scheduler
                     BufferedReader rd = new BufferedReader(
-                            new InputStreamReader(connection.getInputStream(), Charset.forName("UTF-8")));
+                            new InputStreamReader(openStream(url), Charset.forName("UTF-8")));
 
-                    String content = readAll(rd);
+                    String content;
+                    try {
+                        content = readAll(rd);
+                    } finally {
+                        rd.close();
+                    }
 
                     mUrl = getInstanceFromJSON(content).replace("{culture}", "en");
 
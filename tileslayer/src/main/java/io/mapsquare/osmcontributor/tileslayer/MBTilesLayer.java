@@ -39,13 +39,18 @@ package io.mapsquare.osmcontributor.tileslayer;
 import android.content.Context;
 import android.content.res.AssetManager;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
 import android.os.Environment;
 import android.util.Log;
 
 import com.mapbox.mapboxsdk.constants.MapboxConstants;
 import com.mapbox.mapboxsdk.tileprovider.MapTile;
+import com.mapbox.mapboxsdk.tileprovider.MapTileCache;
 import com.mapbox.mapboxsdk.tileprovider.modules.MBTilesFileArchive;
 import com.mapbox.mapboxsdk.tileprovider.modules.MapTileDownloader;
 import com.mapbox.mapboxsdk.tileprovider.tilesource.TileLayer;
@@ -56,6 +61,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import uk.co.senab.bitmapcache.CacheableBitmapDrawable;
 
@@ -75,6 +82,19 @@ public class MBTilesLayer extends TileLayer implements MapViewConstants, MapboxC
     private static final int TILE_SIZE = 256;
     private int providerZoomLimit = 19;
 
+    // Custom tweak: Read the tiles with several database handles and decode them into reused bitmaps
+    private static final int READER_CONNECTIONS = 4;
+    private static final Rect TILE_RECT = new Rect(0, 0, TILE_SIZE, TILE_SIZE);
+
+    /**
+     * Tiles of the zoom limit decoded to build the tiles of the higher zoom levels, reused between tiles.
+     * Each thread borrows one at a time, so there are at most as many as tile downloader threads.
+     */
+    private final Queue<Bitmap> zoomLimitTiles = new ConcurrentLinkedQueue<>();
+
+    volatile MBTilesReader mbTilesReader;
+    private Bitmap.Config bitmapConfig = Bitmap.Config.ARGB_8888;
+
     /**
      * Initialize a new tile layer, represented by a MBTiles file.
      *
@@ -133,6 +153,19 @@ public class MBTilesLayer extends TileLayer implements MapViewConstants, MapboxC
         return providerZoomLimit;
     }
 
+    /**
+     * Set the configuration of the decoded tiles. {@link Bitmap.Config#RGB_565} halves the memory used by the
+     * tiles, at the cost of the transparency and of some color precision.
+     *
+     * @param bitmapConfig The configuration of the tiles.
+     * @return This layer.
+     */
+    // Custom tweak: Allow decoding the tiles in RGB_565
+    public MBTilesLayer setBitmapConfig(Bitmap.Config bitmapConfig) {
+        this.bitmapConfig = bitmapConfig;
+        return this;
+    }
+
     /**
      * Get the filename of this layer based on the full path
      *
@@ -176,6 +209,12 @@ public class MBTilesLayer extends TileLayer implements MapViewConstants, MapboxC
     private void initialize(File file) {
         if (file != null) {
             mbTilesFileArchive = MBTilesFileArchive.getDatabaseFileArchive(file);
+            // Custom tweak: Open the handles used to read the tiles in parallel
+            try {
+                mbTilesReader = new MBTilesReader(file, READER_CONNECTIONS);
+            } catch (SQLiteException e) {
+                Log.e(TAG, "can't open MBTiles readers: " + e.toString());
+            }
         }
 
         if (mbTilesFileArchive != null) {
@@ -195,6 +234,8 @@ public class MBTilesLayer extends TileLayer implements MapViewConstants, MapboxC
     private void initialize(final SQLiteDatabase db) {
         if (db != null) {
             mbTilesFileArchive = new MBTilesFileArchive(db);
+            // Custom tweak: Read the tiles through the given database
+            mbTilesReader = new MBTilesReader(db);
         }
 
         if (mbTilesFileArchive != null) {
@@ -245,6 +286,13 @@ public class MBTilesLayer extends TileLayer implements MapViewConstants, MapboxC
 
     @Override
     public void detach() {
+        // Custom tweak: Close the handles used to read the tiles, once the reads in progress are done
+        MBTilesReader reader = mbTilesReader;
+        mbTilesReader = null;
+        if (reader != null) {
+            reader.close();
+        }
+        zoomLimitTiles.clear();
         if (mbTilesFileArchive != null) {
             mbTilesFileArchive.close();
             mbTilesFileArchive = null;
@@ -254,45 +302,100 @@ public class MBTilesLayer extends TileLayer implements MapViewConstants, MapboxC
     @Override
     public CacheableBitmapDrawable getDrawableFromTile(final MapTileDownloader downloader,
                                                        final MapTile mapTile, boolean hdpi) {
-        if (mbTilesFileArchive != null) {
-            InputStream stream;
-
+        // Custom tweak: Read the tiles with the MBTilesReader and decode them into bitmaps reused from the cache
+        MBTilesReader reader = mbTilesReader;
+        if (reader == null) {
+            return null;
+        }
+        MapTileCache cache = downloader.getCache();
+        try {
+            Bitmap bitmap;
             // Custom tweak: If zoom > zoom limit, load the tile of zoom limit, cut the part of interest and resize it.
             if (mapTile.getZ() > providerZoomLimit) {
-                // Create the corresponding MapTile of zoom 19
-                int zoomFactor = (int) Math.pow(2, (mapTile.getZ() - providerZoomLimit));
-                MapTile preMapTile = new MapTile(providerZoomLimit, mapTile.getX() / zoomFactor, mapTile.getY() / zoomFactor);
-
-                // Fetch the tile in the database
-                stream = mbTilesFileArchive.getInputStream(this, preMapTile);
-                if (stream != null) {
-                    Bitmap bitmap = BitmapFactory.decodeStream(stream);
-
-                    // Cut the part of the Bitmap corresponding to the Tile of zoom 19
-                    int cutTileSize = TILE_SIZE / zoomFactor;
-                    Bitmap cutBitmap = Bitmap.createBitmap(bitmap, (mapTile.getX() % zoomFactor) * cutTileSize, (mapTile.getY() % zoomFactor) * cutTileSize, cutTileSize, cutTileSize);
-                    // Resize the map to the right size
-                    bitmap = Bitmap.createScaledBitmap(cutBitmap, TILE_SIZE, TILE_SIZE, false);
-                    if (bitmap != null) {
-                        CacheableBitmapDrawable result = downloader.getCache().putTileInMemoryCache(mapTile, bitmap);
-                        if (result == null) {
-                            Log.d(TAG, "error reading stream from mbtiles");
-                        }
-                        return result;
-                    }
+                int zoomFactor = 1 << (mapTile.getZ() - providerZoomLimit);
+                byte[] data = reader.getTileData(providerZoomLimit, mapTile.getX() / zoomFactor, mapTile.getY() / zoomFactor);
+                if (data == null) {
+                    return null;
+                }
+                Bitmap zoomLimitTile = decode(data, zoomLimitTiles.poll());
+                if (zoomLimitTile == null) {
+                    Log.d(TAG, "error reading stream from mbtiles");
+                    return null;
+                }
+
+                // Draw the part of the tile of zoom limit corresponding to the tile, without filtering
+                int cutTileSize = TILE_SIZE / zoomFactor;
+                int left = (mapTile.getX() % zoomFactor) * cutTileSize;
+                int top = (mapTile.getY() % zoomFactor) * cutTileSize;
+                bitmap = obtainBitmap(cache);
+                bitmap.eraseColor(Color.TRANSPARENT);
+                new Canvas(bitmap).drawBitmap(zoomLimitTile, new Rect(left, top, left + cutTileSize, top + cutTileSize), TILE_RECT, null);
+                if (mbTilesReader != null) {
+                    zoomLimitTiles.offer(zoomLimitTile);
                 }
             } else {
-                stream = mbTilesFileArchive.getInputStream(this, mapTile);
-                if (stream != null) {
-                    CacheableBitmapDrawable result =
-                            downloader.getCache().putTileStream(mapTile, stream, null);
-                    if (result == null) {
-                        Log.d(TAG, "error reading stream from mbtiles");
-                    }
-                    return result;
+                byte[] data = reader.getTileData(mapTile.getZ(), mapTile.getX(), mapTile.getY());
+                if (data == null) {
+                    return null;
+                }
+                bitmap = decode(data, getBitmapFromRemoved(cache));
+            }
+
+            CacheableBitmapDrawable result = bitmap != null ? cache.putTileInMemoryCache(mapTile, bitmap) : null;
+            if (result == null) {
+                Log.d(TAG, "error reading stream from mbtiles");
+            }
+            return result;
+        } catch (InterruptedException e) {
+            // The downloader is stopping
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Decode a tile, into the given bitmap when possible.
+     *
+     * @param data  The content of the tile.
+     * @param reuse A mutable bitmap no longer displayed, or null.
+     * @return The decoded bitmap or null if the data couldn't be decoded.
+     */
+    private Bitmap decode(byte[] data, Bitmap reuse) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = bitmapConfig;
+        options.inMutable = true;
+        if (reuse != null) {
+            options.inBitmap = reuse;
+            options.inSampleSize = 1;
+            try {
+                Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+                if (bitmap != null) {
+                    return bitmap;
                 }
+            } catch (IllegalArgumentException e) {
+                // Before KitKat, the reused bitmap must have the size and configuration of the tile
             }
+            options.inBitmap = null;
         }
-        return null;
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    /**
+     * Get a bitmap of the size of a tile for drawing, reused from the cache when possible.
+     */
+    private Bitmap obtainBitmap(MapTileCache cache) {
+        Bitmap bitmap = getBitmapFromRemoved(cache);
+        return bitmap != null ? bitmap : Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, bitmapConfig);
+    }
+
+    /**
+     * Get a tile evicted from the memory cache which can be overwritten, if any.
+     */
+    private Bitmap getBitmapFromRemoved(MapTileCache cache) {
+        Bitmap bitmap = cache.getBitmapFromRemoved(TILE_SIZE, TILE_SIZE);
+        if (bitmap != null && (!bitmap.isMutable() || bitmap.getConfig() != bitmapConfig)) {
+            return null;
+        }
+        return bitmap;
     }
 }
@@ -0,0 +1,414 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.tileslayer;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.mapbox.mapboxsdk.tileprovider.MapTile;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Download the tiles of a region from a {@link WebSourceTileLayer} into an MBTiles file readable by {@link MBTilesLayer}.
+ * <br/>
+ * The tiles are downloaded by a bounded number of threads and written by the calling thread, in transactions of
+ * {@link #BATCH_SIZE} tiles. The tiles already present in the file are not downloaded again, so packaging the same
+ * region into the same file resumes an interrupted or partially failed packaging.
+ * <br/>
+ * {@link #pack(WebSourceTileLayer, File, double, double, double, double, int, int, ProgressListener)} blocks until
+ * the end of the packaging, call it from a background thread.
+ */
+public class MBTilesPackager {
+    private static final String TAG = "MBTilesPackager";
+
+    /**
+     * Number of tiles inserted per transaction.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    private static final String CREATE_METADATA = "CREATE TABLE IF NOT EXISTS metadata (name TEXT, value TEXT)";
+    private static final String CREATE_METADATA_INDEX = "CREATE UNIQUE INDEX IF NOT EXISTS metadata_name ON metadata (name)";
+    private static final String CREATE_TILES = "CREATE TABLE IF NOT EXISTS tiles (zoom_level INTEGER, tile_column INTEGER, tile_row INTEGER, tile_data BLOB)";
+    private static final String CREATE_TILES_INDEX = "CREATE UNIQUE INDEX IF NOT EXISTS tile_index ON tiles (zoom_level, tile_column, tile_row)";
+    private static final String INSERT_METADATA = "INSERT OR REPLACE INTO metadata (name, value) VALUES (?, ?)";
+    private static final String INSERT_TILE = "INSERT OR REPLACE INTO tiles (zoom_level, tile_column, tile_row, tile_data) VALUES (?, ?, ?, ?)";
+
+    private final OkHttpClient httpClient;
+    private final int maxParallelDownloads;
+
+    /**
+     * @param httpClient           The http client used for the downloads.
+     * @param maxParallelDownloads The maximum number of tiles downloaded in parallel.
+     */
+    public MBTilesPackager(OkHttpClient httpClient, int maxParallelDownloads) {
+        this.httpClient = httpClient;
+        this.maxParallelDownloads = maxParallelDownloads;
+    }
+
+    /**
+     * Download the tiles covering a region into an MBTiles file, creating the file if needed.
+     * <br/>
+     * The zoom levels above the zoom limit of the source are not packaged, {@link MBTilesLayer} zooms in the tiles of
+     * the zoom limit like the web layer does.
+     *
+     * @param source   The tile source.
+     * @param file     The MBTiles file to create or complete.
+     * @param north    The north bound of the region.
+     * @param east     The east bound of the region.
+     * @param south    The south bound of the region.
+     * @param west     The west bound of the region.
+     * @param minZoom  The lowest zoom level to package.
+     * @param maxZoom  The highest zoom level to package.
+     * @param listener The listener notified of the progress, may be null.
+     * @return The counts of downloaded, already present and failed tiles.
+     * @throws InterruptedException If the calling thread was interrupted, the tiles written so far are kept.
+     */
+    public Result pack(WebSourceTileLayer source, File file, double north, double east, double south, double west,
+                       int minZoom, int maxZoom, ProgressListener listener) throws InterruptedException {
+        maxZoom = Math.min(maxZoom, source.getProviderZoomLimit());
+        Result result = new Result();
+        SQLiteDatabase database = SQLiteDatabase.openOrCreateDatabase(file, null);
+        ExecutorService executor = Executors.newFixedThreadPool(maxParallelDownloads);
+        try {
+            createTables(database);
+            writeMetadata(database, source, north, east, south, west, minZoom, maxZoom);
+
+            int total = 0;
+            for (int z = minZoom; z <= maxZoom; z++) {
+                total += TileRange.of(z, north, east, south, west).size();
+            }
+
+            Writer writer = new Writer(database);
+            CompletionService<Download> downloads = new ExecutorCompletionService<>(executor);
+            int window = maxParallelDownloads * 2;
+            int pending = 0;
+            try {
+                for (int z = minZoom; z <= maxZoom; z++) {
+                    TileRange range = TileRange.of(z, north, east, south, west);
+                    Set<Long> present = queryPresentTiles(database, range);
+                    for (int x = range.minX; x <= range.maxX; x++) {
+                        for (int y = range.minY; y <= range.maxY; y++) {
+                            if (present.contains(key(x, tmsRow(z, y)))) {
+                                result.skipped++;
+                                notifyProgress(listener, result, total);
+                                continue;
+                            }
+                            MapTile tile = new MapTile(z, x, y);
+                            downloads.submit(new Download(tile, source.getTileURL(tile, false)));
+                            pending++;
+                            if (pending >= window) {
+                                collect(downloads.take(), writer, result);
+                                pending--;
+                                notifyProgress(listener, result, total);
+                            }
+                        }
+                    }
+                }
+                while (pending > 0) {
+                    collect(downloads.take(), writer, result);
+                    pending--;
+                    notifyProgress(listener, result, total);
+                }
+            } finally {
+                writer.flush();
+            }
+            writer.writeFormat();
+        } finally {
+            executor.shutdownNow();
+            database.close();
+        }
+        return result;
+    }
+
+    private void createTables(SQLiteDatabase database) {
+        database.execSQL(CREATE_METADATA);
+        database.execSQL(CREATE_METADATA_INDEX);
+        database.execSQL(CREATE_TILES);
+        database.execSQL(CREATE_TILES_INDEX);
+    }
+
+    private void writeMetadata(SQLiteDatabase database, WebSourceTileLayer source, double north, double east, double south,
+                               double west, int minZoom, int maxZoom) {
+        database.beginTransaction();
+        try {
+            insertMetadata(database, "name", source.getName() != null ? source.getName() : source.getCacheKey());
+            insertMetadata(database, "type", "baselayer");
+            insertMetadata(database, "version", "1.1");
+            insertMetadata(database, "description", source.getName() != null ? source.getName() : "");
+            insertMetadata(database, "bounds", String.format(Locale.US, "%f,%f,%f,%f", west, south, east, north));
+            insertMetadata(database, "center", String.format(Locale.US, "%f,%f,%d", (west + east) / 2, (south + north) / 2, minZoom));
+            insertMetadata(database, "minzoom", String.valueOf(minZoom));
+            insertMetadata(database, "maxzoom", String.valueOf(maxZoom));
+            if (source.getAttribution() != null) {
+                insertMetadata(database, "attribution", source.getAttribution());
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private static void insertMetadata(SQLiteDatabase database, String name, String value) {
+        database.execSQL(INSERT_METADATA, new Object[]{name, value});
+    }
+
+    /**
+     * Read the keys of the tiles of the range already in the file.
+     */
+    private Set<Long> queryPresentTiles(SQLiteDatabase database, TileRange range) {
+        Set<Long> present = new HashSet<>();
+        Cursor cursor = database.rawQuery("SELECT tile_column, tile_row FROM tiles WHERE zoom_level = ? AND tile_column BETWEEN ? AND ? AND tile_row BETWEEN ? AND ?",
+                new String[]{String.valueOf(range.zoom), String.valueOf(range.minX), String.valueOf(range.maxX),
+                        String.valueOf(tmsRow(range.zoom, range.maxY)), String.valueOf(tmsRow(range.zoom, range.minY))});
+        try {
+            while (cursor.moveToNext()) {
+                present.add(key(cursor.getInt(0), cursor.getInt(1)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return present;
+    }
+
+    private void collect(Future<Download> future, Writer writer, Result result) throws InterruptedException {
+        Download download;
+        try {
+            download = future.get();
+        } catch (ExecutionException e) {
+            // Download.call catches its errors
+            throw new IllegalStateException(e.getCause());
+        }
+        if (download.data == null) {
+            result.failed++;
+        } else {
+            writer.insert(download.tile, download.data);
+            result.downloaded++;
+        }
+    }
+
+    private static void notifyProgress(ProgressListener listener, Result result, int total) {
+        if (listener != null) {
+            listener.onProgress(result.downloaded + result.skipped + result.failed, total);
+        }
+    }
+
+    /**
+     * MBTiles files number the rows from the south, as in the TMS scheme.
+     */
+    private static int tmsRow(int zoom, int y) {
+        return (1 << zoom) - 1 - y;
+    }
+
+    private static long key(int column, int row) {
+        return ((long) column << 32) | (row & 0xffffffffL);
+    }
+
+    /**
+     * Download of a tile, its data is null if the download failed.
+     */
+    private class Download implements Callable<Download> {
+        private final MapTile tile;
+        private final String url;
+        private byte[] data;
+
+        Download(MapTile tile, String url) {
+            this.tile = tile;
+            this.url = url;
+        }
+
+        @Override
+        public Download call() {
+            try {
+                Response response = httpClient.newCall(new Request.Builder().url(url).build()).execute();
+                if (response.isSuccessful()) {
+                    data = response.body().bytes();
+                } else {
+                    response.body().close();
+                    Log.e(TAG, "Error downloading MapTile: " + url + ": " + response.code());
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Error downloading MapTile: " + url + ":" + e);
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Insert the tiles in transactions of {@link #BATCH_SIZE} tiles.
+     */
+    private static class Writer {
+        private final SQLiteDatabase database;
+        private final SQLiteStatement insertTile;
+        private int batched;
+        private String format;
+
+        Writer(SQLiteDatabase database) {
+            this.database = database;
+            this.insertTile = database.compileStatement(INSERT_TILE);
+        }
+
+        void insert(MapTile tile, byte[] data) {
+            if (format == null) {
+                format = formatOf(data);
+            }
+            if (batched == 0) {
+                database.beginTransaction();
+            }
+            insertTile.bindLong(1, tile.getZ());
+            insertTile.bindLong(2, tile.getX());
+            insertTile.bindLong(3, tmsRow(tile.getZ(), tile.getY()));
+            insertTile.bindBlob(4, data);
+            insertTile.executeInsert();
+            insertTile.clearBindings();
+            if (++batched >= BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (batched > 0) {
+                database.setTransactionSuccessful();
+                database.endTransaction();
+                batched = 0;
+            }
+        }
+
+        void writeFormat() {
+            if (format != null) {
+                insertMetadata(database, "format", format);
+            }
+        }
+
+        private static String formatOf(byte[] data) {
+            return data.length > 1 && (data[0] & 0xff) == 0xff && (data[1] & 0xff) == 0xd8 ? "jpg" : "png";
+        }
+    }
+
+    /**
+     * Columns and rows of the tiles covering a region at a zoom level.
+     */
+    private static final class TileRange {
+        private final int zoom;
+        private final int minX;
+        private final int maxX;
+        private final int minY;
+        private final int maxY;
+
+        private TileRange(int zoom, int minX, int maxX, int minY, int maxY) {
+            this.zoom = zoom;
+            this.minX = minX;
+            this.maxX = maxX;
+            this.minY = minY;
+            this.maxY = maxY;
+        }
+
+        static TileRange of(int zoom, double north, double east, double south, double west) {
+            int last = (1 << zoom) - 1;
+            return new TileRange(zoom,
+                    clamp((int) Math.floor(TileMath.tileX(west, zoom)), last),
+                    clamp((int) Math.floor(TileMath.tileX(east, zoom)), last),
+                    clamp((int) Math.floor(TileMath.tileY(north, zoom)), last),
+                    clamp((int) Math.floor(TileMath.tileY(south, zoom)), last));
+        }
+
+        int size() {
+            return Math.max(0, maxX - minX + 1) * Math.max(0, maxY - minY + 1);
+        }
+
+        private static int clamp(int tile, int last) {
+            return Math.max(0, Math.min(last, tile));
+        }
+    }
+
+    /**
+     * Listener of the progress of a packaging.
+     */
+    public interface ProgressListener {
+        /**
+         * Called from the packaging thread after each tile.
+         *
+         * @param done  The number of tiles downloaded, already present or failed.
+         * @param total The number of tiles of the region.
+         */
+        void onProgress(int done, int total);
+    }
+
+    /**
+     * Outcome of a packaging.
+     */
+    public static class Result {
+        private int downloaded;
+        private int skipped;
+        private int failed;
+
+        /**
+         * @return The number of tiles downloaded and written.
+         */
+        public int getDownloaded() {
+            return downloaded;
+        }
+
+        /**
+         * @return The number of tiles already in the file.
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return The number of tiles which couldn't be downloaded, packaging again the region retries them.
+         */
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return Whether all the tiles of the region are in the file.
+         */
+        public boolean isComplete() {
+            return failed == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "downloaded=" + downloaded +
+                    ", skipped=" + skipped +
+                    ", failed=" + failed +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.tileslayer;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Read the tiles of an MBTiles file from several threads at once.
+ * <br/>
+ * {@link com.mapbox.mapboxsdk.tileprovider.modules.MBTilesFileArchive} reads all the tiles through one database
+ * handle, so the tile downloader threads wait for each other. Here each reader borrows one of several read-only
+ * handles on the file, SQLite allowing concurrent readers. All the tiles are read with the same query, which each
+ * handle compiles once and keeps in its statement cache.
+ * <br/>
+ * The reads hold a shared lock, {@link #close()} waits for them with the exclusive lock before closing the handles.
+ */
+public class MBTilesReader {
+    private static final String TAG = "MBTilesReader";
+
+    private static final String SELECT_TILE = "SELECT tile_data FROM tiles WHERE zoom_level = ? AND tile_column = ? AND tile_row = ?";
+
+    private final BlockingQueue<SQLiteDatabase> databases;
+    private final SQLiteDatabase[] all;
+    private final boolean ownDatabases;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    /**
+     * Open read-only handles on an MBTiles file.
+     *
+     * @param file        The MBTiles file.
+     * @param connections The number of handles, i.e. the number of tiles which can be read in parallel.
+     * @throws SQLiteException If the file can't be opened.
+     */
+    public MBTilesReader(File file, int connections) {
+        databases = new ArrayBlockingQueue<>(connections);
+        all = new SQLiteDatabase[connections];
+        ownDatabases = true;
+        try {
+            for (int i = 0; i < connections; i++) {
+                all[i] = SQLiteDatabase.openDatabase(file.getAbsolutePath(), null,
+                        SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+                databases.add(all[i]);
+            }
+        } catch (SQLiteException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read the tiles through an already opened database, one tile at a time.
+     * <br/>
+     * The database is left open by {@link #close()}, its owner closes it.
+     *
+     * @param database The MBTiles database.
+     */
+    public MBTilesReader(SQLiteDatabase database) {
+        databases = new ArrayBlockingQueue<>(1);
+        all = new SQLiteDatabase[]{database};
+        ownDatabases = false;
+        databases.add(database);
+    }
+
+    /**
+     * Read the content of a tile, waiting for a free handle.
+     *
+     * @param zoom The zoom level of the tile.
+     * @param x    The column of the tile.
+     * @param y    The row of the tile, counted from the north as in {@link com.mapbox.mapboxsdk.tileprovider.MapTile}.
+     * @return The content of the tile or null if the file doesn't contain it or if the reader is closed.
+     * @throws InterruptedException If the calling thread was interrupted while waiting for a handle.
+     */
+    public byte[] getTileData(int zoom, int x, int y) throws InterruptedException {
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return null;
+            }
+            SQLiteDatabase database = databases.take();
+            try {
+                Cursor cursor = database.rawQuery(SELECT_TILE, new String[]{String.valueOf(zoom), String.valueOf(x),
+                        String.valueOf((1 << zoom) - 1 - y)});
+                try {
+                    return cursor.moveToFirst() ? cursor.getBlob(0) : null;
+                } finally {
+                    cursor.close();
+                }
+            } catch (SQLiteException e) {
+                Log.e(TAG, "Error reading tile " + zoom + "/" + x + "/" + y, e);
+                return null;
+            } finally {
+                databases.add(database);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Wait for the reads in progress and close all the handles opened by the reader. The reads afterwards return null.
+     */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!ownDatabases) {
+                return;
+            }
+            for (SQLiteDatabase database : all) {
+                if (database != null) {
+                    database.close();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
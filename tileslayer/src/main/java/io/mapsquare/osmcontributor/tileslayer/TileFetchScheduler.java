@@ -0,0 +1,350 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.tileslayer;
+
+import android.util.Log;
+
+import com.mapbox.mapboxsdk.tileprovider.MapTile;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Download the tiles of the web tile layers with a bounded number of workers.
+ * <br/>
+ * The pending tiles are fetched in order of priority: first the tiles at the zoom level of the viewport, then
+ * the tiles closest to the center of the viewport. Each time the viewport changes, the pending and running fetches
+ * of the tiles which left it are cancelled, so that fast panning and zooming don't download tiles nobody will see.
+ * <br/>
+ * The threads of the tile downloader of the map block in {@link #fetch(MapTile, String)} until their tile is
+ * downloaded or cancelled. Once {@link #shutdown()} is called, the fetches return null without waiting.
+ */
+public class TileFetchScheduler {
+    private static final String TAG = "TileFetchScheduler";
+
+    /**
+     * Number of tiles around the viewport still fetched, so that the borders of the map are ready when panning.
+     */
+    private static final int VIEWPORT_MARGIN = 1;
+
+    /**
+     * Tiles whose zoom level is farther than this from the zoom of the viewport are not displayed.
+     */
+    private static final double MAX_ZOOM_DISTANCE = 1.5;
+
+    private final OkHttpClient httpClient;
+    private final PriorityBlockingQueue<Fetch> queue = new PriorityBlockingQueue<>();
+    private final Set<Fetch> running = new HashSet<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Thread[] workers;
+
+    private volatile Viewport viewport;
+    private volatile boolean shutdown;
+
+    /**
+     * @param httpClient The http client used for the downloads.
+     * @param workers    The maximum number of tiles downloaded in parallel.
+     */
+    public TileFetchScheduler(OkHttpClient httpClient, int workers) {
+        this.httpClient = httpClient;
+        this.workers = new Thread[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new Thread(new Worker(), TAG + "-" + i);
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+    }
+
+    public OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Update the viewport of the map, cancel the fetches of the tiles out of it and reorder the others.
+     *
+     * @param north The north bound of the viewport.
+     * @param east  The east bound of the viewport.
+     * @param south The south bound of the viewport.
+     * @param west  The west bound of the viewport.
+     * @param zoom  The zoom level of the map.
+     */
+    public void setViewport(double north, double east, double south, double west, float zoom) {
+        Viewport current = new Viewport(north, east, south, west, zoom);
+        viewport = current;
+
+        List<Fetch> pending = new ArrayList<>(queue.size());
+        queue.drainTo(pending);
+        for (Fetch fetch : pending) {
+            if (current.contains(fetch.tile)) {
+                fetch.prioritize(current);
+                queue.add(fetch);
+            } else {
+                fetch.cancel();
+            }
+        }
+
+        synchronized (running) {
+            for (Fetch fetch : running) {
+                if (!current.contains(fetch.tile)) {
+                    fetch.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * Download a tile, waiting for its turn.
+     *
+     * @param tile The tile to download.
+     * @param url  The url of the tile.
+     * @return The content of the tile or null if the download failed or was cancelled or if the scheduler is shut down.
+     * @throws InterruptedException If the calling thread was interrupted while waiting, the fetch is cancelled.
+     */
+    public byte[] fetch(MapTile tile, String url) throws InterruptedException {
+        Viewport current = viewport;
+        if (shutdown || (current != null && !current.contains(tile))) {
+            return null;
+        }
+
+        Fetch fetch = new Fetch(tile, url, sequence.getAndIncrement());
+        fetch.prioritize(current);
+        queue.add(fetch);
+        // The scheduler may have been shut down after the check, nobody would take the fetch from the queue
+        if (shutdown && queue.remove(fetch)) {
+            fetch.cancel();
+        }
+        try {
+            return fetch.await();
+        } catch (InterruptedException e) {
+            fetch.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Number of fetches waiting for a worker.
+     */
+    int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * Cancel all the fetches and stop the workers. The scheduler can't be used afterwards.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        List<Fetch> pending = new ArrayList<>(queue.size());
+        queue.drainTo(pending);
+        for (Fetch fetch : pending) {
+            fetch.cancel();
+        }
+        synchronized (running) {
+            for (Fetch fetch : running) {
+                fetch.cancel();
+            }
+        }
+    }
+
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    execute(queue.take());
+                }
+            } catch (InterruptedException e) {
+                // Shutdown
+            }
+        }
+
+        private void execute(Fetch fetch) {
+            Viewport current = viewport;
+            if (shutdown || (current != null && !current.contains(fetch.tile))) {
+                fetch.cancel();
+                return;
+            }
+            Call call = httpClient.newCall(new Request.Builder().url(fetch.url).build());
+            if (!fetch.start(call)) {
+                return;
+            }
+
+            synchronized (running) {
+                running.add(fetch);
+            }
+            try {
+                Response response = call.execute();
+                if (response.isSuccessful()) {
+                    fetch.complete(response.body().bytes());
+                } else {
+                    response.body().close();
+                    Log.e(TAG, "Error downloading MapTile: " + fetch.url + ": " + response.code());
+                    fetch.complete(null);
+                }
+            } catch (IOException e) {
+                if (!fetch.isCancelled()) {
+                    Log.e(TAG, "Error downloading MapTile: " + fetch.url + ":" + e);
+                }
+                fetch.complete(null);
+            } finally {
+                synchronized (running) {
+                    running.remove(fetch);
+                }
+            }
+        }
+    }
+
+    /**
+     * The download of a tile, ordered by priority then by order of request.
+     */
+    private static final class Fetch implements Comparable<Fetch> {
+        private final MapTile tile;
+        private final String url;
+        private final long sequence;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private int zoomDistance;
+        private double centerDistance;
+
+        private Call call;
+        private boolean cancelled;
+        private byte[] result;
+
+        Fetch(MapTile tile, String url, long sequence) {
+            this.tile = tile;
+            this.url = url;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Compute the priority of the fetch, only call it when the fetch is not in the queue.
+         */
+        void prioritize(Viewport viewport) {
+            if (viewport != null) {
+                zoomDistance = (int) Math.round(Math.abs(tile.getZ() - viewport.zoom));
+                centerDistance = viewport.centerDistance(tile);
+            }
+        }
+
+        synchronized boolean start(Call call) {
+            if (cancelled) {
+                return false;
+            }
+            this.call = call;
+            return true;
+        }
+
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        synchronized void cancel() {
+            if (done.getCount() == 0) {
+                return;
+            }
+            cancelled = true;
+            if (call != null) {
+                call.cancel();
+            }
+            done.countDown();
+        }
+
+        synchronized void complete(byte[] result) {
+            if (done.getCount() == 0) {
+                return;
+            }
+            this.result = result;
+            done.countDown();
+        }
+
+        byte[] await() throws InterruptedException {
+            done.await();
+            synchronized (this) {
+                return result;
+            }
+        }
+
+        @Override
+        public int compareTo(Fetch another) {
+            if (zoomDistance != another.zoomDistance) {
+                return zoomDistance < another.zoomDistance ? -1 : 1;
+            }
+            int distance = Double.compare(centerDistance, another.centerDistance);
+            if (distance != 0) {
+                return distance;
+            }
+            return sequence < another.sequence ? -1 : (sequence == another.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Bounds and zoom level of the map.
+     */
+    static final class Viewport {
+        private final double north;
+        private final double east;
+        private final double south;
+        private final double west;
+        private final float zoom;
+
+        Viewport(double north, double east, double south, double west, float zoom) {
+            this.north = north;
+            this.east = east;
+            this.south = south;
+            this.west = west;
+            this.zoom = zoom;
+        }
+
+        /**
+         * Whether the tile is displayed with the viewport, including a margin of {@link #VIEWPORT_MARGIN} tiles.
+         */
+        boolean contains(MapTile tile) {
+            int z = tile.getZ();
+            if (Math.abs(z - zoom) > MAX_ZOOM_DISTANCE) {
+                return false;
+            }
+            return tile.getX() >= Math.floor(TileMath.tileX(west, z)) - VIEWPORT_MARGIN
+                    && tile.getX() <= Math.floor(TileMath.tileX(east, z)) + VIEWPORT_MARGIN
+                    && tile.getY() >= Math.floor(TileMath.tileY(north, z)) - VIEWPORT_MARGIN
+                    && tile.getY() <= Math.floor(TileMath.tileY(south, z)) + VIEWPORT_MARGIN;
+        }
+
+        /**
+         * Squared distance between the center of the tile and the center of the viewport, in tiles at the zoom of the tile.
+         */
+        double centerDistance(MapTile tile) {
+            int z = tile.getZ();
+            double dx = tile.getX() + 0.5 - (TileMath.tileX(west, z) + TileMath.tileX(east, z)) / 2;
+            double dy = tile.getY() + 0.5 - (TileMath.tileY(north, z) + TileMath.tileY(south, z)) / 2;
+            return dx * dx + dy * dy;
+        }
+    }
+}
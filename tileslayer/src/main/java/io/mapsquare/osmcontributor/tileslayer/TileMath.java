@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2016 eBusiness Information
+ *
+ * This file is part of OSM Contributor.
+ *
+ * OSM Contributor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OSM Contributor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OSM Contributor.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mapsquare.osmcontributor.tileslayer;
+
+/**
+ * Conversions between coordinates and tile numbers in the spherical mercator tile scheme.
+ */
+final class TileMath {
+
+    /**
+     * Latitude limit of the spherical mercator projection.
+     */
+    private static final double MAX_LATITUDE = 85.0511;
+
+    private TileMath() {
+    }
+
+    /**
+     * @return The fractional column of the tile containing the longitude at the zoom level.
+     */
+    static double tileX(double longitude, int zoom) {
+        return (longitude + 180) / 360 * (1 << zoom);
+    }
+
+    /**
+     * @return The fractional row of the tile containing the latitude at the zoom level, the row 0 being the northernmost.
+     */
+    static double tileY(double latitude, int zoom) {
+        double latitudeRad = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude)));
+        return (1 - Math.log(Math.tan(latitudeRad) + 1 / Math.cos(latitudeRad)) / Math.PI) / 2 * (1 << zoom);
+    }
+}
@@ -51,8 +51,11 @@ import com.mapbox.mapboxsdk.tileprovider.tilesource.TileLayer;
 import com.mapbox.mapboxsdk.util.NetworkUtils;
 import com.mapbox.mapboxsdk.views.util.TileLoadedListener;
 import com.mapbox.mapboxsdk.views.util.TilesLoadedListener;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
 
-import java.net.HttpURLConnection;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -75,15 +78,24 @@ public class WebSourceTileLayer extends TileLayer implements MapboxConstants {
     private AtomicInteger activeThreads = new AtomicInteger(0);
     protected boolean mEnableSSL = false;
 
+    // Custom tweak: Scheduler of the downloads, null to open a new connection per tile
+    private final TileFetchScheduler tileFetchScheduler;
+
     // Custom tweak: Add provider zoom limit parameter to constructor
     public WebSourceTileLayer(final String pId, final String url, final int providerZoomLimit) {
-        this(pId, url, false, providerZoomLimit);
+        this(pId, url, false, providerZoomLimit, null);
     }
 
-    // Custom tweak: Add provider zoom limit parameter to constructor
-    public WebSourceTileLayer(final String pId, final String url, final boolean enableSSL, final int providerZoomLimit) {
+    // Custom tweak: Add provider zoom limit and scheduler parameters to constructor
+    public WebSourceTileLayer(final String pId, final String url, final int providerZoomLimit, final TileFetchScheduler tileFetchScheduler) {
+        this(pId, url, false, providerZoomLimit, tileFetchScheduler);
+    }
+
+    // Custom tweak: Add provider zoom limit and scheduler parameters to constructor
+    public WebSourceTileLayer(final String pId, final String url, final boolean enableSSL, final int providerZoomLimit, final TileFetchScheduler tileFetchScheduler) {
         super(pId, url);
         this.providerZoomLimit = providerZoomLimit;
+        this.tileFetchScheduler = tileFetchScheduler;
         initialize(pId, url, enableSSL);
     }
 
@@ -116,6 +128,26 @@ public class WebSourceTileLayer extends TileLayer implements MapboxConstants {
         return providerZoomLimit;
     }
 
+    /**
+     * Custom tweak: Open the response of an url with the shared http client when there is one,
+     * which reuses its connections and revalidates its disk cache instead of downloading again.
+     *
+     * @param url The url to open.
+     * @return The body of the response, to close.
+     * @throws IOException If the request failed or its response isn't successful.
+     */
+    protected InputStream openStream(final String url) throws IOException {
+        if (tileFetchScheduler == null) {
+            return NetworkUtils.getHttpURLConnection(new URL(url)).getInputStream();
+        }
+        Response response = tileFetchScheduler.getHttpClient().newCall(new Request.Builder().url(url).build()).execute();
+        if (!response.isSuccessful()) {
+            response.body().close();
+            throw new IOException("Unexpected response code " + response.code());
+        }
+        return response.body().byteStream();
+    }
+
     /**
      * Gets a list of Tile URLs used by this layer for a specific tile.
      *
@@ -228,8 +260,25 @@ public class WebSourceTileLayer extends TileLayer implements MapboxConstants {
         }
 
         try {
-            HttpURLConnection connection = NetworkUtils.getHttpURLConnection(new URL(url));
-            Bitmap bitmap = BitmapFactory.decodeStream(connection.getInputStream());
+            // Custom tweak: Download with the scheduler, which cancels the tiles leaving the viewport
+            Bitmap bitmap;
+            if (tileFetchScheduler != null) {
+                byte[] data = tileFetchScheduler.fetch(mapTile, url);
+                if (data == null) {
+                    return null;
+                }
+                bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
+            } else {
+                InputStream inputStream = openStream(url);
+                try {
+                    bitmap = BitmapFactory.decodeStream(inputStream);
+                } finally {
+                    inputStream.close();
+                }
+            }
+            if (bitmap == null) {
+                return null;
+            }
 
             // Custom tweak: If zoom > zoom limit, load the tile of zoom limit, cut the part of interest and resize it.
             if (mapTile.getZ() > providerZoomLimit) {
@@ -244,6 +293,9 @@ public class WebSourceTileLayer extends TileLayer implements MapboxConstants {
                 aCache.putTileInMemoryCache(mapTile, bitmap);
             }
             return bitmap;
+        } catch (final InterruptedException e) {
+            // Custom tweak: The downloader is stopping, the fetch was cancelled by the scheduler
+            Thread.currentThread().interrupt();
         } catch (final Throwable e) {
             Log.e(TAG, "Error downloading MapTile: " + url + ":" + e);
         } finally {